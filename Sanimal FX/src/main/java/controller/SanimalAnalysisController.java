@@ -8,11 +8,13 @@ import controller.analysisView.VisDrSandersonController;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
-import javafx.scene.control.ButtonType;
+import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
@@ -22,18 +24,26 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
 import model.SanimalData;
 import model.analysis.DataAnalyzer;
+import model.analysis.DataAnalyzerBuilder;
+import model.cyverse.CyVerseQueryCache;
 import model.image.ImageEntry;
+import model.query.AggregateField;
 import model.query.CyVerseQuery;
 import model.query.IQueryCondition;
 import model.query.QueryEngine;
+import model.query.QueryResultListener;
+import model.species.Species;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 import model.util.FXMLLoaderUtils;
 import org.controlsfx.control.MaskerPane;
 
 import java.net.URL;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Controller class for the analysis page
@@ -83,6 +93,10 @@ public class SanimalAnalysisController implements Initializable
 	@FXML
 	public MaskerPane mpnQuerying;
 
+	// Label showing how effective the query cache has been
+	@FXML
+	public Label lblQueryCacheStats;
+
 	///
 	/// FXML bound fields end
 	///
@@ -156,80 +170,193 @@ public class SanimalAnalysisController implements Initializable
 		}
 		catch (NumberFormatException ignored) {}
 
-		// Create a query
-		CyVerseQuery query = new CyVerseQuery();
-		// For each condition listed in the listview, apply that to the overall query
-		for (IQueryCondition queryCondition : SanimalData.getInstance().getQueryEngine().getQueryConditions())
-			queryCondition.appendConditionToQuery(query);
+		CyVerseQuery query = this.buildQuery();
 
-		Task<List<String>> queryTask = new ErrorTask<List<String>>()
-		{
-			@Override
-			protected List<String> call()
-			{
-				this.updateMessage("Performing query...");
-				// Grab the result of the query
-				return SanimalData.getInstance().getConnectionManager().performQuery(query);
-			}
-		};
 		Integer finalEventInterval = eventInterval;
 
-		// Once finished with the task, we test if the user wants to continue
-		queryTask.setOnSucceeded(event ->
+		// Perform the query and fetch the metadata of the matching images at the same time, building the analysis as images arrive
+		Task<DataAnalyzer> queryTask = new ErrorTask<DataAnalyzer>()
 		{
-			// Get the result of the first query
-			List<String> irodsAbsolutePaths = queryTask.getValue();
-
-			// Ask the user if they would like to continue to part 2 of the query where we retrieve metadata. This takes a while
-			Optional<ButtonType> buttonTypeOpt = SanimalData.getInstance().getErrorDisplay().showPopup(
-					Alert.AlertType.CONFIRMATION,
-					this.lvwFilters.getScene().getWindow(),
-					"Query Count",
-					null,
-					"This query will return " + irodsAbsolutePaths.size() + " results at approximately 6 results per second, continue?",
-					true);
-
-			// If they press OK, query, otherwise just jump out
-			if (buttonTypeOpt.isPresent() && buttonTypeOpt.get() == ButtonType.OK)
+			// The number of images that matched the query so far
+			private AtomicInteger imagesFound = new AtomicInteger(0);
+			// The images that have had their metadata fetched so far
+			private DataAnalyzerBuilder analyzerBuilder = new DataAnalyzerBuilder();
+
+			@Override
+			protected DataAnalyzer call()
 			{
-				// Create a second task to perform the next query
-				Task<List<ImageEntry>> queryImageTask = new ErrorTask<List<ImageEntry>>()
+				this.updateMessage("Performing query... Click to cancel");
+				Task<DataAnalyzer> task = this;
+				Boolean finished = SanimalData.getInstance().getConnectionManager().performQuery(query, new QueryResultListener()
 				{
 					@Override
-					protected List<ImageEntry> call()
+					public void pathsFound(Integer pathCount)
 					{
-						this.updateMessage("Performing image query...");
-						// Grab the result of the image query
-						return SanimalData.getInstance().getConnectionManager().fetchMetadataFor(irodsAbsolutePaths);
+						imagesFound.addAndGet(pathCount);
+						reportProgress();
 					}
-				};
 
-				queryImageTask.setOnSucceeded(event1 ->
-				{
-					// Analyze the result of the query
-					DataAnalyzer dataAnalyzer = new DataAnalyzer(queryImageTask.getValue(), finalEventInterval);
-
-					// Hand the analysis over to the visualizations to graph
-					visDrSandersonController.visualize(dataAnalyzer);
-					visCSVController.visualize(dataAnalyzer);
-					visDownloadController.visualize(dataAnalyzer);
-					this.mpnQuerying.setVisible(false);
+					@Override
+					public void imagesLoaded(List<ImageEntry> images)
+					{
+						analyzerBuilder.addImages(images);
+						reportProgress();
+					}
+
+					@Override
+					public Boolean isCancelled()
+					{
+						return task.isCancelled();
+					}
 				});
 
-				// Execute the second query
-				SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(queryImageTask);
+				// If the query didn't finish don't show partial results
+				if (!finished)
+					return null;
+
+				this.updateMessage("Analyzing " + this.analyzerBuilder.getImageCount() + " images...");
+				// Analyze the result of the query
+				return this.analyzerBuilder.build(finalEventInterval);
 			}
-			else
+
+			/**
+			 * Updates the message and progress with the number of images found and the number of images with metadata
+			 */
+			private void reportProgress()
 			{
-				this.mpnQuerying.setVisible(false);
+				Integer found = this.imagesFound.get();
+				Integer loaded = this.analyzerBuilder.getImageCount();
+				this.updateMessage("Found " + found + " images, retrieved metadata for " + loaded + "... Click to cancel");
+				this.updateProgress(loaded, found);
 			}
+		};
 
+		// Once the query starts show its progress on the masker pane, and let the user cancel it by clicking the pane
+		this.mpnQuerying.setText("Performing Query...");
+		this.mpnQuerying.setProgress(-1);
+		this.mpnQuerying.setOnMouseClicked(event -> queryTask.cancel());
+		queryTask.setOnRunning(event ->
+		{
+			this.mpnQuerying.textProperty().bind(queryTask.messageProperty());
+			this.mpnQuerying.progressProperty().bind(queryTask.progressProperty());
 		});
-		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(queryTask);
+
+		queryTask.setOnSucceeded(event ->
+		{
+			this.hideQueryProgress();
+			DataAnalyzer dataAnalyzer = queryTask.getValue();
+			if (dataAnalyzer != null)
+			{
+				// Hand the analysis over to the visualizations to graph
+				visDrSandersonController.visualize(dataAnalyzer);
+				visCSVController.visualize(dataAnalyzer);
+				visDownloadController.visualize(dataAnalyzer);
+			}
+		});
+		queryTask.setOnCancelled(event -> this.hideQueryProgress());
+		// Keep the error task's failure handler so the reason the query failed is still printed
+		EventHandler<WorkerStateEvent> onFailed = queryTask.getOnFailed();
+		queryTask.setOnFailed(event ->
+		{
+			if (onFailed != null)
+				onFailed.handle(event);
+			this.hideQueryProgress();
+		});
+		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(queryTask, TaskPriority.INTERACTIVE);
 
 		actionEvent.consume();
 	}
 
+	/**
+	 * Called when the count images button is pressed. Counts the images matching the query per species without downloading their
+	 * metadata, for when only the totals are needed
+	 *
+	 * @param actionEvent consumed
+	 */
+	public void countImages(ActionEvent actionEvent)
+	{
+		CyVerseQuery query = this.buildQuery();
+
+		Task<SortedMap<String, Long>> countTask = new ErrorTask<SortedMap<String, Long>>()
+		{
+			@Override
+			protected SortedMap<String, Long> call()
+			{
+				this.updateMessage("Counting images per species...");
+				return SanimalData.getInstance().getConnectionManager().performAggregateQuery(query, AggregateField.SPECIES);
+			}
+		};
+
+		this.mpnQuerying.setVisible(true);
+		this.mpnQuerying.setText("Counting images per species...");
+		this.mpnQuerying.setProgress(-1);
+		countTask.setOnSucceeded(event ->
+		{
+			this.hideQueryProgress();
+			SortedMap<String, Long> speciesToCount = countTask.getValue();
+			// An empty result means the query failed, which was already reported
+			if (speciesToCount.isEmpty())
+				return;
+
+			// Show the common name of each species the user has in their species list next to its scientific name
+			StringBuilder counts = new StringBuilder();
+			for (Map.Entry<String, Long> speciesCount : speciesToCount.entrySet())
+			{
+				String commonName = SanimalData.getInstance().getSpeciesList().stream().filter(species -> speciesCount.getKey().equals(species.getScientificName())).map(Species::getName).findFirst().orElse(null);
+				counts.append(commonName == null ? speciesCount.getKey() : commonName + " (" + speciesCount.getKey() + ")").append(": ").append(speciesCount.getValue()).append("\n");
+			}
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.INFORMATION,
+					this.mpnQuerying.getScene().getWindow(),
+					"Image Counts",
+					"Images per species matching the query",
+					counts.toString(),
+					false);
+		});
+		countTask.setOnCancelled(event -> this.hideQueryProgress());
+		// Keep the error task's failure handler so the reason the count failed is still printed
+		EventHandler<WorkerStateEvent> onFailed = countTask.getOnFailed();
+		countTask.setOnFailed(event ->
+		{
+			if (onFailed != null)
+				onFailed.handle(event);
+			this.hideQueryProgress();
+		});
+		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(countTask, TaskPriority.INTERACTIVE);
+
+		actionEvent.consume();
+	}
+
+	/**
+	 * Creates a query out of every condition in the query condition list
+	 *
+	 * @return The query
+	 */
+	private CyVerseQuery buildQuery()
+	{
+		// Create a query
+		CyVerseQuery query = new CyVerseQuery();
+		// For each condition listed in the listview, apply that to the overall query
+		for (IQueryCondition queryCondition : SanimalData.getInstance().getQueryEngine().getQueryConditions())
+			queryCondition.appendConditionToQuery(query);
+		return query;
+	}
+
+	/**
+	 * Hides the masker pane shown while querying and stops it tracking the query
+	 */
+	private void hideQueryProgress()
+	{
+		this.mpnQuerying.textProperty().unbind();
+		this.mpnQuerying.progressProperty().unbind();
+		this.mpnQuerying.setOnMouseClicked(null);
+		this.mpnQuerying.setVisible(false);
+
+		// Show how often queries are answered by the cache and roughly how much time that saved
+		CyVerseQueryCache queryCache = SanimalData.getInstance().getConnectionManager().getQueryCache();
+		this.lblQueryCacheStats.setText(String.format("Query cache: %.0f%% hit rate, %d images served, %.1fs saved", queryCache.getHitRate() * 100, queryCache.getImagesServed(), queryCache.getMillisSaved() / 1000.0));
+	}
+
 	/**
 	 * Called to add athe current filter to the analysis
 	 *
@@ -9,6 +9,8 @@ import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.ListChangeListener;
@@ -44,6 +46,7 @@ import model.location.Location;
 import model.species.Species;
 import model.species.SpeciesEntry;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 import model.util.FXMLLoaderUtils;
 import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -846,8 +849,12 @@ public class SanimalImportController implements Initializable
 					List<Species> currentSpecies = new ArrayList<>(SanimalData.getInstance().getSpeciesList());
 					List<Location> currentLocations = new ArrayList<>(SanimalData.getInstance().getLocationList());
 
+					// Create a callback so we can show how fast images are being read
+					StringProperty messageCallback = new SimpleStringProperty("");
+					messageCallback.addListener((observable, oldValue, newValue) -> this.updateMessage(newValue));
+
 					// Convert the file to a recursive image directory data structure
-					ImageDirectory directory = DirectoryManager.loadDirectory(file, currentLocations, currentSpecies);
+					ImageDirectory directory = DirectoryManager.loadDirectory(file, currentLocations, currentSpecies, messageCallback);
 
 					this.updateProgress(2, MAX_WORK);
 					this.updateMessage("Removing empty directories...");
@@ -995,11 +1002,11 @@ public class SanimalImportController implements Initializable
 						this.btnImportImages.setDisable(false);
 					});
 
-					SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(legacySyncTask);
+					SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(legacySyncTask, TaskPriority.BULK_TRANSFER);
 				}
 			});
 
-			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(importTask);
+			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(importTask, TaskPriority.BULK_TRANSFER);
 		}
 		// Consume the event
 		actionEvent.consume();
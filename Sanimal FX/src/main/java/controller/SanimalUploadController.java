@@ -21,6 +21,7 @@ import model.cyverse.ImageCollection;
 import model.cyverse.Permission;
 import model.image.*;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 import model.util.FXMLLoaderUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.controlsfx.control.MaskerPane;
@@ -231,7 +232,7 @@ public class SanimalUploadController implements Initializable
 		});
 
 		// Add the task
-		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(collectionUploadDownloader);
+		SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(collectionUploadDownloader, TaskPriority.INTERACTIVE);
 	}
 
 	/**
@@ -340,7 +341,7 @@ public class SanimalUploadController implements Initializable
 				uploadEntry.setDownloaded(true);
 			});
 
-			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(downloadTask);
+			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(downloadTask, TaskPriority.BULK_TRANSFER);
 		}
 	}
 
@@ -395,7 +396,7 @@ public class SanimalUploadController implements Initializable
 					SanimalData.getInstance().getImageTree().removeChildRecursive(imageDirectory);
 					uploadEntry.clearLocalCopy();
 				});
-				SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(saveTask);
+				SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(saveTask, TaskPriority.BULK_TRANSFER);
 			}
 			else
 			{
@@ -22,10 +22,10 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.shape.Rectangle;
 import model.SanimalData;
 import model.cyverse.CyVerseConnectionManager;
-import model.cyverse.ImageCollection;
 import model.location.Location;
 import model.species.Species;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 import model.util.SettingsData;
 import org.controlsfx.control.HyperlinkLabel;
 import org.controlsfx.validation.ValidationSupport;
@@ -255,10 +255,8 @@ public class SanimalViewController implements Initializable
 						// Pull any species from the remote directory
 						this.updateMessage("Pulling collections from remote directory...");
 						this.updateProgress(6, 7);
-						List<ImageCollection> imageCollections = connectionManager.pullRemoteCollections();
-
-						// Set the image collection list to be these collections
-						Platform.runLater(() -> SanimalData.getInstance().getCollectionList().addAll(imageCollections));
+						// Add each collection to the image collection list as soon as it is loaded
+						connectionManager.pullRemoteCollections(imageCollection -> Platform.runLater(() -> SanimalData.getInstance().getCollectionList().add(imageCollection)));
 
 						this.updateProgress(7, 7);
 					}
@@ -285,7 +283,7 @@ public class SanimalViewController implements Initializable
 				this.btnLogin.setGraphic(null);
 			});
 			// Perform the task
-			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(loginAttempt);
+			SanimalData.getInstance().getSanimalExecutor().getQueuedExecutor().addTask(loginAttempt, TaskPriority.INTERACTIVE);
 		}
 	}
 
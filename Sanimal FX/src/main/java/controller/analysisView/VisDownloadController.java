@@ -2,20 +2,26 @@ package controller.analysisView;
 
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ListView;
 import javafx.stage.DirectoryChooser;
 import model.SanimalData;
 import model.analysis.DataAnalyzer;
+import model.cyverse.CyVerseDownloadManager;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 
 import javax.swing.filechooser.FileSystemView;
 import java.io.File;
 import java.net.URL;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
 
@@ -87,27 +93,44 @@ public class VisDownloadController implements VisControllerBase
 			if (dirToSaveTo.exists() && dirToSaveTo.isDirectory() && dirToSaveTo.canWrite())
 			{
 				// Create a new task to perform the computation
-				ErrorTask<Void> errorTask = new ErrorTask<Void>()
+				ErrorTask<CyVerseDownloadManager.DownloadResult> errorTask = new ErrorTask<CyVerseDownloadManager.DownloadResult>()
 				{
 					@Override
-					protected Void call()
+					protected CyVerseDownloadManager.DownloadResult call()
 					{
 						// Update the users on what the query is doing
-						this.updateMessage("Performing query to figure out which images to download...");
-						// Perform the query
+						this.updateMessage("Downloading images...");
 						// Create a callback so we can easily update our task progress
 						DoubleProperty progressCallback = new SimpleDoubleProperty(0);
 						progressCallback.addListener((observable, oldValue, newValue) -> this.updateProgress(newValue.doubleValue(), 1.0));
+						// Create a callback so we can show the download speed
+						StringProperty messageCallback = new SimpleStringProperty("");
+						messageCallback.addListener((observable, oldValue, newValue) -> this.updateMessage(newValue));
 						// Call the final function to download data to disk
-						SanimalData.getInstance().getConnectionManager().downloadImages(imageFilePaths, dirToSaveTo, progressCallback);
-						return null;
+						return SanimalData.getInstance().getConnectionManager().downloadImages(imageFilePaths, dirToSaveTo, progressCallback, messageCallback);
 					}
 				};
-				errorTask.setOnSucceeded(event -> this.btnDownload.setDisable(false));
+				errorTask.setOnSucceeded(event ->
+				{
+					this.btnDownload.setDisable(false);
+					// If any images failed to download, tell the user which ones
+					Map<String, String> failures = errorTask.getValue().getFailures();
+					if (!failures.isEmpty())
+					{
+						SanimalData.getInstance().getErrorDisplay().showPopup(
+								Alert.AlertType.WARNING,
+								this.lvwImageFiles.getScene().getWindow(),
+								"Warning",
+								"Some images failed to download",
+								failures.size() + " image(s) could not be downloaded. Downloading to the same directory again will retry only these images.\n\n" +
+										failures.entrySet().stream().map(failure -> failure.getKey() + ": " + failure.getValue()).collect(Collectors.joining("\n")),
+								false);
+					}
+				});
 				// Disable the download images button for now
 				this.btnDownload.setDisable(true);
 				// Execute the task
-				SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(errorTask);
+				SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(errorTask, TaskPriority.BULK_TRANSFER);
 			}
 		}
 		actionEvent.consume();
@@ -32,8 +32,8 @@ public class VisDrSandersonController implements VisControllerBase
 	/// FXML Bound fields end
 	///
 
-	// Formatter used to format our data into Dr. Sanderson's format
-	private SanimalTextOutputFormatter outputFormatter = new SanimalTextOutputFormatter();
+	// Formatter used to format our data into Dr. Sanderson's format, sections are rendered in parallel
+	private SanimalTextOutputFormatter outputFormatter = new SanimalTextOutputFormatter(true);
 
 	/**
 	 * Initializes the Dr. Sanderson output controller by setting the text area fonts
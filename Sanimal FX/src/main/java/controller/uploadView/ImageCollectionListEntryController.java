@@ -23,6 +23,7 @@ import model.image.CloudImageDirectory;
 import model.image.ImageDirectory;
 import model.image.ImageEntry;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
 import model.util.FXMLLoaderUtils;
 import org.irods.jargon.core.transfer.TransferStatus;
 import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
@@ -298,7 +299,7 @@ public class ImageCollectionListEntryController extends ListCell<ImageCollection
 						});
 						uploadTask.setOnCancelled(event -> imageDirectory.setUploadProgress(-1));
 						dragEvent.setDropCompleted(true);
-						SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(uploadTask);
+						SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(uploadTask, TaskPriority.BULK_TRANSFER);
 					});
 				}
 				else
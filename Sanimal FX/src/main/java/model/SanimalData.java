@@ -10,9 +10,11 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
+import javafx.scene.control.Alert;
 import model.cyverse.CyVerseConnectionManager;
 import model.cyverse.ImageCollection;
 import model.image.ImageContainer;
+import model.image.DirtyImageQueue;
 import model.image.ImageDirectory;
 import model.image.ImageEntry;
 import model.location.Location;
@@ -22,11 +24,15 @@ import model.threading.ErrorService;
 import model.threading.ErrorTask;
 import model.threading.SanimalExecutor;
 import model.util.*;
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.hildan.fxgson.FxGson;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
 
@@ -61,6 +67,12 @@ public class SanimalData
 	private final ImageDirectory imageTree;
 	private static final Integer NUM_IMAGES_AT_A_TIME = 100;
 	private AtomicBoolean metadataSyncInProgress = new AtomicBoolean(false);
+	// Queue of images that need their metadata written to disk
+	private final DirtyImageQueue dirtyImageQueue = new DirtyImageQueue();
+	// The number of threads used to write image metadata to disk
+	private Integer metadataWriterCount = 4;
+	// The threads used to write image metadata to disk, kept for the life of the program instead of being created for each batch
+	private final ThreadPoolExecutor metadataWriters = createMetadataWriters(metadataWriterCount);
 
 	// A username property which we can bind to in the rest of the program
 	private StringProperty usernameProperty = new SimpleStringProperty("");
@@ -121,6 +133,10 @@ public class SanimalData
 
 		// When the settings change, we sync them
 		this.setupAutoSettingsSync();
+
+		// Query results are only written to disk if the user asked for it
+		this.connectionManager.getQueryCache().setPersistToDisk(this.settings.getSaveQueryResultsToDisk());
+		this.settings.saveQueryResultsToDiskProperty().addListener((observable, oldValue, newValue) -> this.connectionManager.getQueryCache().setPersistToDisk(newValue));
 	}
 
 	/**
@@ -240,6 +256,9 @@ public class SanimalData
 	 */
 	private void setupAutoWriteMetadata()
 	{
+		// Only images in the image tree are written to disk, so they are written through the tree's queue
+		this.imageTree.setDirtyImageQueue(this.dirtyImageQueue);
+
 		ErrorService<Void> syncService = new ErrorService<Void>()
 		{
 			@Override
@@ -248,26 +267,60 @@ public class SanimalData
 				return new ErrorTask<Void>()
 				{
 					@Override
-					protected Void call()
+					protected Void call() throws InterruptedException
 					{
-						// Notice we perform the stream twice. This is because we cannot re-use streams in Java.
-						long dirtyImageCount =
-								SanimalData.this.getAllImages()
-										.stream()
-										.filter(ImageEntry::isDiskDirty)
-										.count();
-						List<ImageEntry> top100Dirty =
-								SanimalData.this.getAllImages()
-										.stream()
-										.filter(ImageEntry::isDiskDirty)
-										.limit(NUM_IMAGES_AT_A_TIME).collect(Collectors.toList());
-						this.updateMessage("Writing updated images to disk (" + dirtyImageCount + " left, doing " + NUM_IMAGES_AT_A_TIME + " at a time)...");
-						for (int i = 0; i < top100Dirty.size(); i++)
+						// Grab the next batch of dirty images off of the queue instead of searching the image tree for them
+						List<ImageEntry> batch = SanimalData.this.dirtyImageQueue.drain(NUM_IMAGES_AT_A_TIME);
+						if (batch.isEmpty())
+							return null;
+
+						this.updateMessage(String.format("Writing updated images to disk (%d left, %.1f images/sec)...", batch.size() + SanimalData.this.dirtyImageQueue.getDepth(), SanimalData.this.dirtyImageQueue.getImagesPerSecond()));
+						long startTime = System.nanoTime();
+
+						// Write each image on the shared writer threads
+						List<Future<Void>> writes = batch.stream().map(imageEntry -> SanimalData.this.metadataWriters.submit(() ->
 						{
-							top100Dirty.get(i).writeToDisk();
-							if (i % 10 == 0)
-								this.updateProgress(i, top100Dirty.size());
+							imageEntry.writeToDisk();
+							return (Void) null;
+						})).collect(Collectors.toList());
+						Integer imagesWritten = 0;
+						// Images that failed to write too many times in a row, reported once instead of every time the writer runs
+						List<String> imagesGivenUpOn = new ArrayList<>();
+						try
+						{
+							for (Integer i = 0; i < writes.size(); i++)
+							{
+								try
+								{
+									writes.get(i).get();
+									imagesWritten++;
+								}
+								catch (ExecutionException e)
+								{
+									SanimalData.this.errorDisplay.printError("Error writing metadata to the image " + batch.get(i).getFile().getName() + "!\n" + ExceptionUtils.getStackTrace(e.getCause()));
+									if (!SanimalData.this.dirtyImageQueue.retry(batch.get(i)))
+										imagesGivenUpOn.add(batch.get(i).getFile().getName());
+								}
+								this.updateProgress(i + 1, batch.size());
+							}
+						}
+						catch (InterruptedException e)
+						{
+							// Stop writing and put back anything that wasn't written yet
+							writes.forEach(write -> write.cancel(false));
+							batch.forEach(SanimalData.this.dirtyImageQueue::requeue);
+							throw e;
 						}
+
+						SanimalData.this.dirtyImageQueue.recordBatch(imagesWritten, System.nanoTime() - startTime);
+						if (!imagesGivenUpOn.isEmpty())
+							SanimalData.this.errorDisplay.showPopup(
+									Alert.AlertType.ERROR,
+									null,
+									"Error",
+									"Metadata error",
+									"Metadata could not be written to " + imagesGivenUpOn.size() + " image(s) after " + DirtyImageQueue.MAX_WRITE_ATTEMPTS + " attempts, they will be tried again once they are edited:\n" + String.join("\n", imagesGivenUpOn),
+									false);
 						return null;
 					}
 				};
@@ -275,9 +328,9 @@ public class SanimalData
 		};
 		// When we finish syncing...
 		syncService.setOnSucceeded(event -> {
-			// After finishing the sync, check if we need to sync again. If so set the flag to false and sync once again
-			Boolean moreImagesToWrite = this.getAllImages().stream().anyMatch(ImageEntry::isDiskDirty);
-			if (moreImagesToWrite)
+			// After finishing the sync, check if we need to sync again. Images that keep failing leave the queue after a few attempts, so
+			// this stops once everything has been written or given up on
+			if (!this.dirtyImageQueue.isEmpty())
 				syncService.restart();
 			// If we don't need to sync again set the sync in progress flag to false
 			else
@@ -421,6 +474,58 @@ public class SanimalData
 		return sanimalExecutor;
 	}
 
+	/**
+	 * @return The queue of images that need their metadata written to disk
+	 */
+	public DirtyImageQueue getDirtyImageQueue()
+	{
+		return this.dirtyImageQueue;
+	}
+
+	/**
+	 * @return The number of threads used to write image metadata to disk
+	 */
+	public Integer getMetadataWriterCount()
+	{
+		return this.metadataWriterCount;
+	}
+
+	/**
+	 * @param metadataWriterCount The number of threads used to write image metadata to disk, must be at least 1
+	 */
+	public void setMetadataWriterCount(Integer metadataWriterCount)
+	{
+		this.metadataWriterCount = Math.max(1, metadataWriterCount);
+		// Resize the writer pool in an order that keeps the core size at or below the max size
+		if (this.metadataWriterCount > this.metadataWriters.getMaximumPoolSize())
+		{
+			this.metadataWriters.setMaximumPoolSize(this.metadataWriterCount);
+			this.metadataWriters.setCorePoolSize(this.metadataWriterCount);
+		}
+		else
+		{
+			this.metadataWriters.setCorePoolSize(this.metadataWriterCount);
+			this.metadataWriters.setMaximumPoolSize(this.metadataWriterCount);
+		}
+	}
+
+	/**
+	 * Creates the pool of threads used to write image metadata to disk. The threads don't keep the program open
+	 *
+	 * @param writerCount The number of writer threads
+	 * @return A fixed size pool of writer threads
+	 */
+	private static ThreadPoolExecutor createMetadataWriters(Integer writerCount)
+	{
+		AtomicInteger threadNumber = new AtomicInteger(0);
+		return new ThreadPoolExecutor(writerCount, writerCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable ->
+		{
+			Thread thread = new Thread(runnable, "Metadata Writer " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
 	/**
 	 * @return The Gson serializer used to serialize properties
 	 */
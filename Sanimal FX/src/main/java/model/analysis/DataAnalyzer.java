@@ -24,9 +24,9 @@ public class DataAnalyzer
 	private List<Location> allImageLocations = new ArrayList<>();
 	private List<Species> allImageSpecies = new ArrayList<>();
 	private List<Integer> allImageYears = new ArrayList<>();
-	// A list of all images but sorted by date instead of randomly
+	// A list of all images but sorted by date instead of randomly, backed by an index so queries on it do not need to scan every image
 	private List<ImageEntry> imagesSortedByDate;
-	// A list of all original images
+	// A list of all original images, also backed by an index
 	private List<ImageEntry> originalImageList;
 	// The event interval, in minutes
 	private Integer eventInterval;
@@ -44,45 +44,65 @@ public class DataAnalyzer
 	 */
 	public DataAnalyzer(List<ImageEntry> images, Integer eventInterval)
 	{
-		this.eventInterval = eventInterval;
-		this.originalImageList = images;
-
-		// Find all image locations
-		for (ImageEntry entry : images)
-			if (entry.getLocationTaken() != null)
-			{
-				if (!allImageLocations.contains(entry.getLocationTaken()))
-					allImageLocations.add(entry.getLocationTaken());
-			}
-			else
-				nullLocationsFound = true;
-
-		// Sort the locations by name
-		allImageLocations.sort(Comparator.comparing(Location::getName));
+		this(new DataAnalyzerBuilder(images), eventInterval);
+	}
 
-		// Find all image species 
-		for (ImageEntry imageEntry : images)
-			for (SpeciesEntry speciesEntry : imageEntry.getSpeciesPresent())
-				if (!allImageSpecies.contains(speciesEntry.getSpecies()))
-					allImageSpecies.add(speciesEntry.getSpecies());
+	/**
+	 * Constructor for the analysis that may leave the images unindexed, in which case every query scans the image lists. Used to measure
+	 * how much time the index saves
+	 *
+	 * @param images
+	 *            A list of images to perform the analysis on
+	 * @param eventInterval
+	 *            The event interval given in minutes
+	 * @param indexed
+	 *            If false the image lists are plain lists instead of being backed by an index
+	 */
+	DataAnalyzer(List<ImageEntry> images, Integer eventInterval, Boolean indexed)
+	{
+		this(new DataAnalyzerBuilder(images), eventInterval, indexed);
+	}
 
-		// Sort species by name
-		allImageSpecies.sort(Comparator.comparing(Species::getName));
+	/**
+	 * Constructor for the analysis using images collected by a builder. Must be called while holding the builder's lock
+	 *
+	 * @param builder
+	 *            The builder containing the images to perform the analysis on
+	 * @param eventInterval
+	 *            The event interval given in minutes
+	 */
+	DataAnalyzer(DataAnalyzerBuilder builder, Integer eventInterval)
+	{
+		this(builder, eventInterval, true);
+	}
 
-		// Find all image years
-		for (ImageEntry imageEntry : images)
-		{
-			Integer year = imageEntry.getDateTaken().getYear();
-			if (!allImageYears.contains(year))
-				allImageYears.add(year);
-		}
+	/**
+	 * Constructor for the analysis using images collected by a builder. Must be called while holding the builder's lock
+	 *
+	 * @param builder
+	 *            The builder containing the images to perform the analysis on
+	 * @param eventInterval
+	 *            The event interval given in minutes
+	 * @param indexed
+	 *            If false the image lists are plain lists instead of being backed by an index
+	 */
+	private DataAnalyzer(DataAnalyzerBuilder builder, Integer eventInterval, Boolean indexed)
+	{
+		this.eventInterval = eventInterval;
+		// Index a snapshot of the images so later changes to the builder do not invalidate the index
+		List<ImageEntry> images = builder.getImages();
+		this.originalImageList = indexed ? new ImageIndex(images).asList() : Collections.unmodifiableList(new ArrayList<>(images));
 
-		// Sort years first to last
-		Collections.sort(allImageYears);
+		// Grab the image locations, species, and years that the builder found sorted by name and date
+		this.allImageLocations = builder.getSortedLocations();
+		this.nullLocationsFound = builder.nullLocationsFound();
+		this.allImageSpecies = builder.getSortedSpecies();
+		this.allImageYears = builder.getSortedYears();
 
-		// Create a copy of "images", and sort it by date
-		imagesSortedByDate = new ArrayList<>(images);
-		imagesSortedByDate.sort(Comparator.comparing(ImageEntry::getDateTaken));
+		// Create a copy of "images", sort it by date, and index it
+		List<ImageEntry> sortedImages = new ArrayList<>(images);
+		sortedImages.sort(Comparator.comparing(ImageEntry::getDateTaken));
+		imagesSortedByDate = indexed ? new ImageIndex(sortedImages).asList() : Collections.unmodifiableList(sortedImages);
 
 		// If we have at least one image, begin calculating lunar cycles
 		if (imagesSortedByDate.size() > 0)
@@ -179,6 +199,10 @@ public class DataAnalyzer
 	 */
 	public Integer activityForImageList(List<ImageEntry> images)
 	{
+		// Indexed lists already have each image's hour, day, and year decoded
+		if (images instanceof IndexedImageList)
+			return this.activityForIndexedList((IndexedImageList) images);
+
 		Integer activity = 0;
 
 		int oldHour = -1;
@@ -212,6 +236,10 @@ public class DataAnalyzer
 	 */
 	public Integer periodForImageList(List<ImageEntry> images)
 	{
+		// Indexed lists already have each image's date converted to milliseconds
+		if (images instanceof IndexedImageList)
+			return this.periodForIndexedList((IndexedImageList) images);
+
 		Integer period = 0;
 
 		long lastImageTimeMillis = 0;
@@ -242,6 +270,10 @@ public class DataAnalyzer
 	 */
 	public Integer abundanceForImageList(List<ImageEntry> images, Species speciesFilter)
 	{
+		// Indexed lists already have each image's date and species decoded
+		if (images instanceof IndexedImageList)
+			return this.abundanceForIndexedList((IndexedImageList) images, speciesFilter);
+
 		Integer abundance = 0;
 
 		long lastImageTimeMillis = 0;
@@ -272,6 +304,110 @@ public class DataAnalyzer
 		return abundance;
 	}
 
+	/**
+	 * Same as activityForImageList but reads the pre-computed columns of the index instead of each image's date
+	 *
+	 * @param images
+	 *            The indexed list of images to test
+	 * @return The activity for the image list
+	 */
+	private Integer activityForIndexedList(IndexedImageList images)
+	{
+		ImageIndex index = images.getIndex();
+		int activity = 0;
+
+		int oldHour = -1;
+		int oldDay = -1;
+		int oldYear = -1;
+		for (int i = 0; i < images.size(); i++)
+		{
+			int position = images.positionOf(i);
+			int hour = index.getHour(position);
+			int day = index.getDayOfYear(position);
+			int year = index.getYear(position);
+			// If either the hour, day, or year changes, we're onto a new activity
+			if ((hour != oldHour) || (oldDay != day) || (oldYear != year))
+			{
+				activity++;
+				oldHour = hour;
+				oldDay = day;
+				oldYear = year;
+			}
+		}
+
+		return activity;
+	}
+
+	/**
+	 * Same as periodForImageList but reads the pre-computed columns of the index instead of each image's date
+	 *
+	 * @param images
+	 *            The indexed list of images to test. This list MUST be sorted by date for proper results
+	 * @return The period for the image list
+	 */
+	private Integer periodForIndexedList(IndexedImageList images)
+	{
+		ImageIndex index = images.getIndex();
+		int period = 0;
+		long eventIntervalMinutes = this.eventInterval;
+
+		long lastImageTimeMillis = 0;
+		for (int i = 0; i < images.size(); i++)
+		{
+			long imageTimeMillis = index.getEpochMillis(images.positionOf(i));
+			// If the difference between the last image and the current one must be > the event interval
+			if ((imageTimeMillis - lastImageTimeMillis) / 1000 / 60 >= eventIntervalMinutes)
+				period++;
+			lastImageTimeMillis = imageTimeMillis;
+		}
+
+		return period;
+	}
+
+	/**
+	 * Same as abundanceForImageList but reads the pre-computed columns of the index instead of each image's date and species
+	 *
+	 * @param images
+	 *            The indexed list of images to search through (must be sorted)
+	 * @param speciesFilter
+	 *            The species for which to look for. May be null for any species
+	 * @return The abundance value for "images"
+	 */
+	private Integer abundanceForIndexedList(IndexedImageList images, Species speciesFilter)
+	{
+		ImageIndex index = images.getIndex();
+		// Compare species by ordinal instead of by reference. -1 means any species, -2 means a species that no image contains
+		int speciesOrdinal = speciesFilter == null ? -1 : index.ordinalOf(speciesFilter);
+		if (speciesFilter != null && speciesOrdinal == -1)
+			speciesOrdinal = -2;
+		long eventIntervalMinutes = this.eventInterval;
+		int abundance = 0;
+
+		long lastImageTimeMillis = 0;
+		int maxAnimalsInEvent = 0;
+		for (int i = 0; i < images.size(); i++)
+		{
+			int position = images.positionOf(i);
+			long imageTimeMillis = index.getEpochMillis(position);
+
+			// If the current image is further away than the event interval, add the current max number of animals to the total
+			if ((imageTimeMillis - lastImageTimeMillis) / 1000 / 60 >= eventIntervalMinutes)
+			{
+				abundance = abundance + maxAnimalsInEvent;
+				maxAnimalsInEvent = 0;
+			}
+
+			// The max number of animals is the max number of animals in this image or the max number of animals in the last image
+			for (int speciesIndex = index.getSpeciesStart(position); speciesIndex < index.getSpeciesEnd(position); speciesIndex++)
+				if (speciesOrdinal == -1 || index.getSpeciesOrdinal(speciesIndex) == speciesOrdinal)
+					maxAnimalsInEvent = Math.max(maxAnimalsInEvent, index.getSpeciesAmount(speciesIndex));
+
+			lastImageTimeMillis = imageTimeMillis;
+		}
+
+		return abundance + maxAnimalsInEvent;
+	}
+
 	/**
 	 * @return A list containing all image locations
 	 */
@@ -305,7 +441,7 @@ public class DataAnalyzer
 	}
 
 	/**
-	 * @return A list containing all image sorted by date
+	 * @return An unmodifiable list containing all image sorted by date
 	 */
 	public List<ImageEntry> getImagesSortedByDate()
 	{
@@ -337,7 +473,7 @@ public class DataAnalyzer
 	}
 
 	/**
-	 * @return A reference to the original list of images
+	 * @return An unmodifiable list containing the original images in their original order
 	 */
 	public List<ImageEntry> getOriginalImageList()
 	{
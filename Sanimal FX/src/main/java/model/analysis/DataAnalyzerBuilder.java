@@ -0,0 +1,132 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+import model.location.Location;
+import model.species.Species;
+import model.species.SpeciesEntry;
+
+import java.util.*;
+
+/**
+ * Collects images for a DataAnalyzer a batch at a time. The locations, species, and years found are tracked as images are added so
+ * building the analyzer once the last batch arrives only needs to sort and index the images. Thread safe so several threads may add images
+ */
+public class DataAnalyzerBuilder
+{
+	// Every image added so far
+	private final List<ImageEntry> images = new ArrayList<>();
+	// The unique locations, species, and years found so far in the order they were found
+	private final Set<Location> locations = new LinkedHashSet<>();
+	private final Set<Species> species = new LinkedHashSet<>();
+	private final Set<Integer> years = new LinkedHashSet<>();
+	// Null locations means that at least 1 image has no location tag
+	private boolean nullLocationsFound = false;
+
+	/**
+	 * Constructor creates an empty builder
+	 */
+	public DataAnalyzerBuilder()
+	{
+	}
+
+	/**
+	 * Constructor creates a builder containing the given images
+	 *
+	 * @param images The images to start with
+	 */
+	public DataAnalyzerBuilder(List<ImageEntry> images)
+	{
+		this.addImages(images);
+	}
+
+	/**
+	 * Adds a batch of images to the analysis
+	 *
+	 * @param imageBatch The images to add
+	 */
+	public synchronized void addImages(List<ImageEntry> imageBatch)
+	{
+		for (ImageEntry imageEntry : imageBatch)
+		{
+			this.images.add(imageEntry);
+
+			// Record the image location
+			if (imageEntry.getLocationTaken() != null)
+				this.locations.add(imageEntry.getLocationTaken());
+			else
+				this.nullLocationsFound = true;
+
+			// Record the image species
+			for (SpeciesEntry speciesEntry : imageEntry.getSpeciesPresent())
+				this.species.add(speciesEntry.getSpecies());
+
+			// Record the image year
+			this.years.add(imageEntry.getDateTaken().getYear());
+		}
+	}
+
+	/**
+	 * @return The number of images added so far
+	 */
+	public synchronized Integer getImageCount()
+	{
+		return this.images.size();
+	}
+
+	/**
+	 * Builds an analyzer over every image added so far. More images may be added afterwards, but they won't be part of the returned analyzer
+	 *
+	 * @param eventInterval The event interval given in minutes
+	 * @return The analysis of the images
+	 */
+	public synchronized DataAnalyzer build(Integer eventInterval)
+	{
+		return new DataAnalyzer(this, eventInterval);
+	}
+
+	/**
+	 * @return A copy of the images added so far. Must be called while holding the builder's lock
+	 */
+	List<ImageEntry> getImages()
+	{
+		return new ArrayList<>(this.images);
+	}
+
+	/**
+	 * @return The unique locations found sorted by name. Must be called while holding the builder's lock
+	 */
+	List<Location> getSortedLocations()
+	{
+		List<Location> sortedLocations = new ArrayList<>(this.locations);
+		sortedLocations.sort(Comparator.comparing(Location::getName));
+		return sortedLocations;
+	}
+
+	/**
+	 * @return The unique species found sorted by name. Must be called while holding the builder's lock
+	 */
+	List<Species> getSortedSpecies()
+	{
+		List<Species> sortedSpecies = new ArrayList<>(this.species);
+		sortedSpecies.sort(Comparator.comparing(Species::getName));
+		return sortedSpecies;
+	}
+
+	/**
+	 * @return The unique years found sorted first to last. Must be called while holding the builder's lock
+	 */
+	List<Integer> getSortedYears()
+	{
+		List<Integer> sortedYears = new ArrayList<>(this.years);
+		Collections.sort(sortedYears);
+		return sortedYears;
+	}
+
+	/**
+	 * @return True if at least one image has no location. Must be called while holding the builder's lock
+	 */
+	boolean nullLocationsFound()
+	{
+		return this.nullLocationsFound;
+	}
+}
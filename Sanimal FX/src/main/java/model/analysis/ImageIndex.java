@@ -0,0 +1,358 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+import model.location.Location;
+import model.species.Species;
+import model.species.SpeciesEntry;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * A column oriented snapshot of a list of images. Each image's date, location, and species are decoded once into arrays, and inverted indices
+ * map each species, location, year, month, and hour to the set of image positions that have that value. Image queries can then be answered
+ * by intersecting bit sets instead of re-filtering the list of images
+ */
+public class ImageIndex
+{
+	// The images that were indexed, positions in every column refer to positions in this list
+	private final List<ImageEntry> images;
+
+	// The date each image was taken in milliseconds since the epoch
+	private final long[] epochMillis;
+	// The year, month, day of year, and hour each image was taken
+	private final short[] years;
+	private final byte[] months;
+	private final short[] daysOfYear;
+	private final byte[] hours;
+	// The ordinal of the location each image was taken at, or -1 if the image has no location
+	private final int[] locationOrdinals;
+	// The distinct locations found, indexed by ordinal
+	private final List<Location> locations = new ArrayList<>();
+	// Species present in image i are stored at speciesOrdinals[speciesOffsets[i]] to speciesOrdinals[speciesOffsets[i + 1] - 1]
+	private final int[] speciesOffsets;
+	private final int[] speciesOrdinals;
+	private final int[] speciesAmounts;
+	// The distinct species found, indexed by ordinal
+	private final List<Species> species = new ArrayList<>();
+
+	// Inverted indices from value -> positions of images with that value. Species and locations are compared by identity like ImageQuery does
+	private final Map<Species, BitSet> imagesBySpecies = new IdentityHashMap<>();
+	private final Map<Location, BitSet> imagesByLocation = new IdentityHashMap<>();
+	private final Map<Integer, BitSet> imagesByYear = new HashMap<>();
+	private final BitSet[] imagesByMonth = new BitSet[13];
+	private final BitSet[] imagesByHour = new BitSet[24];
+	private final BitSet imagesWithSpecies = new BitSet();
+
+	/**
+	 * Constructor decodes each image into the columns and builds the inverted indices
+	 *
+	 * @param images The list of images to index
+	 */
+	public ImageIndex(List<ImageEntry> images)
+	{
+		this.images = images;
+
+		Integer size = images.size();
+		this.epochMillis = new long[size];
+		this.years = new short[size];
+		this.months = new byte[size];
+		this.daysOfYear = new short[size];
+		this.hours = new byte[size];
+		this.locationOrdinals = new int[size];
+		this.speciesOffsets = new int[size + 1];
+		for (Integer i = 0; i < this.imagesByMonth.length; i++)
+			this.imagesByMonth[i] = new BitSet();
+		for (Integer i = 0; i < this.imagesByHour.length; i++)
+			this.imagesByHour[i] = new BitSet();
+
+		// Map of location/species -> ordinal
+		Map<Location, Integer> locationToOrdinal = new IdentityHashMap<>();
+		Map<Species, Integer> speciesToOrdinal = new IdentityHashMap<>();
+		// Species entries are collected into growable lists and then copied into arrays
+		List<Integer> speciesOrdinalList = new ArrayList<>();
+		List<Integer> speciesAmountList = new ArrayList<>();
+
+		for (int i = 0; i < size; i++)
+		{
+			ImageEntry imageEntry = images.get(i);
+
+			// Decode the date
+			LocalDateTime dateTaken = imageEntry.getDateTaken();
+			this.epochMillis[i] = dateTaken.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			this.years[i] = (short) dateTaken.getYear();
+			this.months[i] = (byte) dateTaken.getMonthValue();
+			this.daysOfYear[i] = (short) dateTaken.getDayOfYear();
+			this.hours[i] = (byte) dateTaken.getHour();
+			this.imagesByYear.computeIfAbsent(dateTaken.getYear(), ignored -> new BitSet()).set(i);
+			this.imagesByMonth[dateTaken.getMonthValue()].set(i);
+			this.imagesByHour[dateTaken.getHour()].set(i);
+
+			// Decode the location
+			Location location = imageEntry.getLocationTaken();
+			if (location != null)
+			{
+				this.locationOrdinals[i] = locationToOrdinal.computeIfAbsent(location, newLocation ->
+				{
+					this.locations.add(newLocation);
+					return this.locations.size() - 1;
+				});
+			}
+			else
+			{
+				this.locationOrdinals[i] = -1;
+			}
+			this.imagesByLocation.computeIfAbsent(location, ignored -> new BitSet()).set(i);
+
+			// Decode the species
+			this.speciesOffsets[i] = speciesOrdinalList.size();
+			for (SpeciesEntry speciesEntry : imageEntry.getSpeciesPresent())
+			{
+				Species speciesPresent = speciesEntry.getSpecies();
+				speciesOrdinalList.add(speciesToOrdinal.computeIfAbsent(speciesPresent, newSpecies ->
+				{
+					this.species.add(newSpecies);
+					return this.species.size() - 1;
+				}));
+				speciesAmountList.add(speciesEntry.getAmount());
+				this.imagesBySpecies.computeIfAbsent(speciesPresent, ignored -> new BitSet()).set(i);
+			}
+			if (!imageEntry.getSpeciesPresent().isEmpty())
+				this.imagesWithSpecies.set(i);
+		}
+		this.speciesOffsets[size] = speciesOrdinalList.size();
+		this.speciesOrdinals = speciesOrdinalList.stream().mapToInt(Integer::intValue).toArray();
+		this.speciesAmounts = speciesAmountList.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * @return The number of images indexed
+	 */
+	public int size()
+	{
+		return this.epochMillis.length;
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The image at the given position
+	 */
+	public ImageEntry getImage(int position)
+	{
+		return this.images.get(position);
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The date the image was taken in milliseconds since the epoch
+	 */
+	public long getEpochMillis(int position)
+	{
+		return this.epochMillis[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The year the image was taken
+	 */
+	public int getYear(int position)
+	{
+		return this.years[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The month the image was taken, 1-12
+	 */
+	public int getMonth(int position)
+	{
+		return this.months[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The day of the year the image was taken
+	 */
+	public int getDayOfYear(int position)
+	{
+		return this.daysOfYear[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The hour the image was taken, 0-23
+	 */
+	public int getHour(int position)
+	{
+		return this.hours[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The ordinal of the location the image was taken at, or -1 if it has no location
+	 */
+	public int getLocationOrdinal(int position)
+	{
+		return this.locationOrdinals[position];
+	}
+
+	/**
+	 * @param ordinal The ordinal of the location
+	 * @return The location with the given ordinal
+	 */
+	public Location getLocation(int ordinal)
+	{
+		return this.locations.get(ordinal);
+	}
+
+	/**
+	 * @return The number of distinct locations found
+	 */
+	public int getLocationCount()
+	{
+		return this.locations.size();
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The index into the species columns where this image's species begin
+	 */
+	public int getSpeciesStart(int position)
+	{
+		return this.speciesOffsets[position];
+	}
+
+	/**
+	 * @param position The position of the image
+	 * @return The index into the species columns where this image's species end (exclusive)
+	 */
+	public int getSpeciesEnd(int position)
+	{
+		return this.speciesOffsets[position + 1];
+	}
+
+	/**
+	 * @param speciesIndex An index between getSpeciesStart and getSpeciesEnd
+	 * @return The species ordinal stored at that index
+	 */
+	public int getSpeciesOrdinal(int speciesIndex)
+	{
+		return this.speciesOrdinals[speciesIndex];
+	}
+
+	/**
+	 * @param speciesIndex An index between getSpeciesStart and getSpeciesEnd
+	 * @return The number of animals of the species stored at that index
+	 */
+	public int getSpeciesAmount(int speciesIndex)
+	{
+		return this.speciesAmounts[speciesIndex];
+	}
+
+	/**
+	 * @param ordinal The ordinal of the species
+	 * @return The species with the given ordinal
+	 */
+	public Species getSpecies(int ordinal)
+	{
+		return this.species.get(ordinal);
+	}
+
+	/**
+	 * @return The number of distinct species found
+	 */
+	public int getSpeciesCount()
+	{
+		return this.species.size();
+	}
+
+	/**
+	 * @param speciesToFind The species to find, compared by identity
+	 * @return The ordinal of the species or -1 if no image contains it
+	 */
+	public int ordinalOf(Species speciesToFind)
+	{
+		for (int i = 0; i < this.species.size(); i++)
+			if (this.species.get(i) == speciesToFind)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @param speciesToFind The species to find, compared by identity
+	 * @return The positions of images containing the species. Do not modify the result
+	 */
+	public BitSet imagesWithSpecies(Species speciesToFind)
+	{
+		return this.imagesBySpecies.getOrDefault(speciesToFind, EMPTY);
+	}
+
+	/**
+	 * @return The positions of images containing any species. Do not modify the result
+	 */
+	public BitSet imagesWithAnySpecies()
+	{
+		return this.imagesWithSpecies;
+	}
+
+	/**
+	 * @param location The location to find, compared by identity. May be null to find images without a location
+	 * @return The positions of images taken at the location. Do not modify the result
+	 */
+	public BitSet imagesAtLocation(Location location)
+	{
+		return this.imagesByLocation.getOrDefault(location, EMPTY);
+	}
+
+	/**
+	 * @param years The years to find
+	 * @return The positions of images taken in any of the years
+	 */
+	public BitSet imagesInYears(int... years)
+	{
+		BitSet result = new BitSet();
+		for (int year : years)
+			result.or(this.imagesByYear.getOrDefault(year, EMPTY));
+		return result;
+	}
+
+	/**
+	 * @param months The months to find, 1-12
+	 * @return The positions of images taken in any of the months
+	 */
+	public BitSet imagesInMonths(int... months)
+	{
+		BitSet result = new BitSet();
+		for (int month : months)
+			if (month >= 1 && month <= 12)
+				result.or(this.imagesByMonth[month]);
+		return result;
+	}
+
+	/**
+	 * @param startHour The first hour to find, inclusive
+	 * @param endHour The last hour to find, exclusive
+	 * @return The positions of images taken between the two hours
+	 */
+	public BitSet imagesInHours(int startHour, int endHour)
+	{
+		BitSet result = new BitSet();
+		for (int hour = Math.max(startHour, 0); hour < Math.min(endHour, 24); hour++)
+			result.or(this.imagesByHour[hour]);
+		return result;
+	}
+
+	/**
+	 * @return A list view of every image in this index
+	 */
+	public IndexedImageList asList()
+	{
+		BitSet all = new BitSet(this.size());
+		all.set(0, this.size());
+		return new IndexedImageList(this, all);
+	}
+
+	// An empty bit set returned when a value is not in an index
+	private static final BitSet EMPTY = new BitSet();
+}
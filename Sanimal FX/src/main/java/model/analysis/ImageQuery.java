@@ -7,14 +7,14 @@ import model.species.SpeciesEntry;
 import org.apache.commons.lang3.ArrayUtils;
 
 import java.time.ZoneId;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
- * A class that utilizes Java 8 predicates to filter a list of images
+ * A class that utilizes Java 8 predicates to filter a list of images. If the list being queried is an indexed image list the filters are
+ * applied to the list's index instead of testing every image
  * 
  * @author David Slovikosky
  */
@@ -22,6 +22,8 @@ public class ImageQuery
 {
 	// A base predicate to add to
 	private Predicate<ImageEntry> predicate = entry -> true;
+	// The same filters as the predicate, but expressed as operations that narrow down a set of candidate positions in an image index
+	private List<BiConsumer<ImageIndex, BitSet>> indexFilters = new ArrayList<>();
 
 	public ImageQuery()
 	{
@@ -37,6 +39,7 @@ public class ImageQuery
 	public ImageQuery yearOnly(int... year)
 	{
 		this.predicate = this.predicate.and(image -> ArrayUtils.contains(year, image.getDateTaken().getYear()));
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesInYears(year)));
 		return this;
 	}
 
@@ -50,6 +53,7 @@ public class ImageQuery
 	public ImageQuery monthOnly(int... month)
 	{
 		this.predicate = this.predicate.and(image -> ArrayUtils.contains(month, image.getDateTaken().getMonthValue()));
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesInMonths(month)));
 		return this;
 	}
 
@@ -65,6 +69,7 @@ public class ImageQuery
 	public ImageQuery timeFrame(Integer startTimeHour, Integer endTimeHour)
 	{
 		this.predicate = this.predicate.and(image -> (image.getDateTaken().getHour() >= startTimeHour && image.getDateTaken().getHour() < endTimeHour));
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesInHours(startTimeHour, endTimeHour)));
 		return this;
 	}
 
@@ -84,6 +89,7 @@ public class ImageQuery
 					return true;
 			return false;
 		});
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesWithSpecies(species)));
 		return this;
 	}
 
@@ -96,6 +102,7 @@ public class ImageQuery
 	{
 		this.predicate = this.predicate.and(entry ->
 				!entry.getSpeciesPresent().isEmpty());
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesWithAnySpecies()));
 		return this;
 	}
 
@@ -109,6 +116,7 @@ public class ImageQuery
 	public ImageQuery locationOnly(Location location)
 	{
 		this.predicate = this.predicate.and(image -> image.getLocationTaken() == location);
+		this.indexFilters.add((index, candidates) -> candidates.and(index.imagesAtLocation(location)));
 		return this;
 	}
 
@@ -121,16 +129,13 @@ public class ImageQuery
 	 */
 	public ImageQuery newMoonOnly(List<Date> newMoons)
 	{
-		this.predicate = this.predicate.and(entry ->
+		this.predicate = this.predicate.and(entry -> nearMoon(entry.getDateTaken().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), newMoons));
+		// There is no index on moon phase, so test each remaining candidate using its pre-computed date
+		this.indexFilters.add((index, candidates) ->
 		{
-			long currentTime = entry.getDateTaken().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-			for (Date date : newMoons)
-			{
-				long moonDate = date.getTime();
-				if (Math.abs(moonDate - currentTime) < 5 * 1000 * 60 * 60 * 24)
-					return true;
-			}
-			return false;
+			for (int position = candidates.nextSetBit(0); position >= 0; position = candidates.nextSetBit(position + 1))
+				if (!nearMoon(index.getEpochMillis(position), newMoons))
+					candidates.clear(position);
 		});
 		return this;
 	}
@@ -144,16 +149,13 @@ public class ImageQuery
 	 */
 	public ImageQuery fullMoonOnly(List<Date> fullMoons)
 	{
-		this.predicate = this.predicate.and(entry ->
+		this.predicate = this.predicate.and(entry -> nearMoon(entry.getDateTaken().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), fullMoons));
+		// There is no index on moon phase, so test each remaining candidate using its pre-computed date
+		this.indexFilters.add((index, candidates) ->
 		{
-			long currentTime = entry.getDateTaken().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
-			for (Date date : fullMoons)
-			{
-				long moonDate = date.getTime();
-				if (Math.abs(moonDate - currentTime) < 5 * 1000 * 60 * 60 * 24)
-					return true;
-			}
-			return false;
+			for (int position = candidates.nextSetBit(0); position >= 0; position = candidates.nextSetBit(position + 1))
+				if (!nearMoon(index.getEpochMillis(position), fullMoons))
+					candidates.clear(position);
 		});
 		return this;
 	}
@@ -167,6 +169,21 @@ public class ImageQuery
 	 */
 	public List<ImageEntry> query(List<ImageEntry> images)
 	{
+		// If the images are indexed, narrow down the candidates using the index. The result is indexed as well so it can be queried again quickly
+		if (images instanceof IndexedImageList)
+		{
+			IndexedImageList indexedImages = (IndexedImageList) images;
+			ImageIndex index = indexedImages.getIndex();
+			BitSet candidates = indexedImages.getPositions();
+			for (BiConsumer<ImageIndex, BitSet> indexFilter : this.indexFilters)
+			{
+				// Stop early if nothing is left
+				if (candidates.isEmpty())
+					break;
+				indexFilter.accept(index, candidates);
+			}
+			return new IndexedImageList(index, candidates);
+		}
 		return images.stream().filter(predicate).collect(Collectors.toList());
 	}
 
@@ -181,8 +198,29 @@ public class ImageQuery
 	 */
 	public List<ImageEntry> query(List<ImageEntry> images, Comparator<ImageEntry> sorter)
 	{
-		List<ImageEntry> result = query(images);
+		// Copy the result since indexed results can't be sorted in place
+		List<ImageEntry> result = new ArrayList<>(query(images));
 		result.sort(sorter);
 		return result;
 	}
+
+	/**
+	 * Tests if a date is within 5 days of any of the given moon dates
+	 *
+	 * @param currentTime
+	 *            The date to test in milliseconds since the epoch
+	 * @param moons
+	 *            The list of moon dates
+	 * @return True if the date is close to one of the moon dates
+	 */
+	private static boolean nearMoon(long currentTime, List<Date> moons)
+	{
+		for (Date date : moons)
+		{
+			long moonDate = date.getTime();
+			if (Math.abs(moonDate - currentTime) < 5 * 1000 * 60 * 60 * 24)
+				return true;
+		}
+		return false;
+	}
 }
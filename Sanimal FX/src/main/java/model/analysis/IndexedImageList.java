@@ -0,0 +1,80 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of images backed by an image index and a set of positions into that index. Images are returned in index order,
+ * and queries on this list can be answered using the index instead of scanning every image
+ */
+public class IndexedImageList extends AbstractList<ImageEntry> implements RandomAccess
+{
+	// The index that the positions refer to
+	private final ImageIndex index;
+	// The set of positions in the index that are in this list
+	private final BitSet positions;
+	// The positions as an array so that get(i) is constant time
+	private final int[] positionArray;
+
+	/**
+	 * Constructor takes the index and positions in the index that are part of this list
+	 *
+	 * @param index The index the positions refer to
+	 * @param positions The positions of the images in the list, this bit set is not copied and should not be modified afterwards
+	 */
+	IndexedImageList(ImageIndex index, BitSet positions)
+	{
+		this.index = index;
+		this.positions = positions;
+		this.positionArray = positions.stream().toArray();
+	}
+
+	/**
+	 * Returns the image at the given list index
+	 *
+	 * @param i The list index
+	 * @return The image at that index
+	 */
+	@Override
+	public ImageEntry get(int i)
+	{
+		return this.index.getImage(this.positionArray[i]);
+	}
+
+	/**
+	 * @return The number of images in this list
+	 */
+	@Override
+	public int size()
+	{
+		return this.positionArray.length;
+	}
+
+	/**
+	 * @return The index this list is backed by
+	 */
+	public ImageIndex getIndex()
+	{
+		return this.index;
+	}
+
+	/**
+	 * @return A copy of the positions in the index that are part of this list
+	 */
+	public BitSet getPositions()
+	{
+		return (BitSet) this.positions.clone();
+	}
+
+	/**
+	 * @param i The list index
+	 * @return The position in the index of the image at the given list index
+	 */
+	public int positionOf(int i)
+	{
+		return this.positionArray[i];
+	}
+}
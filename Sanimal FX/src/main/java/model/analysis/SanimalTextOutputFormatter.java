@@ -2,8 +2,14 @@ package model.analysis;
 
 import model.analysis.textFormatters.*;
 import model.image.ImageEntry;
+import org.apache.commons.lang3.tuple.Pair;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * The formatter that simulates the creation of Jim Sanderson's "Output.txt"
@@ -12,6 +18,29 @@ import java.util.List;
  */
 public class SanimalTextOutputFormatter
 {
+	// If sections should be rendered concurrently. Formatters only read from the data analyzer, so the output is the same either way
+	private Boolean renderInParallel;
+	// The time in milliseconds each section took to render during the last call to format, in the order the sections are printed
+	private Map<String, Double> lastSectionTimings = Collections.emptyMap();
+
+	/**
+	 * Default constructor renders sections one after the other
+	 */
+	public SanimalTextOutputFormatter()
+	{
+		this(false);
+	}
+
+	/**
+	 * Constructor lets the caller decide if sections should be rendered in parallel
+	 *
+	 * @param renderInParallel True if sections should be rendered on the fork join pool, false to render them one after the other
+	 */
+	public SanimalTextOutputFormatter(Boolean renderInParallel)
+	{
+		this.renderInParallel = renderInParallel;
+	}
+
 	/**
 	 * Returns a massive string that is perfectly formatted to look like "Output.txt"
 	 * 
@@ -21,9 +50,6 @@ public class SanimalTextOutputFormatter
 	 */
 	public String format(DataAnalyzer dataStatistics)
 	{
-		// The string to return
-		String toReturn = "";
-
 		List<ImageEntry> images = dataStatistics.getOriginalImageList();
 
 		// If there are no images, return an appropriate string
@@ -47,218 +73,151 @@ public class SanimalTextOutputFormatter
 		OccouranceFormatter occouranceFormatter = new OccouranceFormatter(images, dataStatistics);
 		DetectionRateFormatter detectionRateFormatter = new DetectionRateFormatter(images, dataStatistics);
 
-		// Proceed to print each header:
-
-		// LOCATIONS 
-
-		toReturn = toReturn + headerFormatter.printLocations();
-
-		// SPECIES
-
-		toReturn = toReturn + headerFormatter.printSpecies();
-
-		// FOR ALL SPECIES AT ALL LOCATIONS
-
-		toReturn = toReturn + headerFormatter.printImageAnalysisHeader();
-
-		// NUMBER OF DAYS IN CAMERA TRAP PROGRAM
-
-		toReturn = toReturn + firstLastSpeciesFormatter.printDaysInCameraTrap();
-
-		// FIRST PICTURE OF EACH SPECIES
-
-		toReturn = toReturn + firstLastSpeciesFormatter.printFirstPicOfEachSpecies();
-
-		// LAST PICTURE OF EACH SPECIES
-
-		toReturn = toReturn + firstLastSpeciesFormatter.printLastPicOfEachSpecies();
-
-		// SPECIES ACCUMULATION CURVE
-
-		toReturn = toReturn + firstLastSpeciesFormatter.printSpeciesAccumulationCurve();
-
-		// NUMBER OF PICTURES AND FILTERED PICTURES PER YEAR
-
-		toReturn = toReturn + actPerAbuLocFormatter.printNumberOfPicturesByYear();
-
-		// NUMBER OF PICTURES BY SPECIES BY YEAR
-
-		toReturn = toReturn + actPerAbuLocFormatter.printNumberOfPicturesBySpeciesByYear();
-
-		// SPECIES RANKED BY NUMBER OF INDEPENDENT PICTURES AND PERCENT OF TOTAL
-
-		toReturn = toReturn + actPerAbuLocFormatter.printNumberOfPicturesByPercentTotal();
-
-		// CAMERA TRAP DAYS
-
-		toReturn = toReturn + trapDaysAndEffortFormatter.printCameraTrapDays();
-
-		//CAMERA TRAP EFFORT
-
-		toReturn = toReturn + trapDaysAndEffortFormatter.printCameraTrapEffort();
-
-		// CAMERA TRAP EFFORT SUMMARY
-
-		toReturn = toReturn + trapDaysAndEffortFormatter.printCameraTrapEffortSummary();
-
-		// FOR EACH LOCATION TOTAL NUMBER AND PERCENT OF EACH SPECIES
-
-		toReturn = toReturn + locationStatFormatter.printPercentOfSpeciesInLoc();
-
-		// FOR EACH LOCATION AND MONTH TOTAL NUMBER EACH SPECIES
-
-		toReturn = toReturn + locationStatFormatter.printSpeciesByMonthByLocByYear();
-
-		// ALL LOCATIONS ALL SPECIES FOR EACH MONTH FOR ALL YEARS
-
-		toReturn = toReturn + locationStatFormatter.printSpeciesByMonthByLoc();
-
-		// DISTANCE (km) BETWEEN LOCATIONS
-
-		toReturn = toReturn + locationStatFormatter.printDistanceBetweenLocations();
-
-		// ACTIVITY PATTERNS
-
-		toReturn = toReturn + activityPatternFormatter.printActivityPatterns();
-
-		// SPECIES PAIRS ACTIVITY SIMILARITY (LOWER IS MORE SIMILAR)
-
-		toReturn = toReturn + activityPatternFormatter.printSpeciesPairsActivitySimilarity();
-
-		// SPECIES PAIR MOST SIMILAR IN ACTIVITY (FREQUENCY)
-
-		toReturn = toReturn + activityPatternFormatter.printSpeciePairMostSimilar();
-
-		// CHI-SQUARE ANALYSIS OF PAIRED ACTIVITY PATTERNS
-
-		toReturn = toReturn + activityPatternFormatter.printChiSquareAnalysisPairedActivity();
-
-		// LUNAR ACTIVITY PATTERN
-
-		toReturn = toReturn + lunarActivityFormatter.printLunarActivity();
-
-		//SPECIES LUNAR ACTIVITY MOST DIFFERENT: 
-
-		toReturn = toReturn + lunarActivityFormatter.printLunarActivityMostDifferent();
-
-		// ACTIVITY PATTERNS BY SEASON
-
-		toReturn = toReturn + activityPatternFormatter.printActivityPatternsSeason();
-
-		// SPECIES ABUNDANCE
-
-		toReturn = toReturn + actPerAbuLocFormatter.printSpeciesAbundance();
-
-		// LOCATIONS BY SPECIES AND LOCATION AND SPECIES RICHNESS
-
-		toReturn = toReturn + richnessFormatter.printLocationSpeciesRichness();
-
-		// LOCATION SPECIES FREQUENCY SIMILARITY (LOWER IS MORE SIMILAR)
-
-		toReturn = toReturn + locationStatFormatter.printLocSpeciesFrequencySimiliarity();
+		// Proceed to list each section in the order it is printed
+		List<Pair<String, Supplier<String>>> sections = new ArrayList<>();
+		sections.add(Pair.of("LOCATIONS", headerFormatter::printLocations));
+		sections.add(Pair.of("SPECIES", headerFormatter::printSpecies));
+		sections.add(Pair.of("FOR ALL SPECIES AT ALL LOCATIONS", headerFormatter::printImageAnalysisHeader));
+		sections.add(Pair.of("NUMBER OF DAYS IN CAMERA TRAP PROGRAM", firstLastSpeciesFormatter::printDaysInCameraTrap));
+		sections.add(Pair.of("FIRST PICTURE OF EACH SPECIES", firstLastSpeciesFormatter::printFirstPicOfEachSpecies));
+		sections.add(Pair.of("LAST PICTURE OF EACH SPECIES", firstLastSpeciesFormatter::printLastPicOfEachSpecies));
+		sections.add(Pair.of("SPECIES ACCUMULATION CURVE", firstLastSpeciesFormatter::printSpeciesAccumulationCurve));
+		sections.add(Pair.of("NUMBER OF PICTURES AND FILTERED PICTURES PER YEAR", actPerAbuLocFormatter::printNumberOfPicturesByYear));
+		sections.add(Pair.of("NUMBER OF PICTURES BY SPECIES BY YEAR", actPerAbuLocFormatter::printNumberOfPicturesBySpeciesByYear));
+		sections.add(Pair.of("SPECIES RANKED BY NUMBER OF INDEPENDENT PICTURES AND PERCENT OF TOTAL", actPerAbuLocFormatter::printNumberOfPicturesByPercentTotal));
+		sections.add(Pair.of("CAMERA TRAP DAYS", trapDaysAndEffortFormatter::printCameraTrapDays));
+		sections.add(Pair.of("CAMERA TRAP EFFORT", trapDaysAndEffortFormatter::printCameraTrapEffort));
+		sections.add(Pair.of("CAMERA TRAP EFFORT SUMMARY", trapDaysAndEffortFormatter::printCameraTrapEffortSummary));
+		sections.add(Pair.of("FOR EACH LOCATION TOTAL NUMBER AND PERCENT OF EACH SPECIES", locationStatFormatter::printPercentOfSpeciesInLoc));
+		sections.add(Pair.of("FOR EACH LOCATION AND MONTH TOTAL NUMBER EACH SPECIES", locationStatFormatter::printSpeciesByMonthByLocByYear));
+		sections.add(Pair.of("ALL LOCATIONS ALL SPECIES FOR EACH MONTH FOR ALL YEARS", locationStatFormatter::printSpeciesByMonthByLoc));
+		sections.add(Pair.of("DISTANCE (km) BETWEEN LOCATIONS", locationStatFormatter::printDistanceBetweenLocations));
+		sections.add(Pair.of("ACTIVITY PATTERNS", activityPatternFormatter::printActivityPatterns));
+		sections.add(Pair.of("SPECIES PAIRS ACTIVITY SIMILARITY (LOWER IS MORE SIMILAR)", activityPatternFormatter::printSpeciesPairsActivitySimilarity));
+		sections.add(Pair.of("SPECIES PAIR MOST SIMILAR IN ACTIVITY (FREQUENCY)", activityPatternFormatter::printSpeciePairMostSimilar));
+		sections.add(Pair.of("CHI-SQUARE ANALYSIS OF PAIRED ACTIVITY PATTERNS", activityPatternFormatter::printChiSquareAnalysisPairedActivity));
+		sections.add(Pair.of("LUNAR ACTIVITY PATTERN", lunarActivityFormatter::printLunarActivity));
+		sections.add(Pair.of("SPECIES LUNAR ACTIVITY MOST DIFFERENT", lunarActivityFormatter::printLunarActivityMostDifferent));
+		sections.add(Pair.of("ACTIVITY PATTERNS BY SEASON", activityPatternFormatter::printActivityPatternsSeason));
+		sections.add(Pair.of("SPECIES ABUNDANCE", actPerAbuLocFormatter::printSpeciesAbundance));
+		sections.add(Pair.of("LOCATIONS BY SPECIES AND LOCATION AND SPECIES RICHNESS", richnessFormatter::printLocationSpeciesRichness));
+		sections.add(Pair.of("LOCATION SPECIES FREQUENCY SIMILARITY (LOWER IS MORE SIMILAR)", locationStatFormatter::printLocSpeciesFrequencySimiliarity));
+		sections.add(Pair.of("LOCATION-SPECIES COMPOSITION SIMILARITY (Jaccard Similarity Index)", locationStatFormatter::printLocSpeciesCompositionSimiliarity));
+		sections.add(Pair.of("SPECIES BY LOCATION WITH UTM AND ELEVATION", speciesLocCoordFormatter::printSpeciesByLocWithUTM));
+		sections.add(Pair.of("SPECIES OVERLAP AT LOCATIONS", locationStatFormatter::printSpeciesOverlapAtLoc));
+		sections.add(Pair.of("CHI-SQUARE ANALYSIS OF PAIRED SITES SPECIES FREQUENCIES", occouranceFormatter::printCHISqAnalysisOfPairedSpecieFreq));
+		sections.add(Pair.of("PICTURES FOR EACH LOCATION BY MONTH AND YEAR", totalDayFormatter::printPicturesByMonthYearLoc));
+		sections.add(Pair.of("PICTURES FOR EACH LOCATION BY MONTH AND YEAR SUMMARY", totalDayFormatter::printPicturesByMonthLoc));
+		sections.add(Pair.of("SPECIES AND SPECIES RICHNESS BY YEAR AND MONTH", totalDayFormatter::printPicturesByMonthYearSpeciesRichness));
+		sections.add(Pair.of("SPECIES ALL YEARS BY MONTH", totalDayFormatter::printPicturesByMonthSpeciesRichness));
+		sections.add(Pair.of("SPECIES BY LOCATION BY YEAR BY MONTH SORTED BY ELEVATION", totalDayFormatter::printPicturesByMonthSpeciesLocElevation));
+		sections.add(Pair.of("SPECIES ABUNDANCE BY LOCATION BY YEAR BY MONTH SORTED BY ELEVATION", totalDayFormatter::printAbundanceByMonthSpeciesLocElevation));
+		sections.add(Pair.of("SPECIES BY LOCATION SORTED BY ELEVATION AND NORMALIZED BY EFFORT", totalDayFormatter::printSpeciesByLocElevationAndEffort));
+		sections.add(Pair.of("SPECIES BY LOCATION SORTED BY ELEVATION AND NORMALIZED BY EFFORT TABLE", totalDayFormatter::printSpeciesByLocElevationAndEffortTable));
+		sections.add(Pair.of("SPECIES AVERAGE ABUNDANCE BY YEAR AND SITE", actPerAbuLocFormatter::printSpeciesAbundanceYearSite));
+		sections.add(Pair.of("SPECIES AVERAGE ABUNDANCE BY SITE ALL YEARS", actPerAbuLocFormatter::printSpeciesAbundanceSite));
+		sections.add(Pair.of("SPECIES CO-OCCURRENCE MATRIX", occouranceFormatter::printCoOccuranceMatrix));
+		sections.add(Pair.of("ABSENCE-PRESENCE MATRIX", occouranceFormatter::printAbsensePresenceMatrix));
+		sections.add(Pair.of("SPECIES MIN AND MAX ELEVATION", occouranceFormatter::printMaxMinSpeciesElevation));
+		sections.add(Pair.of("DETECTION RATE FOR EACH SPECIES PER YEAR", detectionRateFormatter::printDetectionRateSpeciesYear));
+		sections.add(Pair.of("DETECTION RATE SUMMARY FOR EACH SPECIES", detectionRateFormatter::printDetectionRateSummary));
+		sections.add(Pair.of("DETECTION RATE FOR EACH LOCATION BY MONTH", detectionRateFormatter::printDetectionRateLocationMonth));
+		sections.add(Pair.of("DETECTION RATE SUMMARY FOR EACH LOCATION BY MONTH", detectionRateFormatter::printDetectionRateLocationMonthSummary));
+		sections.add(Pair.of("MONTHLY DETECTION RATE TREND", detectionRateFormatter::printDetectionRateTrend));
+		sections.add(Pair.of("NATIVE OCCUPANCY", occouranceFormatter::printNativeOccupancy));
+		sections.add(Pair.of("AREA COVERED BY CAMERA TRAPS", locationStatFormatter::printAreaCoveredByTraps));
+
+		// Render each section and stick them together in order
+		StringBuilder toReturn = new StringBuilder();
+		this.renderSections(sections).forEach(toReturn::append);
 
-		// LOCATION-SPECIES COMPOSITION SIMILARITY (Jaccard Similarity Index)
-
-		toReturn = toReturn + locationStatFormatter.printLocSpeciesCompositionSimiliarity();
-
-		// SPECIES BY LOCATION WITH UTM AND ELEVATION
-
-		toReturn = toReturn + speciesLocCoordFormatter.printSpeciesByLocWithUTM();
-
-		// SPECIES OVERLAP AT LOCATIONS
-
-		toReturn = toReturn + locationStatFormatter.printSpeciesOverlapAtLoc();
-
-		// CHI-SQUARE ANALYSIS OF PAIRED SITES SPECIES FREQUENCIES
-
-		toReturn = toReturn + occouranceFormatter.printCHISqAnalysisOfPairedSpecieFreq();
-
-		// PICTURES FOR EACH LOCATION BY MONTH AND YEAR
-
-		toReturn = toReturn + totalDayFormatter.printPicturesByMonthYearLoc();
-
-		// PICTURES FOR EACH LOCATION BY MONTH AND YEAR SUMMARY
-
-		toReturn = toReturn + totalDayFormatter.printPicturesByMonthLoc();
-
-		// SPECIES AND SPECIES RICHNESS BY YEAR AND MONTH
-
-		toReturn = toReturn + totalDayFormatter.printPicturesByMonthYearSpeciesRichness();
-
-		// SPECIES ALL YEARS BY MONTH
-
-		toReturn = toReturn + totalDayFormatter.printPicturesByMonthSpeciesRichness();
-
-		// SPECIES BY LOCATION BY YEAR BY MONTH SORTED BY ELEVATION
-
-		toReturn = toReturn + totalDayFormatter.printPicturesByMonthSpeciesLocElevation();
-
-		// SPECIES ABUNDANCE BY LOCATION BY YEAR BY MONTH SORTED BY ELEVATION
-
-		toReturn = toReturn + totalDayFormatter.printAbundanceByMonthSpeciesLocElevation();
-
-		// SPECIES BY LOCATION SORTED BY ELEVATION AND NORMALIZED BY EFFORT
-
-		toReturn = toReturn + totalDayFormatter.printSpeciesByLocElevationAndEffort();
-
-		// SPECIES BY LOCATION SORTED BY ELEVATION AND NORMALIZED BY EFFORT TABLE
-
-		toReturn = toReturn + totalDayFormatter.printSpeciesByLocElevationAndEffortTable();
-
-		// SPECIES AVERAGE ABUNDANCE BY YEAR AND SITE
-
-		toReturn = toReturn + actPerAbuLocFormatter.printSpeciesAbundanceYearSite();
-
-		// SPECIES AVERAGE ABUNDANCE BY SITE ALL YEARS
-
-		toReturn = toReturn + actPerAbuLocFormatter.printSpeciesAbundanceSite();
-
-		// SPECIES CO-OCCURRENCE MATRIX
-
-		toReturn = toReturn + occouranceFormatter.printCoOccuranceMatrix();
-
-		// ABSENCE-PRESENCE MATRIX
-
-		toReturn = toReturn + occouranceFormatter.printAbsensePresenceMatrix();
-
-		// SPECIES MIN AND MAX ELEVATION
-
-		toReturn = toReturn + occouranceFormatter.printMaxMinSpeciesElevation();
-
-		// DETECTION RATE FOR EACH SPECIES PER YEAR
-
-		toReturn = toReturn + detectionRateFormatter.printDetectionRateSpeciesYear();
-
-		// DETECTION RATE SUMMARY FOR EACH SPECIES
-
-		toReturn = toReturn + detectionRateFormatter.printDetectionRateSummary();
-
-		// DETECTION RATE FOR EACH LOCATION BY MONTH
-
-		toReturn = toReturn + detectionRateFormatter.printDetectionRateLocationMonth();
-
-		// DETECTION RATE SUMMARY FOR EACH LOCATION BY MONTH
-
-		toReturn = toReturn + detectionRateFormatter.printDetectionRateLocationMonthSummary();
-
-		// MONTHLY DETECTION RATE TREND
-
-		toReturn = toReturn + detectionRateFormatter.printDetectionRateTrend();
+		// ELAPSED TIME
 
-		// NATIVE OCCUPANCY
+		toReturn.append("ELAPSED TIME ").append(String.format("%10.3f ", ((System.currentTimeMillis() - elapsedTime) / 1000D))).append("SECONDS");
 
-		toReturn = toReturn + occouranceFormatter.printNativeOccupancy();
+		return toReturn.toString();
 
-		// AREA COVERED BY CAMERA TRAPS
+	}
 
-		toReturn = toReturn + locationStatFormatter.printAreaCoveredByTraps();
+	/**
+	 * Renders each section either in order on this thread or concurrently on the common fork join pool
+	 *
+	 * @param sections
+	 *            The list of section titles and functions that render them, in the order they should be printed
+	 * @return The rendered sections in the same order they were given
+	 */
+	private List<String> renderSections(List<Pair<String, Supplier<String>>> sections)
+	{
+		// Section title -> time taken to render the section, sections may be rendered on different threads
+		Map<String, Double> sectionTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+		// Add each title up front so the timings stay in print order
+		sections.forEach(section -> sectionTimings.put(section.getLeft(), 0D));
+
+		List<String> rendered;
+		if (this.renderInParallel)
+		{
+			// Start every section, then wait for each one in order
+			List<CompletableFuture<String>> futures = sections.stream().map(section -> CompletableFuture.supplyAsync(() -> timeSection(section, sectionTimings), ForkJoinPool.commonPool())).collect(Collectors.toList());
+			try
+			{
+				rendered = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+			}
+			catch (CompletionException e)
+			{
+				// Throw the original exception like the sequential path would
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw e;
+			}
+		}
+		else
+		{
+			rendered = sections.stream().map(section -> timeSection(section, sectionTimings)).collect(Collectors.toList());
+		}
+
+		this.lastSectionTimings = Collections.unmodifiableMap(new LinkedHashMap<>(sectionTimings));
+		return rendered;
+	}
 
-		// ELAPSED TIME
+	/**
+	 * Renders a single section and records how long it took
+	 *
+	 * @param section
+	 *            The section title and the function that renders it
+	 * @param sectionTimings
+	 *            The map to record the time taken in
+	 * @return The rendered section
+	 */
+	private static String timeSection(Pair<String, Supplier<String>> section, Map<String, Double> sectionTimings)
+	{
+		long startTime = System.nanoTime();
+		String rendered = section.getRight().get();
+		sectionTimings.put(section.getLeft(), (System.nanoTime() - startTime) / 1000000D);
+		return rendered;
+	}
 
-		toReturn = toReturn + "ELAPSED TIME " + String.format("%10.3f ", ((System.currentTimeMillis() - elapsedTime) / 1000D)) + "SECONDS";
+	/**
+	 * @return The time in milliseconds each section took to render during the last call to format, in the order the sections are printed
+	 */
+	public Map<String, Double> getLastSectionTimings()
+	{
+		return this.lastSectionTimings;
+	}
 
-		return toReturn;
+	/**
+	 * @return True if sections are rendered in parallel
+	 */
+	public Boolean getRenderInParallel()
+	{
+		return this.renderInParallel;
+	}
 
+	/**
+	 * @param renderInParallel True if sections should be rendered in parallel, false to render them one after the other
+	 */
+	public void setRenderInParallel(Boolean renderInParallel)
+	{
+		this.renderInParallel = renderInParallel;
 	}
 
 	/**
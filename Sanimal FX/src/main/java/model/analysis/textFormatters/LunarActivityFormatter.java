@@ -16,6 +16,7 @@ import java.util.List;
  */
 public class LunarActivityFormatter extends TextFormatter
 {
+	// Built the first time it is needed. Sections may be rendered in parallel, so it is only accessed through getLunarActivities()
 	private List<LunarActivityEntry> lunarActivities = null;
 
 	public LunarActivityFormatter(List<ImageEntry> images, DataAnalyzer analysis)
@@ -114,8 +115,8 @@ public class LunarActivityFormatter extends TextFormatter
 	{
 		StringBuilder toReturn = new StringBuilder();
 
-		if (lunarActivities == null)
-			this.createLunarActivityTable();
+		// Sort a copy so the shared table is never modified
+		List<LunarActivityEntry> lunarActivities = new ArrayList<>(this.getLunarActivities());
 
 		if (!lunarActivities.isEmpty())
 		{
@@ -135,10 +136,23 @@ public class LunarActivityFormatter extends TextFormatter
 		return toReturn.toString();
 	}
 
+	/**
+	 * Returns the lunar activity of each species, building the table the first time it is requested. Synchronized because sections of the
+	 * output may be rendered on several threads at once
+	 *
+	 * @return The lunar activity of each species, must not be modified
+	 */
+	private synchronized List<LunarActivityEntry> getLunarActivities()
+	{
+		if (this.lunarActivities == null)
+			this.lunarActivities = this.createLunarActivityTable();
+		return this.lunarActivities;
+	}
+
 	// Algorithm copied from "public String printLunarActivity()"
-	private void createLunarActivityTable()
+	private List<LunarActivityEntry> createLunarActivityTable()
 	{
-		lunarActivities = new ArrayList<LunarActivityEntry>();
+		List<LunarActivityEntry> lunarActivities = new ArrayList<LunarActivityEntry>();
 
 		List<ImageEntry> imagesFull = new ImageQuery().fullMoonOnly(analysis.getFullMoons()).query(images);
 		List<ImageEntry> imagesNew = new ImageQuery().newMoonOnly(analysis.getNewMoons()).query(images);
@@ -182,5 +196,7 @@ public class LunarActivityFormatter extends TextFormatter
 
 			lunarActivities.add(new LunarActivityEntry(species, totalDifference, numImagesTotalFull + numImagesTotalNew));
 		}
+
+		return lunarActivities;
 	}
 }
@@ -4,6 +4,11 @@ import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoAscii;
 import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 public class SanimalMetadataFields
 {
 	// The metadata field representing a flag that tells us that the image has been tagged with sanimal data
@@ -49,4 +54,23 @@ public class SanimalMetadataFields
 
 	// The AVU meta key for collection id
 	public static final String A_COLLECTION_ID = "collectionID";
+
+	// A set of every AVU meta key written by SANIMAL
+	public static final Set<String> ALL_AVU_KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			A_SANIMAL,
+			A_DATE_TIME_TAKEN,
+			A_DATE_YEAR_TAKEN,
+			A_DATE_MONTH_TAKEN,
+			A_DATE_HOUR_TAKEN,
+			A_DATE_DAY_OF_YEAR_TAKEN,
+			A_DATE_DAY_OF_WEEK_TAKEN,
+			A_LOCATION_NAME,
+			A_LOCATION_ID,
+			A_LOCATION_LATITUDE,
+			A_LOCATION_LONGITUDE,
+			A_LOCATION_ELEVATION,
+			A_SPECIES_SCIENTIFIC_NAME,
+			A_SPECIES_COMMON_NAME,
+			A_SPECIES_COUNT,
+			A_COLLECTION_ID)));
 }
@@ -0,0 +1,102 @@
+package model.cyverse;
+
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.transfer.TransferStatus;
+import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transfer callback used when several files are transferred at the same time. Progress from each individual file is combined into
+ * a single status so that a listener expecting a single transfer sees one progress value for the whole upload
+ */
+public class AggregateTransferCallback
+{
+	// The listener that receives the combined progress
+	private final TransferStatusCallbackListener delegate;
+	// An estimate of the total number of bytes that will be transferred
+	private final long estimatedTotalBytes;
+	// Map of part index -> the most bytes transferred so far for that part across every attempt
+	private final Map<Integer, Long> bytesTransferredPerPart = new ConcurrentHashMap<>();
+	// Map of part index -> total bytes in that part
+	private final Map<Integer, Long> totalBytesPerPart = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor takes the callback to forward combined progress to
+	 *
+	 * @param delegate The listener that receives the combined progress, may be null
+	 * @param estimatedTotalBytes An estimate of the total number of bytes that will be transferred across all parts
+	 */
+	public AggregateTransferCallback(TransferStatusCallbackListener delegate, long estimatedTotalBytes)
+	{
+		this.delegate = delegate;
+		this.estimatedTotalBytes = estimatedTotalBytes;
+	}
+
+	/**
+	 * Creates a callback for a single part of the transfer. If the part is retried a new callback is created for it, but the progress of the
+	 * retry is only reported once it passes the progress of the previous attempt so the combined progress never goes backwards
+	 *
+	 * @param partIndex The index of the part being transferred
+	 * @return A callback that should be given to the transfer of that part
+	 */
+	public TransferStatusCallbackListener forPart(Integer partIndex)
+	{
+		return new TransferStatusCallbackListener()
+		{
+			@Override
+			public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) throws JargonException
+			{
+				// Record this part's progress and then report the combined progress. Keep the furthest any attempt got so progress is monotonic
+				AggregateTransferCallback.this.bytesTransferredPerPart.merge(partIndex, transferStatus.getBytesTransfered(), Math::max);
+				AggregateTransferCallback.this.totalBytesPerPart.put(partIndex, transferStatus.getTotalSize());
+				if (AggregateTransferCallback.this.delegate != null)
+					return AggregateTransferCallback.this.delegate.statusCallback(AggregateTransferCallback.this.combine(transferStatus));
+				return FileStatusCallbackResponse.CONTINUE;
+			}
+
+			@Override
+			public void overallStatusCallback(TransferStatus transferStatus) throws JargonException
+			{
+				if (AggregateTransferCallback.this.delegate != null)
+					AggregateTransferCallback.this.delegate.overallStatusCallback(AggregateTransferCallback.this.combine(transferStatus));
+			}
+
+			@Override
+			public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection)
+			{
+				if (AggregateTransferCallback.this.delegate != null)
+					return AggregateTransferCallback.this.delegate.transferAsksWhetherToForceOperation(irodsAbsolutePath, isCollection);
+				return CallbackResponse.YES_FOR_ALL;
+			}
+		};
+	}
+
+	/**
+	 * Creates a transfer status representing the progress of all parts from the status of one part
+	 *
+	 * @param partStatus The status of the part that reported progress
+	 * @return A status with the total bytes transferred and the total size of the transfer
+	 * @throws JargonException If the status could not be created
+	 */
+	private TransferStatus combine(TransferStatus partStatus) throws JargonException
+	{
+		long bytesTransferred = this.bytesTransferredPerPart.values().stream().mapToLong(Long::longValue).sum();
+		// Our estimate may be a bit off because of TAR headers, so never report a total smaller than what we know about
+		long totalBytes = Math.max(this.estimatedTotalBytes, this.totalBytesPerPart.values().stream().mapToLong(Long::longValue).sum());
+		return TransferStatus.instance(
+				partStatus.getTransferType(),
+				partStatus.getSourceFileAbsolutePath(),
+				partStatus.getTargetFileAbsolutePath(),
+				partStatus.getTargetResource(),
+				totalBytes,
+				Math.min(bytesTransferred, totalBytes),
+				partStatus.getTotalFilesToTransfer(),
+				partStatus.getTotalFilesTransferredSoFar(),
+				partStatus.getTotalFilesSkippedSoFar(),
+				partStatus.getTransferState(),
+				partStatus.getTransferHost(),
+				partStatus.getTransferZone());
+	}
+}
@@ -1,5 +1,6 @@
 package model.cyverse;
 
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 import javafx.application.Platform;
@@ -11,40 +12,53 @@ import model.SanimalData;
 import model.constant.SanimalMetadataFields;
 import model.image.*;
 import model.location.Location;
+import model.query.AggregateField;
 import model.query.CyVerseQuery;
+import model.query.QueryResultListener;
 import model.species.Species;
+import model.species.SpeciesEntry;
+import model.threading.BlockingIOExecutors;
+import model.util.LocationSpeciesRegistry;
 import model.util.RoundingUtils;
 import model.util.SettingsData;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang.RandomStringUtils;
-import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.irods.jargon.core.connection.*;
 import org.irods.jargon.core.connection.auth.AuthResponse;
 import org.irods.jargon.core.exception.AuthenticationException;
+import org.irods.jargon.core.exception.DataNotFoundException;
 import org.irods.jargon.core.exception.InvalidUserException;
 import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.protovalues.FilePermissionEnum;
 import org.irods.jargon.core.pub.*;
 import org.irods.jargon.core.pub.domain.AvuData;
+import org.irods.jargon.core.pub.domain.DataObject;
 import org.irods.jargon.core.pub.domain.User;
 import org.irods.jargon.core.pub.io.IRODSFile;
 import org.irods.jargon.core.pub.io.IRODSFileFactory;
 import org.irods.jargon.core.query.*;
+import org.irods.jargon.core.packinstr.DataObjInp;
+import org.irods.jargon.core.packinstr.TransferOptions;
+import org.irods.jargon.core.transfer.TransferControlBlock;
 import org.irods.jargon.core.transfer.TransferStatus;
 import org.irods.jargon.core.transfer.TransferStatusCallbackListener;
 
 import java.io.*;
 import java.lang.reflect.Type;
-import java.net.URL;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -75,9 +89,102 @@ public class CyVerseConnectionManager
 	{
 	}.getType();
 	private static final SimpleDateFormat FOLDER_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss") ;
+	// The number of data objects to fetch metadata for in a single GenQuery
+	static final Integer METADATA_QUERY_BATCH_SIZE = 100;
+	// The number of images to download at once
+	private static final Integer DOWNLOAD_THREAD_COUNT = 8;
+	// The number of paths read from a query before they are handed off to have their metadata fetched
+	private static final Integer QUERY_PAGE_SIZE = 500;
+	// The max number of query pages that may wait to have their metadata fetched, once full reading the query pauses
+	private static final Integer QUERY_PAGES_IN_FLIGHT = 4;
+	// The number of threads fetching metadata for a streaming query
+	private static final Integer QUERY_METADATA_THREAD_COUNT = 4;
+	// How often threads waiting on query pages check if the query was cancelled
+	private static final Long QUERY_PAGE_POLL_MILLIS = 100L;
+	// The directory that query results are cached in between runs, only used if the user turns on saving query results to disk
+	private static final File QUERY_CACHE_DIRECTORY = new File(System.getProperty("user.home"), ".sanimal" + File.separator + "queryCache");
+	// The number of milliseconds a cached query result may be used for, 10 minutes. Results are only thrown away early when this program
+	// changes a collection, so images other users upload to a shared collection can take this long to show up in query results
+	private static final Long QUERY_CACHE_TTL_MILLIS = 10L * 60L * 1000L;
+	// How often uploads that have been read are added to the collection
+	private static final Long UPLOAD_PUBLISH_INTERVAL_MILLIS = 100L;
+	// How long a cached UploadMeta.json file may be reused, 10 minutes
+	private static final Long UPLOAD_META_CACHE_TTL_MILLIS = 600000L;
+	// The number of times to retry a failed image download
+	private static final Integer DOWNLOAD_RETRY_COUNT = 3;
+	// The time to wait before retrying a failed image download, doubled after each attempt
+	private static final Long DOWNLOAD_RETRY_BACKOFF_MILLIS = 1000L;
+	// The number of times to retry a failed TAR part upload
+	private static final Integer TAR_UPLOAD_RETRY_COUNT = 3;
+	// The time to wait before retrying a failed TAR part upload, doubled after each attempt
+	private static final Long TAR_UPLOAD_RETRY_BACKOFF_MILLIS = 2000L;
+	// The directory that downloaded files are cached in between runs
+	private static final File IMAGE_CACHE_DIRECTORY = new File(System.getProperty("user.home"), ".sanimal" + File.separator + "imageCache");
+	// The default max size of the image cache, 2GB
+	private static final Long DEFAULT_IMAGE_CACHE_SIZE_BYTES = 2L * 1024L * 1024L * 1024L;
 
 	private IRODSAccount authenticatedAccount;
 	private CyVerseSessionManager sessionManager;
+	// The number of TAR parts to upload at the same time
+	private Integer uploadThreadCount = 3;
+	// The number of images to save at the same time
+	private Integer saveThreadCount = 4;
+	// The number of collection.json, permissions.json, and UploadMeta.json files to read at the same time, each reader uses its own session
+	private Integer readWorkerCount = 8;
+	// Cache of files downloaded from CyVerse
+	private final CyVerseImageCache imageCache;
+	// Cache of query results
+	private final CyVerseQueryCache queryCache;
+	// Map of upload folder -> the last UploadMeta.json read from that folder, so reopening a collection only reads uploads that changed
+	private final Map<String, CachedUploadMeta> uploadMetaCache = new ConcurrentHashMap<>();
+	// Map of collection ID -> lock held while that collection's upload list is being retrieved, so two retrievals can't interleave their updates
+	private final Map<UUID, Object> uploadListLocks = new ConcurrentHashMap<>();
+	// The calls made to CyVerse when listing uploads and loading collections, a fake server may be used instead when testing
+	private final RemoteCatalog remoteCatalog;
+	// Runs changes to the image tree and global lists on the FX thread, tests run them straight away since they have no FX thread
+	private Executor fxThreadExecutor = Platform::runLater;
+
+	/**
+	 * Constructor talks to CyVerse through Jargon once a user has logged in
+	 */
+	public CyVerseConnectionManager()
+	{
+		this.remoteCatalog = new JargonRemoteCatalog();
+		// The cache doesn't touch the disk until it is first used, so it's cheap to create here
+		this.imageCache = new CyVerseImageCache(IMAGE_CACHE_DIRECTORY, DEFAULT_IMAGE_CACHE_SIZE_BYTES);
+		// The index is written a few seconds after it changes, so write anything still pending when the program exits
+		Runtime.getRuntime().addShutdownHook(new Thread(this.imageCache::flush, "Image Cache Flush"));
+		// Results stay in memory until the user's settings turn on writing them to disk
+		this.queryCache = new CyVerseQueryCache(QUERY_CACHE_DIRECTORY, QUERY_CACHE_TTL_MILLIS);
+		Runtime.getRuntime().addShutdownHook(new Thread(this.queryCache::flush, "Query Cache Flush"));
+	}
+
+	/**
+	 * Constructor used by tests to skip logging in and talk to a fake server instead of CyVerse
+	 *
+	 * @param authenticatedAccount The account that is already logged in
+	 * @param sessionManager The session manager giving out sessions for the account
+	 * @param remoteCatalog The server that uploads and collections are listed from
+	 * @param imageCache The cache of downloaded files
+	 */
+	CyVerseConnectionManager(IRODSAccount authenticatedAccount, CyVerseSessionManager sessionManager, RemoteCatalog remoteCatalog, CyVerseImageCache imageCache)
+	{
+		this.authenticatedAccount = authenticatedAccount;
+		this.sessionManager = sessionManager;
+		this.remoteCatalog = remoteCatalog;
+		this.imageCache = imageCache;
+		this.queryCache = new CyVerseQueryCache(null, QUERY_CACHE_TTL_MILLIS);
+	}
+
+	/**
+	 * Used by tests to run work meant for the FX thread somewhere else, since tests don't start the FX toolkit
+	 *
+	 * @param fxThreadExecutor The executor that runs work meant for the FX thread
+	 */
+	void setFXThreadExecutor(Executor fxThreadExecutor)
+	{
+		this.fxThreadExecutor = fxThreadExecutor;
+	}
 
 	/**
 	 * Given a username and password, this method logs a cyverse user in
@@ -236,6 +343,7 @@ public class CyVerseConnectionManager
 			}
 			catch (JargonException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -257,10 +365,8 @@ public class CyVerseConnectionManager
 	{
 		if (this.sessionManager.openSession())
 		{
-			// Convert the settings to JSON format
-			String json = SanimalData.getInstance().getGson().toJson(settingsData);
-			// Write the settings.json file to the server
-			this.writeRemoteFile("./Sanimal/Settings/settings.json", json);
+			// Write the settings to the settings.json file on the server in JSON format
+			this.writeRemoteJson("./Sanimal/Settings/settings.json", settingsData);
 			this.sessionManager.closeSession();
 		}
 	}
@@ -276,30 +382,29 @@ public class CyVerseConnectionManager
 		{
 			// Path to the file on the CyVerse server should be named settings.json
 			String fileName = "./Sanimal/Settings/settings.json";
-			// Read the contents of the file into a string
-			String fileContents = this.readRemoteFile(fileName);
-			// Ensure that we in fact got data back
-			if (fileContents != null)
+			// Try to parse the JSON file into a settings data
+			try
 			{
-				// Try to parse the JSON string into a settings data
-				try
+				// Stream the file through GSON to parse the JSON
+				SettingsData settingsData = this.readRemoteJson(fileName, SettingsData.class);
+				// Ensure that we in fact got data back
+				if (settingsData != null)
 				{
 					this.sessionManager.closeSession();
-					// Get the GSON object to parse the JSON. Return the list of new locations
-					return SanimalData.getInstance().getGson().fromJson(fileContents, SettingsData.class);
-				}
-				catch (JsonSyntaxException e)
-				{
-					// If the JSON file is incorrectly formatted, throw an error and return null
-					SanimalData.getInstance().getErrorDisplay().showPopup(
-							Alert.AlertType.ERROR,
-							null,
-							"Error",
-							"JSON error",
-							"Could not pull the settings from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
-							false);
+					return settingsData;
 				}
 			}
+			catch (JsonSyntaxException e)
+			{
+				// If the JSON file is incorrectly formatted, throw an error and return null
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"JSON error",
+						"Could not pull the settings from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
+						false);
+			}
 			this.sessionManager.closeSession();
 		}
 
@@ -317,30 +422,29 @@ public class CyVerseConnectionManager
 		{
 			// Path to the file on the CyVerse server should be named locations.json
 			String fileName = "./Sanimal/Settings/locations.json";
-			// Read the contents of the file into a string
-			String fileContents = this.readRemoteFile(fileName);
-			// Ensure that we in fact got data back
-			if (fileContents != null)
+			// Try to parse the JSON file into a list of locations
+			try
 			{
-				// Try to parse the JSON string into a list of locations
-				try
+				// Stream the file through GSON to parse the JSON
+				List<Location> locations = this.readRemoteJson(fileName, LOCATION_LIST_TYPE);
+				// Ensure that we in fact got data back
+				if (locations != null)
 				{
 					this.sessionManager.closeSession();
-					// Get the GSON object to parse the JSON. Return the list of new locations
-					return SanimalData.getInstance().getGson().fromJson(fileContents, LOCATION_LIST_TYPE);
-				}
-				catch (JsonSyntaxException e)
-				{
-					// If the JSON file is incorrectly formatted, throw an error and return an empty list
-					SanimalData.getInstance().getErrorDisplay().showPopup(
-							Alert.AlertType.ERROR,
-							null,
-							"Error",
-							"JSON error",
-							"Could not pull the location list from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
-							false);
+					return locations;
 				}
 			}
+			catch (JsonSyntaxException e)
+			{
+				// If the JSON file is incorrectly formatted, throw an error and return an empty list
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"JSON error",
+						"Could not pull the location list from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
+						false);
+			}
 			this.sessionManager.closeSession();
 		}
 
@@ -356,10 +460,8 @@ public class CyVerseConnectionManager
 	{
 		if (this.sessionManager.openSession())
 		{
-			// Convert the location list to JSON format
-			String json = SanimalData.getInstance().getGson().toJson(newLocations);
-			// Write the locations.json file to the server
-			this.writeRemoteFile("./Sanimal/Settings/locations.json", json);
+			// Write the location list to the locations.json file on the server in JSON format
+			this.writeRemoteJson("./Sanimal/Settings/locations.json", newLocations);
 			this.sessionManager.closeSession();
 		}
 	}
@@ -375,30 +477,29 @@ public class CyVerseConnectionManager
 		{
 			// Path to the file on the CyVerse server should be named species.json
 			String fileName = "./Sanimal/Settings/species.json";
-			// Read the contents of the file into a string
-			String fileContents = this.readRemoteFile(fileName);
-			// Ensure that we in fact got data back
-			if (fileContents != null)
+			// Try to parse the JSON file into a list of species
+			try
 			{
-				// Try to parse the JSON string into a list of species
-				try
+				// Stream the file through GSON to parse the JSON
+				List<Species> species = this.readRemoteJson(fileName, SPECIES_LIST_TYPE);
+				// Ensure that we in fact got data back
+				if (species != null)
 				{
 					this.sessionManager.closeSession();
-					// Get the GSON object to parse the JSON. Return the list of new locations
-					return SanimalData.getInstance().getGson().fromJson(fileContents, SPECIES_LIST_TYPE);
-				}
-				catch (JsonSyntaxException e)
-				{
-					// If the JSON file is incorrectly formatted, throw an error and return an empty list
-					SanimalData.getInstance().getErrorDisplay().showPopup(
-							Alert.AlertType.ERROR,
-							null,
-							"Error",
-							"JSON error",
-							"Could not pull the species list from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
-							false);
+					return species;
 				}
 			}
+			catch (JsonSyntaxException e)
+			{
+				// If the JSON file is incorrectly formatted, throw an error and return an empty list
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"JSON error",
+						"Could not pull the species list from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
+						false);
+			}
 			this.sessionManager.closeSession();
 		}
 
@@ -414,10 +515,8 @@ public class CyVerseConnectionManager
 	{
 		if (this.sessionManager.openSession())
 		{
-			// Convert the species list to JSON format
-			String json = SanimalData.getInstance().getGson().toJson(newSpecies);
-			// Write the species.json file to the server
-			this.writeRemoteFile("./Sanimal/Settings/species.json", json);
+			// Write the species list to the species.json file on the server in JSON format
+			this.writeRemoteJson("./Sanimal/Settings/species.json", newSpecies);
 			this.sessionManager.closeSession();
 		}
 	}
@@ -428,92 +527,33 @@ public class CyVerseConnectionManager
 	 * @return A list of collections stored on the CyVerse system
 	 */
 	public List<ImageCollection> pullRemoteCollections()
+	{
+		return this.pullRemoteCollections(null);
+	}
+
+	/**
+	 * Connects to CyVerse and downloads the list of the user's collections. Collection folders are found with a single query, and then each
+	 * collection's JSON files are read in parallel, each thread using its own session
+	 *
+	 * @param collectionLoadedCallback Called from a loader thread with each collection as soon as it is read so it can be shown right away, may be null
+	 * @return A list of collections stored on the CyVerse system in the order the collection folders are listed
+	 */
+	public List<ImageCollection> pullRemoteCollections(Consumer<ImageCollection> collectionLoadedCallback)
 	{
 		// Create a list of collections
 		List<ImageCollection> imageCollections = new ArrayList<>();
+		// The absolute path of each collection folder, null if they could not be listed
+		List<String> collectionPaths = null;
 		if (this.sessionManager.openSession())
 		{
 			try
 			{
 				// Grab the collections folder and make sure it exists
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionsFolder = fileFactory.instanceIRODSFile(COLLECTIONS_DIRECTORY);
+				IRODSFile collectionsFolder = this.remoteCatalog.instanceFile(COLLECTIONS_DIRECTORY);
 				if (collectionsFolder.exists())
 				{
-					// Grab a list of files in the collections directory
-					File[] files = collectionsFolder.listFiles();
-					if (files instanceof IRODSFile[])
-					{
-						// List of collection folders
-						IRODSFile[] collections = (IRODSFile[]) files;
-						// Iterate over all collections
-						for (IRODSFile collectionDir : collections)
-						{
-							// Make sure we can read the collections directory
-							if (collectionDir.isDirectory())
-							{
-								// Read the collection JSON file to get the collection properties
-								String collectionJSONFile = collectionDir.getAbsolutePath() + "/collection.json";
-								String collectionJSON = this.readRemoteFile(collectionJSONFile);
-								if (collectionJSON != null)
-								{
-									// Try to parse the JSON string into collection
-									try
-									{
-										// Get the GSON object to parse the JSON.
-										ImageCollection imageCollection = SanimalData.getInstance().getGson().fromJson(collectionJSON, ImageCollection.class);
-										if (imageCollection != null)
-										{
-											imageCollections.add(imageCollection);
-
-											String permissionsJSONFile = collectionDir.getAbsolutePath() + "/permissions.json";
-											String permissionsJSON = this.readRemoteFile(permissionsJSONFile);
-
-											// This will be null if we can't see the upload directory
-											if (permissionsJSON != null)
-											{
-												// Get the GSON object to parse the JSON.
-												List<Permission> permissions = SanimalData.getInstance().getGson().fromJson(permissionsJSON, PERMISSION_LIST_TYPE);
-												if (permissions != null)
-												{
-													// We need to initialize the internal listeners because the deserialization process causes the fields to get wiped and reset
-													permissions.forEach(Permission::initListeners);
-													imageCollection.getPermissions().addAll(permissions);
-												}
-											}
-											else
-											{
-												// Grab the uploads directory
-												IRODSFile collectionDirUploads = fileFactory.instanceIRODSFile(collectionDir.getAbsolutePath() + "/Uploads");
-												// If we got a null permissions JSON, we check if we can see the uploads folder. If so, we have upload permissions!
-												if (collectionDirUploads.exists())
-												{
-													// Add a permission for my own permissions
-													Permission myPermission = new Permission();
-													myPermission.setOwner(false);
-													myPermission.setUsername(SanimalData.getInstance().getUsername());
-													myPermission.setUpload(collectionDirUploads.canWrite());
-													myPermission.setRead(collectionDirUploads.canRead());
-													imageCollection.getPermissions().add(myPermission);
-												}
-											}
-										}
-									}
-									catch (JsonSyntaxException e)
-									{
-										// If the JSON file is incorrectly formatted, throw an error and return an empty list
-										SanimalData.getInstance().getErrorDisplay().showPopup(
-												Alert.AlertType.ERROR,
-												null,
-												"Error",
-												"JSON collection error",
-												"Could not read the collection " + collectionJSONFile + "!\n" + ExceptionUtils.getStackTrace(e),
-												false);
-									}
-								}
-							}
-						}
-					}
+					// Grab a list of collection folders in the collections directory
+					collectionPaths = this.remoteCatalog.listSubCollections(COLLECTIONS_DIRECTORY);
 				}
 				else
 				{
@@ -526,8 +566,9 @@ public class CyVerseConnectionManager
 							false);
 				}
 			}
-			catch (JargonException e)
+			catch (JargonException | JargonQueryException | GenQueryBuilderException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -539,9 +580,116 @@ public class CyVerseConnectionManager
 			this.sessionManager.closeSession();
 		}
 
+		if (collectionPaths == null || collectionPaths.isEmpty())
+			return imageCollections;
+
+		// Each collection is stored at the index of its folder so the result keeps the listing order
+		List<String> finalCollectionPaths = collectionPaths;
+		ImageCollection[] loadedCollections = new ImageCollection[collectionPaths.size()];
+
+		// Begin loading the collections in parallel
+		List<Future<Void>> collectionLoads = new ArrayList<>();
+		ExecutorService loadExecutor = this.submitReads("Collection Loader", collectionPaths.size(), collectionIndex ->
+		{
+			ImageCollection imageCollection = this.loadCollection(finalCollectionPaths.get(collectionIndex));
+			if (imageCollection != null)
+			{
+				loadedCollections[collectionIndex] = imageCollection;
+				if (collectionLoadedCallback != null)
+					collectionLoadedCallback.accept(imageCollection);
+			}
+		}, collectionLoads);
+
+		try
+		{
+			// Wait for every collection to load
+			for (Future<Void> collectionLoad : collectionLoads)
+				collectionLoad.get();
+		}
+		catch (InterruptedException e)
+		{
+			loadExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"JSON collection download error",
+					"Could not pull the collection list from CyVerse!\n" + ExceptionUtils.getStackTrace(e.getCause()),
+					false);
+		}
+
+		// Return whatever collections were loaded
+		for (ImageCollection imageCollection : loadedCollections)
+			if (imageCollection != null)
+				imageCollections.add(imageCollection);
 		return imageCollections;
 	}
 
+	/**
+	 * Reads a single collection and its permissions from a collection folder. Must be called with an open session
+	 *
+	 * @param collectionDirPath The absolute path of the collection folder
+	 * @return The collection, or null if the folder does not contain a valid collection
+	 * @throws JargonException If the uploads folder could not be checked
+	 */
+	private ImageCollection loadCollection(String collectionDirPath) throws JargonException
+	{
+		// Read the collection JSON file to get the collection properties
+		String collectionJSONFile = collectionDirPath + "/collection.json";
+		// Try to parse the JSON file into collection
+		try
+		{
+			// Stream the file through GSON to parse the JSON
+			ImageCollection imageCollection = this.readRemoteJson(collectionJSONFile, ImageCollection.class);
+			if (imageCollection != null)
+			{
+				String permissionsJSONFile = collectionDirPath + "/permissions.json";
+				List<Permission> permissions = this.readRemoteJson(permissionsJSONFile, PERMISSION_LIST_TYPE);
+
+				// This will be null if we can't see the upload directory
+				if (permissions != null)
+				{
+					// We need to initialize the internal listeners because the deserialization process causes the fields to get wiped and reset
+					permissions.forEach(Permission::initListeners);
+					imageCollection.getPermissions().addAll(permissions);
+				}
+				else
+				{
+					// Grab the uploads directory
+					IRODSFile collectionDirUploads = this.remoteCatalog.instanceFile(collectionDirPath + "/Uploads");
+					// If we got a null permissions JSON, we check if we can see the uploads folder. If so, we have upload permissions!
+					if (collectionDirUploads.exists())
+					{
+						// Add a permission for my own permissions
+						Permission myPermission = new Permission();
+						myPermission.setOwner(false);
+						myPermission.setUsername(SanimalData.getInstance().getUsername());
+						myPermission.setUpload(collectionDirUploads.canWrite());
+						myPermission.setRead(collectionDirUploads.canRead());
+						imageCollection.getPermissions().add(myPermission);
+					}
+				}
+				return imageCollection;
+			}
+		}
+		catch (JsonSyntaxException e)
+		{
+			// If the JSON file is incorrectly formatted, throw an error and skip the collection
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"JSON collection error",
+					"Could not read the collection " + collectionJSONFile + "!\n" + ExceptionUtils.getStackTrace(e),
+					false);
+		}
+		return null;
+	}
+
 	/**
 	 * Connects to CyVerse and uploads the given collection to CyVerse's data store
 	 *
@@ -573,8 +721,7 @@ public class CyVerseConnectionManager
 
 					// Create a collections JSON file to hold the settings
 					String collectionJSONFile = collectionDirName + "/collection.json";
-					String json = SanimalData.getInstance().getGson().toJson(collection);
-					this.writeRemoteFile(collectionJSONFile, json);
+					this.writeRemoteJson(collectionJSONFile, collection);
 					// Set the file's permissions. We force read only so that even users with write permissions cannot change this file
 					this.setFilePermissions(collectionJSONFile, collection.getPermissions(), true, false);
 
@@ -583,8 +730,7 @@ public class CyVerseConnectionManager
 
 					// Create a permissions JSON file to hold the permissions
 					String collectionPermissionFile = collectionDirName + "/permissions.json";
-					json = SanimalData.getInstance().getGson().toJson(collection.getPermissions());
-					this.writeRemoteFile(collectionPermissionFile, json);
+					this.writeRemoteJson(collectionPermissionFile, collection.getPermissions());
 
 					if (messageCallback != null)
 						messageCallback.setValue("Writing collection Uploads directory...");
@@ -597,6 +743,7 @@ public class CyVerseConnectionManager
 				}
 				catch (JargonException e)
 				{
+					this.sessionManager.markCurrentSessionFailed();
 					e.printStackTrace();
 				}
 			}
@@ -625,6 +772,7 @@ public class CyVerseConnectionManager
 			}
 			catch (JargonException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -668,6 +816,7 @@ public class CyVerseConnectionManager
 				}
 				catch (JargonException e)
 				{
+					this.sessionManager.markCurrentSessionFailed();
 					SanimalData.getInstance().getErrorDisplay().showPopup(
 							Alert.AlertType.ERROR,
 							null,
@@ -695,6 +844,7 @@ public class CyVerseConnectionManager
 				}
 				catch (JargonException e)
 				{
+					this.sessionManager.markCurrentSessionFailed();
 					SanimalData.getInstance().getErrorDisplay().showPopup(
 							Alert.AlertType.ERROR,
 							null,
@@ -730,6 +880,7 @@ public class CyVerseConnectionManager
 					}
 					catch (JargonException e)
 					{
+						this.sessionManager.markCurrentSessionFailed();
 						SanimalData.getInstance().getErrorDisplay().showPopup(
 								Alert.AlertType.ERROR,
 								null,
@@ -753,6 +904,7 @@ public class CyVerseConnectionManager
 					}
 					catch (JargonException e)
 					{
+						this.sessionManager.markCurrentSessionFailed();
 						SanimalData.getInstance().getErrorDisplay().showPopup(
 								Alert.AlertType.ERROR,
 								null,
@@ -782,8 +934,13 @@ public class CyVerseConnectionManager
 				this.sessionManager.closeSession();
 				return byName != null;
 			}
+			// The user doesn't exist, the connection is still fine
+			catch (DataNotFoundException ignored)
+			{
+			}
 			catch (JargonException ignored)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 			}
 			this.sessionManager.closeSession();
 		}
@@ -801,14 +958,15 @@ public class CyVerseConnectionManager
 	 */
 	public void uploadImages(ImageCollection collection, ImageDirectory directoryToWrite, String description, TransferStatusCallbackListener transferCallback, StringProperty messageCallback)
 	{
+		// Any cached query results that may include this collection are about to be out of date
+		this.getQueryCache().invalidateCollection(collection.getID().toString());
 		if (this.sessionManager.openSession())
 		{
 			try
 			{
 				// Grab the uploads folder for a given collection
 				String collectionUploadDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionUploadDir = fileFactory.instanceIRODSFile(collectionUploadDirStr);
+				IRODSFile collectionUploadDir = this.remoteCatalog.instanceFile(collectionUploadDirStr);
 				// If the uploads directory exists and we can write to it, upload
 				if (collectionUploadDir.exists() && collectionUploadDir.canWrite())
 				{
@@ -841,8 +999,8 @@ public class CyVerseConnectionManager
 					String localDirName = directoryToWrite.getFile().getName();
 					AvuData collectionIDTag = new AvuData(SanimalMetadataFields.A_COLLECTION_ID, collection.getID().toString(), "");
 
-					// Make a set of tar files from the image files. Don't use a single tar file because we may have > 1000 images in each
-					File[] tarsToWrite = DirectoryManager.directoryToTars(directoryToWrite, directoryMetaJSON, imageEntry ->
+					// Create the metadata CSV line for each image
+					Function<ImageEntry, String> imageToMetadata = imageEntry ->
 					{
 						try
 						{
@@ -855,31 +1013,118 @@ public class CyVerseConnectionManager
 						}
 						catch (JargonException e)
 						{
+							this.sessionManager.markCurrentSessionFailed();
 							SanimalData.getInstance().getErrorDisplay().printError("Could not add metadata to image: " + imageEntry.getFile().getAbsolutePath() + ", error was: ");
 							e.printStackTrace();
 						}
 						return "";
-					}, 900);
-
-					// For each tar part, upload
-					for (Integer tarPart = 0; tarPart < tarsToWrite.length; tarPart++)
+					};
+
+					// Combine the progress of each TAR part into one progress value. Estimate the total size using the size of each image
+					long estimatedTotalBytes = directoryToWrite.flattened().filter(imageContainer -> imageContainer instanceof ImageEntry).mapToLong(imageContainer -> imageContainer.getFile().length()).sum();
+					AggregateTransferCallback aggregateCallback = new AggregateTransferCallback(transferCallback, estimatedTotalBytes);
+
+					// Upload TAR parts on separate threads so that several parts upload at once while the next part is being built
+					Integer uploadThreads = Math.max(this.uploadThreadCount, 1);
+					ExecutorService uploadExecutor = BlockingIOExecutors.newExecutor("TAR Part Uploader", uploadThreads);
+					// Only allow one finished part to wait for an upload thread so we don't fill the temp directory with TAR files
+					Semaphore partsInFlight = new Semaphore(uploadThreads + 1);
+					AtomicBoolean uploadFailed = new AtomicBoolean(false);
+					List<Future<Void>> partUploads = new ArrayList<>();
+					// Parts that have been built but haven't started uploading yet. Whoever removes a part from this set is responsible for deleting it
+					Set<File> partsWaiting = ConcurrentHashMap.newKeySet();
+					// If the upload is interrupted stop the uploads in progress and delete the parts that never got uploaded
+					Runnable cancelUpload = () ->
 					{
-						if (messageCallback != null)
-							messageCallback.setValue("Uploading TAR file part (" + (tarPart + 1) + " / " + tarsToWrite.length + ") to CyVerse...");
-
-						File toWrite = tarsToWrite[tarPart];
-						File localToUpload = new File(FilenameUtils.getFullPath(toWrite.getAbsolutePath()) + uploadFolderName + "-" + tarPart.toString() + "." + FilenameUtils.getExtension(toWrite.getAbsolutePath()));
-						toWrite.renameTo(localToUpload);
-						// Upload the tar
-						this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localToUpload, collectionUploadDir, transferCallback, null);
+						uploadExecutor.shutdownNow();
+						partUploads.forEach(partUpload -> partUpload.cancel(true));
+						for (File partWaiting : new ArrayList<>(partsWaiting))
+							if (partsWaiting.remove(partWaiting))
+								partWaiting.delete();
+					};
+					// Make a set of tar files from the image files. Don't use a single tar file because we may have > 1000 images in each
+					Boolean tarsCreated = DirectoryManager.directoryToTars(directoryToWrite, directoryMetaJSON, imageToMetadata, 900, (tarPart, numberOfTars, toWrite) ->
+					{
+						// Wait for an upload thread to become available
+						try
+						{
+							partsInFlight.acquire();
+						}
+						catch (InterruptedException e)
+						{
+							// The part we just built will never be uploaded, so delete it along with any others still waiting
+							toWrite.delete();
+							cancelUpload.run();
+							throw e;
+						}
+						// If a previous part failed to upload, stop building TAR files
+						if (uploadFailed.get())
+						{
+							partsInFlight.release();
+							toWrite.delete();
+							return false;
+						}
+						partsWaiting.add(toWrite);
+						partUploads.add(uploadExecutor.submit(() ->
+						{
+							// If the upload was cancelled before this part started the canceller deleted it already
+							if (!partsWaiting.remove(toWrite))
+							{
+								partsInFlight.release();
+								return null;
+							}
+							try
+							{
+								if (messageCallback != null)
+									messageCallback.setValue("Uploading TAR file part (" + (tarPart + 1) + " / " + numberOfTars + ") to CyVerse...");
+								this.uploadTarPart(toWrite, tarPart, uploadFolderName, collectionUploadDirStr, aggregateCallback);
+								return null;
+							}
+							catch (Exception e)
+							{
+								uploadFailed.set(true);
+								throw e;
+							}
+							finally
+							{
+								// This thread goes away once the upload is done, so close its connection instead of pooling it
+								this.sessionManager.evictCurrentThread();
+								partsInFlight.release();
+							}
+						}));
+						return true;
+					});
+					uploadExecutor.shutdown();
 
-						localToUpload.delete();
+					try
+					{
+						// Wait for every part to finish uploading, if any part failed this throws its error
+						for (Future<Void> partUpload : partUploads)
+							partUpload.get();
+						if (!tarsCreated)
+							SanimalData.getInstance().getErrorDisplay().printError("Could not create TAR files for the directory " + localDirAbsolutePath);
+					}
+					catch (ExecutionException e)
+					{
+						SanimalData.getInstance().getErrorDisplay().showPopup(
+								Alert.AlertType.ERROR,
+								null,
+								"Error",
+								"Upload error",
+								"Could not upload the images to CyVerse!\n" + ExceptionUtils.getStackTrace(e.getCause()),
+								false);
+					}
+					catch (InterruptedException e)
+					{
+						cancelUpload.run();
+						Thread.currentThread().interrupt();
 					}
 					// Let rules do the rest!
 				}
 			}
 			catch (JargonException | IOException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -889,9 +1134,94 @@ public class CyVerseConnectionManager
 						false);
 			}
 			this.sessionManager.closeSession();
+			// Throw away anything cached while the upload was running too
+			this.getQueryCache().invalidateCollection(collection.getID().toString());
+		}
+	}
+
+	/**
+	 * Uploads a single TAR part into a collection's upload directory. The upload is verified with a checksum and retried if it fails. This
+	 * opens its own session so it can be run on any thread
+	 *
+	 * @param toWrite The TAR file to upload, it is deleted after it is uploaded
+	 * @param tarPart The index of the TAR part
+	 * @param uploadFolderName The name of the upload folder, used to name the TAR part
+	 * @param collectionUploadDirStr The absolute path of the collection's upload directory
+	 * @param aggregateCallback The callback that combines the transfer progress of each part
+	 * @throws JargonException If the upload fails too many times
+	 * @throws InterruptedException If the thread is interrupted while waiting to retry
+	 */
+	private void uploadTarPart(File toWrite, Integer tarPart, String uploadFolderName, String collectionUploadDirStr, AggregateTransferCallback aggregateCallback) throws JargonException, InterruptedException
+	{
+		File localToUpload = new File(FilenameUtils.getFullPath(toWrite.getAbsolutePath()) + uploadFolderName + "-" + tarPart.toString() + "." + FilenameUtils.getExtension(toWrite.getAbsolutePath()));
+		toWrite.renameTo(localToUpload);
+		// If the caller already has a session we may have to throw it away on a failure, so remember to give them a new one
+		Boolean callerHadSession = this.sessionManager.getCurrentSession() != null;
+		try
+		{
+			for (Integer attempt = 0; ; attempt++)
+			{
+				// This is a no-op if the current thread already has a session open
+				Boolean openedSession = this.sessionManager.openSession();
+				try
+				{
+					IRODSFile collectionUploadDir = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount).instanceIRODSFile(collectionUploadDirStr);
+					// Verify the checksum of the part once it's uploaded, and overwrite any partial upload left from a previous attempt
+					TransferControlBlock transferControlBlock = this.sessionManager.getCurrentAO().buildDefaultTransferControlBlockBasedOnJargonProperties();
+					TransferOptions transferOptions = transferControlBlock.getTransferOptions();
+					transferOptions.setComputeAndVerifyChecksumAfterTransfer(true);
+					transferOptions.setForceOption(TransferOptions.ForceOption.USE_FORCE);
+					transferControlBlock.setTransferOptions(transferOptions);
+					// Upload the tar
+					this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localToUpload, collectionUploadDir, aggregateCallback.forPart(tarPart), transferControlBlock);
+					return;
+				}
+				catch (JargonException e)
+				{
+					// Throw away the connection whoever opened it since it may be what failed. Discarding it skips the clean disconnect which would fail too
+					this.sessionManager.discardCurrentSession();
+					openedSession = false;
+					// If we're out of retries, give up
+					if (attempt >= TAR_UPLOAD_RETRY_COUNT)
+						throw e;
+					SanimalData.getInstance().getErrorDisplay().printError("Upload of TAR part " + tarPart + " failed, retrying. Error was:\n" + ExceptionUtils.getStackTrace(e));
+				}
+				finally
+				{
+					if (openedSession)
+						this.sessionManager.closeSession();
+				}
+				// Wait a bit longer after each failure
+				Thread.sleep(TAR_UPLOAD_RETRY_BACKOFF_MILLIS << attempt);
+			}
+		}
+		finally
+		{
+			localToUpload.delete();
+			// If we threw away the caller's session, hand them a fresh one so they can keep using it
+			if (callerHadSession && this.sessionManager.getCurrentSession() == null)
+				this.sessionManager.openSession();
 		}
 	}
 
+	/**
+	 * Sets the number of TAR parts that may be uploaded at the same time
+	 *
+	 * @param uploadThreadCount The number of parallel TAR part uploads, must be at least 1
+	 */
+	public void setUploadThreadCount(Integer uploadThreadCount)
+	{
+		this.uploadThreadCount = uploadThreadCount;
+	}
+
+	/**
+	 * @return The number of TAR parts that may be uploaded at the same time
+	 */
+	public Integer getUploadThreadCount()
+	{
+		return this.uploadThreadCount;
+	}
+
 	/**
 	 * Save the set of images that were downloaded to CyVerse
 	 *
@@ -901,14 +1231,15 @@ public class CyVerseConnectionManager
 	 */
 	public void saveImages(ImageCollection collection, CloudUploadEntry uploadEntryToSave, StringProperty messageCallback)
 	{
+		// Any cached query results that may include this collection are about to be out of date
+		this.getQueryCache().invalidateCollection(collection.getID().toString());
 		if (this.sessionManager.openSession())
 		{
 			try
 			{
 				// Grab the save folder for a given collection
 				String collectionSaveDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionSaveDir = fileFactory.instanceIRODSFile(collectionSaveDirStr);
+				IRODSFile collectionSaveDir = this.remoteCatalog.instanceFile(collectionSaveDirStr);
 				// If the save directory exists and we can write to it, save
 				if (collectionSaveDir.exists() && collectionSaveDir.canWrite())
 				{
@@ -916,79 +1247,64 @@ public class CyVerseConnectionManager
 					ImageDirectory imageDirectory = uploadEntryToSave.getCloudImageDirectory();
 					// Grab the list of images to upload
 					List<CloudImageEntry> toUpload = imageDirectory.flattened().filter(imageContainer -> imageContainer instanceof CloudImageEntry).map(imageContainer -> (CloudImageEntry) imageContainer).collect(Collectors.toList());
-					Platform.runLater(() -> imageDirectory.setUploadProgress(0.0));
+					this.fxThreadExecutor.execute(() -> imageDirectory.setUploadProgress(0.0));
 
 					messageCallback.setValue("Saving " + toUpload.size() + " images to CyVerse...");
 
-					Double numberOfImagesToUpload = (double) toUpload.size();
+					// Only save images that have been pulled and edited
+					List<CloudImageEntry> toSave = toUpload.stream().filter(cloudImageEntry -> cloudImageEntry.hasBeenPulledFromCloud() && cloudImageEntry.isCloudDirty()).collect(Collectors.toList());
+					Double numberOfImagesToUpload = (double) toSave.size();
 					Integer numberOfDetaggedImages = 0;
 					Integer numberOfRetaggedImages = 0;
-					// Begin saving
-					for (int i = 0; i < toUpload.size(); i++)
+					for (CloudImageEntry cloudImageEntry : toSave)
 					{
-						// Grab the cloud image entry to upload
-						CloudImageEntry cloudImageEntry = toUpload.get(i);
-						// If it has been pulled save it
-						if (cloudImageEntry.hasBeenPulledFromCloud() && cloudImageEntry.isCloudDirty())
-						{
-							if (cloudImageEntry.getSpeciesPresent().isEmpty() && cloudImageEntry.wasTaggedWithSpecies())
-								numberOfDetaggedImages++;
-							else if (!cloudImageEntry.getSpeciesPresent().isEmpty() && !cloudImageEntry.wasTaggedWithSpecies())
-								numberOfRetaggedImages++;
+						if (cloudImageEntry.getSpeciesPresent().isEmpty() && cloudImageEntry.wasTaggedWithSpecies())
+							numberOfDetaggedImages++;
+						else if (!cloudImageEntry.getSpeciesPresent().isEmpty() && !cloudImageEntry.wasTaggedWithSpecies())
+							numberOfRetaggedImages++;
+					}
 
-							// Save that specific cloud image
-							this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(cloudImageEntry.getFile(), cloudImageEntry.getCyverseFile(), new TransferStatusCallbackListener()
-							{
-								@Override
-								public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
-								@Override
-								public void overallStatusCallback(TransferStatus transferStatus) {}
-								@Override
-								public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
-							}, null);
-
-							// Get the absolute path of the uploaded file
-							String fileAbsoluteCyVersePath = cloudImageEntry.getCyverseFile().getAbsolutePath();
-							// Update the collection tag
-							AvuData collectionIDTag = new AvuData(SanimalMetadataFields.A_COLLECTION_ID, collection.getID().toString(), "");
-							// Write image metadata to the file
-							List<AvuData> imageMetadata = cloudImageEntry.convertToAVUMetadata();
-							imageMetadata.add(collectionIDTag);
-							imageMetadata.forEach(avuData ->
-							{
-								try
-								{
-									// Set the file AVU data
-									this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount).setAVUMetadata(fileAbsoluteCyVersePath, avuData);
-								}
-								catch (JargonException e)
-								{
-									SanimalData.getInstance().getErrorDisplay().printError("Could not add metadata to image: " + cloudImageEntry.getCyverseFile().getAbsolutePath() + ", error was: ");
-									e.printStackTrace();
-								}
-							});
-
-							// Update the progress every 20 uploads
-							if (i % 20 == 0)
-							{
-								int finalI = i;
-								Platform.runLater(() -> imageDirectory.setUploadProgress(finalI / numberOfImagesToUpload));
-							}
-						}
+					// The collection tag that every image gets
+					AvuData collectionIDTag = new AvuData(SanimalMetadataFields.A_COLLECTION_ID, collection.getID().toString(), "");
+					List<String> failedImages;
+					try
+					{
+						// Update the progress every 20 uploads
+						failedImages = this.saveCloudImages(toSave, collectionIDTag, numberSaved ->
+						{
+							if (numberSaved % 20 == 0)
+								this.fxThreadExecutor.execute(() -> imageDirectory.setUploadProgress(numberSaved / numberOfImagesToUpload));
+						});
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						this.sessionManager.closeSession();
+						this.getQueryCache().invalidateCollection(collection.getID().toString());
+						return;
 					}
 
+					// Report every image that failed to save at once
+					if (!failedImages.isEmpty())
+						SanimalData.getInstance().getErrorDisplay().showPopup(
+								Alert.AlertType.ERROR,
+								null,
+								"Error",
+								"Saving error",
+								failedImages.size() + " of " + toSave.size() + " images could not be saved to CyVerse:\n" + String.join("\n", failedImages),
+								false);
+
 					// Add an edit comment so users know the file was edited
 					uploadEntryToSave.getEditComments().add("Edited by " + SanimalData.getInstance().getUsername() + " on " + FOLDER_FORMAT.format(Calendar.getInstance().getTime()));
 					Integer imagesWithSpecies = uploadEntryToSave.getImagesWithSpecies() - numberOfDetaggedImages + numberOfRetaggedImages;
 					uploadEntryToSave.setImagesWithSpecies(imagesWithSpecies);
-					// Convert the upload entry to JSON format
-					String json = SanimalData.getInstance().getGson().toJson(uploadEntryToSave);
-					// Write the UploadMeta.json file to the server
-					this.writeRemoteFile(uploadEntryToSave.getUploadIRODSPath() + "/UploadMeta.json", json);
+					// Write the upload entry to the UploadMeta.json file on the server in JSON format
+					this.writeRemoteJson(uploadEntryToSave.getUploadIRODSPath() + "/UploadMeta.json", uploadEntryToSave);
 				}
 			}
-			catch (JargonException e)
+			catch (JargonException | JargonQueryException | GenQueryBuilderException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -998,83 +1314,426 @@ public class CyVerseConnectionManager
 						false);
 			}
 			this.sessionManager.closeSession();
+			// Throw away anything cached while the save was running too
+			this.getQueryCache().invalidateCollection(collection.getID().toString());
 		}
 	}
 
 	/**
-	 * Used to retrieve a list of uploads to a collection and any uploads are automatically inserted into the collection
+	 * Saves the files and metadata of cloud images to CyVerse, each save thread saving every Nth image on its own session. The current
+	 * metadata of every image is read at once so that only the metadata that changed is sent. Must be called with an open session
 	 *
-	 * @param collection The image collection to retrieve uploads from
-	 * @param progressProperty How far we are
+	 * @param toSave The images to save
+	 * @param collectionIDTag The tag marking which collection the images belong to
+	 * @param progressCallback Called with the number of images saved so far after each image is saved
+	 * @return The absolute path of each image that could not be saved
+	 * @throws JargonException If the current metadata could not be read, or a save thread failed unexpectedly
+	 * @throws JargonQueryException If the metadata query was malformed
+	 * @throws GenQueryBuilderException If the metadata query could not be built
+	 * @throws InterruptedException If we are interrupted while waiting for the images to save
 	 */
-	public void retrieveAndInsertUploadList(ImageCollection collection, DoubleProperty progressProperty)
+	List<String> saveCloudImages(List<CloudImageEntry> toSave, AvuData collectionIDTag, IntConsumer progressCallback) throws JargonException, JargonQueryException, GenQueryBuilderException, InterruptedException
 	{
-		if (this.sessionManager.openSession())
+		// Read the current metadata of every image at once so that we only need to send the metadata that changed
+		Map<String, List<AvuData>> pathToExistingMetadata = this.remoteCatalog.fetchMetadataInBulk(toSave.stream().map(cloudImageEntry -> cloudImageEntry.getCyverseFile().getAbsolutePath()).collect(Collectors.toList()));
+
+		Integer saveThreads = Math.max(Math.min(this.saveThreadCount, toSave.size()), 1);
+		ExecutorService saveExecutor = BlockingIOExecutors.newExecutor("Image Saver", saveThreads);
+		AtomicInteger imagesSaved = new AtomicInteger(0);
+		// The path of each image that failed to save, so one failure doesn't stop the rest of the images from saving
+		Queue<String> failedImages = new ConcurrentLinkedQueue<>();
+		List<Future<Void>> imageSaves = new ArrayList<>();
+		for (Integer threadIndex = 0; threadIndex < saveThreads; threadIndex++)
 		{
-			try
+			Integer firstImageIndex = threadIndex;
+			imageSaves.add(saveExecutor.submit(() -> this.sessionManager.withTaskSession(() ->
 			{
-				// Clear the current collection uploads
-				Platform.runLater(() -> collection.getUploads().clear());
-				// Grab the uploads folder for a given collection
-				String collectionUploadDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile collectionUploadDir = fileFactory.instanceIRODSFile(collectionUploadDirStr);
-				// If the uploads directory exists and we can read it, read
-				if (collectionUploadDir.exists() && collectionUploadDir.canRead())
+				for (Integer imageIndex = firstImageIndex; imageIndex < toSave.size(); imageIndex = imageIndex + saveThreads)
 				{
-					File[] files = collectionUploadDir.listFiles(File::isDirectory);
-					double totalFiles = files.length;
-					int numDone = 0;
-					for (File file : files)
+					// Save that specific cloud image
+					CloudImageEntry cloudImageEntry = toSave.get(imageIndex);
+					String cyverseAbsolutePath = cloudImageEntry.getCyverseFile().getAbsolutePath();
+					try
 					{
-						progressProperty.setValue(++numDone / totalFiles);
-						// We recognize uploads by their UploadMeta.json file
-						String contents = this.readRemoteFile(file.getAbsolutePath() + "/UploadMeta.json");
-						if (contents != null)
-						{
-							try
-							{
-								// Download the cloud upload entry
-								CloudUploadEntry uploadEntry = SanimalData.getInstance().getGson().fromJson(contents, CloudUploadEntry.class);
-								if (uploadEntry != null)
-								{
-									uploadEntry.initFromJSON();
-									Platform.runLater(() -> collection.getUploads().add(uploadEntry));
-								}
-							}
-							catch (JsonSyntaxException e)
-							{
-								// If the JSON file is incorrectly formatted, throw an error
-								SanimalData.getInstance().getErrorDisplay().showPopup(
-										Alert.AlertType.ERROR,
-										null,
-										"Error",
-										"JSON upload error",
-										"Could not read the upload metadata for the upload " + file.getName() + "!\n" + ExceptionUtils.getStackTrace(e),
-										false);
-							}
-						}
+						this.saveCloudImage(cloudImageEntry, collectionIDTag, pathToExistingMetadata.get(cyverseAbsolutePath));
+					}
+					catch (JargonException e)
+					{
+						this.sessionManager.markCurrentSessionFailed();
+						// Print the error and move on to the next image
+						SanimalData.getInstance().getErrorDisplay().printError("Could not save image: " + cyverseAbsolutePath + ", error was: ");
+						e.printStackTrace();
+						failedImages.add(cyverseAbsolutePath);
 					}
+					progressCallback.accept(imagesSaved.incrementAndGet());
 				}
-			}
-			catch (JargonException e)
-			{
-				SanimalData.getInstance().getErrorDisplay().showPopup(
-						Alert.AlertType.ERROR,
-						null,
-						"Error",
-						"Upload retrieval error",
-						"Could not download the list of uploads to the collection from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
-						false);
-			}
-			this.sessionManager.closeSession();
+				return null;
+			})));
+		}
+		saveExecutor.shutdown();
+
+		try
+		{
+			// Wait for every image to save, if any save thread failed this throws its error
+			for (Future<Void> imageSave : imageSaves)
+				imageSave.get();
+		}
+		catch (InterruptedException e)
+		{
+			saveExecutor.shutdownNow();
+			throw e;
 		}
+		catch (ExecutionException e)
+		{
+			// Unwrap the error so it's reported the same way as an error on this thread
+			if (e.getCause() instanceof JargonException)
+				throw (JargonException) e.getCause();
+			throw new JargonException(e.getCause());
+		}
+		return new ArrayList<>(failedImages);
 	}
 
 	/**
-	 * Given a collection and an upload to that collection this method returns the local cloud image directory
+	 * Saves a single cloud image's file and metadata to CyVerse. Must be called with an open session
 	 *
-	 * @param uploadEntry The upload in the collection to download
+	 * @param cloudImageEntry The image to save
+	 * @param collectionIDTag The tag marking which collection the image belongs to
+	 * @param existingMetadata The metadata currently on the image in CyVerse, or null if it is not known
+	 * @throws JargonException If the image could not be saved
+	 */
+	private void saveCloudImage(CloudImageEntry cloudImageEntry, AvuData collectionIDTag, List<AvuData> existingMetadata) throws JargonException
+	{
+		// Save that specific cloud image
+		this.remoteCatalog.putFile(cloudImageEntry.getFile(), cloudImageEntry.getCyverseFile());
+
+		// Get the absolute path of the uploaded file
+		String fileAbsoluteCyVersePath = cloudImageEntry.getCyverseFile().getAbsolutePath();
+		// The file on CyVerse changed, so any cached copy and the version read when the image was listed are out of date
+		this.getImageCache().invalidate(fileAbsoluteCyVersePath);
+		cloudImageEntry.setCyverseVersion(null);
+		// If we don't know the current metadata, read it
+		if (existingMetadata == null)
+			existingMetadata = this.remoteCatalog.fetchMetadata(fileAbsoluteCyVersePath);
+		// Write image metadata to the file
+		List<AvuData> imageMetadata = cloudImageEntry.convertToAVUMetadata();
+		imageMetadata.add(collectionIDTag);
+		this.replaceSanimalMetadata(this.remoteCatalog.getDataObjectAO(), fileAbsoluteCyVersePath, existingMetadata, imageMetadata);
+	}
+
+	/**
+	 * Replaces the SANIMAL metadata on a data object with new metadata. Only metadata that changed is sent, using one bulk delete and one
+	 * bulk add. Metadata not written by SANIMAL is left alone
+	 *
+	 * @param dataObjectAO The data object access object to write metadata with
+	 * @param absolutePath The absolute path of the data object
+	 * @param existingMetadata The metadata currently on the data object
+	 * @param newMetadata The SANIMAL metadata the data object should have
+	 * @throws JargonException If the metadata could not be written
+	 */
+	private void replaceSanimalMetadata(DataObjectAO dataObjectAO, String absolutePath, List<AvuData> existingMetadata, List<AvuData> newMetadata) throws JargonException
+	{
+		Set<String> newKeys = newMetadata.stream().map(this::avuKey).collect(Collectors.toSet());
+		Set<String> existingKeys = existingMetadata.stream().map(this::avuKey).collect(Collectors.toSet());
+
+		// Remove SANIMAL metadata that is no longer on the image, such as a species that was removed
+		List<AvuData> toRemove = existingMetadata.stream().filter(avuData -> SanimalMetadataFields.ALL_AVU_KEYS.contains(avuData.getAttribute()) && !newKeys.contains(this.avuKey(avuData))).collect(Collectors.toList());
+		// Add metadata that isn't on the image yet
+		List<AvuData> toAdd = newMetadata.stream().filter(avuData -> !existingKeys.contains(this.avuKey(avuData))).collect(Collectors.toList());
+
+		if (!toRemove.isEmpty())
+			this.reportBulkFailures(absolutePath, dataObjectAO.deleteBulkAVUMetadataFromDataObject(absolutePath, toRemove));
+		if (!toAdd.isEmpty())
+			this.reportBulkFailures(absolutePath, dataObjectAO.addBulkAVUMetadataToDataObject(absolutePath, toAdd));
+	}
+
+	/**
+	 * Prints an error for each failed operation in a bulk metadata response
+	 *
+	 * @param absolutePath The absolute path of the data object the operation was performed on
+	 * @param responses The responses from the bulk operation
+	 */
+	private void reportBulkFailures(String absolutePath, List<BulkAVUOperationResponse> responses)
+	{
+		for (BulkAVUOperationResponse response : responses)
+			if (response.getResultStatus() != BulkAVUOperationResponse.ResultStatus.OK)
+				SanimalData.getInstance().getErrorDisplay().printError("Could not update metadata " + response.getAvuData().getAttribute() + " on image: " + absolutePath + ", error was: " + response.getMessage());
+	}
+
+	/**
+	 * Converts an AVU into a string that can be used to compare AVUs
+	 *
+	 * @param avuData The AVU to convert
+	 * @return A string containing the attribute, value, and unit
+	 */
+	private String avuKey(AvuData avuData)
+	{
+		return avuData.getAttribute() + "\u0000" + avuData.getValue() + "\u0000" + StringUtils.defaultString(avuData.getUnit());
+	}
+
+	/**
+	 * Sets the number of images that may be saved to CyVerse at the same time
+	 *
+	 * @param saveThreadCount The number of parallel image saves, must be at least 1
+	 */
+	public void setSaveThreadCount(Integer saveThreadCount)
+	{
+		this.saveThreadCount = saveThreadCount;
+	}
+
+	/**
+	 * @return The number of images that may be saved to CyVerse at the same time
+	 */
+	public Integer getSaveThreadCount()
+	{
+		return this.saveThreadCount;
+	}
+
+	/**
+	 * Sets the number of small files like collection.json and UploadMeta.json that may be read from CyVerse at the same time. Reads spend
+	 * most of their time waiting on the network, so more readers load faster until the session pool runs out
+	 *
+	 * @param readWorkerCount The number of parallel reads, must be at least 1
+	 */
+	public void setReadWorkerCount(Integer readWorkerCount)
+	{
+		this.readWorkerCount = readWorkerCount;
+	}
+
+	/**
+	 * @return The number of small files that may be read from CyVerse at the same time
+	 */
+	public Integer getReadWorkerCount()
+	{
+		return this.readWorkerCount;
+	}
+
+	/**
+	 * Starts reading a list of small files from CyVerse in parallel. On the fixed pool each of the read workers reads every Nth item on a
+	 * single session. With virtual threads turned on every item gets its own virtual thread and its own session instead, and the session
+	 * pool decides how many run at once. That keeps every session busy, but each item pays for opening a connection
+	 *
+	 * @param name The name given to the threads, used when debugging
+	 * @param itemCount The number of items to read
+	 * @param itemReader Reads the item at the given index, always called with an open session
+	 * @param reads The list that a future for each submitted task is added to
+	 * @return The executor the reads were submitted to, which has already been shut down
+	 */
+	private ExecutorService submitReads(String name, Integer itemCount, IndexedRead itemReader, List<Future<Void>> reads)
+	{
+		ExecutorService readExecutor;
+		if (BlockingIOExecutors.isUsingVirtualThreads())
+		{
+			readExecutor = BlockingIOExecutors.newVirtualThreadExecutor(name, this.sessionManager.getMaxSessions());
+			for (Integer itemIndex = 0; itemIndex < itemCount; itemIndex++)
+			{
+				Integer finalItemIndex = itemIndex;
+				reads.add(readExecutor.submit(() -> this.sessionManager.withTaskSession(() ->
+				{
+					itemReader.read(finalItemIndex);
+					return null;
+				})));
+			}
+		}
+		else
+		{
+			Integer readerThreads = Math.max(Math.min(this.readWorkerCount, itemCount), 1);
+			readExecutor = BlockingIOExecutors.newExecutor(name, readerThreads);
+			for (Integer threadIndex = 0; threadIndex < readerThreads && threadIndex < itemCount; threadIndex++)
+			{
+				Integer firstItemIndex = threadIndex;
+				reads.add(readExecutor.submit(() -> this.sessionManager.withTaskSession(() ->
+				{
+					for (Integer itemIndex = firstItemIndex; itemIndex < itemCount; itemIndex = itemIndex + readerThreads)
+						itemReader.read(itemIndex);
+					return null;
+				})));
+			}
+		}
+		readExecutor.shutdown();
+		return readExecutor;
+	}
+
+	/**
+	 * Downloads the list of uploads to a collection and inserts them into the collection. Every upload folder is found with a single query,
+	 * upload metadata that hasn't changed since it was last read is taken from a cache, and the rest is read in parallel. Uploads are added
+	 * to the collection in batches so that the FX thread isn't flooded
+	 *
+	 * @param collection The collection to download uploads for
+	 * @param progressProperty A property that is updated with the fraction of uploads read
+	 */
+	public void retrieveAndInsertUploadList(ImageCollection collection, DoubleProperty progressProperty)
+	{
+		// Only one retrieval per collection at a time. Every FX update of a retrieval is posted before it returns, so the next retrieval's
+		// clear always runs after the previous retrieval's uploads were added instead of between them
+		synchronized (this.uploadListLocks.computeIfAbsent(collection.getID(), collectionID -> new Object()))
+		{
+			this.retrieveAndInsertUploadListLocked(collection, progressProperty);
+		}
+	}
+
+	/**
+	 * Downloads the list of uploads to a collection and inserts them into the collection. Must be called while holding the collection's
+	 * upload list lock
+	 *
+	 * @param collection The collection to download uploads for
+	 * @param progressProperty A property that is updated with the fraction of uploads read
+	 */
+	private void retrieveAndInsertUploadListLocked(ImageCollection collection, DoubleProperty progressProperty)
+	{
+		// Map of upload folder -> time the folder's UploadMeta.json was last modified, null if the folders could not be listed
+		Map<String, Long> uploadFolderToModifyTime = null;
+		if (this.sessionManager.openSession())
+		{
+			try
+			{
+				// Clear the current collection uploads
+				Platform.runLater(() -> collection.getUploads().clear());
+				// Grab the uploads folder for a given collection
+				String collectionUploadDirStr = COLLECTIONS_DIRECTORY + "/" + collection.getID().toString() + "/Uploads";
+				// We recognize uploads by their UploadMeta.json file, so list every upload folder containing one along with when it was modified
+				Map<String, Long> uploadFolders = new LinkedHashMap<>();
+				IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, false, null);
+				queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+				queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_MODIFY_TIME);
+				queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_PARENT_NAME, QueryConditionOperators.EQUAL, collectionUploadDirStr);
+				queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_DATA_NAME, QueryConditionOperators.EQUAL, "UploadMeta.json");
+				this.executePagedQuery(queryBuilder, resultRow -> uploadFolders.putIfAbsent(resultRow.getColumn(0), Long.parseLong(resultRow.getColumn(1))));
+				uploadFolderToModifyTime = uploadFolders;
+			}
+			catch (JargonException | JargonQueryException | GenQueryBuilderException | NumberFormatException e)
+			{
+				this.sessionManager.markCurrentSessionFailed();
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"Upload retrieval error",
+						"Could not download the list of uploads to the collection from CyVerse!\n" + ExceptionUtils.getStackTrace(e),
+						false);
+			}
+			this.sessionManager.closeSession();
+		}
+
+		if (uploadFolderToModifyTime == null || uploadFolderToModifyTime.isEmpty())
+			return;
+
+		double totalUploads = uploadFolderToModifyTime.size();
+		// Uploads that have been read but not yet added to the collection
+		Queue<CloudUploadEntry> pendingUploads = new ConcurrentLinkedQueue<>();
+		AtomicInteger uploadsRead = new AtomicInteger(0);
+
+		// Any upload whose metadata hasn't changed since we last read it comes from the cache, the rest need to be downloaded
+		Long now = System.currentTimeMillis();
+		this.uploadMetaCache.values().removeIf(cachedUploadMeta -> now - cachedUploadMeta.cachedAt > UPLOAD_META_CACHE_TTL_MILLIS);
+		List<String> uploadFoldersToRead = new ArrayList<>();
+		for (Map.Entry<String, Long> uploadFolderEntry : uploadFolderToModifyTime.entrySet())
+		{
+			CachedUploadMeta cachedUploadMeta = this.uploadMetaCache.get(uploadFolderEntry.getKey());
+			if (cachedUploadMeta != null && cachedUploadMeta.modifyTime == uploadFolderEntry.getValue())
+			{
+				// Parse the cached JSON so every call hands out fresh upload entries
+				CloudUploadEntry uploadEntry = this.parseUploadMeta(uploadFolderEntry.getKey(), cachedUploadMeta.json);
+				if (uploadEntry != null)
+					pendingUploads.add(uploadEntry);
+				uploadsRead.incrementAndGet();
+			}
+			else
+			{
+				uploadFoldersToRead.add(uploadFolderEntry.getKey());
+			}
+		}
+
+		// Begin reading the upload metadata in parallel
+		Map<String, Long> finalUploadFolderToModifyTime = uploadFolderToModifyTime;
+		List<Future<Void>> uploadReads = new ArrayList<>();
+		ExecutorService readExecutor = this.submitReads("Upload Reader", uploadFoldersToRead.size(), uploadIndex ->
+		{
+			String uploadFolder = uploadFoldersToRead.get(uploadIndex);
+			String contents = this.readRemoteFile(uploadFolder + "/UploadMeta.json");
+			if (contents != null)
+			{
+				CloudUploadEntry uploadEntry = this.parseUploadMeta(uploadFolder, contents);
+				if (uploadEntry != null)
+				{
+					this.uploadMetaCache.put(uploadFolder, new CachedUploadMeta(finalUploadFolderToModifyTime.get(uploadFolder), contents));
+					pendingUploads.add(uploadEntry);
+				}
+			}
+			uploadsRead.incrementAndGet();
+		}, uploadReads);
+
+		try
+		{
+			// Periodically add everything read so far to the collection with a single addAll
+			Boolean finished = false;
+			while (!finished)
+			{
+				finished = readExecutor.awaitTermination(UPLOAD_PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				List<CloudUploadEntry> batch = new ArrayList<>();
+				CloudUploadEntry uploadEntry;
+				while ((uploadEntry = pendingUploads.poll()) != null)
+					batch.add(uploadEntry);
+				if (!batch.isEmpty())
+					Platform.runLater(() -> collection.getUploads().addAll(batch));
+				progressProperty.setValue(uploadsRead.get() / totalUploads);
+			}
+
+			// Report the first failure if any thread failed
+			for (Future<Void> uploadRead : uploadReads)
+				uploadRead.get();
+		}
+		catch (InterruptedException e)
+		{
+			readExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"Upload retrieval error",
+					"Could not download the list of uploads to the collection from CyVerse!\n" + ExceptionUtils.getStackTrace(e.getCause()),
+					false);
+		}
+	}
+
+	/**
+	 * Parses the contents of an UploadMeta.json file into an upload entry
+	 *
+	 * @param uploadFolder The upload folder the file was read from, used in error messages
+	 * @param contents The contents of the UploadMeta.json file
+	 * @return The upload entry, or null if the file was empty or malformed
+	 */
+	private CloudUploadEntry parseUploadMeta(String uploadFolder, String contents)
+	{
+		try
+		{
+			// Download the cloud upload entry
+			CloudUploadEntry uploadEntry = SanimalData.getInstance().getGson().fromJson(contents, CloudUploadEntry.class);
+			if (uploadEntry != null)
+				uploadEntry.initFromJSON();
+			return uploadEntry;
+		}
+		catch (JsonSyntaxException e)
+		{
+			// If the JSON file is incorrectly formatted, throw an error
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"JSON upload error",
+					"Could not read the upload metadata for the upload " + FilenameUtils.getName(uploadFolder) + "!\n" + ExceptionUtils.getStackTrace(e),
+					false);
+		}
+		return null;
+	}
+
+	/**
+	 * Given a collection and an upload to that collection this method returns the local cloud image directory
+	 *
+	 * @param uploadEntry The upload in the collection to download
 	 * @return A local version of the uploadEntry
 	 */
 	public CloudImageDirectory downloadUploadDirectory(CloudUploadEntry uploadEntry)
@@ -1085,17 +1744,35 @@ public class CyVerseConnectionManager
 			{
 				// Grab the uploads folder for a given collection
 				String cloudDirectoryStr = uploadEntry.getUploadIRODSPath();
-				IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-				IRODSFile cloudDirectory = fileFactory.instanceIRODSFile(cloudDirectoryStr);
+				IRODSFile cloudDirectory = this.remoteCatalog.instanceFile(cloudDirectoryStr);
 				CloudImageDirectory cloudImageDirectory = new CloudImageDirectory(cloudDirectory);
-				this.createDirectoryAndImageTree(cloudImageDirectory);
+				// Map of absolute path -> metadata of that image, null if the tree had to be listed one directory at a time
+				Map<String, List<AvuData>> pathToMetadata = null;
+				// GenQuery can't escape quotes inside of a LIKE clause, so fall back to listing each directory in that case
+				if (!cloudDirectoryStr.contains("'"))
+				{
+					try
+					{
+						pathToMetadata = this.createDirectoryAndImageTreeFromQuery(cloudImageDirectory);
+					}
+					catch (JargonQueryException | GenQueryBuilderException e)
+					{
+						SanimalData.getInstance().getErrorDisplay().printError("Could not list the upload in bulk, listing it one directory at a time instead.\n" + ExceptionUtils.getStackTrace(e));
+						cloudImageDirectory = new CloudImageDirectory(cloudDirectory);
+					}
+				}
+				if (pathToMetadata == null)
+					this.createDirectoryAndImageTree(cloudImageDirectory);
 				// We need to make sure we remove the UploadMeta.json "image entry"
 				cloudImageDirectory.getChildren().removeIf(imageContainer -> imageContainer instanceof CloudImageEntry && ((CloudImageEntry) imageContainer).getCyverseFile().getAbsolutePath().contains("UploadMeta.json"));
+				// Fill in each image's metadata from CyVerse so browsing the upload doesn't download every image
+				this.hydrateCloudImages(cloudImageDirectory, pathToMetadata);
 				this.sessionManager.closeSession();
 				return cloudImageDirectory;
 			}
 			catch (JargonException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				e.printStackTrace();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
@@ -1111,6 +1788,163 @@ public class CyVerseConnectionManager
 		return null;
 	}
 
+	/**
+	 * Fills in the date, location, and species of every cloud image in a directory using the metadata attached to each image on CyVerse.
+	 * The metadata is fetched in bulk if it is not given, and images without any Sanimal metadata are left to be downloaded when they are
+	 * needed. Metadata is read on the calling thread, then any new locations and species are added to the global lists and the images are
+	 * filled in on the FX thread. Must be called with an open session
+	 *
+	 * @param cloudImageDirectory The directory containing the images to fill in
+	 * @param pathToMetadata Map of absolute path -> metadata of every image in the directory, or null to fetch the metadata
+	 */
+	private void hydrateCloudImages(CloudImageDirectory cloudImageDirectory, Map<String, List<AvuData>> pathToMetadata)
+	{
+		// Map of absolute path -> cloud image
+		Map<String, CloudImageEntry> pathToImage = cloudImageDirectory.flattened()
+				.filter(imageContainer -> imageContainer instanceof CloudImageEntry)
+				.map(imageContainer -> (CloudImageEntry) imageContainer)
+				.collect(Collectors.toMap(cloudImageEntry -> cloudImageEntry.getCyverseFile().getAbsolutePath(), cloudImageEntry -> cloudImageEntry, (first, second) -> first));
+		if (pathToImage.isEmpty())
+			return;
+
+		try
+		{
+			if (pathToMetadata == null)
+				pathToMetadata = this.remoteCatalog.fetchMetadataInBulk(new ArrayList<>(pathToImage.keySet()));
+			// The global lists may only be changed on the FX thread, so resolve against a snapshot of them here. Anything the snapshot
+			// doesn't know about gets appended to the end of these lists
+			List<Location> knownLocations = new ArrayList<>(SanimalData.getInstance().getLocationList());
+			List<Species> knownSpecies = new ArrayList<>(SanimalData.getInstance().getSpeciesList());
+			Integer snapshotLocationCount = knownLocations.size();
+			Integer snapshotSpeciesCount = knownSpecies.size();
+			LocationSpeciesRegistry registry = new LocationSpeciesRegistry(knownLocations, knownSpecies);
+			// Map of cloud image -> image entry holding the metadata read for it
+			Map<CloudImageEntry, ImageEntry> imageToMetadata = new LinkedHashMap<>();
+			pathToMetadata.forEach((absolutePath, metadata) ->
+			{
+				// Only use the metadata if the image has a date taken, otherwise it was never tagged through Sanimal
+				CloudImageEntry cloudImageEntry = pathToImage.get(absolutePath);
+				if (cloudImageEntry != null && metadata.stream().anyMatch(avuData -> avuData.getAttribute().equals(SanimalMetadataFields.A_DATE_TIME_TAKEN)))
+					imageToMetadata.put(cloudImageEntry, this.createImageEntryFromMetadata(absolutePath, metadata, registry));
+			});
+			if (imageToMetadata.isEmpty())
+				return;
+
+			List<Location> newLocations = new ArrayList<>(knownLocations.subList(snapshotLocationCount, knownLocations.size()));
+			List<Species> newSpecies = new ArrayList<>(knownSpecies.subList(snapshotSpeciesCount, knownSpecies.size()));
+			// This runs before the caller gets a chance to show the directory, so the images are filled in before they are visible
+			this.fxThreadExecutor.execute(() ->
+			{
+				// Add new locations and species to the global lists. If an identical one was added since the snapshot was taken, use it instead
+				LocationSpeciesRegistry globalRegistry = new LocationSpeciesRegistry(SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
+				Map<Location, Location> locationReplacements = new IdentityHashMap<>();
+				for (Location location : newLocations)
+				{
+					Location existing = globalRegistry.findLocationById(location.getId());
+					if (existing == null)
+						globalRegistry.addLocation(location);
+					else
+						locationReplacements.put(location, existing);
+				}
+				Map<Species, Species> speciesReplacements = new IdentityHashMap<>();
+				for (Species species : newSpecies)
+				{
+					Species existing = globalRegistry.findSpeciesByScientificName(species.getScientificName());
+					if (existing == null)
+						globalRegistry.addSpecies(species);
+					else
+						speciesReplacements.put(species, existing);
+				}
+
+				imageToMetadata.forEach((cloudImageEntry, metadataEntry) ->
+				{
+					Location location = locationReplacements.getOrDefault(metadataEntry.getLocationTaken(), metadataEntry.getLocationTaken());
+					List<SpeciesEntry> speciesPresent = metadataEntry.getSpeciesPresent().stream()
+							.map(speciesEntry -> new SpeciesEntry(speciesReplacements.getOrDefault(speciesEntry.getSpecies(), speciesEntry.getSpecies()), speciesEntry.getAmount()))
+							.collect(Collectors.toList());
+					cloudImageEntry.hydrateFromMetadata(metadataEntry.getDateTaken(), location, speciesPresent);
+				});
+			});
+		}
+		catch (JargonException | JargonQueryException | GenQueryBuilderException | NumberFormatException e)
+		{
+			this.sessionManager.markCurrentSessionFailed();
+			// Not being able to read the metadata is not fatal, images will just be downloaded to read their metadata instead
+			SanimalData.getInstance().getErrorDisplay().printError("Could not read the metadata of the uploaded images, they will be downloaded instead.\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Creates the directory structure under a cloud directory using three paged queries instead of listing each directory. One query
+	 * lists every sub-collection, one lists every data object, and one reads the metadata of every data object. The tree is then assembled
+	 * locally. Must be called with an open session
+	 *
+	 * @param root The directory to fill in
+	 * @return A map of absolute path -> metadata for every data object in the tree
+	 * @throws JargonException If a query could not be executed
+	 * @throws JargonQueryException If a query was malformed
+	 * @throws GenQueryBuilderException If a query could not be built
+	 */
+	private Map<String, List<AvuData>> createDirectoryAndImageTreeFromQuery(CloudImageDirectory root) throws JargonException, JargonQueryException, GenQueryBuilderException
+	{
+		String rootPath = root.getCyverseDirectory().getAbsolutePath();
+		// LIKE also treats _ as a wildcard, so make sure each result is actually inside the root
+		String childPrefix = rootPath + "/";
+
+		// Sorted so that every collection comes after its parent
+		SortedSet<String> collectionPaths = new TreeSet<>();
+		for (String collectionPath : this.remoteCatalog.listCollectionsUnder(rootPath))
+			if (collectionPath.startsWith(childPrefix))
+				collectionPaths.add(collectionPath);
+
+		// Map of absolute path -> version of every data object in the root or below it
+		SortedMap<String, String> dataObjectToVersion = new TreeMap<>();
+		this.remoteCatalog.listDataObjectsUnder(rootPath).forEach((dataObjectPath, version) ->
+		{
+			String collectionPath = FilenameUtils.getFullPathNoEndSeparator(dataObjectPath);
+			if (collectionPath.equals(rootPath) || collectionPath.startsWith(childPrefix))
+				dataObjectToVersion.put(dataObjectPath, version);
+		});
+		Set<String> dataObjectPaths = dataObjectToVersion.keySet();
+
+		// The metadata of every data object. Objects without metadata don't show up here, which is why they are listed separately
+		Map<String, List<AvuData>> pathToMetadata = new HashMap<>();
+		this.remoteCatalog.listMetadataUnder(rootPath).forEach((dataObjectPath, metadata) ->
+		{
+			if (dataObjectPaths.contains(dataObjectPath))
+				pathToMetadata.put(dataObjectPath, metadata);
+		});
+		for (String dataObjectPath : dataObjectPaths)
+			pathToMetadata.putIfAbsent(dataObjectPath, new ArrayList<>());
+
+		// Assemble the tree, creating IRODSFile instances does not talk to the server
+		Map<String, CloudImageDirectory> pathToDirectory = new HashMap<>();
+		pathToDirectory.put(rootPath, root);
+		for (String collectionPath : collectionPaths)
+		{
+			CloudImageDirectory parent = pathToDirectory.get(FilenameUtils.getFullPathNoEndSeparator(collectionPath));
+			if (parent != null)
+			{
+				CloudImageDirectory subDirectory = new CloudImageDirectory(this.remoteCatalog.instanceFile(collectionPath));
+				parent.addChild(subDirectory);
+				pathToDirectory.put(collectionPath, subDirectory);
+			}
+		}
+		for (String dataObjectPath : dataObjectPaths)
+		{
+			CloudImageDirectory parent = pathToDirectory.get(FilenameUtils.getFullPathNoEndSeparator(dataObjectPath));
+			if (parent != null)
+			{
+				CloudImageEntry cloudImageEntry = new CloudImageEntry(this.remoteCatalog.instanceFile(dataObjectPath));
+				// Remember the version so pulling the image can check the image cache without another round trip
+				cloudImageEntry.setCyverseVersion(dataObjectToVersion.get(dataObjectPath));
+				parent.addImage(cloudImageEntry);
+			}
+		}
+
+		return pathToMetadata;
+	}
+
 	/**
 	 * Recursively create the directory structure
 	 *
@@ -1154,42 +1988,292 @@ public class CyVerseConnectionManager
 		{
 			try
 			{
-				// Convert the query builder to a query generator
-				IRODSGenQueryFromBuilder query = queryBuilder.build().exportIRODSQueryFromBuilder(this.sessionManager.getCurrentAO().getJargonProperties().getMaxFilesAndDirsQueryMax());
-				// Perform the query, and get a set of results
-				IRODSGenQueryExecutor irodsGenQueryExecutor = this.sessionManager.getCurrentAO().getIRODSGenQueryExecutor(this.authenticatedAccount);
-				IRODSQueryResultSet resultSet = irodsGenQueryExecutor.executeIRODSQuery(query, 0);
-
-				List<String> matchingFilePaths = new ArrayList<>();
-
-				// Iterate while more results exist
-				do
-				{
-					// Grab each row
-					for (IRODSQueryResultRow resultRow : resultSet.getResults())
-					{
-						// Get the path to the image and the image name, create an absolute path with the info
-						String pathToImage = resultRow.getColumn(0);
-						String imageName = resultRow.getColumn(1);
-						matchingFilePaths.add(pathToImage + "/" + imageName);
-					}
-
-					// Need this test to avoid NoMoreResultsException
-					if (resultSet.isHasMoreRecords())
-					{
-						// Move the result set on if there's more records
-						IRODSQueryResultSet nextResultSet = irodsGenQueryExecutor.getMoreResults(resultSet);
-						// Close the current result set
-						irodsGenQueryExecutor.closeResults(resultSet);
-						// Advance the "pointer" to the next result set
-						resultSet = nextResultSet;
-					}
-				} while (resultSet.isHasMoreRecords());
-				this.sessionManager.closeSession();
-				return matchingFilePaths;
+				List<String> matchingFilePaths = new ArrayList<>();
+				// Get the path to each image using the collection and image name
+				this.remoteCatalog.queryDataObjects(queryBuilder, matchingFilePaths::add);
+				this.sessionManager.closeSession();
+				return matchingFilePaths;
+			}
+			catch (JargonQueryException | JargonException | NumberFormatException | GenQueryBuilderException e)
+			{
+				this.sessionManager.markCurrentSessionFailed();
+				e.printStackTrace();
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"Query failed",
+						"Query caused an exception!",
+						false);
+			}
+			this.sessionManager.closeSession();
+		}
+
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Counts the images matching a query grouped by one of their attributes. The server still sends one row per value and matching image,
+	 * so the number of rows grows with the number of images just like performQuery. Each row is only a value and an ID though, while
+	 * performQuery reads a path per image and then a row per attribute of every image, and builds an ImageEntry for each. An image with
+	 * several values of the attribute, like an image with two species, is counted once under each value just like the data analyzer
+	 * counts it
+	 *
+	 * @param queryBuilder The query builder with all specified options
+	 * @param groupBy The attribute to group the images by
+	 * @return A map of attribute value -> number of matching images with that value, sorted by value. Empty if the query failed
+	 */
+	public SortedMap<String, Long> performAggregateQuery(CyVerseQuery queryBuilder, AggregateField groupBy)
+	{
+		// Sort numbers like years and months by their value instead of alphabetically
+		SortedMap<String, Long> valueToCount = new TreeMap<>(Comparator.comparing((String value) -> StringUtils.isNumeric(value) ? StringUtils.leftPad(value, 20, '0') : value));
+		if (this.sessionManager.openSession())
+		{
+			try
+			{
+				valueToCount.putAll(this.remoteCatalog.countDataObjectsByValue(queryBuilder, groupBy));
+			}
+			catch (JargonQueryException | JargonException | NumberFormatException | GenQueryBuilderException e)
+			{
+				this.sessionManager.markCurrentSessionFailed();
+				valueToCount.clear();
+				SanimalData.getInstance().getErrorDisplay().showPopup(
+						Alert.AlertType.ERROR,
+						null,
+						"Error",
+						"Query failed",
+						"Aggregate query caused an exception!\n" + ExceptionUtils.getStackTrace(e),
+						false);
+			}
+			this.sessionManager.closeSession();
+		}
+		return valueToCount;
+	}
+
+	/**
+	 * Performs a query given a cyverseQuery object and streams the matching images to a listener. Pages of paths are handed to several
+	 * metadata fetchers while the query is still being read, so images start arriving before the query finishes. Only a few pages may wait
+	 * for a fetcher at once, if the fetchers fall behind reading the query pauses until they catch up
+	 *
+	 * @param queryBuilder The query builder with all specified options
+	 * @param listener The listener given paths and images as they arrive
+	 * @return True if every matching image was loaded, false if the query failed or was cancelled
+	 */
+	public Boolean performQuery(CyVerseQuery queryBuilder, QueryResultListener listener)
+	{
+		// If we ran this query recently just hand back the result from last time
+		Map<String, List<AvuData>> cachedResult = this.getQueryCache().get(this.authenticatedAccount.getUserName(), queryBuilder);
+		if (cachedResult != null)
+			return this.replayCachedQuery(cachedResult, listener);
+
+		long queryStartedAt = System.currentTimeMillis();
+		// Map of absolute path -> metadata of every image fetched, cached once the query finishes
+		Map<String, List<AvuData>> fetchedMetadata = new ConcurrentHashMap<>();
+		// Pages of paths waiting to have their metadata fetched
+		BlockingQueue<List<String>> pendingPages = new ArrayBlockingQueue<>(QUERY_PAGES_IN_FLIGHT);
+		// Set once the query has handed out its last page
+		AtomicBoolean queryFinished = new AtomicBoolean(false);
+		// Set if a fetcher fails so that the query stops reading pages nobody will take
+		AtomicBoolean fetchFailed = new AtomicBoolean(false);
+		// A registry of unique species and locations is shared by the fetchers so images with identical locations don't create two locations
+		LocationSpeciesRegistry registry = new LocationSpeciesRegistry(new ArrayList<>(), new ArrayList<>());
+
+		// The query is read on its own session, and it has to be leased before the fetchers lease theirs. Otherwise the fetchers could take
+		// every free session and wait forever for pages that the query can't read without a session
+		if (!this.sessionManager.openSession())
+			return false;
+
+		// Begin fetching, each thread takes the next waiting page and fetches its metadata on its own session. Leave a session for reading the query
+		Integer fetcherThreads = Math.max(Math.min(QUERY_METADATA_THREAD_COUNT, this.sessionManager.getMaxSessions() - 1), 1);
+		ExecutorService fetchExecutor = BlockingIOExecutors.newExecutor("Query Metadata Fetcher", fetcherThreads);
+		List<Future<Void>> metadataFetches = new ArrayList<>();
+		for (Integer threadIndex = 0; threadIndex < fetcherThreads; threadIndex++)
+		{
+			metadataFetches.add(fetchExecutor.submit(() ->
+			{
+				try
+				{
+					return this.sessionManager.withTaskSession(() ->
+					{
+						while (!listener.isCancelled())
+						{
+							List<String> page = pendingPages.poll(QUERY_PAGE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+							if (page != null)
+								listener.imagesLoaded(this.loadImagesWithMetadata(page, true, registry, fetchedMetadata));
+							// Once the query is done and every page has been taken we're finished
+							else if (queryFinished.get() && pendingPages.isEmpty())
+								break;
+						}
+						return null;
+					});
+				}
+				catch (Exception e)
+				{
+					fetchFailed.set(true);
+					throw e;
+				}
+			}));
+		}
+		fetchExecutor.shutdown();
+
+		Boolean queryRead = false;
+		try
+		{
+			// Read the query, handing off a page of paths whenever enough have been read
+			List<String> currentPage = new ArrayList<>();
+			this.remoteCatalog.queryDataObjects(queryBuilder, path ->
+			{
+				currentPage.add(path);
+				if (currentPage.size() >= QUERY_PAGE_SIZE)
+				{
+					this.handOffQueryPage(new ArrayList<>(currentPage), pendingPages, fetchFailed, listener);
+					currentPage.clear();
+				}
+			});
+			if (!currentPage.isEmpty())
+				this.handOffQueryPage(currentPage, pendingPages, fetchFailed, listener);
+			queryRead = true;
+		}
+		// The query was cancelled or a fetcher failed, either way stop reading
+		catch (CancellationException ignored)
+		{
+		}
+		catch (JargonQueryException | JargonException | NumberFormatException | GenQueryBuilderException e)
+		{
+			this.sessionManager.markCurrentSessionFailed();
+			e.printStackTrace();
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"Query failed",
+					"Query caused an exception!",
+					false);
+		}
+		this.sessionManager.closeSession();
+		// Let the fetchers finish up the last pages
+		queryFinished.set(true);
+
+		try
+		{
+			// Wait for every page to be fetched, if any fetcher failed this throws its error
+			for (Future<Void> metadataFetch : metadataFetches)
+				metadataFetch.get();
+		}
+		catch (InterruptedException e)
+		{
+			fetchExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"Query failed",
+					"Could not fetch image metadata!\n" + ExceptionUtils.getStackTrace(e.getCause()),
+					false);
+			return false;
+		}
+
+		// Only cache the result if every matching image was loaded
+		if (!queryRead || listener.isCancelled())
+			return false;
+		this.getQueryCache().put(this.authenticatedAccount.getUserName(), queryBuilder, fetchedMetadata, queryStartedAt, System.currentTimeMillis() - queryStartedAt);
+		return true;
+	}
+
+	/**
+	 * Hands a cached query result to a listener as if the query had been run, in pages of the same size a real query would use
+	 *
+	 * @param cachedResult A map of absolute path -> metadata of every image matching the query
+	 * @param listener The listener given paths and images
+	 * @return True if every image was handed to the listener, false if the query was cancelled
+	 */
+	private Boolean replayCachedQuery(Map<String, List<AvuData>> cachedResult, QueryResultListener listener)
+	{
+		// A registry of unique species and locations is used to ensure images with identical locations don't create two locations
+		LocationSpeciesRegistry registry = new LocationSpeciesRegistry(new ArrayList<>(), new ArrayList<>());
+		List<ImageEntry> page = new ArrayList<>();
+		Iterator<Map.Entry<String, List<AvuData>>> pathIterator = cachedResult.entrySet().iterator();
+		while (pathIterator.hasNext() && !listener.isCancelled())
+		{
+			Map.Entry<String, List<AvuData>> pathEntry = pathIterator.next();
+			page.add(this.createImageEntryFromMetadata(pathEntry.getKey(), pathEntry.getValue(), registry));
+			if (page.size() >= QUERY_PAGE_SIZE || !pathIterator.hasNext())
+			{
+				listener.pathsFound(page.size());
+				listener.imagesLoaded(page);
+				page = new ArrayList<>();
+			}
+		}
+		return !listener.isCancelled();
+	}
+
+	/**
+	 * Hands a page of query results off to the metadata fetchers, waiting for room if too many pages are already waiting
+	 *
+	 * @param page The page of paths to hand off
+	 * @param pendingPages The queue of pages waiting to be fetched
+	 * @param fetchFailed Set if a fetcher failed
+	 * @param listener The listener to report the page to
+	 * @throws CancellationException If the query was cancelled or a fetcher failed while waiting
+	 */
+	private void handOffQueryPage(List<String> page, BlockingQueue<List<String>> pendingPages, AtomicBoolean fetchFailed, QueryResultListener listener)
+	{
+		listener.pathsFound(page.size());
+		try
+		{
+			// Wait for room in the queue, periodically checking if we should give up instead
+			while (!pendingPages.offer(page, QUERY_PAGE_POLL_MILLIS, TimeUnit.MILLISECONDS))
+				if (fetchFailed.get() || listener.isCancelled())
+					throw new CancellationException();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		// If the query was cancelled don't bother reading the next page
+		if (listener.isCancelled())
+			throw new CancellationException();
+	}
+
+	/**
+	 * Given a list of CyVerse absolute paths, this fetches the metadata for each image and returns it as an image entry. Metadata is
+	 * fetched in bulk using a paged GenQuery per collection instead of one round trip per image
+	 *
+	 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+	 * @return A list of images with metadata on CyVerse
+	 */
+	public List<ImageEntry> fetchMetadataFor(List<String> absoluteIRODSPaths)
+	{
+		return this.fetchMetadataFor(absoluteIRODSPaths, true);
+	}
+
+	/**
+	 * Given a list of CyVerse absolute paths, this fetches the metadata for each image and returns it as an image entry
+	 *
+	 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+	 * @param batched If true metadata is fetched with a paged GenQuery per collection, if false it is fetched one data object at a time
+	 * @return A list of images with metadata on CyVerse
+	 */
+	public List<ImageEntry> fetchMetadataFor(List<String> absoluteIRODSPaths, Boolean batched)
+	{
+		List<ImageEntry> toReturn = new ArrayList<>();
+
+		if (this.sessionManager.openSession())
+		{
+			try
+			{
+				// A registry of unique species and locations is used to ensure images with identical locations don't create two locations
+				toReturn = this.loadImagesWithMetadata(absoluteIRODSPaths, batched, new LocationSpeciesRegistry(new ArrayList<>(), new ArrayList<>()), null);
 			}
-			catch (JargonQueryException | JargonException | NumberFormatException | GenQueryBuilderException e)
+			catch (JargonException | JargonQueryException | GenQueryBuilderException | NumberFormatException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				e.printStackTrace();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
@@ -1202,194 +2286,378 @@ public class CyVerseConnectionManager
 			this.sessionManager.closeSession();
 		}
 
-		return Collections.emptyList();
+		return toReturn;
 	}
 
 	/**
-	 * Given a list of CyVerse absolute paths, this fetches the metadata for each image and returns it as an image entry
+	 * Given a list of CyVerse absolute paths, this fetches the metadata for each image and returns it as an image entry. Must be called
+	 * with an open session
 	 *
 	 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+	 * @param batched If true metadata is fetched with a paged GenQuery per collection, if false it is fetched one data object at a time
+	 * @param registry The registry used to make sure images with identical locations and species share the same object
+	 * @param metadataSink If not null, the metadata of each image is also put into this map under the image's path
 	 * @return A list of images with metadata on CyVerse
+	 * @throws JargonException If the query could not be executed
+	 * @throws JargonQueryException If the query was malformed
+	 * @throws GenQueryBuilderException If the query could not be built
 	 */
-	public List<ImageEntry> fetchMetadataFor(List<String> absoluteIRODSPaths)
+	private List<ImageEntry> loadImagesWithMetadata(List<String> absoluteIRODSPaths, Boolean batched, LocationSpeciesRegistry registry, Map<String, List<AvuData>> metadataSink) throws JargonException, JargonQueryException, GenQueryBuilderException
 	{
-		List<ImageEntry> toReturn = new ArrayList<>();
+		List<ImageEntry> images = new ArrayList<>();
 
-		if (this.sessionManager.openSession())
+		// Map of absolute path -> the metadata attached to that path
+		Map<String, List<AvuData>> pathToMetadata = batched ? this.remoteCatalog.fetchMetadataInBulk(absoluteIRODSPaths) : new HashMap<>();
+
+		for (String irodsAbsolutePath : absoluteIRODSPaths)
+		{
+			List<AvuData> metadata = pathToMetadata.get(irodsAbsolutePath);
+			// If the bulk query didn't cover this path, query for its metadata directly
+			if (metadata == null)
+				metadata = this.remoteCatalog.fetchMetadata(irodsAbsolutePath);
+			if (metadataSink != null)
+				metadataSink.put(irodsAbsolutePath, metadata);
+			images.add(this.createImageEntryFromMetadata(irodsAbsolutePath, metadata, registry));
+		}
+
+		return images;
+	}
+
+	/**
+	 * Fetches the version of many data objects at once, used to check if a cached copy of each object is still current. Must be called with an
+	 * open session
+	 *
+	 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+	 * @return A map of absolute path -> version of that path as given by CyVerseImageCache.versionOf. Paths that could not be queried are left out
+	 * @throws JargonException If the query could not be executed
+	 * @throws JargonQueryException If the query was malformed
+	 * @throws GenQueryBuilderException If the query could not be built
+	 */
+	private Map<String, String> bulkFetchVersions(List<String> absoluteIRODSPaths) throws JargonException, JargonQueryException, GenQueryBuilderException
+	{
+		Map<String, String> pathToVersion = new HashMap<>();
+		// Select the checksum, modify time, and size of each object. Each replica gets a row, but they all describe the same file
+		this.queryDataObjectsInBatches(absoluteIRODSPaths, Arrays.asList(
+				RodsGenQueryEnum.COL_D_DATA_CHECKSUM,
+				RodsGenQueryEnum.COL_D_MODIFY_TIME,
+				RodsGenQueryEnum.COL_DATA_SIZE), resultRow ->
 		{
-			// A unique list of species and locations is used to ensure images with identical locations don't create two locations
-			List<Location> uniqueLocations = new LinkedList<>();
-			List<Species> uniqueSpecies = new LinkedList<>();
 			try
 			{
-				// We will fill in these various fields from the image metadata
-				LocalDateTime localDateTime;
-				String locationName;
-				String locationID;
-				Double locationLatitude;
-				Double locationLongitude;
-				Double locationElevation;
-				// Map species IDs to metadata entries
-				Map<Integer, String> speciesIDToCommonName = new HashMap<>();
-				Map<Integer, String> speciesIDToScientificName = new HashMap<>();
-				Map<Integer, Integer> speciesIDToCount = new HashMap<>();
-				UUID collectionID = null;
-
-				for (String irodsAbsolutePath : absoluteIRODSPaths)
-				{
-					localDateTime = LocalDateTime.MIN;
-					locationName = "";
-					locationID = "";
-					locationLatitude = 0D;
-					locationLongitude = 0D;
-					locationElevation = 0D;
-					speciesIDToCommonName.clear();
-					speciesIDToScientificName.clear();
-					speciesIDToCount.clear();
-
-					// Perform a second query that returns ALL metadata from a given image
-					for (MetaDataAndDomainData fileDataField : this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount).findMetadataValuesForDataObject(irodsAbsolutePath))
-					{
-						// Test what type of attribute we got, if it's important store the result for later
-						switch (fileDataField.getAvuAttribute())
-						{
-							case SanimalMetadataFields.A_DATE_TIME_TAKEN:
-								Long timeTaken = Long.parseLong(fileDataField.getAvuValue());
-								localDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(timeTaken), ZoneId.systemDefault());
-								break;
-							case SanimalMetadataFields.A_LOCATION_NAME:
-								locationName = fileDataField.getAvuValue();
-								break;
-							case SanimalMetadataFields.A_LOCATION_ID:
-								locationID = fileDataField.getAvuValue();
-								break;
-							case SanimalMetadataFields.A_LOCATION_LATITUDE:
-								locationLatitude = Double.parseDouble(fileDataField.getAvuValue());
-								break;
-							case SanimalMetadataFields.A_LOCATION_LONGITUDE:
-								locationLongitude = Double.parseDouble(fileDataField.getAvuValue());
-								break;
-							case SanimalMetadataFields.A_LOCATION_ELEVATION:
-								locationElevation = Double.parseDouble(fileDataField.getAvuValue());
-								break;
-							case SanimalMetadataFields.A_SPECIES_COMMON_NAME:
-								speciesIDToCommonName.put(Integer.parseInt(fileDataField.getAvuUnit()), fileDataField.getAvuValue());
-								break;
-							case SanimalMetadataFields.A_SPECIES_SCIENTIFIC_NAME:
-								speciesIDToScientificName.put(Integer.parseInt(fileDataField.getAvuUnit()), fileDataField.getAvuValue());
-								break;
-							case SanimalMetadataFields.A_SPECIES_COUNT:
-								speciesIDToCount.put(Integer.parseInt(fileDataField.getAvuUnit()), Integer.parseInt(fileDataField.getAvuValue()));
-								break;
-							case SanimalMetadataFields.A_COLLECTION_ID:
-								collectionID = UUID.fromString(fileDataField.getAvuValue());
-								break;
-							default:
-								break;
-						}
-					}
+				pathToVersion.putIfAbsent(this.dataObjectPath(resultRow), CyVerseImageCache.versionOf(resultRow.getColumn(2), Long.parseLong(resultRow.getColumn(3)), Long.parseLong(resultRow.getColumn(4))));
+			}
+			// If the row is malformed we just don't use the cache for that file
+			catch (NumberFormatException | JargonException ignored)
+			{
+			}
+		});
+		return pathToVersion;
+	}
 
-					// Compute a new location if we need to
-					String finalLocationID = locationID;
-					Boolean locationForImagePresent = uniqueLocations.stream().anyMatch(location -> location.getId().equals(finalLocationID));
-					// Do we have the location?
-					if (!locationForImagePresent)
-						uniqueLocations.add(new Location(locationName, locationID, locationLatitude, locationLongitude, locationElevation));
-					// Compute a new species (s) if we need to
-					for (Integer key : speciesIDToScientificName.keySet())
-					{
-						// Grab the scientific name of the species
-						String speciesScientificName = speciesIDToScientificName.get(key);
-						// Grab the common name of the species
-						String speciesName = speciesIDToCommonName.get(key);
-						// Test if the species is present, if not add it
-						Boolean speciesForImagePresent = uniqueSpecies.stream().anyMatch(species -> species.getScientificName().equalsIgnoreCase(speciesScientificName));
-						if (!speciesForImagePresent)
-							uniqueSpecies.add(new Species(speciesName, speciesScientificName, Species.DEFAULT_ICON));
-					}
+	/**
+	 * Runs a GenQuery over many data objects at once. Paths are grouped by collection, and each group is queried in batches selecting the
+	 * collection name, data name, and the given columns. Must be called with an open session
+	 *
+	 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+	 * @param columns The columns to select after the collection and data name
+	 * @param rowConsumer Called with each row returned. The given columns start at index 2
+	 * @return The set of paths that were queried. Paths that can't be queried in bulk are left out
+	 * @throws JargonException If the query could not be executed
+	 * @throws JargonQueryException If the query was malformed
+	 * @throws GenQueryBuilderException If the query could not be built
+	 */
+	private Set<String> queryDataObjectsInBatches(List<String> absoluteIRODSPaths, List<RodsGenQueryEnum> columns, QueryRowConsumer rowConsumer) throws JargonException, JargonQueryException, GenQueryBuilderException
+	{
+		Set<String> queriedPaths = new HashSet<>();
 
-					// Grab the correct location for the image entry
-					Location correctLocation = uniqueLocations.stream().filter(location -> location.getId().equals(finalLocationID)).findFirst().get();
-					// Create the image entry
-					ImageEntry entry = new ImageEntry(new File(irodsAbsolutePath));
-					// Set the location and date taken
-					entry.setLocationTaken(correctLocation);
-					entry.setDateTaken(localDateTime);
-					// Add the species to the image entries
-					for (Integer key : speciesIDToScientificName.keySet())
-					{
-						String speciesScientificName = speciesIDToScientificName.get(key);
-						Integer speciesCount = speciesIDToCount.get(key);
-						// Grab the species based on ID
-						Species correctSpecies = uniqueSpecies.stream().filter(species -> species.getScientificName().equals(speciesScientificName)).findFirst().get();
-						entry.addSpecies(correctSpecies, speciesCount);
-					}
-					toReturn.add(entry);
-				}
+		// Group the data object names by their parent collection
+		Map<String, List<String>> collectionToDataNames = new HashMap<>();
+		for (String irodsAbsolutePath : absoluteIRODSPaths)
+		{
+			String collectionName = FilenameUtils.getFullPathNoEndSeparator(irodsAbsolutePath);
+			String dataName = FilenameUtils.getName(irodsAbsolutePath);
+			// GenQuery can't escape quotes inside of an IN clause, so leave those for the per object fallback
+			if (!collectionName.contains("'") && !dataName.contains("'"))
+				collectionToDataNames.computeIfAbsent(collectionName, ignored -> new ArrayList<>()).add(dataName);
+		}
+
+		for (Map.Entry<String, List<String>> collectionEntry : collectionToDataNames.entrySet())
+		{
+			String collectionName = collectionEntry.getKey();
+			List<String> dataNames = collectionEntry.getValue();
+			// Query for a limited number of data objects at a time to keep the query string short
+			for (Integer batchStart = 0; batchStart < dataNames.size(); batchStart = batchStart + METADATA_QUERY_BATCH_SIZE)
+			{
+				List<String> batch = dataNames.subList(batchStart, Math.min(batchStart + METADATA_QUERY_BATCH_SIZE, dataNames.size()));
+				for (String dataName : batch)
+					queriedPaths.add(collectionName + "/" + dataName);
+
+				// Select the object and the requested columns
+				IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, false, null);
+				queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+				queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME);
+				for (RodsGenQueryEnum column : columns)
+					queryBuilder.addSelectAsGenQueryValue(column);
+				// Only select objects in this collection with one of the names in the batch
+				queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.EQUAL, collectionName);
+				queryBuilder.addConditionAsMultiValueCondition(RodsGenQueryEnum.COL_DATA_NAME, QueryConditionOperators.IN, batch);
+
+				this.executePagedQuery(queryBuilder, rowConsumer);
 			}
-			catch (JargonException | NumberFormatException e)
+		}
+
+		return queriedPaths;
+	}
+
+	/**
+	 * Executes a GenQuery and passes every row of every page of results to a callback. Must be called with an open session
+	 *
+	 * @param queryBuilder The query to execute
+	 * @param rowConsumer Called once with each row returned
+	 * @throws JargonException If the query could not be executed
+	 * @throws JargonQueryException If the query was malformed
+	 * @throws GenQueryBuilderException If the query could not be built
+	 */
+	private void executePagedQuery(IRODSGenQueryBuilder queryBuilder, QueryRowConsumer rowConsumer) throws JargonException, JargonQueryException, GenQueryBuilderException
+	{
+		IRODSGenQueryExecutor irodsGenQueryExecutor = this.sessionManager.getCurrentAO().getIRODSGenQueryExecutor(this.authenticatedAccount);
+		Integer maxResultsPerPage = this.sessionManager.getCurrentAO().getJargonProperties().getMaxFilesAndDirsQueryMax();
+
+		// Perform the query, and get a set of results
+		IRODSGenQueryFromBuilder query = queryBuilder.exportIRODSQueryFromBuilder(maxResultsPerPage);
+		IRODSQueryResultSet resultSet = irodsGenQueryExecutor.executeIRODSQuery(query, 0);
+
+		// Iterate while more results exist
+		while (true)
+		{
+			for (IRODSQueryResultRow resultRow : resultSet.getResults())
+				rowConsumer.accept(resultRow);
+
+			// Need this test to avoid NoMoreResultsException
+			if (!resultSet.isHasMoreRecords())
+				break;
+
+			// Move the result set on if there's more records
+			IRODSQueryResultSet nextResultSet = irodsGenQueryExecutor.getMoreResults(resultSet);
+			// Close the current result set
+			irodsGenQueryExecutor.closeResults(resultSet);
+			// Advance the "pointer" to the next result set
+			resultSet = nextResultSet;
+		}
+		irodsGenQueryExecutor.closeResults(resultSet);
+	}
+
+	/**
+	 * Returns the absolute path of the data object in a result row whose first two columns are the collection name and data name
+	 *
+	 * @param resultRow The row returned by a query
+	 * @return The absolute path of the data object
+	 * @throws JargonException If a column could not be read
+	 */
+	private String dataObjectPath(IRODSQueryResultRow resultRow) throws JargonException
+	{
+		return resultRow.getColumn(0) + "/" + resultRow.getColumn(1);
+	}
+
+	/**
+	 * Callback given the index of each item of a parallel read
+	 */
+	@FunctionalInterface
+	private interface IndexedRead
+	{
+		/**
+		 * Reads one item of a parallel read
+		 *
+		 * @param itemIndex The index of the item to read
+		 * @throws Exception If the item could not be read
+		 */
+		void read(Integer itemIndex) throws Exception;
+	}
+
+	/**
+	 * Callback given each row of a query
+	 */
+	@FunctionalInterface
+	private interface QueryRowConsumer
+	{
+		/**
+		 * Called once per result row
+		 *
+		 * @param resultRow The row returned by the query
+		 * @throws JargonException If a column could not be read
+		 */
+		void accept(IRODSQueryResultRow resultRow) throws JargonException;
+	}
+
+	/**
+	 * Creates an image entry from a list of metadata attached to a data object on CyVerse
+	 *
+	 * @param irodsAbsolutePath The absolute path of the image on CyVerse
+	 * @param metadata The metadata attached to the image
+	 * @param registry A registry of unique locations and species used so that images with identical locations or species share one object
+	 * @return An image entry with the metadata loaded into it
+	 */
+	private ImageEntry createImageEntryFromMetadata(String irodsAbsolutePath, List<AvuData> metadata, LocationSpeciesRegistry registry)
+	{
+		// We will fill in these various fields from the image metadata
+		LocalDateTime localDateTime = LocalDateTime.MIN;
+		String locationName = "";
+		String locationID = "";
+		Double locationLatitude = 0D;
+		Double locationLongitude = 0D;
+		Double locationElevation = 0D;
+		// Map species IDs to metadata entries
+		Map<Integer, String> speciesIDToCommonName = new HashMap<>();
+		Map<Integer, String> speciesIDToScientificName = new HashMap<>();
+		Map<Integer, Integer> speciesIDToCount = new HashMap<>();
+
+		for (AvuData fileDataField : metadata)
+		{
+			// Test what type of attribute we got, if it's important store the result for later
+			switch (fileDataField.getAttribute())
 			{
-				e.printStackTrace();
-				SanimalData.getInstance().getErrorDisplay().showPopup(
-						Alert.AlertType.ERROR,
-						null,
-						"Error",
-						"Query failed",
-						"Query caused an exception!",
-						false);
+				case SanimalMetadataFields.A_DATE_TIME_TAKEN:
+					Long timeTaken = Long.parseLong(fileDataField.getValue());
+					localDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(timeTaken), ZoneId.systemDefault());
+					break;
+				case SanimalMetadataFields.A_LOCATION_NAME:
+					locationName = fileDataField.getValue();
+					break;
+				case SanimalMetadataFields.A_LOCATION_ID:
+					locationID = fileDataField.getValue();
+					break;
+				case SanimalMetadataFields.A_LOCATION_LATITUDE:
+					locationLatitude = Double.parseDouble(fileDataField.getValue());
+					break;
+				case SanimalMetadataFields.A_LOCATION_LONGITUDE:
+					locationLongitude = Double.parseDouble(fileDataField.getValue());
+					break;
+				case SanimalMetadataFields.A_LOCATION_ELEVATION:
+					locationElevation = Double.parseDouble(fileDataField.getValue());
+					break;
+				case SanimalMetadataFields.A_SPECIES_COMMON_NAME:
+					speciesIDToCommonName.put(Integer.parseInt(fileDataField.getUnit()), fileDataField.getValue());
+					break;
+				case SanimalMetadataFields.A_SPECIES_SCIENTIFIC_NAME:
+					speciesIDToScientificName.put(Integer.parseInt(fileDataField.getUnit()), fileDataField.getValue());
+					break;
+				case SanimalMetadataFields.A_SPECIES_COUNT:
+					speciesIDToCount.put(Integer.parseInt(fileDataField.getUnit()), Integer.parseInt(fileDataField.getValue()));
+					break;
+				default:
+					break;
 			}
-			this.sessionManager.closeSession();
 		}
 
-		return toReturn;
+		// Grab the correct location for the image entry, creating a new location if we need to
+		Location correctLocation = registry.findLocationById(locationID);
+		if (correctLocation == null)
+		{
+			correctLocation = new Location(locationName, locationID, locationLatitude, locationLongitude, locationElevation);
+			registry.addLocation(correctLocation);
+		}
+
+		// Create the image entry
+		ImageEntry entry = new ImageEntry(new File(irodsAbsolutePath));
+		// Set the location and date taken
+		entry.setLocationTaken(correctLocation);
+		entry.setDateTaken(localDateTime);
+		// Add the species to the image entries
+		for (Integer key : speciesIDToScientificName.keySet())
+		{
+			// Grab the scientific name of the species
+			String speciesScientificName = speciesIDToScientificName.get(key);
+			Integer speciesCount = speciesIDToCount.get(key);
+			// Grab the species based on scientific name, if it's not present add it
+			Species correctSpecies = registry.findSpeciesByScientificName(speciesScientificName);
+			if (correctSpecies == null)
+			{
+				correctSpecies = new Species(speciesIDToCommonName.get(key), speciesScientificName, Species.DEFAULT_ICON);
+				registry.addSpecies(correctSpecies);
+			}
+			entry.addSpecies(correctSpecies, speciesCount);
+		}
+		// This entry just mirrors what is on CyVerse so it does not need to be written anywhere
+		entry.markDiskDirty(false);
+		return entry;
 	}
 
 	/**
 	 * Function used to download a list of iRODS images into a directory specified. Also takes a progress callback as an argument that that can be updated to
-	 * show task progress
+	 * show task progress. Images are downloaded in parallel, and if the download is interrupted calling this again with the same directory resumes it
 	 *
 	 * @param absoluteIRODSImagePaths A list of absolute iRODS paths to download
 	 * @param dirToSaveTo The directory to download into
 	 * @param progressCallback A callback that can be updated to show download progress
+	 * @param messageCallback A callback that can be updated to show download speed, may be null
+	 * @return The result of the download including any images that failed to download
 	 */
-	public void downloadImages(List<String> absoluteIRODSImagePaths, File dirToSaveTo, DoubleProperty progressCallback)
+	public CyVerseDownloadManager.DownloadResult downloadImages(List<String> absoluteIRODSImagePaths, File dirToSaveTo, DoubleProperty progressCallback, StringProperty messageCallback)
 	{
-		List<String> absoluteLocalFilePaths = absoluteIRODSImagePaths.stream().map(absoluteImagePath -> dirToSaveTo.getAbsolutePath() + File.separator + FilenameUtils.getName(absoluteImagePath)).collect(Collectors.toList());
-		for (int i = 0; i < absoluteIRODSImagePaths.size(); i++)
-		{
-			String absoluteIRODSImagePath = absoluteIRODSImagePaths.get(i);
-			String absoluteLocalFilePath = absoluteLocalFilePaths.get(i);
-			File localFile = new File(absoluteLocalFilePath);
+		CyVerseDownloadManager downloadManager = new CyVerseDownloadManager(DAVRODS_URL, DOWNLOAD_THREAD_COUNT, DOWNLOAD_RETRY_COUNT, DOWNLOAD_RETRY_BACKOFF_MILLIS);
 
-			// While the file exists, we update the path to have a new file name, and then re-create the local file
-			while (localFile.exists())
-			{
-				// Use a random alphabetic character at the end of the file name to make sure the file name is unique
-				absoluteLocalFilePath = absoluteLocalFilePath.replace(".", RandomStringUtils.randomAlphabetic(1) + ".");
-				localFile = new File(absoluteLocalFilePath);
-			}
-			String webPathToDownload = StringEscapeUtils.escapeHtml(DAVRODS_URL + absoluteIRODSImagePath).replace(" ", "%20");
+		// Look up the current version of each image so that any we have cached don't need to be downloaded
+		if (this.sessionManager.openSession())
+		{
 			try
 			{
-				FileUtils.copyURLToFile(new URL(webPathToDownload), localFile, 30000, 30000);
+				if (messageCallback != null)
+					messageCallback.setValue("Checking for cached images...");
+				downloadManager.setImageCache(this.getImageCache(), this.bulkFetchVersions(absoluteIRODSImagePaths));
 			}
-			catch (IOException e)
+			// If the versions can't be read just download everything
+			catch (JargonException | JargonQueryException | GenQueryBuilderException e)
 			{
-				System.out.println("There was an error downloading the image file, error was:\n" + ExceptionUtils.getStackTrace(e));
+				this.sessionManager.markCurrentSessionFailed();
+				SanimalData.getInstance().getErrorDisplay().printError("Could not look up image versions, cached images will not be used.\n" + ExceptionUtils.getStackTrace(e));
 			}
-
-			if (i % 10 == 0)
-				progressCallback.setValue((double) i / absoluteIRODSImagePaths.size());
+			this.sessionManager.closeSession();
 		}
+
+		return downloadManager.download(absoluteIRODSImagePaths, dirToSaveTo, progressCallback, messageCallback);
+	}
+
+	/**
+	 * Returns the current version of a data object on CyVerse. Must be called with an open session
+	 *
+	 * @param cyverseFile The file to get the version of
+	 * @return The version of the file as given by CyVerseImageCache.versionOf
+	 * @throws JargonException If the file could not be found
+	 */
+	private String versionOf(IRODSFile cyverseFile) throws JargonException
+	{
+		DataObject dataObject = this.sessionManager.getCurrentAO().getDataObjectAO(this.authenticatedAccount).findByAbsolutePath(cyverseFile.getAbsolutePath());
+		return CyVerseImageCache.versionOf(dataObject.getChecksum(), dataObject.getUpdatedAt().getTime() / 1000, dataObject.getDataSize());
+	}
+
+	/**
+	 * Returns the cache of files downloaded from CyVerse
+	 *
+	 * @return The image cache
+	 */
+	public CyVerseImageCache getImageCache()
+	{
+		return this.imageCache;
+	}
+
+	/**
+	 * Returns the cache of query results
+	 *
+	 * @return The query cache
+	 */
+	public CyVerseQueryCache getQueryCache()
+	{
+		return this.queryCache;
 	}
 
 	/**
 	 * Downloads a CyVerse file to a local file
 	 *
 	 * @param cyverseFile The file in CyVerse to download
+	 * @param knownVersion The version of the file read when it was listed, or null to look the version up first
 	 * @return The local file
 	 */
-	public File remoteToLocalImageFile(IRODSFile cyverseFile)
+	public File remoteToLocalImageFile(IRODSFile cyverseFile, String knownVersion)
 	{
 		if (this.sessionManager.openSession())
 		{
@@ -1400,22 +2668,30 @@ public class CyVerseConnectionManager
 				// Create a temporary file to write to with the same name
 				File localImageFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile(fileName);
 
-				// Download the file locally
-				this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).getOperation(cyverseFile, localImageFile, new TransferStatusCallbackListener()
+				// If we have this version of the file cached we don't need to download it. Only ask CyVerse for the version if it wasn't read when the file was listed
+				String version = knownVersion != null ? knownVersion : this.versionOf(cyverseFile);
+				if (!this.getImageCache().copyTo(cyverseFile.getAbsolutePath(), version, localImageFile))
 				{
-					@Override
-					public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
-					@Override
-					public void overallStatusCallback(TransferStatus transferStatus) {}
-					@Override
-					public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
-				}, null);
+					// Download the file locally
+					this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).getOperation(cyverseFile, localImageFile, new TransferStatusCallbackListener()
+					{
+						@Override
+						public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
+						@Override
+						public void overallStatusCallback(TransferStatus transferStatus) {}
+						@Override
+						public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
+					}, null);
+					// Cache it for next time
+					this.getImageCache().put(cyverseFile.getAbsolutePath(), version, localImageFile);
+				}
 
 				this.sessionManager.closeSession();
 				return localImageFile;
 			}
 			catch (JargonException e)
 			{
+				this.sessionManager.markCurrentSessionFailed();
 				SanimalData.getInstance().getErrorDisplay().showPopup(
 						Alert.AlertType.ERROR,
 						null,
@@ -1437,28 +2713,49 @@ public class CyVerseConnectionManager
 	 * @return The contents of the file on CyVerse's system as a string
 	 */
 	private String readRemoteFile(String file)
+	{
+		return this.readRemote(file, IOUtils::toString);
+	}
+
+	/**
+	 * Reads a JSON file from CyVerse assuming a user is already logged in. The file is parsed as it is streamed from CyVerse, so it is
+	 * never written to disk or held in memory as a string
+	 *
+	 * @param file The path to the file to read
+	 * @param type The type to parse the JSON into
+	 * @param <T> The type of object parsed
+	 * @return The object parsed from the file, or null if the file could not be read
+	 * @throws JsonSyntaxException If the file is not valid JSON of the given type
+	 */
+	private <T> T readRemoteJson(String file, Type type)
+	{
+		return this.readRemote(file, reader -> SanimalData.getInstance().getGson().fromJson(reader, type));
+	}
+
+	/**
+	 * Opens a file on CyVerse as a character stream and passes it to a reader function. Must be called with an open session
+	 *
+	 * @param file The path to the file to read
+	 * @param contentReader The function that reads the file's contents
+	 * @param <T> The type of value read
+	 * @return The value read, or null if the file could not be read
+	 */
+	private <T> T readRemote(String file, RemoteContentReader<T> contentReader)
 	{
 		try
 		{
-			IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-			// Create a temporary file to write to
-			File localFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile("sanimalTemp." + FilenameUtils.getExtension(file));
-			// Delete the temporary file before copying so that we don't need to specify overwriting
-			localFile.delete();
 			// Create the remote file instance
-			IRODSFile remoteFile = fileFactory.instanceIRODSFile(file);
+			IRODSFile remoteFile = this.remoteCatalog.instanceFile(file);
 			// Ensure it exists
 			if (remoteFile.exists())
 			{
 				// Ensure it can be read
 				if (remoteFile.canRead())
 				{
-					this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).getOperation(remoteFile, localFile, null, null);
-					// Ensure that the file exists and transfered
-					if (localFile.exists())
+					// Stream the file straight from CyVerse
+					try (Reader reader = new BufferedReader(new InputStreamReader(this.remoteCatalog.openInputStream(remoteFile), StandardCharsets.UTF_8)))
 					{
-						// Read the contents of the file and return them
-						return new String(Files.readAllBytes(localFile.toPath()));
+						return contentReader.read(reader);
 					}
 				}
 				else
@@ -1473,8 +2770,9 @@ public class CyVerseConnectionManager
 				}
 			}
 		}
-		catch (IOException | JargonException e)
+		catch (IOException | JargonException | JsonIOException e)
 		{
+			this.sessionManager.markCurrentSessionFailed();
 			SanimalData.getInstance().getErrorDisplay().showPopup(
 					Alert.AlertType.ERROR,
 					null,
@@ -1496,48 +2794,50 @@ public class CyVerseConnectionManager
 	 */
 	private void writeRemoteFile(String file, String value)
 	{
-		// Create a temporary file to write each location to before uploading
+		this.writeRemote(file, writer -> writer.write(value));
+	}
+
+	/**
+	 * Write an object as JSON to a file on the CyVerse server. The JSON is never written to disk
+	 *
+	 * @param file  The file to write to
+	 * @param value The object to convert to JSON and write to the file
+	 */
+	private void writeRemoteJson(String file, Object value)
+	{
+		this.writeRemote(file, writer -> SanimalData.getInstance().getGson().toJson(value, writer));
+	}
+
+	/**
+	 * Replaces the contents of a file on CyVerse with whatever a writer function writes. The contents are written into memory first and
+	 * only sent once they are complete, so if writing them fails the file on CyVerse is left untouched instead of being truncated. Must be
+	 * called with an open session
+	 *
+	 * @param file The file to write to
+	 * @param contentWriter The function that writes the file's contents
+	 */
+	private void writeRemote(String file, RemoteContentWriter contentWriter)
+	{
 		try
 		{
-			IRODSFileFactory fileFactory = this.sessionManager.getCurrentAO().getIRODSFileFactory(this.authenticatedAccount);
-			// Create a local file to write to
-			File localFile = SanimalData.getInstance().getTempDirectoryManager().createTempFile("sanimalTemp." + FilenameUtils.getExtension(file));
-			localFile.createNewFile();
-			// Ensure the file we made exists
-			if (localFile.exists())
+			// Write the contents into memory first, these files are small
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(contents, StandardCharsets.UTF_8)))
 			{
-				// Create the irods file to write to
-				IRODSFile remoteLocationFile = fileFactory.instanceIRODSFile(file);
-
-				// Create a file writer which writes a string to a file. Write the value to the local file
-				try (PrintWriter fileWriter = new PrintWriter(localFile))
-				{
-					fileWriter.write(value);
-				}
-				// Perform a put operation to write the local file to the CyVerse server
-				this.sessionManager.getCurrentAO().getDataTransferOperations(this.authenticatedAccount).putOperation(localFile, remoteLocationFile, new TransferStatusCallbackListener()
-				{
-					@Override
-					public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
-					@Override
-					public void overallStatusCallback(TransferStatus transferStatus) {}
-					@Override
-					public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
-				}, null);
+				contentWriter.write(writer);
 			}
-			else
+
+			// Create the irods file to write to
+			IRODSFile remoteFile = this.remoteCatalog.instanceFile(file);
+			// Send the finished contents to CyVerse in one write, truncating anything that was there before
+			try (OutputStream outputStream = this.remoteCatalog.openOutputStream(remoteFile))
 			{
-				SanimalData.getInstance().getErrorDisplay().showPopup(
-						Alert.AlertType.ERROR,
-						null,
-						"Error",
-						"File error",
-						"Error creating a temporary file to write to!",
-						false);
+				contents.writeTo(outputStream);
 			}
 		}
-		catch (IOException | JargonException e)
+		catch (IOException | JargonException | JsonIOException e)
 		{
+			this.sessionManager.markCurrentSessionFailed();
 			SanimalData.getInstance().getErrorDisplay().showPopup(
 					Alert.AlertType.ERROR,
 					null,
@@ -1547,4 +2847,360 @@ public class CyVerseConnectionManager
 					false);
 		}
 	}
+
+	/**
+	 * Function that reads the contents of a remote file
+	 *
+	 * @param <T> The type of value read
+	 */
+	@FunctionalInterface
+	private interface RemoteContentReader<T>
+	{
+		/**
+		 * Reads the file's contents
+		 *
+		 * @param reader The character stream of the file
+		 * @return The value read
+		 * @throws IOException If the file could not be read
+		 */
+		T read(Reader reader) throws IOException;
+	}
+
+	/**
+	 * Function that writes the contents of a remote file
+	 */
+	@FunctionalInterface
+	private interface RemoteContentWriter
+	{
+		/**
+		 * Writes the file's contents
+		 *
+		 * @param writer The character stream of the file
+		 * @throws IOException If the file could not be written
+		 */
+		void write(Writer writer) throws IOException;
+	}
+
+	/**
+	 * The calls made to CyVerse when listing uploads and loading collections. Listing and reading are round trips to the server, creating
+	 * file instances is not. The default implementation talks to jargon, but tests may provide a fake server instead
+	 */
+	interface RemoteCatalog
+	{
+		/**
+		 * Creates a file instance for a path on CyVerse. Does not talk to the server, but calls on the returned file may
+		 *
+		 * @param path The absolute path of the file or collection
+		 * @return The file instance
+		 * @throws JargonException If the file instance could not be created
+		 */
+		IRODSFile instanceFile(String path) throws JargonException;
+
+		/**
+		 * Opens a file on CyVerse to read its contents
+		 *
+		 * @param file The file to read
+		 * @return A stream of the file's contents
+		 * @throws JargonException If the file could not be opened
+		 */
+		InputStream openInputStream(IRODSFile file) throws JargonException;
+
+		/**
+		 * Opens a file on CyVerse to replace its contents, creating it if it doesn't exist
+		 *
+		 * @param file The file to write
+		 * @return A stream that writes the file's contents
+		 * @throws JargonException If the file could not be opened
+		 */
+		OutputStream openOutputStream(IRODSFile file) throws JargonException;
+
+		/**
+		 * Lists the collections directly inside of a collection
+		 *
+		 * @param parentCollection The absolute path of the collection to list
+		 * @return A sorted list of absolute paths of each sub-collection
+		 * @throws JargonException If the query could not be executed
+		 * @throws JargonQueryException If the query was malformed
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		List<String> listSubCollections(String parentCollection) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Lists every collection below a collection at any depth. LIKE treats _ as a wildcard, so paths outside of the root may be included
+		 *
+		 * @param rootPath The absolute path of the collection to list
+		 * @return The absolute path of each collection found
+		 * @throws JargonException If the query could not be executed
+		 * @throws JargonQueryException If the query was malformed
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		List<String> listCollectionsUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Lists every data object in a collection or below it at any depth along with its version. LIKE treats _ as a wildcard, so paths
+		 * outside of the root may be included
+		 *
+		 * @param rootPath The absolute path of the collection to list
+		 * @return A map of absolute path -> version of each data object found as given by CyVerseImageCache.versionOf, the version is null
+		 * if it could not be read
+		 * @throws JargonException If the query could not be executed
+		 * @throws JargonQueryException If the query was malformed
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		Map<String, String> listDataObjectsUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Reads the metadata of every data object in a collection or below it at any depth. Data objects without metadata are left out, and
+		 * LIKE treats _ as a wildcard, so paths outside of the root may be included
+		 *
+		 * @param rootPath The absolute path of the collection to read
+		 * @return A map of absolute path -> metadata of each data object found
+		 * @throws JargonException If the query could not be executed
+		 * @throws JargonQueryException If the query was malformed
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		Map<String, List<AvuData>> listMetadataUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Fetches the metadata of many data objects at once. Paths are grouped by collection, and each group is queried in batches using a
+		 * single paged GenQuery selecting the collection name, data name, and attribute/value/units columns
+		 *
+		 * @param absoluteIRODSPaths The list of absolute iRODS paths on CyVerse
+		 * @return A map of absolute path -> metadata for that path. Paths that could not be queried in bulk are left out of the map
+		 * @throws JargonException If the query could not be executed
+		 * @throws JargonQueryException If the query was malformed
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		Map<String, List<AvuData>> fetchMetadataInBulk(List<String> absoluteIRODSPaths) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Fetches the metadata of a single data object with its own round trip
+		 *
+		 * @param absoluteIRODSPath The absolute iRODS path of the data object
+		 * @return The metadata attached to the data object
+		 * @throws JargonException If the metadata could not be read
+		 */
+		List<AvuData> fetchMetadata(String absoluteIRODSPath) throws JargonException;
+
+		/**
+		 * Runs a query and hands the path of every matching data object to a consumer as each page of results arrives
+		 *
+		 * @param query The query to run
+		 * @param pathConsumer Given the absolute path of each matching data object
+		 * @throws JargonException If the query could not be run
+		 * @throws JargonQueryException If the query could not be run
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		void queryDataObjects(CyVerseQuery query, Consumer<String> pathConsumer) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Counts the data objects matching a query grouped by the value of one of their attributes
+		 *
+		 * @param query The query to run
+		 * @param groupBy The attribute to group the data objects by
+		 * @return A map of attribute value -> number of matching data objects with that value
+		 * @throws JargonException If the query could not be run
+		 * @throws JargonQueryException If the query could not be run
+		 * @throws GenQueryBuilderException If the query could not be built
+		 */
+		Map<String, Long> countDataObjectsByValue(CyVerseQuery query, AggregateField groupBy) throws JargonException, JargonQueryException, GenQueryBuilderException;
+
+		/**
+		 * Creates the access object used to change the metadata of data objects. Does not talk to the server, but calls on the returned
+		 * access object may
+		 *
+		 * @return The data object access object
+		 * @throws JargonException If the access object could not be created
+		 */
+		DataObjectAO getDataObjectAO() throws JargonException;
+
+		/**
+		 * Uploads a local file to CyVerse, replacing the file on CyVerse if it already exists
+		 *
+		 * @param localFile The file to upload
+		 * @param remoteFile The file on CyVerse to write to
+		 * @throws JargonException If the file could not be uploaded
+		 */
+		void putFile(File localFile, IRODSFile remoteFile) throws JargonException;
+	}
+
+	/**
+	 * Catalog that talks to CyVerse using the current thread's session. Must be used with an open session
+	 */
+	private class JargonRemoteCatalog implements RemoteCatalog
+	{
+		@Override
+		public IRODSFile instanceFile(String path) throws JargonException
+		{
+			return sessionManager.getCurrentAO().getIRODSFileFactory(authenticatedAccount).instanceIRODSFile(path);
+		}
+
+		@Override
+		public InputStream openInputStream(IRODSFile file) throws JargonException
+		{
+			return sessionManager.getCurrentAO().getIRODSFileFactory(authenticatedAccount).instanceIRODSFileInputStream(file);
+		}
+
+		@Override
+		public OutputStream openOutputStream(IRODSFile file) throws JargonException
+		{
+			// Truncate anything that was there before
+			return sessionManager.getCurrentAO().getIRODSFileFactory(authenticatedAccount).instanceIRODSFileOutputStream(file, DataObjInp.OpenFlags.WRITE_TRUNCATE);
+		}
+
+		@Override
+		public List<String> listSubCollections(String parentCollection) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			List<String> subCollections = new ArrayList<>();
+			IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, false, null);
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_PARENT_NAME, QueryConditionOperators.EQUAL, parentCollection);
+			executePagedQuery(queryBuilder, resultRow -> subCollections.add(resultRow.getColumn(0)));
+			Collections.sort(subCollections);
+			return subCollections;
+		}
+
+		@Override
+		public List<String> listCollectionsUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			List<String> collectionPaths = new ArrayList<>();
+			IRODSGenQueryBuilder collectionQuery = new IRODSGenQueryBuilder(true, false, null);
+			collectionQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+			collectionQuery.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.LIKE, rootPath + "/%");
+			executePagedQuery(collectionQuery, resultRow -> collectionPaths.add(resultRow.getColumn(0)));
+			return collectionPaths;
+		}
+
+		@Override
+		public Map<String, String> listDataObjectsUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			Map<String, String> dataObjectToVersion = new HashMap<>();
+			IRODSGenQueryBuilder dataObjectQuery = new IRODSGenQueryBuilder(true, false, null);
+			dataObjectQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+			dataObjectQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME);
+			// The version columns come along in the same rows, so they cost no extra round trips
+			dataObjectQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_DATA_CHECKSUM);
+			dataObjectQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_MODIFY_TIME);
+			dataObjectQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_SIZE);
+			dataObjectQuery.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.LIKE, rootPath + "%");
+			executePagedQuery(dataObjectQuery, resultRow ->
+			{
+				// Each replica gets a row, but they all describe the same file
+				String version = null;
+				try
+				{
+					version = CyVerseImageCache.versionOf(resultRow.getColumn(2), Long.parseLong(resultRow.getColumn(3)), Long.parseLong(resultRow.getColumn(4)));
+				}
+				// If the row is malformed the version is looked up when the image is pulled instead
+				catch (NumberFormatException ignored)
+				{
+				}
+				String dataObjectPath = dataObjectPath(resultRow);
+				if (dataObjectToVersion.get(dataObjectPath) == null)
+					dataObjectToVersion.put(dataObjectPath, version);
+			});
+			return dataObjectToVersion;
+		}
+
+		@Override
+		public Map<String, List<AvuData>> listMetadataUnder(String rootPath) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			Map<String, List<AvuData>> pathToMetadata = new HashMap<>();
+			IRODSGenQueryBuilder metadataQuery = new IRODSGenQueryBuilder(true, false, null);
+			metadataQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+			metadataQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME);
+			metadataQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME);
+			metadataQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE);
+			metadataQuery.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_UNITS);
+			metadataQuery.addConditionAsGenQueryField(RodsGenQueryEnum.COL_COLL_NAME, QueryConditionOperators.LIKE, rootPath + "%");
+			executePagedQuery(metadataQuery, resultRow ->
+					pathToMetadata.computeIfAbsent(dataObjectPath(resultRow), ignored -> new ArrayList<>()).add(AvuData.instance(resultRow.getColumn(2), resultRow.getColumn(3), resultRow.getColumn(4))));
+			return pathToMetadata;
+		}
+
+		@Override
+		public Map<String, List<AvuData>> fetchMetadataInBulk(List<String> absoluteIRODSPaths) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			Map<String, List<AvuData>> pathToMetadata = new HashMap<>();
+			// Select all metadata of each object, each row is one attribute of one data object
+			Set<String> queriedPaths = queryDataObjectsInBatches(absoluteIRODSPaths, Arrays.asList(
+					RodsGenQueryEnum.COL_META_DATA_ATTR_NAME,
+					RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE,
+					RodsGenQueryEnum.COL_META_DATA_ATTR_UNITS), resultRow ->
+					pathToMetadata.computeIfAbsent(dataObjectPath(resultRow), ignored -> new ArrayList<>()).add(AvuData.instance(resultRow.getColumn(2), resultRow.getColumn(3), resultRow.getColumn(4))));
+			// Every object we asked for gets an entry, even if it has no metadata, so it doesn't fall back to the per object query
+			for (String queriedPath : queriedPaths)
+				pathToMetadata.putIfAbsent(queriedPath, new ArrayList<>());
+			return pathToMetadata;
+		}
+
+		@Override
+		public List<AvuData> fetchMetadata(String absoluteIRODSPath) throws JargonException
+		{
+			List<AvuData> metadata = new ArrayList<>();
+			for (MetaDataAndDomainData fileDataField : this.getDataObjectAO().findMetadataValuesForDataObject(absoluteIRODSPath))
+				metadata.add(AvuData.instance(fileDataField.getAvuAttribute(), fileDataField.getAvuValue(), fileDataField.getAvuUnit()));
+			return metadata;
+		}
+
+		@Override
+		public void queryDataObjects(CyVerseQuery query, Consumer<String> pathConsumer) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			executePagedQuery(query.build(), resultRow -> pathConsumer.accept(dataObjectPath(resultRow)));
+		}
+
+		@Override
+		public Map<String, Long> countDataObjectsByValue(CyVerseQuery query, AggregateField groupBy) throws JargonException, JargonQueryException, GenQueryBuilderException
+		{
+			// The query is distinct, so every row is a different value and data object pair and counting rows counts data objects
+			Map<String, Long> valueToCount = new HashMap<>();
+			executePagedQuery(query.buildAggregate(groupBy), resultRow -> valueToCount.merge(resultRow.getColumn(0), 1L, Long::sum));
+			return valueToCount;
+		}
+
+		@Override
+		public DataObjectAO getDataObjectAO() throws JargonException
+		{
+			return sessionManager.getCurrentAO().getDataObjectAO(authenticatedAccount);
+		}
+
+		@Override
+		public void putFile(File localFile, IRODSFile remoteFile) throws JargonException
+		{
+			sessionManager.getCurrentAO().getDataTransferOperations(authenticatedAccount).putOperation(localFile, remoteFile, new TransferStatusCallbackListener()
+			{
+				@Override
+				public FileStatusCallbackResponse statusCallback(TransferStatus transferStatus) { return FileStatusCallbackResponse.CONTINUE; }
+				@Override
+				public void overallStatusCallback(TransferStatus transferStatus) {}
+				@Override
+				public CallbackResponse transferAsksWhetherToForceOperation(String irodsAbsolutePath, boolean isCollection) { return CallbackResponse.YES_FOR_ALL; }
+			}, null);
+		}
+	}
+
+	/**
+	 * The contents of an UploadMeta.json file along with the time it was modified on CyVerse
+	 */
+	private static class CachedUploadMeta
+	{
+		// The time the file was last modified on CyVerse in seconds since the epoch
+		private final long modifyTime;
+		// The contents of the file
+		private final String json;
+		// The time the file was cached in milliseconds since the epoch
+		private final long cachedAt = System.currentTimeMillis();
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param modifyTime The time the file was last modified on CyVerse
+		 * @param json The contents of the file
+		 */
+		private CachedUploadMeta(long modifyTime, String json)
+		{
+			this.modifyTime = modifyTime;
+			this.json = json;
+		}
+	}
 }
@@ -0,0 +1,509 @@
+package model.cyverse;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.StringProperty;
+import model.SanimalData;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class used to download many images from CyVerse's web DAV interface in parallel. Downloads are retried with an exponential backoff, and
+ * a manifest is stored in the target directory so that an interrupted download can be resumed where it left off
+ */
+public class CyVerseDownloadManager
+{
+	// The name of the manifest file written into the download directory
+	public static final String MANIFEST_FILE_NAME = ".sanimal-download.json";
+	// The extension given to files while they are being downloaded
+	private static final String PARTIAL_EXTENSION = ".part";
+	// Connection and read timeout used for each request
+	private static final Integer TIMEOUT_MILLIS = 30000;
+	// The minimum time between progress updates and manifest writes
+	private static final Long REPORT_INTERVAL_MILLIS = 1000L;
+	// The type used to serialize the manifest through Gson
+	private static final Type MANIFEST_TYPE = new TypeToken<ArrayList<ManifestEntry>>()
+	{
+	}.getType();
+
+	// The base URL that absolute iRODS paths are appended to
+	private final String baseURL;
+	// The number of files to download at once
+	private final Integer workerCount;
+	// The number of times to retry a failed download
+	private final Integer maxRetries;
+	// The time to wait before the first retry, doubled after each attempt
+	private final Long initialBackoffMillis;
+	// A cache of previously downloaded files that is checked before downloading, may be null
+	private CyVerseImageCache imageCache = null;
+	// Map of iRODS path -> version of the file on CyVerse, only files with a known version are cached
+	private Map<String, String> pathToVersion = Collections.emptyMap();
+
+	/**
+	 * Constructor initializes the download parameters
+	 *
+	 * @param baseURL The base URL that absolute iRODS paths are appended to
+	 * @param workerCount The number of files to download at once
+	 * @param maxRetries The number of times to retry a failed download
+	 * @param initialBackoffMillis The time to wait before the first retry, doubled after each attempt
+	 */
+	public CyVerseDownloadManager(String baseURL, Integer workerCount, Integer maxRetries, Long initialBackoffMillis)
+	{
+		this.baseURL = baseURL;
+		this.workerCount = workerCount;
+		this.maxRetries = maxRetries;
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	/**
+	 * Sets the cache to check before downloading a file. Downloaded files are added to the cache
+	 *
+	 * @param imageCache The cache of previously downloaded files
+	 * @param pathToVersion Map of iRODS path -> version of the file on CyVerse. Files without a version are always downloaded
+	 */
+	public void setImageCache(CyVerseImageCache imageCache, Map<String, String> pathToVersion)
+	{
+		this.imageCache = imageCache;
+		this.pathToVersion = pathToVersion;
+	}
+
+	/**
+	 * Downloads a list of iRODS images into a directory. If a manifest from a previous download exists in the directory, files that were
+	 * already downloaded are skipped and the remaining files keep the names they were assigned the first time
+	 *
+	 * @param absoluteIRODSImagePaths A list of absolute iRODS paths to download
+	 * @param dirToSaveTo The directory to download into
+	 * @param progressCallback A callback that is updated with the fraction of files downloaded, may be null
+	 * @param messageCallback A callback that is updated with a human readable progress message including transfer speed, may be null
+	 * @return A result containing the number of files downloaded and a list of files that failed
+	 */
+	public DownloadResult download(List<String> absoluteIRODSImagePaths, File dirToSaveTo, DoubleProperty progressCallback, StringProperty messageCallback)
+	{
+		File manifestFile = new File(dirToSaveTo, MANIFEST_FILE_NAME);
+		// Read the manifest from a previous attempt and assign a local file name to each image
+		List<ManifestEntry> manifest = this.buildManifest(absoluteIRODSImagePaths, dirToSaveTo, this.readManifest(manifestFile));
+		this.writeManifest(manifestFile, manifest);
+
+		DownloadResult result = new DownloadResult();
+		// Only download images that have not yet been downloaded
+		List<ManifestEntry> toDownload = new ArrayList<>();
+		for (ManifestEntry entry : manifest)
+			if (entry.completed)
+				result.skipped++;
+			else
+				toDownload.add(entry);
+
+		AtomicLong bytesDownloaded = new AtomicLong(0);
+		Long startTime = System.currentTimeMillis();
+		Long lastReport = 0L;
+		Integer finished = 0;
+
+		ExecutorService workers = Executors.newFixedThreadPool(this.workerCount, runnable ->
+		{
+			Thread thread = new Thread(runnable, "CyVerse Downloader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Map.Entry<ManifestEntry, String>> completionService = new ExecutorCompletionService<>(workers);
+		// Submit each download, the result of each download is the entry and null on success or an error message on failure
+		for (ManifestEntry entry : toDownload)
+			completionService.submit(() -> new AbstractMap.SimpleEntry<>(entry, this.downloadWithRetries(entry, dirToSaveTo, bytesDownloaded)));
+
+		try
+		{
+			// Collect results as they complete, periodically writing the manifest and updating progress
+			while (finished < toDownload.size())
+			{
+				Future<Map.Entry<ManifestEntry, String>> future = completionService.poll(REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (future != null)
+				{
+					finished++;
+					Map.Entry<ManifestEntry, String> downloadResult = future.get();
+					if (downloadResult.getValue() == null)
+					{
+						downloadResult.getKey().completed = true;
+						result.downloaded++;
+					}
+					else
+					{
+						result.failures.put(downloadResult.getKey().irodsPath, downloadResult.getValue());
+					}
+				}
+
+				// Only report progress and write the manifest once in a while
+				Long now = System.currentTimeMillis();
+				if (now - lastReport >= REPORT_INTERVAL_MILLIS || finished == toDownload.size())
+				{
+					lastReport = now;
+					this.writeManifest(manifestFile, manifest);
+					if (progressCallback != null)
+						progressCallback.setValue((double) (result.skipped + finished) / manifest.size());
+					if (messageCallback != null)
+					{
+						double megabytesPerSecond = bytesDownloaded.get() / 1048576.0 / Math.max(now - startTime, 1L) * 1000.0;
+						messageCallback.setValue(String.format("Downloaded %d of %d images (%.2f MB/s)...", result.skipped + result.downloaded, manifest.size(), megabytesPerSecond));
+					}
+				}
+			}
+		}
+		// If we're interrupted stop downloading, the manifest lets us resume later
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		// Workers never throw, but just in case
+		catch (ExecutionException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Unexpected error while downloading images!\n" + ExceptionUtils.getStackTrace(e));
+		}
+		finally
+		{
+			workers.shutdownNow();
+			this.writeManifest(manifestFile, manifest);
+		}
+
+		// Once everything has downloaded we no longer need the manifest
+		if (result.failures.isEmpty() && result.skipped + result.downloaded == manifest.size())
+			FileUtils.deleteQuietly(manifestFile);
+
+		result.bytesDownloaded = bytesDownloaded.get();
+		return result;
+	}
+
+	/**
+	 * Downloads a single file, retrying with an exponential backoff if the download fails
+	 *
+	 * @param entry The manifest entry to download
+	 * @param dirToSaveTo The directory to download into
+	 * @param bytesDownloaded A counter that is updated as bytes are downloaded
+	 * @return Null if the download succeeded, or the reason the download failed
+	 */
+	private String downloadWithRetries(ManifestEntry entry, File dirToSaveTo, AtomicLong bytesDownloaded)
+	{
+		File localFile = new File(dirToSaveTo, entry.localFileName);
+		File partialFile = new File(dirToSaveTo, entry.localFileName + PARTIAL_EXTENSION);
+		String version = this.pathToVersion.get(entry.irodsPath);
+
+		// If we have this version of the file cached we can just copy it
+		if (this.imageCache != null && this.imageCache.copyTo(entry.irodsPath, version, partialFile))
+		{
+			try
+			{
+				this.moveToFinalName(partialFile, localFile);
+				return null;
+			}
+			catch (IOException ignored)
+			{
+				// Fall back to downloading the file
+				FileUtils.deleteQuietly(partialFile);
+			}
+		}
+
+		String error = null;
+		for (Integer attempt = 0; attempt <= this.maxRetries; attempt++)
+		{
+			// Wait before retrying
+			if (attempt > 0)
+			{
+				try
+				{
+					Thread.sleep(this.initialBackoffMillis << (attempt - 1));
+				}
+				catch (InterruptedException e)
+				{
+					return "Download was cancelled";
+				}
+			}
+
+			try
+			{
+				// Download into a partial file, and once it's complete move it to its final name
+				this.downloadToFile(entry.irodsPath, partialFile, bytesDownloaded);
+				this.moveToFinalName(partialFile, localFile);
+				// Remember the file so we don't need to download it next time
+				if (this.imageCache != null)
+					this.imageCache.put(entry.irodsPath, version, localFile);
+				return null;
+			}
+			// The server told us the file can't be downloaded, retrying won't help
+			catch (PermanentDownloadException e)
+			{
+				FileUtils.deleteQuietly(partialFile);
+				return e.getMessage();
+			}
+			catch (IOException e)
+			{
+				FileUtils.deleteQuietly(partialFile);
+				error = e.getClass().getSimpleName() + ": " + e.getMessage();
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * Moves a completely downloaded file to its final name
+	 *
+	 * @param partialFile The downloaded file
+	 * @param localFile The name the file should have
+	 * @throws IOException If the file could not be moved
+	 */
+	private void moveToFinalName(File partialFile, File localFile) throws IOException
+	{
+		try
+		{
+			Files.move(partialFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException ignored)
+		{
+			Files.move(partialFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Downloads a single iRODS file over HTTP into a local file
+	 *
+	 * @param absoluteIRODSPath The absolute iRODS path of the file to download
+	 * @param localFile The file to write to
+	 * @param bytesDownloaded A counter that is updated as bytes are downloaded
+	 * @throws IOException If the download fails
+	 */
+	private void downloadToFile(String absoluteIRODSPath, File localFile, AtomicLong bytesDownloaded) throws IOException
+	{
+		String webPathToDownload = StringEscapeUtils.escapeHtml(this.baseURL + absoluteIRODSPath).replace(" ", "%20");
+		HttpURLConnection connection = (HttpURLConnection) new URL(webPathToDownload).openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		try
+		{
+			Integer responseCode = connection.getResponseCode();
+			// Client errors other than timeouts and rate limiting will never succeed
+			if (responseCode >= 400 && responseCode < 500 && responseCode != 408 && responseCode != 429)
+				throw new PermanentDownloadException("Server responded with " + responseCode + " " + connection.getResponseMessage());
+			else if (responseCode != HttpURLConnection.HTTP_OK)
+				throw new IOException("Server responded with " + responseCode + " " + connection.getResponseMessage());
+
+			// Copy the response into the file, counting bytes as we go
+			Long fileBytes = 0L;
+			try (InputStream inputStream = connection.getInputStream();
+				 OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(localFile)))
+			{
+				byte[] buffer = new byte[65536];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(buffer)) != -1)
+				{
+					outputStream.write(buffer, 0, bytesRead);
+					bytesDownloaded.addAndGet(bytesRead);
+					fileBytes = fileBytes + bytesRead;
+				}
+			}
+
+			// HttpURLConnection reports a connection closed early as the end of the file, so make sure we got everything we were promised
+			Long expectedBytes = connection.getContentLengthLong();
+			if (expectedBytes != -1 && !fileBytes.equals(expectedBytes))
+				throw new IOException("Connection closed after " + fileBytes + " of " + expectedBytes + " bytes");
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Creates a manifest for the given images. Images already in the previous manifest keep their assigned file names, new images are assigned a
+	 * file name that does not conflict with any other image or any existing file in the directory
+	 *
+	 * @param absoluteIRODSImagePaths A list of absolute iRODS paths to download
+	 * @param dirToSaveTo The directory to download into
+	 * @param previousManifest The manifest from a previous download attempt, may be empty
+	 * @return A manifest with one entry per image to download
+	 */
+	private List<ManifestEntry> buildManifest(List<String> absoluteIRODSImagePaths, File dirToSaveTo, List<ManifestEntry> previousManifest)
+	{
+		// Map the previous manifest by path, and reserve all file names already assigned
+		Map<String, ManifestEntry> pathToPreviousEntry = new HashMap<>();
+		Set<String> usedFileNames = new HashSet<>();
+		for (ManifestEntry entry : previousManifest)
+		{
+			pathToPreviousEntry.put(entry.irodsPath, entry);
+			usedFileNames.add(entry.localFileName);
+		}
+
+		List<ManifestEntry> manifest = new ArrayList<>(absoluteIRODSImagePaths.size());
+		Set<String> pathsSeen = new HashSet<>();
+		for (String absoluteIRODSImagePath : absoluteIRODSImagePaths)
+		{
+			// Don't download the same image twice
+			if (!pathsSeen.add(absoluteIRODSImagePath))
+				continue;
+
+			ManifestEntry previousEntry = pathToPreviousEntry.get(absoluteIRODSImagePath);
+			if (previousEntry != null)
+			{
+				// If the file was marked as completed but is no longer on disk, download it again
+				if (previousEntry.completed && !new File(dirToSaveTo, previousEntry.localFileName).exists())
+					previousEntry.completed = false;
+				manifest.add(previousEntry);
+			}
+			else
+			{
+				// Pick a unique name by appending -1, -2, ... to the base name until we find one that is free
+				String fileName = FilenameUtils.getName(absoluteIRODSImagePath);
+				String baseName = FilenameUtils.getBaseName(fileName);
+				String extension = FilenameUtils.getExtension(fileName);
+				String candidate = fileName;
+				for (Integer suffix = 1; usedFileNames.contains(candidate) || new File(dirToSaveTo, candidate).exists(); suffix++)
+					candidate = baseName + "-" + suffix + (extension.isEmpty() ? "" : "." + extension);
+				usedFileNames.add(candidate);
+
+				ManifestEntry entry = new ManifestEntry();
+				entry.irodsPath = absoluteIRODSImagePath;
+				entry.localFileName = candidate;
+				entry.completed = false;
+				manifest.add(entry);
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Reads a manifest from disk
+	 *
+	 * @param manifestFile The manifest file to read
+	 * @return The entries in the manifest or an empty list if the manifest does not exist or is unreadable
+	 */
+	private List<ManifestEntry> readManifest(File manifestFile)
+	{
+		if (manifestFile.exists())
+		{
+			try
+			{
+				List<ManifestEntry> manifest = SanimalData.getInstance().getGson().fromJson(FileUtils.readFileToString(manifestFile, StandardCharsets.UTF_8), MANIFEST_TYPE);
+				if (manifest != null)
+					return manifest;
+			}
+			catch (IOException | JsonSyntaxException e)
+			{
+				SanimalData.getInstance().getErrorDisplay().printError("Could not read the download manifest, starting the download over.\n" + ExceptionUtils.getStackTrace(e));
+			}
+		}
+		return new ArrayList<>();
+	}
+
+	/**
+	 * Writes a manifest to disk. The manifest is written to a temporary file first and then moved so a crash never leaves a half written manifest
+	 *
+	 * @param manifestFile The manifest file to write
+	 * @param manifest The manifest entries to write
+	 */
+	private void writeManifest(File manifestFile, List<ManifestEntry> manifest)
+	{
+		File tempManifest = new File(manifestFile.getParentFile(), manifestFile.getName() + PARTIAL_EXTENSION);
+		try
+		{
+			FileUtils.writeStringToFile(tempManifest, SanimalData.getInstance().getGson().toJson(manifest, MANIFEST_TYPE), StandardCharsets.UTF_8);
+			try
+			{
+				Files.move(tempManifest.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ignored)
+			{
+				Files.move(tempManifest.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().printError("Could not write the download manifest!\n" + ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * The result of a download, including any failures
+	 */
+	public static class DownloadResult
+	{
+		// The number of images downloaded
+		private Integer downloaded = 0;
+		// The number of images skipped because they were downloaded previously
+		private Integer skipped = 0;
+		// The number of bytes downloaded
+		private Long bytesDownloaded = 0L;
+		// A map of iRODS path -> reason the download failed
+		private final Map<String, String> failures = new LinkedHashMap<>();
+
+		/**
+		 * @return The number of images downloaded
+		 */
+		public Integer getDownloaded()
+		{
+			return this.downloaded;
+		}
+
+		/**
+		 * @return The number of images skipped because they were downloaded previously
+		 */
+		public Integer getSkipped()
+		{
+			return this.skipped;
+		}
+
+		/**
+		 * @return The number of bytes downloaded
+		 */
+		public Long getBytesDownloaded()
+		{
+			return this.bytesDownloaded;
+		}
+
+		/**
+		 * @return A map of iRODS path -> reason the download failed
+		 */
+		public Map<String, String> getFailures()
+		{
+			return this.failures;
+		}
+	}
+
+	/**
+	 * One entry in the download manifest
+	 */
+	private static class ManifestEntry
+	{
+		// The absolute iRODS path of the image
+		private String irodsPath;
+		// The name of the file the image is downloaded to
+		private String localFileName;
+		// True if the image has been downloaded
+		private Boolean completed;
+	}
+
+	/**
+	 * Exception thrown when the server refuses a download in a way that retrying will not fix
+	 */
+	private static class PermanentDownloadException extends IOException
+	{
+		/**
+		 * Constructor just takes a message
+		 *
+		 * @param message The reason the download failed
+		 */
+		private PermanentDownloadException(String message)
+		{
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package model.cyverse;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of files downloaded from CyVerse. Files are stored by the SHA-256 hash of their contents, and an index maps each iRODS
+ * path to the version of the file that was cached. A version is the file's checksum, or its modify time and size if CyVerse has no checksum,
+ * so a cached file is only used if the file on CyVerse hasn't changed. Each cached file is verified against its hash whenever it is read, and
+ * the least recently used files are removed once the cache grows past its size limit. Changes to the index, including when each file was
+ * last used, are written to disk a few seconds after they happen so a burst of downloads only writes the index once. Call flush before
+ * exiting to write any pending changes
+ */
+public class CyVerseImageCache
+{
+	// The name of the file containing the cache index
+	private static final String INDEX_FILE_NAME = "index.json";
+	// How long to wait after the index changes before writing it, so that many changes are written at once
+	private static final Long INDEX_SAVE_DELAY_MILLIS = 5000L;
+	// The type used to serialize the index through Gson
+	private static final Type INDEX_TYPE = new TypeToken<HashMap<String, CacheEntry>>()
+	{
+	}.getType();
+
+	// The directory that cached files are stored in
+	private final File cacheDirectory;
+	// The max number of bytes the cache may use
+	private volatile Long maxCacheSizeBytes;
+	// Map of iRODS path -> cached version of that file. Guarded by this
+	private Map<String, CacheEntry> pathToEntry = null;
+	// If the cache directory could not be used the cache just misses every time
+	private Boolean cacheUsable = true;
+	// If the index has changed since it was last written, and if a write has been scheduled. Guarded by this
+	private Boolean indexDirty = false;
+	private Boolean indexSaveScheduled = false;
+	// Incremented each time a copy of the index is taken to be written, so an older copy never overwrites a newer one. Guarded by this
+	private Long indexRevision = 0L;
+	// The revision of the index last written to disk. Guarded by indexWriteLock
+	private Long writtenIndexRevision = 0L;
+	// Lock held while the index file is written, so disk I/O never happens while holding the cache lock
+	private final Object indexWriteLock = new Object();
+	// Writes the index a short time after it changes, created the first time it is needed
+	private ScheduledExecutorService indexWriter = null;
+	// Gson used to read and write the index. We don't use SanimalData's because the cache may be created while SanimalData is being created
+	private final Gson gson = new Gson();
+
+	// Statistics about how effective the cache is
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong evictions = new AtomicLong(0);
+	private final AtomicLong corruptFiles = new AtomicLong(0);
+
+	/**
+	 * Constructor takes the directory to store the cache in and the max size of the cache
+	 *
+	 * @param cacheDirectory The directory to store cached files in, will be created if needed
+	 * @param maxCacheSizeBytes The max number of bytes the cache may use
+	 */
+	public CyVerseImageCache(File cacheDirectory, Long maxCacheSizeBytes)
+	{
+		this.cacheDirectory = cacheDirectory;
+		this.maxCacheSizeBytes = maxCacheSizeBytes;
+	}
+
+	/**
+	 * Creates a version string for a file on CyVerse
+	 *
+	 * @param checksum The checksum of the file on CyVerse, may be blank if no checksum was computed
+	 * @param modifiedSeconds The time the file was last modified in seconds since the epoch
+	 * @param size The size of the file in bytes
+	 * @return A string that changes whenever the file on CyVerse changes
+	 */
+	public static String versionOf(String checksum, long modifiedSeconds, long size)
+	{
+		if (StringUtils.isNotBlank(checksum))
+			return "checksum:" + checksum;
+		return "modified:" + modifiedSeconds + ":" + size;
+	}
+
+	/**
+	 * Copies a cached file to the destination if the cache contains the given version of the file
+	 *
+	 * @param irodsPath The absolute iRODS path of the file
+	 * @param version The version of the file on CyVerse
+	 * @param destination The file to copy the cached file to
+	 * @return True if the file was copied, false if the file was not cached, was a different version, or the cached file was corrupt
+	 */
+	public Boolean copyTo(String irodsPath, String version, File destination)
+	{
+		CacheEntry cacheEntry = this.lookup(irodsPath, version);
+		if (cacheEntry == null)
+		{
+			this.misses.incrementAndGet();
+			return false;
+		}
+
+		// Copy the file and verify it against its hash while we go
+		File cachedFile = new File(this.cacheDirectory, cacheEntry.contentHash);
+		try
+		{
+			String copiedHash;
+			try (DigestInputStream inputStream = new DigestInputStream(new BufferedInputStream(new FileInputStream(cachedFile)), newDigest()))
+			{
+				Files.copy(inputStream, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				copiedHash = toHex(inputStream.getMessageDigest().digest());
+			}
+			if (copiedHash.equals(cacheEntry.contentHash) && destination.length() == cacheEntry.size)
+			{
+				this.hits.incrementAndGet();
+				return true;
+			}
+			// The cached file was changed or damaged, so get rid of it
+			this.corruptFiles.incrementAndGet();
+			this.invalidate(irodsPath);
+		}
+		catch (IOException e)
+		{
+			// The cached file could not be read, so get rid of it
+			this.invalidate(irodsPath);
+		}
+		FileUtils.deleteQuietly(destination);
+		this.misses.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Adds a file to the cache, replacing any other version of the file that was cached
+	 *
+	 * @param irodsPath The absolute iRODS path of the file
+	 * @param version The version of the file on CyVerse
+	 * @param source The downloaded file to cache. It is copied so the caller may modify it afterwards
+	 */
+	public void put(String irodsPath, String version, File source)
+	{
+		if (!this.ensureLoaded() || version == null)
+			return;
+
+		Path incomingFile = null;
+		try
+		{
+			// Copy the file into the cache directory under a temporary name, computing the hash while we go
+			incomingFile = Files.createTempFile(this.cacheDirectory.toPath(), "incoming", ".tmp");
+			String contentHash;
+			try (DigestInputStream inputStream = new DigestInputStream(new BufferedInputStream(new FileInputStream(source)), newDigest()))
+			{
+				Files.copy(inputStream, incomingFile, StandardCopyOption.REPLACE_EXISTING);
+				contentHash = toHex(inputStream.getMessageDigest().digest());
+			}
+			long size = Files.size(incomingFile);
+
+			synchronized (this)
+			{
+				// If we already have a file with the same contents we can reuse it, otherwise move the new file into place
+				File cachedFile = new File(this.cacheDirectory, contentHash);
+				if (!cachedFile.exists())
+					moveAtomically(incomingFile, cachedFile.toPath());
+
+				CacheEntry oldEntry = this.pathToEntry.put(irodsPath, new CacheEntry(version, contentHash, size, System.currentTimeMillis()));
+				if (oldEntry != null)
+					this.deleteIfUnreferenced(oldEntry.contentHash);
+				this.evictIfNeeded();
+				this.markIndexDirty();
+			}
+		}
+		catch (IOException ignored)
+		{
+			// Not being able to cache a file just means it will be downloaded again next time
+		}
+		finally
+		{
+			if (incomingFile != null)
+				FileUtils.deleteQuietly(incomingFile.toFile());
+		}
+	}
+
+	/**
+	 * Removes any cached version of a file, used when the file on CyVerse is changed
+	 *
+	 * @param irodsPath The absolute iRODS path of the file
+	 */
+	public synchronized void invalidate(String irodsPath)
+	{
+		if (!this.ensureLoaded())
+			return;
+
+		CacheEntry oldEntry = this.pathToEntry.remove(irodsPath);
+		if (oldEntry != null)
+		{
+			this.deleteIfUnreferenced(oldEntry.contentHash);
+			this.markIndexDirty();
+		}
+	}
+
+	/**
+	 * Finds the cache entry for a file and marks it as recently used
+	 *
+	 * @param irodsPath The absolute iRODS path of the file
+	 * @param version The version of the file on CyVerse
+	 * @return The cache entry, or null if the file is not cached or a different version is cached
+	 */
+	private synchronized CacheEntry lookup(String irodsPath, String version)
+	{
+		if (!this.ensureLoaded() || version == null)
+			return null;
+
+		CacheEntry cacheEntry = this.pathToEntry.get(irodsPath);
+		if (cacheEntry == null || !cacheEntry.version.equals(version))
+			return null;
+		// Remember the access between runs so eviction keeps the files that are actually used
+		cacheEntry.lastAccess = System.currentTimeMillis();
+		this.markIndexDirty();
+		return cacheEntry;
+	}
+
+	/**
+	 * Removes the least recently used files until the cache fits in its size limit. Must be called while holding the lock
+	 */
+	private void evictIfNeeded()
+	{
+		// Content hash -> the most recent access of any entry using that file
+		Map<String, Long> hashToLastAccess = new HashMap<>();
+		// Content hash -> size of that file
+		Map<String, Long> hashToSize = new HashMap<>();
+		for (CacheEntry cacheEntry : this.pathToEntry.values())
+		{
+			hashToLastAccess.merge(cacheEntry.contentHash, cacheEntry.lastAccess, Math::max);
+			hashToSize.put(cacheEntry.contentHash, cacheEntry.size);
+		}
+
+		long cacheSize = hashToSize.values().stream().mapToLong(Long::longValue).sum();
+		if (cacheSize <= this.maxCacheSizeBytes)
+			return;
+
+		// Remove files starting with the least recently used
+		List<String> leastRecentlyUsed = new ArrayList<>(hashToLastAccess.keySet());
+		leastRecentlyUsed.sort(Comparator.comparing(hashToLastAccess::get));
+		for (String contentHash : leastRecentlyUsed)
+		{
+			if (cacheSize <= this.maxCacheSizeBytes)
+				break;
+			this.pathToEntry.values().removeIf(cacheEntry -> cacheEntry.contentHash.equals(contentHash));
+			FileUtils.deleteQuietly(new File(this.cacheDirectory, contentHash));
+			cacheSize = cacheSize - hashToSize.get(contentHash);
+			this.evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Deletes a cached file if no entry uses it anymore. Must be called while holding the lock
+	 *
+	 * @param contentHash The hash of the file to delete
+	 */
+	private void deleteIfUnreferenced(String contentHash)
+	{
+		if (this.pathToEntry.values().stream().noneMatch(cacheEntry -> cacheEntry.contentHash.equals(contentHash)))
+			FileUtils.deleteQuietly(new File(this.cacheDirectory, contentHash));
+	}
+
+	/**
+	 * Loads the cache index the first time the cache is used. Entries whose files are missing are dropped
+	 *
+	 * @return True if the cache can be used, false otherwise
+	 */
+	private synchronized Boolean ensureLoaded()
+	{
+		if (this.pathToEntry != null)
+			return this.cacheUsable;
+
+		this.pathToEntry = new HashMap<>();
+		if (!this.cacheDirectory.isDirectory() && !this.cacheDirectory.mkdirs())
+		{
+			this.cacheUsable = false;
+			return false;
+		}
+
+		File indexFile = new File(this.cacheDirectory, INDEX_FILE_NAME);
+		if (indexFile.exists())
+		{
+			try
+			{
+				Map<String, CacheEntry> savedIndex = this.gson.fromJson(new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8), INDEX_TYPE);
+				if (savedIndex != null)
+					savedIndex.forEach((irodsPath, cacheEntry) ->
+					{
+						if (cacheEntry != null && cacheEntry.contentHash != null && cacheEntry.version != null && new File(this.cacheDirectory, cacheEntry.contentHash).exists())
+							this.pathToEntry.put(irodsPath, cacheEntry);
+					});
+			}
+			catch (IOException | JsonParseException ignored)
+			{
+				// A broken index just means we start with an empty cache
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the index changed and schedules it to be written soon. Must be called while holding the lock
+	 */
+	private void markIndexDirty()
+	{
+		this.indexDirty = true;
+		if (!this.indexSaveScheduled)
+		{
+			if (this.indexWriter == null)
+			{
+				this.indexWriter = Executors.newSingleThreadScheduledExecutor(runnable ->
+				{
+					Thread thread = new Thread(runnable, "Image Cache Index Writer");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			this.indexSaveScheduled = true;
+			this.indexWriter.schedule(this::flush, INDEX_SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the cache index to disk if it has changed since it was last written. The index is copied while holding the lock and written
+	 * after releasing it
+	 */
+	public void flush()
+	{
+		String indexJson;
+		Long revision;
+		synchronized (this)
+		{
+			this.indexSaveScheduled = false;
+			if (!this.indexDirty)
+				return;
+			this.indexDirty = false;
+			indexJson = this.gson.toJson(this.pathToEntry, INDEX_TYPE);
+			revision = ++this.indexRevision;
+		}
+
+		synchronized (this.indexWriteLock)
+		{
+			// Another thread already wrote a newer copy of the index
+			if (revision < this.writtenIndexRevision)
+				return;
+			try
+			{
+				Path tempIndex = Files.createTempFile(this.cacheDirectory.toPath(), "index", ".tmp");
+				Files.write(tempIndex, indexJson.getBytes(StandardCharsets.UTF_8));
+				moveAtomically(tempIndex, new File(this.cacheDirectory, INDEX_FILE_NAME).toPath());
+				this.writtenIndexRevision = revision;
+			}
+			catch (IOException ignored)
+			{
+				// If the index can't be written the cache is just lost on exit
+			}
+		}
+	}
+
+	/**
+	 * Moves a file, replacing the target atomically if the file system allows it
+	 *
+	 * @param source The file to move
+	 * @param target Where to move the file to
+	 * @throws IOException If the move fails
+	 */
+	static void moveAtomically(Path source, Path target) throws IOException
+	{
+		try
+		{
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Converts a hash to a lowercase hex string
+	 *
+	 * @param hash The bytes of the hash
+	 * @return The hash as a hex string
+	 */
+	static String toHex(byte[] hash)
+	{
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte hashByte : hash)
+			hex.append(String.format("%02x", hashByte));
+		return hex.toString();
+	}
+
+	/**
+	 * @return A new SHA-256 message digest
+	 */
+	static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param maxCacheSizeBytes The max number of bytes the cache may use
+	 */
+	public synchronized void setMaxCacheSizeBytes(Long maxCacheSizeBytes)
+	{
+		this.maxCacheSizeBytes = maxCacheSizeBytes;
+		if (this.ensureLoaded())
+		{
+			this.evictIfNeeded();
+			this.markIndexDirty();
+		}
+	}
+
+	/**
+	 * @return The max number of bytes the cache may use
+	 */
+	public Long getMaxCacheSizeBytes()
+	{
+		return this.maxCacheSizeBytes;
+	}
+
+	/**
+	 * @return The number of bytes used by cached files
+	 */
+	public synchronized Long getCacheSizeBytes()
+	{
+		if (!this.ensureLoaded())
+			return 0L;
+		Map<String, Long> hashToSize = new HashMap<>();
+		this.pathToEntry.values().forEach(cacheEntry -> hashToSize.put(cacheEntry.contentHash, cacheEntry.size));
+		return hashToSize.values().stream().mapToLong(Long::longValue).sum();
+	}
+
+	/**
+	 * @return The number of times a file was found in the cache
+	 */
+	public Long getHits()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * @return The number of times a file was not found in the cache
+	 */
+	public Long getMisses()
+	{
+		return this.misses.get();
+	}
+
+	/**
+	 * @return The number of files removed to keep the cache under its size limit
+	 */
+	public Long getEvictions()
+	{
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return The number of cached files that failed verification
+	 */
+	public Long getCorruptFiles()
+	{
+		return this.corruptFiles.get();
+	}
+
+	/**
+	 * A single entry in the cache index
+	 */
+	private static class CacheEntry
+	{
+		// The version of the file on CyVerse that was cached
+		private String version;
+		// The SHA-256 hash of the file contents, also the name of the cached file
+		private String contentHash;
+		// The size of the file in bytes
+		private long size;
+		// The last time this entry was used in milliseconds since the epoch
+		private long lastAccess;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param version The version of the file on CyVerse that was cached
+		 * @param contentHash The SHA-256 hash of the file contents
+		 * @param size The size of the file in bytes
+		 * @param lastAccess The last time this entry was used
+		 */
+		private CacheEntry(String version, String contentHash, long size, long lastAccess)
+		{
+			this.version = version;
+			this.contentHash = contentHash;
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
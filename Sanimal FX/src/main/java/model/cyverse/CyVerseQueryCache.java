@@ -0,0 +1,571 @@
+package model.cyverse;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import model.query.CyVerseQuery;
+import org.apache.commons.io.FileUtils;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.pub.domain.AvuData;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of query results. Each result is stored under the user who ran the query and the canonical key of the query, since users may be
+ * able to see different collections, and contains the path of every
+ * matching image along with its metadata so that re-running a query doesn't need to talk to CyVerse at all. Results expire after a fixed
+ * time, and are thrown away when a collection they may include is uploaded to or saved. The most recently used results are kept in memory.
+ * If the cache has a directory and writing to disk is turned on, every result is also written to disk in the background so it survives
+ * restarts
+ */
+public class CyVerseQueryCache
+{
+	// The name of the file containing the on disk cache index
+	private static final String INDEX_FILE_NAME = "index.json";
+	// The type used to serialize the index through Gson
+	private static final Type INDEX_TYPE = new TypeToken<HashMap<String, IndexEntry>>()
+	{
+	}.getType();
+	// The max number of results to keep in memory
+	private static final Integer MAX_RESULTS_IN_MEMORY = 8;
+
+	// The directory that results are written to, or null to only cache results in memory
+	private final File cacheDirectory;
+	// The number of milliseconds a result may be used for after its query was started
+	private final Long timeToLiveMillis;
+	// If true results are written to the cache directory as well as kept in memory. Off until the user turns it on. Guarded by this
+	private Boolean persistToDisk = false;
+	// Runs one write to disk at a time in order, created the first time a result is written. Guarded by this
+	private Executor diskWriter = null;
+	// Query key -> result, ordered from least to most recently used. Guarded by this
+	private final Map<String, CachedResult> resultsInMemory = new LinkedHashMap<>(16, 0.75f, true);
+	// Hash of a query key -> the result written to disk under that hash, loaded the first time the disk is used. Guarded by this
+	private Map<String, IndexEntry> resultsOnDisk = null;
+	// Collection ID -> the last time the collection was changed. Guarded by this
+	private final Map<String, Long> collectionChangedAt = new HashMap<>();
+	// The last time any collection was changed, used for queries that aren't limited to specific collections. Guarded by this
+	private long anyCollectionChangedAt = 0;
+	// Gson used to read and write results. We don't use SanimalData's because the cache may be created while SanimalData is being created
+	private final Gson gson = new Gson();
+
+	// Statistics about how effective the cache is
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong imagesServed = new AtomicLong(0);
+	private final AtomicLong millisSaved = new AtomicLong(0);
+
+	/**
+	 * Constructor takes the directory to store results in and how long results may be used for
+	 *
+	 * @param cacheDirectory The directory to write results to, will be created if needed. May be null to only cache results in memory
+	 * @param timeToLiveMillis The number of milliseconds a result may be used for after its query was started
+	 */
+	public CyVerseQueryCache(File cacheDirectory, Long timeToLiveMillis)
+	{
+		this.cacheDirectory = cacheDirectory;
+		this.timeToLiveMillis = timeToLiveMillis;
+	}
+
+	/**
+	 * Turns writing results to disk on or off. Turning it off deletes the results already on disk, since collection changes made while
+	 * it is off aren't tracked on disk and those results could otherwise be read back after they became stale
+	 *
+	 * @param persistToDisk True to write results to the cache directory, false to only keep them in memory
+	 */
+	public synchronized void setPersistToDisk(Boolean persistToDisk)
+	{
+		if (this.persistToDisk && !persistToDisk && this.cacheDirectory != null)
+		{
+			FileUtils.deleteQuietly(this.cacheDirectory);
+			this.resultsOnDisk = null;
+		}
+		this.persistToDisk = persistToDisk;
+	}
+
+	/**
+	 * Used by tests to choose when results are written to disk. The executor must run writes one at a time in the order they were given
+	 *
+	 * @param diskWriter The executor that writes results to disk
+	 */
+	synchronized void setDiskWriter(Executor diskWriter)
+	{
+		this.diskWriter = diskWriter;
+	}
+
+	/**
+	 * @return True if results are written to disk as well as kept in memory
+	 */
+	public synchronized Boolean isPersistingToDisk()
+	{
+		return this.persistToDisk;
+	}
+
+	/**
+	 * Finds the result of a query if it was cached and is still valid
+	 *
+	 * @param username The CyVerse user running the query
+	 * @param query The query to find the result of
+	 * @return A map of absolute path -> metadata of every image matching the query, or null if the result isn't cached
+	 */
+	public synchronized Map<String, List<AvuData>> get(String username, CyVerseQuery query)
+	{
+		String queryKey = keyOf(username, query);
+		CachedResult cachedResult = this.resultsInMemory.get(queryKey);
+		// If the result isn't in memory check the disk
+		if (cachedResult == null)
+			cachedResult = this.readFromDisk(queryKey);
+
+		if (cachedResult != null && this.isValid(cachedResult.indexEntry))
+		{
+			try
+			{
+				Map<String, List<AvuData>> pathToMetadata = new LinkedHashMap<>();
+				for (Map.Entry<String, List<String[]>> pathEntry : cachedResult.pathToMetadata.entrySet())
+				{
+					List<AvuData> metadata = new ArrayList<>(pathEntry.getValue().size());
+					for (String[] avu : pathEntry.getValue())
+						metadata.add(AvuData.instance(avu[0], avu[1], avu[2]));
+					pathToMetadata.put(pathEntry.getKey(), metadata);
+				}
+
+				this.resultsInMemory.put(queryKey, cachedResult);
+				this.trimMemory();
+				this.hits.incrementAndGet();
+				this.imagesServed.addAndGet(pathToMetadata.size());
+				this.millisSaved.addAndGet(cachedResult.indexEntry.fetchMillis);
+				return pathToMetadata;
+			}
+			catch (JargonException | RuntimeException ignored)
+			{
+				// A malformed result is treated like a missing one
+			}
+		}
+
+		// The result is missing or expired, make sure we don't find it again
+		this.remove(queryKey);
+		this.misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores the result of a query. If a collection the query may include was changed after the query started the result is thrown away.
+	 * The result is usable as soon as this returns, writing it to disk happens later on the cache's writer thread
+	 *
+	 * @param username The CyVerse user that ran the query
+	 * @param query The query that produced the result
+	 * @param pathToMetadata A map of absolute path -> metadata of every image matching the query
+	 * @param queryStartedAt The time the query started, in milliseconds since the epoch
+	 * @param fetchMillis The number of milliseconds the query took, used to estimate the time saved by the cache
+	 */
+	public synchronized void put(String username, CyVerseQuery query, Map<String, List<AvuData>> pathToMetadata, long queryStartedAt, long fetchMillis)
+	{
+		IndexEntry indexEntry = new IndexEntry(queryStartedAt, fetchMillis, new ArrayList<>(query.getCollectionIDs()));
+		if (!this.isValid(indexEntry))
+			return;
+
+		// Store the metadata as plain strings so it can be written with Gson
+		Map<String, List<String[]>> storedMetadata = new LinkedHashMap<>();
+		for (Map.Entry<String, List<AvuData>> pathEntry : pathToMetadata.entrySet())
+		{
+			List<String[]> metadata = new ArrayList<>(pathEntry.getValue().size());
+			for (AvuData avuData : pathEntry.getValue())
+				metadata.add(new String[] { avuData.getAttribute(), avuData.getValue(), avuData.getUnit() });
+			storedMetadata.put(pathEntry.getKey(), metadata);
+		}
+
+		String queryKey = keyOf(username, query);
+		CachedResult cachedResult = new CachedResult(queryKey, indexEntry, storedMetadata);
+		this.resultsInMemory.put(queryKey, cachedResult);
+		this.trimMemory();
+
+		if (this.persistToDisk && this.cacheDirectory != null)
+		{
+			if (this.diskWriter == null)
+			{
+				this.diskWriter = Executors.newSingleThreadExecutor(runnable ->
+				{
+					Thread thread = new Thread(runnable, "Query Cache Writer");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			this.diskWriter.execute(() -> this.writeToDisk(cachedResult));
+		}
+	}
+
+	/**
+	 * Waits until every result handed to the writer thread so far has been written to disk or skipped
+	 */
+	public void flush()
+	{
+		Executor diskWriter;
+		synchronized (this)
+		{
+			diskWriter = this.diskWriter;
+		}
+		if (diskWriter == null)
+			return;
+
+		// The writer runs one task at a time in order, so once this runs every write before it is done
+		CountDownLatch writesDone = new CountDownLatch(1);
+		diskWriter.execute(writesDone::countDown);
+		try
+		{
+			writesDone.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Throws away every result that may include images from a collection, used when images in the collection are uploaded or saved
+	 *
+	 * @param collectionID The ID of the collection that changed
+	 */
+	public synchronized void invalidateCollection(String collectionID)
+	{
+		long now = System.currentTimeMillis();
+		this.collectionChangedAt.put(collectionID, now);
+		this.anyCollectionChangedAt = now;
+
+		this.resultsInMemory.values().removeIf(cachedResult -> !this.isValid(cachedResult.indexEntry));
+		if (this.ensureDiskLoaded())
+		{
+			List<String> invalidHashes = new ArrayList<>();
+			this.resultsOnDisk.forEach((keyHash, indexEntry) ->
+			{
+				if (!this.isValid(indexEntry))
+					invalidHashes.add(keyHash);
+			});
+			if (!invalidHashes.isEmpty())
+			{
+				invalidHashes.forEach(this::deleteFromDisk);
+				this.saveIndex();
+			}
+		}
+	}
+
+	/**
+	 * Tests if a result has not expired and was produced after every collection it may include last changed. Must be called while holding the lock
+	 *
+	 * @param indexEntry The result to test
+	 * @return True if the result may be used
+	 */
+	private Boolean isValid(IndexEntry indexEntry)
+	{
+		if (System.currentTimeMillis() - indexEntry.createdAt > this.timeToLiveMillis)
+			return false;
+
+		// A query without any collections may include any collection
+		if (indexEntry.collectionIDs == null || indexEntry.collectionIDs.isEmpty())
+			return indexEntry.createdAt > this.anyCollectionChangedAt;
+		for (String collectionID : indexEntry.collectionIDs)
+			if (indexEntry.createdAt <= this.collectionChangedAt.getOrDefault(collectionID, 0L))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Removes a result from memory and disk. Must be called while holding the lock
+	 *
+	 * @param queryKey The key of the query whose result should be removed
+	 */
+	private void remove(String queryKey)
+	{
+		this.resultsInMemory.remove(queryKey);
+		String keyHash = hashOf(queryKey);
+		if (this.ensureDiskLoaded() && this.resultsOnDisk.containsKey(keyHash))
+		{
+			this.deleteFromDisk(keyHash);
+			this.saveIndex();
+		}
+	}
+
+	/**
+	 * Removes the least recently used results from memory until we're under the limit. They remain on disk. Must be called while holding the lock
+	 */
+	private void trimMemory()
+	{
+		Iterator<String> leastRecentlyUsed = this.resultsInMemory.keySet().iterator();
+		while (this.resultsInMemory.size() > MAX_RESULTS_IN_MEMORY && leastRecentlyUsed.hasNext())
+		{
+			leastRecentlyUsed.next();
+			leastRecentlyUsed.remove();
+		}
+	}
+
+	/**
+	 * Reads a result from disk. Must be called while holding the lock
+	 *
+	 * @param queryKey The key of the query to read the result of
+	 * @return The result or null if it was not on disk or could not be read
+	 */
+	private CachedResult readFromDisk(String queryKey)
+	{
+		String keyHash = hashOf(queryKey);
+		if (!this.ensureDiskLoaded() || !this.resultsOnDisk.containsKey(keyHash))
+			return null;
+
+		try
+		{
+			CachedResult cachedResult = this.gson.fromJson(new String(Files.readAllBytes(new File(this.cacheDirectory, keyHash + ".json").toPath()), StandardCharsets.UTF_8), CachedResult.class);
+			// Make sure the file is for this query and not one with the same hash
+			if (cachedResult != null && queryKey.equals(cachedResult.queryKey) && cachedResult.indexEntry != null && cachedResult.pathToMetadata != null)
+				return cachedResult;
+		}
+		catch (IOException | JsonParseException ignored)
+		{
+			// A result that can't be read is treated like a missing one
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a result to disk. Called on the writer thread without holding the lock, the lock is only taken to check that the result is
+	 * still wanted and to move the finished file into place
+	 *
+	 * @param cachedResult The result to write
+	 */
+	private void writeToDisk(CachedResult cachedResult)
+	{
+		synchronized (this)
+		{
+			if (!this.ensureDiskLoaded() || !this.isValid(cachedResult.indexEntry))
+				return;
+		}
+
+		// Results can hold metadata for thousands of images, so convert and write them while other threads can still use the cache
+		Path tempResult;
+		try
+		{
+			tempResult = Files.createTempFile(this.cacheDirectory.toPath(), "result", ".tmp");
+			Files.write(tempResult, this.gson.toJson(cachedResult).getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException ignored)
+		{
+			// Not being able to write the result just means it is only cached in memory
+			return;
+		}
+
+		synchronized (this)
+		{
+			String keyHash = hashOf(cachedResult.queryKey);
+			// Writing to disk may have been turned off, the collection may have changed, or a newer result may have been written meanwhile
+			Boolean stillWanted = this.ensureDiskLoaded() && this.isValid(cachedResult.indexEntry);
+			IndexEntry onDisk = stillWanted ? this.resultsOnDisk.get(keyHash) : null;
+			if (!stillWanted || (onDisk != null && onDisk.createdAt > cachedResult.indexEntry.createdAt))
+			{
+				FileUtils.deleteQuietly(tempResult.toFile());
+				return;
+			}
+			try
+			{
+				CyVerseImageCache.moveAtomically(tempResult, new File(this.cacheDirectory, keyHash + ".json").toPath());
+				this.resultsOnDisk.put(keyHash, cachedResult.indexEntry);
+				this.saveIndex();
+			}
+			catch (IOException ignored)
+			{
+				FileUtils.deleteQuietly(tempResult.toFile());
+			}
+		}
+	}
+
+	/**
+	 * Deletes a result from disk, the index must be saved afterwards. Must be called while holding the lock
+	 *
+	 * @param keyHash The hash of the key of the query whose result should be deleted
+	 */
+	private void deleteFromDisk(String keyHash)
+	{
+		this.resultsOnDisk.remove(keyHash);
+		FileUtils.deleteQuietly(new File(this.cacheDirectory, keyHash + ".json"));
+	}
+
+	/**
+	 * Loads the on disk index the first time the disk is used. Expired results and results whose files are missing are dropped. Must be
+	 * called while holding the lock
+	 *
+	 * @return True if results may be written to disk, false otherwise
+	 */
+	private Boolean ensureDiskLoaded()
+	{
+		if (!this.persistToDisk)
+			return false;
+		if (this.resultsOnDisk != null)
+			return true;
+		if (this.cacheDirectory == null || (!this.cacheDirectory.isDirectory() && !this.cacheDirectory.mkdirs()))
+			return false;
+
+		this.resultsOnDisk = new HashMap<>();
+		File indexFile = new File(this.cacheDirectory, INDEX_FILE_NAME);
+		if (indexFile.exists())
+		{
+			try
+			{
+				Map<String, IndexEntry> savedIndex = this.gson.fromJson(new String(Files.readAllBytes(indexFile.toPath()), StandardCharsets.UTF_8), INDEX_TYPE);
+				if (savedIndex != null)
+					savedIndex.forEach((keyHash, indexEntry) ->
+					{
+						File resultFile = new File(this.cacheDirectory, keyHash + ".json");
+						if (indexEntry != null && this.isValid(indexEntry) && resultFile.exists())
+							this.resultsOnDisk.put(keyHash, indexEntry);
+						else
+							FileUtils.deleteQuietly(resultFile);
+					});
+			}
+			catch (IOException | JsonParseException ignored)
+			{
+				// A broken index just means we start with an empty cache
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the on disk index. Must be called while holding the lock
+	 */
+	private void saveIndex()
+	{
+		try
+		{
+			Path tempIndex = Files.createTempFile(this.cacheDirectory.toPath(), "index", ".tmp");
+			Files.write(tempIndex, this.gson.toJson(this.resultsOnDisk, INDEX_TYPE).getBytes(StandardCharsets.UTF_8));
+			CyVerseImageCache.moveAtomically(tempIndex, new File(this.cacheDirectory, INDEX_FILE_NAME).toPath());
+		}
+		catch (IOException ignored)
+		{
+			// If the index can't be written the results on disk are just lost on exit
+		}
+	}
+
+	/**
+	 * Creates the key a query's result is stored under
+	 *
+	 * @param username The CyVerse user running the query
+	 * @param query The query
+	 * @return The username followed by the canonical key of the query
+	 */
+	private static String keyOf(String username, CyVerseQuery query)
+	{
+		return username + "\u0000" + query.getCanonicalKey();
+	}
+
+	/**
+	 * Hashes a query key so it can be used as a file name
+	 *
+	 * @param queryKey The canonical key of a query
+	 * @return The SHA-256 hash of the key as a hex string
+	 */
+	private static String hashOf(String queryKey)
+	{
+		return CyVerseImageCache.toHex(CyVerseImageCache.newDigest().digest(queryKey.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @return The number of queries answered by the cache
+	 */
+	public Long getHits()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * @return The number of queries that were not found in the cache
+	 */
+	public Long getMisses()
+	{
+		return this.misses.get();
+	}
+
+	/**
+	 * @return The fraction of queries answered by the cache, between 0 and 1
+	 */
+	public Double getHitRate()
+	{
+		long lookups = this.hits.get() + this.misses.get();
+		return lookups == 0 ? 0 : this.hits.get() / (double) lookups;
+	}
+
+	/**
+	 * @return The number of images whose metadata was read from the cache instead of CyVerse
+	 */
+	public Long getImagesServed()
+	{
+		return this.imagesServed.get();
+	}
+
+	/**
+	 * @return The total number of milliseconds the cached queries took to run originally, an estimate of the time the cache saved
+	 */
+	public Long getMillisSaved()
+	{
+		return this.millisSaved.get();
+	}
+
+	/**
+	 * Information about a cached result that is kept in the index
+	 */
+	private static class IndexEntry
+	{
+		// The time the query producing the result was started in milliseconds since the epoch
+		private long createdAt;
+		// The number of milliseconds the query took
+		private long fetchMillis;
+		// The IDs of the collections the query was limited to, empty if the query may include any collection
+		private List<String> collectionIDs;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param createdAt The time the query producing the result was started
+		 * @param fetchMillis The number of milliseconds the query took
+		 * @param collectionIDs The IDs of the collections the query was limited to
+		 */
+		private IndexEntry(long createdAt, long fetchMillis, List<String> collectionIDs)
+		{
+			this.createdAt = createdAt;
+			this.fetchMillis = fetchMillis;
+			this.collectionIDs = collectionIDs;
+		}
+	}
+
+	/**
+	 * The result of a single query
+	 */
+	private static class CachedResult
+	{
+		// The username and canonical key of the query, used to detect hash collisions on disk
+		private String queryKey;
+		// Information about the result
+		private IndexEntry indexEntry;
+		// Absolute path -> list of attribute, value, unit triples
+		private Map<String, List<String[]>> pathToMetadata;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param queryKey The username and canonical key of the query
+		 * @param indexEntry Information about the result
+		 * @param pathToMetadata Absolute path -> list of attribute, value, unit triples
+		 */
+		private CachedResult(String queryKey, IndexEntry indexEntry, Map<String, List<String[]>> pathToMetadata)
+		{
+			this.queryKey = queryKey;
+			this.indexEntry = indexEntry;
+			this.pathToMetadata = pathToMetadata;
+		}
+	}
+}
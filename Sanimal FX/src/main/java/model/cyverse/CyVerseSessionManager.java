@@ -1,10 +1,10 @@
 package model.cyverse;
 
-import javafx.collections.FXCollections;
 import javafx.scene.control.Alert;
 import javafx.util.Pair;
 import model.SanimalData;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.irods.jargon.core.connection.AbstractIRODSMidLevelProtocol;
 import org.irods.jargon.core.connection.IRODSAccount;
 import org.irods.jargon.core.connection.IRODSSession;
 import org.irods.jargon.core.connection.IRODSSimpleProtocolManager;
@@ -12,34 +12,89 @@ import org.irods.jargon.core.exception.JargonException;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
 import org.irods.jargon.core.pub.IRODSAccessObjectFactoryImpl;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class that maintains connections to cyverse
+ * Class that maintains a bounded pool of connections to cyverse. Jargon binds connections to the thread that opened them, so
+ * sessions are leased per thread and returned to the pool when closed instead of being torn down. Leased and idle sessions both count
+ * against the pool size, so no more than that many connections are ever open at once
  */
 public class CyVerseSessionManager
 {
-	// A map of thread -> session objects, used to keep 1 session per thread
-	private Map<Thread, Pair<IRODSSession, IRODSAccessObjectFactory>> sessions = Collections.synchronizedMap(new HashMap<>());
+	// The default number of sessions that may be leased at the same time
+	private static final int DEFAULT_MAX_SESSIONS = 16;
+	// The default number of milliseconds a returned session may sit idle before it is considered stale
+	private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+	// Sessions that have been idle for less than this many milliseconds are reused without a health check
+	private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000;
+	// How often a thread waiting for a session checks if another thread's idle session can be closed to make room
+	private static final long SESSION_WAIT_POLL_MILLIS = 100;
+
+	// A map of thread -> session objects that are currently leased, used to keep 1 session per thread
+	private final Map<Thread, PooledSession> leasedSessions = new ConcurrentHashMap<>();
+	// A map of thread -> session objects that have been returned to the pool and may be reused by that thread
+	private final Map<Thread, PooledSession> idleSessions = new ConcurrentHashMap<>();
 
 	// A reference to the authenticated irods account
 	private IRODSAccount authenticatedAccount;
+	// The factory used to create, validate, and close sessions
+	private SessionFactory sessionFactory;
+	// The maximum number of sessions that may be open at once, leased or idle
+	private final int maxSessions;
+	// The number of milliseconds a session may be idle before being recreated
+	private final long idleTimeoutMillis;
+	// One permit per session that may be open, a permit is held by every leased and every idle session
+	private final Semaphore sessionPermits;
+
+	// Pool metrics
+	private final AtomicLong poolHits = new AtomicLong(0);
+	private final AtomicLong poolMisses = new AtomicLong(0);
+	private final AtomicLong reconnects = new AtomicLong(0);
+	private final AtomicLong leaseCount = new AtomicLong(0);
+	private final AtomicLong totalLeaseWaitNanos = new AtomicLong(0);
+	private final AtomicLong maxLeaseWaitNanos = new AtomicLong(0);
 
 	/**
-	 * Constructor just needs the authenticated irods account
+	 * Constructor just needs the authenticated irods account, uses the default pool size and idle timeout
 	 *
 	 * @param authenticatedAccount The account that has been authenticated
 	 */
 	public CyVerseSessionManager(IRODSAccount authenticatedAccount)
 	{
+		this(authenticatedAccount, DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_TIMEOUT_MILLIS, new JargonSessionFactory());
+	}
+
+	/**
+	 * Constructor takes the authenticated irods account as well as pool parameters
+	 *
+	 * @param authenticatedAccount The account that has been authenticated
+	 * @param maxSessions The maximum number of sessions that may be open at the same time, leased or idle
+	 * @param idleTimeoutMillis The number of milliseconds a returned session may be idle before it gets recreated
+	 * @param sessionFactory The factory used to create, validate, and close sessions. May be replaced with a fake for testing
+	 */
+	public CyVerseSessionManager(IRODSAccount authenticatedAccount, int maxSessions, long idleTimeoutMillis, SessionFactory sessionFactory)
+	{
+		if (maxSessions < 1)
+			throw new IllegalArgumentException("The session pool must allow at least one session!");
+
 		this.authenticatedAccount = authenticatedAccount;
+		this.maxSessions = maxSessions;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.sessionFactory = sessionFactory;
+		this.sessionPermits = new Semaphore(maxSessions, true);
 	}
 
 	/**
-	 * Either returns false if a session is already open in the current thread or a session fails to open, returns true otherwise
+	 * Either returns false if a session is already open in the current thread or a session fails to open, returns true otherwise.
+	 * If the pool is exhausted this method blocks until another thread returns its session
 	 *
 	 * @return True if the session was opened successfully
 	 */
@@ -48,65 +103,298 @@ public class CyVerseSessionManager
 		// Grab the current thread
 		Thread current = Thread.currentThread();
 		// Test if this thread already has a session object
-		if (this.sessions.containsKey(current))
+		if (this.leasedSessions.containsKey(current))
 			return false;
-		else
+
+		// Try to reuse the session this thread returned last time, it already holds a permit
+		PooledSession pooledSession = this.idleSessions.remove(current);
+		// Otherwise wait for room to open a new session, and record how long we waited
+		long waitStart = System.nanoTime();
+		if (pooledSession == null)
 		{
-			// Create a session
 			try
 			{
-				// Create the session and store it
-				IRODSSession newSession = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
-				IRODSAccessObjectFactory newAccessFactory = IRODSAccessObjectFactoryImpl.instance(newSession);
-				this.sessions.put(current, new Pair<>(newSession, newAccessFactory));
-				return true;
+				this.acquireSessionPermit();
 			}
-			// Print an error and return false
-			catch (JargonException e)
+			catch (InterruptedException e)
 			{
-				SanimalData.getInstance().getErrorDisplay().showPopup(
-						Alert.AlertType.ERROR,
-						null,
-						"Error",
-						"Session error",
-						"Error creating a session!\n" + ExceptionUtils.getStackTrace(e),
-						false);
+				// Restore the interrupt flag and fail to open the session
+				current.interrupt();
 				return false;
 			}
 		}
+		this.recordLeaseWait(System.nanoTime() - waitStart);
+
+		try
+		{
+			if (pooledSession != null)
+			{
+				long idleMillis = System.currentTimeMillis() - pooledSession.lastReturned;
+				// If the session has been idle too long assume the server dropped it and close it
+				if (idleMillis > this.idleTimeoutMillis)
+				{
+					this.closeQuietly(pooledSession);
+					pooledSession = null;
+				}
+				// If the session has been idle for a bit make sure the socket is still alive
+				else if (idleMillis > VALIDATE_AFTER_IDLE_MILLIS && !this.sessionFactory.isHealthy(pooledSession.session, pooledSession.accessObjectFactory, this.authenticatedAccount))
+				{
+					this.sessionFactory.discardSession(pooledSession.session, this.authenticatedAccount);
+					this.reconnects.incrementAndGet();
+					pooledSession = null;
+				}
+			}
+
+			// We have a valid pooled session, lease it out
+			if (pooledSession != null)
+				this.poolHits.incrementAndGet();
+			// Otherwise create a new session
+			else
+			{
+				this.poolMisses.incrementAndGet();
+				Pair<IRODSSession, IRODSAccessObjectFactory> newSession = this.sessionFactory.createSession();
+				pooledSession = new PooledSession(newSession.getKey(), newSession.getValue());
+			}
+
+			this.leaseCount.incrementAndGet();
+			this.leasedSessions.put(current, pooledSession);
+			return true;
+		}
+		// Print an error and return false
+		catch (JargonException e)
+		{
+			this.sessionPermits.release();
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"Session error",
+					"Error creating a session!\n" + ExceptionUtils.getStackTrace(e),
+					false);
+			return false;
+		}
+	}
+
+	/**
+	 * Waits until another session may be opened. If every session is open and some of them are idle, the idle session that was returned
+	 * the longest time ago is thrown away to make room
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	private void acquireSessionPermit() throws InterruptedException
+	{
+		while (!this.sessionPermits.tryAcquire())
+		{
+			// Every session is open, make room by throwing away another thread's idle session or wait a bit for one to be returned
+			if (!this.discardOldestIdleSession() && this.sessionPermits.tryAcquire(SESSION_WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS))
+				return;
+		}
+	}
+
+	/**
+	 * Throws away the idle session that was returned the longest time ago and gives back its permit. The connection belongs to another
+	 * thread so it can't be closed cleanly from here, it is discarded through the connection captured when the session was returned
+	 *
+	 * @return True if an idle session was thrown away, false if there were none
+	 */
+	private boolean discardOldestIdleSession()
+	{
+		Map.Entry<Thread, PooledSession> oldest = null;
+		for (Map.Entry<Thread, PooledSession> idleEntry : this.idleSessions.entrySet())
+			if (oldest == null || idleEntry.getValue().lastReturned < oldest.getValue().lastReturned)
+				oldest = idleEntry;
+		// Another thread may have taken the session back in the meantime
+		if (oldest == null || !this.idleSessions.remove(oldest.getKey(), oldest.getValue()))
+			return oldest != null;
+
+		this.discardOrphan(oldest.getValue());
+		this.sessionPermits.release();
+		return true;
 	}
 
 	/**
-	 * Closes the session for the current thread if there is one open at the moment
+	 * Returns the session for the current thread to the pool if there is one open at the moment. If the session was marked as failed it is
+	 * thrown away instead, and if other threads are waiting for room to open a session it is closed so they can
 	 */
 	public void closeSession()
 	{
 		// Grab the current thread, and see if a session is associated with the thread
 		Thread current = Thread.currentThread();
-		if (this.sessions.containsKey(current))
+		PooledSession pooledSession = this.leasedSessions.get(current);
+		if (pooledSession == null)
+			return;
+		// A session that failed may have a broken socket, so never hand it out again
+		if (pooledSession.failed)
 		{
-			// If so, grab the session and close it
-			Pair<IRODSSession, IRODSAccessObjectFactory> session = this.sessions.get(current);
-			try
-			{
-				// Close the session
-				session.getKey().closeSession(this.authenticatedAccount);
-			}
-			// An error occured, ignore it
-			catch (JargonException e)
+			this.discardCurrentSession();
+			return;
+		}
+
+		this.leasedSessions.remove(current);
+		// Forget about idle sessions owned by threads that no longer exist
+		this.pruneDeadThreads();
+
+		// If nobody is waiting for room keep the session around, otherwise close it and give its permit to the next thread
+		if (!this.sessionPermits.hasQueuedThreads())
+		{
+			pooledSession.lastReturned = System.currentTimeMillis();
+			// Remember the thread's connection so it can still be discarded if the thread dies without evicting it
+			pooledSession.orphanDiscarder = this.sessionFactory.captureConnection(pooledSession.session, this.authenticatedAccount);
+			this.idleSessions.put(current, pooledSession);
+		}
+		else
+		{
+			this.closeQuietly(pooledSession);
+			this.sessionPermits.release();
+		}
+	}
+
+	/**
+	 * Marks the session leased by the current thread as failed, so it is thrown away when closed instead of returned to the pool. Should
+	 * be called whenever a call made with the session throws a JargonException since the socket may be broken. The session may still be
+	 * used until it is closed
+	 */
+	public void markCurrentSessionFailed()
+	{
+		PooledSession pooledSession = this.leasedSessions.get(Thread.currentThread());
+		if (pooledSession != null)
+			pooledSession.failed = true;
+	}
+
+	/**
+	 * Throws away the session leased by the current thread instead of returning it to the pool. Used when the connection failed and
+	 * shouldn't be reused. The connection isn't closed cleanly since the socket is probably broken, so no error is reported
+	 */
+	public void discardCurrentSession()
+	{
+		PooledSession pooledSession = this.leasedSessions.remove(Thread.currentThread());
+		if (pooledSession != null)
+		{
+			this.sessionFactory.discardSession(pooledSession.session, this.authenticatedAccount);
+			this.reconnects.incrementAndGet();
+			this.sessionPermits.release();
+		}
+	}
+
+	/**
+	 * Closes the idle session owned by the current thread if there is one. Jargon connections can only be closed from the
+	 * thread that opened them, so this should be called by threads that are about to finish
+	 */
+	public void evictCurrentThread()
+	{
+		PooledSession pooledSession = this.idleSessions.remove(Thread.currentThread());
+		if (pooledSession != null)
+		{
+			this.closeQuietly(pooledSession);
+			this.sessionPermits.release();
+		}
+	}
+
+	/**
+	 * Runs a piece of work on its own session. The session is opened when the work starts and closed when it finishes instead of being
+	 * pooled, so this should be used by tasks running on short lived threads that will never reuse the session, like the workers of a
+	 * parallel load that go away once the load is done. If the work throws, the session is thrown away instead of closed cleanly
+	 *
+	 * @param work The work to run while the session is open
+	 * @param <T> The type of result the work returns
+	 * @return The result of the work
+	 * @throws Exception If the session could not be opened or the work threw an error
+	 */
+	public <T> T withTaskSession(SessionWork<T> work) throws Exception
+	{
+		// If the thread already has a session just use it, and leave it open for whoever opened it
+		if (!this.openSession())
+		{
+			if (this.leasedSessions.containsKey(Thread.currentThread()))
+				return work.run();
+			throw new JargonException("Could not open a session to run a task with");
+		}
+
+		try
+		{
+			return work.run();
+		}
+		catch (Exception e)
+		{
+			this.markCurrentSessionFailed();
+			throw e;
+		}
+		finally
+		{
+			// The task is done with the connection, close it instead of pooling it
+			this.closeSession();
+			this.evictCurrentThread();
+		}
+	}
+
+	/**
+	 * Removes idle sessions whose owning thread has died. The connection was bound to the thread so it can't be reused, and it can't be
+	 * closed normally from this thread either, so it is discarded through the connection captured when the session was returned
+	 */
+	private void pruneDeadThreads()
+	{
+		Iterator<Map.Entry<Thread, PooledSession>> idleIterator = this.idleSessions.entrySet().iterator();
+		while (idleIterator.hasNext())
+		{
+			Map.Entry<Thread, PooledSession> idleEntry = idleIterator.next();
+			if (!idleEntry.getKey().isAlive())
 			{
-				SanimalData.getInstance().getErrorDisplay().showPopup(
-						Alert.AlertType.ERROR,
-						null,
-						"Error",
-						"Session error",
-						"Error closing a session!\n" + org.apache.commons.lang.exception.ExceptionUtils.getStackTrace(e),
-						false);
+				idleIterator.remove();
+				this.discardOrphan(idleEntry.getValue());
+				this.sessionPermits.release();
 			}
-			this.sessions.remove(current);
 		}
 	}
 
+	/**
+	 * Discards an idle session owned by another thread through the connection captured when it was returned
+	 *
+	 * @param pooledSession The idle session to discard
+	 */
+	private void discardOrphan(PooledSession pooledSession)
+	{
+		if (pooledSession.orphanDiscarder != null)
+			pooledSession.orphanDiscarder.run();
+		else
+			this.sessionFactory.discardSession(pooledSession.session, this.authenticatedAccount);
+	}
+
+	/**
+	 * Closes a pooled session, showing an error if the close fails
+	 *
+	 * @param pooledSession The session to close
+	 */
+	private void closeQuietly(PooledSession pooledSession)
+	{
+		try
+		{
+			// Close the session
+			this.sessionFactory.closeSession(pooledSession.session, this.authenticatedAccount);
+		}
+		// An error occured, ignore it
+		catch (JargonException e)
+		{
+			SanimalData.getInstance().getErrorDisplay().showPopup(
+					Alert.AlertType.ERROR,
+					null,
+					"Error",
+					"Session error",
+					"Error closing a session!\n" + ExceptionUtils.getStackTrace(e),
+					false);
+		}
+	}
+
+	/**
+	 * Records the time a thread spent waiting for a lease
+	 *
+	 * @param waitNanos The number of nanoseconds spent waiting
+	 */
+	private void recordLeaseWait(long waitNanos)
+	{
+		this.totalLeaseWaitNanos.addAndGet(waitNanos);
+		this.maxLeaseWaitNanos.accumulateAndGet(waitNanos, Math::max);
+	}
+
 	/**
 	 * Getter for the current session this thread is operating on
 	 *
@@ -114,10 +402,10 @@ public class CyVerseSessionManager
 	 */
 	public IRODSSession getCurrentSession()
 	{
-		Pair<IRODSSession, IRODSAccessObjectFactory> sessionPair = this.sessions.get(Thread.currentThread());
-		if (sessionPair == null)
+		PooledSession pooledSession = this.leasedSessions.get(Thread.currentThread());
+		if (pooledSession == null)
 			return null;
-		return sessionPair.getKey();
+		return pooledSession.session;
 	}
 
 	/**
@@ -127,9 +415,254 @@ public class CyVerseSessionManager
 	 */
 	public IRODSAccessObjectFactory getCurrentAO()
 	{
-		Pair<IRODSSession, IRODSAccessObjectFactory> sessionPair = this.sessions.get(Thread.currentThread());
-		if (sessionPair == null)
+		PooledSession pooledSession = this.leasedSessions.get(Thread.currentThread());
+		if (pooledSession == null)
 			return null;
-		return sessionPair.getValue();
+		return pooledSession.accessObjectFactory;
+	}
+
+	/**
+	 * @return The number of times a lease was satisfied by a pooled session
+	 */
+	public long getPoolHits()
+	{
+		return this.poolHits.get();
+	}
+
+	/**
+	 * @return The number of times a lease required a new session to be created
+	 */
+	public long getPoolMisses()
+	{
+		return this.poolMisses.get();
+	}
+
+	/**
+	 * @return The number of pooled sessions that failed their health check and were reconnected
+	 */
+	public long getReconnects()
+	{
+		return this.reconnects.get();
+	}
+
+	/**
+	 * @return The average number of milliseconds spent waiting for a lease
+	 */
+	public double getAverageLeaseWaitMillis()
+	{
+		long leases = this.leaseCount.get();
+		return leases == 0 ? 0 : this.totalLeaseWaitNanos.get() / 1000000.0 / leases;
+	}
+
+	/**
+	 * @return The longest number of milliseconds spent waiting for a lease
+	 */
+	public double getMaxLeaseWaitMillis()
+	{
+		return this.maxLeaseWaitNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @return The number of sessions currently leased out
+	 */
+	public int getLeasedSessionCount()
+	{
+		return this.leasedSessions.size();
+	}
+
+	/**
+	 * @return The number of sessions currently sitting idle in the pool
+	 */
+	public int getIdleSessionCount()
+	{
+		return this.idleSessions.size();
+	}
+
+	/**
+	 * @return The number of sessions currently open, leased or idle
+	 */
+	public int getOpenSessionCount()
+	{
+		return this.maxSessions - this.sessionPermits.availablePermits();
+	}
+
+	/**
+	 * @return The maximum number of sessions that may be open at once, leased or idle
+	 */
+	public int getMaxSessions()
+	{
+		return this.maxSessions;
+	}
+
+	/**
+	 * Interface used to create, validate, and close sessions. The default implementation talks to jargon, but tests may
+	 * provide a fake access object factory instead
+	 */
+	public interface SessionFactory
+	{
+		/**
+		 * Creates a brand new session and access object factory
+		 *
+		 * @return A pair of session -> access object factory
+		 * @throws JargonException If the session could not be created
+		 */
+		Pair<IRODSSession, IRODSAccessObjectFactory> createSession() throws JargonException;
+
+		/**
+		 * Tests if a pooled session is still connected to the server
+		 *
+		 * @param session The session to test
+		 * @param accessObjectFactory The access object factory associated with the session
+		 * @param account The account the session is authenticated with
+		 * @return True if the session may be reused
+		 */
+		boolean isHealthy(IRODSSession session, IRODSAccessObjectFactory accessObjectFactory, IRODSAccount account);
+
+		/**
+		 * Discards a session that failed its health check without talking to the server
+		 *
+		 * @param session The session to discard
+		 * @param account The account the session is authenticated with
+		 */
+		void discardSession(IRODSSession session, IRODSAccount account);
+
+		/**
+		 * Captures the connection the current thread has open on a session. Called by the owning thread when it returns the session to the
+		 * pool so the connection can be discarded later by a different thread if the owner dies without closing it
+		 *
+		 * @param session The session that was returned to the pool
+		 * @param account The account the session is authenticated with
+		 * @return A callback that discards the captured connection from any thread
+		 */
+		Runnable captureConnection(IRODSSession session, IRODSAccount account);
+
+		/**
+		 * Closes a session cleanly
+		 *
+		 * @param session The session to close
+		 * @param account The account the session is authenticated with
+		 * @throws JargonException If the session could not be closed
+		 */
+		void closeSession(IRODSSession session, IRODSAccount account) throws JargonException;
+	}
+
+	/**
+	 * A piece of work that is run on its own session
+	 *
+	 * @param <T> The type of result the work returns
+	 */
+	@FunctionalInterface
+	public interface SessionWork<T>
+	{
+		/**
+		 * Runs the work using the current thread's session
+		 *
+		 * @return The result of the work
+		 * @throws Exception If the work failed
+		 */
+		T run() throws Exception;
+	}
+
+	/**
+	 * Default session factory which creates real jargon sessions
+	 */
+	private static class JargonSessionFactory implements SessionFactory
+	{
+		@Override
+		public Pair<IRODSSession, IRODSAccessObjectFactory> createSession() throws JargonException
+		{
+			// Create the session and access object
+			IRODSSession newSession = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
+			IRODSAccessObjectFactory newAccessFactory = IRODSAccessObjectFactoryImpl.instance(newSession);
+			return new Pair<>(newSession, newAccessFactory);
+		}
+
+		@Override
+		public boolean isHealthy(IRODSSession session, IRODSAccessObjectFactory accessObjectFactory, IRODSAccount account)
+		{
+			try
+			{
+				// Perform a cheap round trip to the server, if it fails the socket is stale
+				accessObjectFactory.getEnvironmentalInfoAO(account).getIRODSServerCurrentTime();
+				return true;
+			}
+			catch (Exception ignored)
+			{
+				return false;
+			}
+		}
+
+		@Override
+		public void discardSession(IRODSSession session, IRODSAccount account)
+		{
+			try
+			{
+				// Throw away the connection without attempting a clean disconnect
+				session.discardSessionForErrors(account);
+			}
+			catch (Exception ignored)
+			{
+				// The connection is already broken, nothing else to do
+			}
+		}
+
+		@Override
+		public Runnable captureConnection(IRODSSession session, IRODSAccount account)
+		{
+			// Jargon stores connections per thread, so grab this thread's connections while we still can
+			Map<String, AbstractIRODSMidLevelProtocol> threadConnections = session.getIRODSCommandsMap();
+			List<AbstractIRODSMidLevelProtocol> connections = threadConnections == null ? Collections.emptyList() : new ArrayList<>(threadConnections.values());
+			return () ->
+			{
+				for (AbstractIRODSMidLevelProtocol connection : connections)
+				{
+					try
+					{
+						// Throw away the connection without attempting a clean disconnect, the thread that owned it is gone
+						connection.obliterateConnectionAndDiscardErrors();
+					}
+					catch (Exception ignored)
+					{
+						// The connection is already broken, nothing else to do
+					}
+				}
+			};
+		}
+
+		@Override
+		public void closeSession(IRODSSession session, IRODSAccount account) throws JargonException
+		{
+			session.closeSession(account);
+		}
+	}
+
+	/**
+	 * A session stored in the pool
+	 */
+	private static class PooledSession
+	{
+		// The jargon session
+		private final IRODSSession session;
+		// The access object factory created from the session
+		private final IRODSAccessObjectFactory accessObjectFactory;
+		// The last time this session was returned to the pool
+		private long lastReturned;
+		// Discards the connection if the owning thread dies while the session is idle, captured when the session is returned
+		private Runnable orphanDiscarder;
+		// True if a call made with the session failed, so it must be thrown away instead of reused
+		private boolean failed = false;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param session The jargon session
+		 * @param accessObjectFactory The access object factory created from the session
+		 */
+		private PooledSession(IRODSSession session, IRODSAccessObjectFactory accessObjectFactory)
+		{
+			this.session = session;
+			this.accessObjectFactory = accessObjectFactory;
+			this.lastReturned = System.currentTimeMillis();
+		}
 	}
 }
@@ -11,7 +11,11 @@ import javafx.scene.image.Image;
 import model.SanimalData;
 import model.location.Location;
 import model.species.Species;
+import model.species.SpeciesEntry;
 import model.threading.ErrorTask;
+import model.threading.TaskPriority;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.irods.jargon.core.pub.io.IRODSFile;
@@ -20,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -50,10 +55,14 @@ public class CloudImageEntry extends ImageEntry
 	private transient final BooleanProperty hasBeenPulledFromCloud = new SimpleBooleanProperty(false);
 	// If the image entry is currently being downloaded from CyVerse
 	private transient final BooleanProperty isBeingPulledFromCloud = new SimpleBooleanProperty(false);
+	// If the date, location, and species were filled in from CyVerse metadata so we don't need to download the image just to read them
+	private transient final AtomicBoolean hasBeenHydrated = new AtomicBoolean(false);
 	// If the image entry was tagged with species on CyVerse
 	private transient final AtomicBoolean wasTaggedWithSpecies = new AtomicBoolean(false);
 	// If the current version of the image is dirty compared to the one on CyVerse
 	private transient final AtomicBoolean isCloudDirty = new AtomicBoolean(false);
+	// The version of the file on CyVerse when it was listed, used to check the image cache when pulling. Null if it is not known
+	private transient volatile String cyverseVersion = null;
 
 	/**
 	 * Create a new image entry with an image file
@@ -141,7 +150,9 @@ public class CloudImageEntry extends ImageEntry
 	@Override
 	public LocalDateTime getDateTaken()
 	{
-		this.pullFromCloudIfNotPulled();
+		// If we already know the date from CyVerse metadata there's no need to download the image
+		if (!this.hasBeenHydrated.get())
+			this.pullFromCloudIfNotPulled();
 		return super.getDateTaken();
 	}
 
@@ -165,7 +176,9 @@ public class CloudImageEntry extends ImageEntry
 	@Override
 	public Location getLocationTaken()
 	{
-		this.pullFromCloudIfNotPulled();
+		// If we already know the location from CyVerse metadata there's no need to download the image
+		if (!this.hasBeenHydrated.get())
+			this.pullFromCloudIfNotPulled();
 		return super.getLocationTaken();
 	}
 
@@ -244,9 +257,13 @@ public class CloudImageEntry extends ImageEntry
 
 	/**
 	 * Writes the image to disk if it has been downloaded from the cloud
+	 *
+	 * @throws ImageReadException If the image's existing metadata could not be read
+	 * @throws ImageWriteException If the new metadata could not be created
+	 * @throws IOException If the image file could not be written
 	 */
 	@Override
-	public synchronized void writeToDisk()
+	public synchronized void writeToDisk() throws ImageReadException, ImageWriteException, IOException
 	{
 		if (this.hasBeenPulledFromCloud.getValue())
 			super.writeToDisk();
@@ -266,7 +283,7 @@ public class CloudImageEntry extends ImageEntry
 			protected File call()
 			{
 				this.updateMessage("Downloading the image " + getCyverseFile().getName() + " for editing...");
-				return SanimalData.getInstance().getConnectionManager().remoteToLocalImageFile(getCyverseFile());
+				return SanimalData.getInstance().getConnectionManager().remoteToLocalImageFile(getCyverseFile(), getCyverseVersion());
 			}
 		};
 
@@ -275,6 +292,9 @@ public class CloudImageEntry extends ImageEntry
 		{
 			File localFile = pullTask.getValue();
 			this.getFileProperty().setValue(localFile);
+			// The file's metadata replaces any species we filled in from CyVerse metadata
+			if (this.hasBeenHydrated.get())
+				this.getSpeciesPresent().clear();
 			// Read the metadata into the image file
 			super.readFileMetadataIntoImage(SanimalData.getInstance().getLocationList(), SanimalData.getInstance().getSpeciesList());
 			// Update flags
@@ -285,7 +305,33 @@ public class CloudImageEntry extends ImageEntry
 			this.markCloudDirty(false);
 		});
 
-		SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(pullTask);
+		// The user is waiting on this image, so don't queue it behind uploads and imports
+		SanimalData.getInstance().getSanimalExecutor().getImmediateExecutor().addTask(pullTask, TaskPriority.IMAGE_PULL);
+	}
+
+	/**
+	 * Fills in the date, location, and species of this image from the metadata stored with it on CyVerse. After this the image is only
+	 * downloaded once its file is actually needed, such as when it is previewed or edited. Must be called on the FX thread
+	 *
+	 * @param dateTaken The date the image was taken
+	 * @param locationTaken The location the image was taken at, which must be in the global location list
+	 * @param speciesPresent The species in the image, which must be in the global species list
+	 */
+	public void hydrateFromMetadata(LocalDateTime dateTaken, Location locationTaken, List<SpeciesEntry> speciesPresent)
+	{
+		// If the image was already downloaded its file is the better source of metadata
+		if (this.hasBeenPulledFromCloud.getValue() || this.isBeingPulledFromCloud.getValue())
+			return;
+
+		// Filling in metadata is not an edit, so the image is not marked dirty. Use the super methods so that we don't trigger a download
+		this.updateWithoutMarkingDirty(() ->
+		{
+			super.setDateTaken(dateTaken);
+			super.setLocationTaken(locationTaken);
+			this.getSpeciesPresent().setAll(speciesPresent);
+		});
+		this.wasTaggedWithSpecies.set(!this.getSpeciesPresent().isEmpty());
+		this.hasBeenHydrated.set(true);
 	}
 
 	/**
@@ -337,4 +383,14 @@ public class CloudImageEntry extends ImageEntry
 	{
 		return this.wasTaggedWithSpecies.get();
 	}
+
+	public String getCyverseVersion()
+	{
+		return this.cyverseVersion;
+	}
+
+	public void setCyverseVersion(String cyverseVersion)
+	{
+		this.cyverseVersion = cyverseVersion;
+	}
 }
@@ -1,24 +1,37 @@
 package model.image;
 
+import javafx.beans.property.StringProperty;
 import javafx.scene.control.Alert;
 import model.SanimalData;
 import model.analysis.SanimalAnalysisUtils;
 import model.location.Location;
 import model.species.Species;
+import model.util.LocationSpeciesRegistry;
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.irods.jargon.core.pub.domain.AvuData;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -29,6 +42,11 @@ import java.util.stream.Collectors;
  */
 public class DirectoryManager
 {
+	// The size of the buffer used when writing TAR files
+	private static final Integer TAR_BUFFER_SIZE = 1048576;
+	// The number of threads used to read image metadata when importing a directory
+	private static final Integer IMPORT_THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
 	/**
 	 * Given a directory this function validates that each file exists and if they don't adds them to the invalid containers list
 	 *
@@ -81,16 +99,41 @@ public class DirectoryManager
 	 * 
 	 * @param imageOrLocation
 	 *            The file to make into a directory
+	 * @param knownLocations
+	 *            The current list of known locations
+	 * @param knownSpecies
+	 *            The current list of known species
+	 * @return The image directory representing the file
 	 */
 	public static ImageDirectory loadDirectory(File imageOrLocation, List<Location> knownLocations, List<Species> knownSpecies)
 	{
+		return DirectoryManager.loadDirectory(imageOrLocation, knownLocations, knownSpecies, null);
+	}
+
+	/**
+	 * Set the head directory to the given file. Image metadata is read on several threads at once
+	 *
+	 * @param imageOrLocation
+	 *            The file to make into a directory
+	 * @param knownLocations
+	 *            The current list of known locations
+	 * @param knownSpecies
+	 *            The current list of known species
+	 * @param messageCallback
+	 *            Optional callback that is updated with how many images have been read so far, may be null
+	 * @return The image directory representing the file
+	 */
+	public static ImageDirectory loadDirectory(File imageOrLocation, List<Location> knownLocations, List<Species> knownSpecies, StringProperty messageCallback)
+	{
+		// Index the known locations and species once for the whole import
+		LocationSpeciesRegistry registry = new LocationSpeciesRegistry(knownLocations, knownSpecies);
 		ImageDirectory toReturn;
 		if (!imageOrLocation.isDirectory())
 		{
 			// If it's not a directory, then just add the image
 			toReturn = new ImageDirectory(imageOrLocation.getParentFile());
 			ImageEntry imageEntry = new ImageEntry(imageOrLocation);
-			imageEntry.readFileMetadataIntoImage(knownLocations, knownSpecies);
+			imageEntry.readFileMetadataIntoImage(registry);
 			imageEntry.initIconBindings();
 			toReturn.addImage(imageEntry);
 		}
@@ -98,54 +141,170 @@ public class DirectoryManager
 		{
 			// If it is a directory, recursively create it
 			toReturn = new ImageDirectory(imageOrLocation);
-			DirectoryManager.createDirectoryAndImageTree(toReturn, knownLocations, knownSpecies);
+			DirectoryManager.createDirectoryAndImageTree(toReturn, registry, messageCallback);
 		}
 		return toReturn;
 	}
 
 	/**
-	 * Recursively create the directory structure
+	 * Create the directory structure. First the directory tree is walked to find every image, then the metadata of each image is read
+	 * in parallel, and finally every image and sub-directory is added to its parent in the order it was listed
 	 * 
-	 * @param current
-	 *            The current directory to work on
+	 * @param root
+	 *            The directory to fill
+	 * @param registry
+	 *            The registry used to look up known locations and species
+	 * @param messageCallback
+	 *            Optional callback that is updated with how many images have been read so far, may be null
 	 */
-	private static void createDirectoryAndImageTree(ImageDirectory current, List<Location> knownLocations, List<Species> knownSpecies)
+	private static void createDirectoryAndImageTree(ImageDirectory root, LocationSpeciesRegistry registry, StringProperty messageCallback)
 	{
-		File[] subFiles = current.getFile().listFiles();
+		// Directory -> the images and sub-directories in it, in the order they were listed
+		Map<ImageDirectory, List<ImageContainer>> directoryContents = new LinkedHashMap<>();
+		// Every image found under the root directory
+		List<ImageEntry> imagesToRead = new ArrayList<>();
+		DirectoryManager.walkDirectory(root, directoryContents, imagesToRead);
 
-		if (subFiles != null)
-		{
-			// Get all files in the directory
-			for (File file : subFiles)
+		// Read the metadata of each image. Images are not yet part of the tree so no list listeners fire while we do this
+		Integer threadCount = Math.max(1, Math.min(IMPORT_THREAD_COUNT, imagesToRead.size()));
+		ExecutorService metadataReaders = Executors.newFixedThreadPool(threadCount);
+		AtomicInteger nextImage = new AtomicInteger(0);
+		AtomicInteger imagesRead = new AtomicInteger(0);
+		long startTime = System.nanoTime();
+		for (Integer i = 0; i < threadCount; i++)
+			metadataReaders.submit(() ->
 			{
-				// Add all image files to the directory
-				if (SanimalAnalysisUtils.fileIsImage(file))
+				Integer index;
+				while ((index = nextImage.getAndIncrement()) < imagesToRead.size())
 				{
-					ImageEntry imageEntry = new ImageEntry(file);
-					imageEntry.readFileMetadataIntoImage(knownLocations, knownSpecies);
-					imageEntry.initIconBindings();
-					current.addImage(imageEntry);
+					ImageEntry imageEntry = imagesToRead.get(index);
+					try
+					{
+						imageEntry.readFileMetadataIntoImage(registry);
+						imageEntry.initIconBindings();
+					}
+					catch (Exception e)
+					{
+						SanimalData.getInstance().getErrorDisplay().printError("Error reading metadata for file " + imageEntry.getFile().getName() + "!\n" + ExceptionUtils.getStackTrace(e));
+					}
+					imagesRead.incrementAndGet();
 				}
-				// Add all subdirectories to the directory
-				else if (file.isDirectory())
+			});
+		metadataReaders.shutdown();
+
+		try
+		{
+			// While we wait, report how fast images are being read
+			while (!metadataReaders.awaitTermination(250, TimeUnit.MILLISECONDS))
+				if (messageCallback != null)
 				{
-					ImageDirectory subDirectory = new ImageDirectory(file);
-					current.addChild(subDirectory);
-					DirectoryManager.createDirectoryAndImageTree(subDirectory, knownLocations, knownSpecies);
+					double seconds = (System.nanoTime() - startTime) / 1000000000D;
+					messageCallback.setValue(String.format("Loading directory (%d/%d images, %.1f files/sec)...", imagesRead.get(), imagesToRead.size(), imagesRead.get() / seconds));
 				}
+		}
+		catch (InterruptedException e)
+		{
+			// If we're interrupted stop reading and leave the directory empty
+			metadataReaders.shutdownNow();
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		// Now that every image is read, build the tree in the order files were listed
+		directoryContents.forEach((directory, contents) ->
+		{
+			for (ImageContainer container : contents)
+			{
+				if (container instanceof ImageEntry)
+					directory.addImage((ImageEntry) container);
+				else
+					directory.addChild(container);
+			}
+		});
+	}
+
+	/**
+	 * Recursively walks a directory finding all images and sub-directories
+	 *
+	 * @param current
+	 *            The current directory to walk
+	 * @param directoryContents
+	 *            Map of directory -> images and sub-directories in the directory to add to
+	 * @param imagesFound
+	 *            The list of images found so far
+	 */
+	private static void walkDirectory(ImageDirectory current, Map<ImageDirectory, List<ImageContainer>> directoryContents, List<ImageEntry> imagesFound)
+	{
+		List<ImageContainer> contents = new ArrayList<>();
+		directoryContents.put(current, contents);
+
+		// Get all files in the directory. The stream returns files in whatever order the file system stores them, so sort them by name to
+		// build the same tree and read images in the same order every time
+		List<Path> subFiles = new ArrayList<>();
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(current.getFile().toPath()))
+		{
+			directoryStream.forEach(subFiles::add);
+		}
+		catch (IOException e)
+		{
+			// Directories we can't read are skipped like before
+			SanimalData.getInstance().getErrorDisplay().printError("Could not list the directory " + current.getFile().getAbsolutePath() + "!\n" + ExceptionUtils.getStackTrace(e));
+			return;
+		}
+		subFiles.sort(Comparator.comparing(Path::getFileName));
+
+		for (Path path : subFiles)
+		{
+			File file = path.toFile();
+			// Add all image files to the directory
+			if (SanimalAnalysisUtils.fileIsImage(file))
+			{
+				ImageEntry imageEntry = new ImageEntry(file);
+				contents.add(imageEntry);
+				imagesFound.add(imageEntry);
+			}
+			// Add all subdirectories to the directory
+			else if (Files.isDirectory(path))
+			{
+				ImageDirectory subDirectory = new ImageDirectory(file);
+				contents.add(subDirectory);
+				DirectoryManager.walkDirectory(subDirectory, directoryContents, imagesFound);
 			}
 		}
 	}
 
 	/**
-	 * Given an image directory, this will create a TAR file out of the directory
+	 * Given an image directory, this will create a set of TAR files out of the directory
 	 *
 	 * @param directory The image directory to TAR
 	 * @param directoryMetaJSON The JSON file representing this image directory
 	 * @param imageToMetadata The CSV file representing each image's metadata
-	 * @return The TAR file
+	 * @param maxImagesPerTar The maximum number of images to put into each TAR file
+	 * @return The TAR files
 	 */
 	public static File[] directoryToTars(ImageDirectory directory, File directoryMetaJSON, Function<ImageEntry, String> imageToMetadata, Integer maxImagesPerTar)
+	{
+		List<File> tars = new ArrayList<>();
+		// Collect each TAR as it is finished
+		if (DirectoryManager.directoryToTars(directory, directoryMetaJSON, imageToMetadata, maxImagesPerTar, (tarIndex, numberOfTars, tarFile) -> tars.add(tarFile)))
+			return tars.toArray(new File[0]);
+		// If something goes wrong, return a blank array
+		return new File[0];
+	}
+
+	/**
+	 * Given an image directory, this will create a set of TAR files out of the directory. Each TAR file is handed to the callback as soon as it
+	 * is finished so that it can be processed (uploaded) while the next TAR file is being written. Image files are streamed into the TAR
+	 * instead of being read into memory
+	 *
+	 * @param directory The image directory to TAR
+	 * @param directoryMetaJSON The JSON file representing this image directory
+	 * @param imageToMetadata The CSV file representing each image's metadata
+	 * @param maxImagesPerTar The maximum number of images to put into each TAR file
+	 * @param tarCallback The callback that receives each TAR file once it has been written
+	 * @return True if every TAR file was written successfully, false if writing failed or the callback stopped early
+	 */
+	public static Boolean directoryToTars(ImageDirectory directory, File directoryMetaJSON, Function<ImageEntry, String> imageToMetadata, Integer maxImagesPerTar, TarCallback tarCallback)
 	{
 		maxImagesPerTar = maxImagesPerTar - 1;
 		try
@@ -156,8 +315,6 @@ public class DirectoryManager
 			// Take the number of images / maximum number of images per tar to get the number of tar files we need
 			Integer numberOfTars = (int) Math.ceil((double) imageEntries.size() / (double) maxImagesPerTar);
 			Integer imagesPerTar = (int) Math.ceil((double) imageEntries.size() / (double) numberOfTars);
-			// Create an array of tars
-			File[] tars = new File[numberOfTars];
 
 			// Get the path to the top level directory
 			String topDirectory = directory.getFile().getParentFile().getAbsolutePath();
@@ -166,70 +323,96 @@ public class DirectoryManager
 			{
 				// Create a temporarily TAR file to write to
 				File tempTar = SanimalData.getInstance().getTempDirectoryManager().createTempFile("tarToUpload.tar");
-				// Create a TAR output stream to write to
-				TarArchiveOutputStream tarOut = new TarArchiveOutputStream(new FileOutputStream(tempTar));
-
-				File tempMetaCSV = SanimalData.getInstance().getTempDirectoryManager().createTempFile("meta.csv");
-				tempMetaCSV.createNewFile();
+				// The CSV file containing metadata for each image in this TAR, it's small enough to keep in memory
+				StringBuilder metaCSV = new StringBuilder();
 
-				PrintWriter metaOut = new PrintWriter(tempMetaCSV);
-				for (Integer imageIndex = tarIndex * imagesPerTar; imageIndex < (tarIndex + 1) * imagesPerTar && imageIndex < imageEntries.size(); imageIndex++)
+				// Create a TAR output stream to write to, it gets flushed and closed automatically. We delete the TAR after the program closes
+				try (TarArchiveOutputStream tarOut = new TarArchiveOutputStream(new BufferedOutputStream(new FileOutputStream(tempTar), TAR_BUFFER_SIZE)))
 				{
-					ImageEntry imageEntry = imageEntries.get(imageIndex);
-					// Create an archive entry for the image
-					String tarPath = StringUtils.substringAfter(imageEntry.getFile().getAbsolutePath(), topDirectory).replace('\\', '/');
-					ArchiveEntry archiveEntry = tarOut.createArchiveEntry(imageEntry.getFile(), tarPath);
-					// Put the archive entry into the TAR file
-					tarOut.putArchiveEntry(archiveEntry);
-					// Write all the bytes in the file into the TAR file
-					tarOut.write(Files.readAllBytes(imageEntry.getFile().toPath()));
-					// Finish writing the TAR entry
-					tarOut.closeArchiveEntry();
+					// Allow long file names and large files
+					tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+					tarOut.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
 
-					// Write a metadata entry into our meta-X.csv file
-					metaOut.write(imageToMetadata.apply(imageEntry));
-				}
-				// Close the writer to the metadata file
-				metaOut.close();
+					for (Integer imageIndex = tarIndex * imagesPerTar; imageIndex < (tarIndex + 1) * imagesPerTar && imageIndex < imageEntries.size(); imageIndex++)
+					{
+						ImageEntry imageEntry = imageEntries.get(imageIndex);
+						// Create an archive entry for the image
+						String tarPath = StringUtils.substringAfter(imageEntry.getFile().getAbsolutePath(), topDirectory).replace('\\', '/');
+						DirectoryManager.writeFileToTar(tarOut, imageEntry.getFile(), tarPath);
 
-				// If this is the first tar file, include the UploadMeta.csv file
-				if (tarIndex == 0)
-				{
-					// Create an archive entry for the upload meta file
-					ArchiveEntry archiveEntry = tarOut.createArchiveEntry(directoryMetaJSON, "/UploadMeta.json");
+						// Write a metadata entry into our meta-X.csv file
+						metaCSV.append(imageToMetadata.apply(imageEntry));
+					}
+
+					// If this is the first tar file, include the UploadMeta.json file
+					if (tarIndex == 0)
+						DirectoryManager.writeFileToTar(tarOut, directoryMetaJSON, "/UploadMeta.json");
+
+					// Create an archive entry for the metaCSV file
+					byte[] metaCSVBytes = metaCSV.toString().getBytes(StandardCharsets.UTF_8);
+					TarArchiveEntry metaCSVEntry = new TarArchiveEntry("/meta-" + tarIndex.toString() + ".csv");
+					metaCSVEntry.setSize(metaCSVBytes.length);
 					// Put the archive entry into the TAR file
-					tarOut.putArchiveEntry(archiveEntry);
-					// Write all the bytes in the file into the TAR file
-					tarOut.write(Files.readAllBytes(directoryMetaJSON.toPath()));
+					tarOut.putArchiveEntry(metaCSVEntry);
+					// Write all the bytes in the CSV into the TAR file
+					tarOut.write(metaCSVBytes);
 					// Finish writing the TAR entry
 					tarOut.closeArchiveEntry();
 				}
 
-				// Create an archive entry for the metaCSV file
-				ArchiveEntry archiveEntry = tarOut.createArchiveEntry(tempMetaCSV, "/meta-" + tarIndex.toString() + ".csv");
-				// Put the archive entry into the TAR file
-				tarOut.putArchiveEntry(archiveEntry);
-				// Write all the bytes in the file into the TAR file
-				tarOut.write(Files.readAllBytes(tempMetaCSV.toPath()));
-				// Finish writing the TAR entry
-				tarOut.closeArchiveEntry();
-
-				// Flush the file and close it. We delete the TAR after the program closes
-				tarOut.flush();
-				tarOut.close();
-
-				// Store the tar path
-				tars[tarIndex] = tempTar;
+				// Hand the finished tar off, stop if the callback doesn't want any more TAR files
+				if (!tarCallback.tarCreated(tarIndex, numberOfTars, tempTar))
+					return false;
 			}
 
-			return tars;
+			return true;
 		}
 		catch (IOException e)
 		{
 			e.printStackTrace();
 		}
-		// If something goes wrong, return a blank array
-		return new File[0];
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Streams a file into a TAR file through a fixed size buffer without reading the entire file into memory
+	 *
+	 * @param tarOut The TAR file to write to
+	 * @param file The file to write into the TAR
+	 * @param tarPath The path of the file inside of the TAR
+	 * @throws IOException If the file could not be read or the TAR could not be written
+	 */
+	private static void writeFileToTar(TarArchiveOutputStream tarOut, File file, String tarPath) throws IOException
+	{
+		// Create an archive entry for the file and put it into the TAR file
+		ArchiveEntry archiveEntry = tarOut.createArchiveEntry(file, tarPath);
+		tarOut.putArchiveEntry(archiveEntry);
+		// Copy the file into the TAR file a buffer at a time
+		Files.copy(file.toPath(), tarOut);
+		// Finish writing the TAR entry
+		tarOut.closeArchiveEntry();
+	}
+
+	/**
+	 * Callback used to receive TAR files as they are created
+	 */
+	@FunctionalInterface
+	public interface TarCallback
+	{
+		/**
+		 * Called once a TAR file has been completely written
+		 *
+		 * @param tarIndex The index of the TAR file, starting at 0
+		 * @param numberOfTars The total number of TAR files that will be created
+		 * @param tarFile The finished TAR file
+		 * @return True if more TAR files should be created, false to stop early
+		 * @throws InterruptedException If the callback was interrupted while waiting to accept the TAR file
+		 */
+		Boolean tarCreated(Integer tarIndex, Integer numberOfTars, File tarFile) throws InterruptedException;
 	}
 
 	/**
@@ -241,17 +424,19 @@ public class DirectoryManager
 	 */
 	public static void parseLegacyDirectory(ImageDirectory directory, List<Location> knownLocations, List<Species> knownSpecies)
 	{
+		// Index the known locations and species so each directory name is an O(1) lookup
+		LocationSpeciesRegistry registry = new LocationSpeciesRegistry(knownLocations, knownSpecies);
 		// Iterate over all location directories
 		directory.getChildren().stream().filter(imageContainer -> imageContainer instanceof ImageDirectory).map(imageContainer -> (ImageDirectory) imageContainer).forEach(locationDirectory ->
 		{
 			// Get the location name
 			String locationName = locationDirectory.getFile().getName();
-			Optional<Location> locationOpt = knownLocations.stream().filter(location -> location.getName().equalsIgnoreCase(locationName)).findFirst();
+			Location existingLocation = registry.findLocationByName(locationName);
 			Location currentLocation;
 			// Get the location if it exists
-			if (locationOpt.isPresent())
+			if (existingLocation != null)
 			{
-				currentLocation = locationOpt.get();
+				currentLocation = existingLocation;
 			}
 			// Create the location if it does not
 			else
@@ -262,7 +447,7 @@ public class DirectoryManager
 				currentLocation.setElevation(0.0);
 				currentLocation.setLat(0.0);
 				currentLocation.setLng(0.0);
-				knownLocations.add(currentLocation);
+				registry.addLocation(currentLocation);
 			}
 
 			// Iterate over all species directories
@@ -270,12 +455,12 @@ public class DirectoryManager
 			{
 				// Get the species name
 				String speciesName = speciesDirectory.getFile().getName();
-				Optional<Species> speciesOpt = knownSpecies.stream().filter(species -> species.getName().equalsIgnoreCase(speciesName)).findFirst();
+				Species existingSpecies = registry.findSpeciesByName(speciesName);
 				Species currentSpecies;
 				// Get the species if it exists
-				if (speciesOpt.isPresent())
+				if (existingSpecies != null)
 				{
-					currentSpecies = speciesOpt.get();
+					currentSpecies = existingSpecies;
 				}
 				// Create the species if it does not
 				else
@@ -283,7 +468,7 @@ public class DirectoryManager
 					currentSpecies = new Species();
 					currentSpecies.setName(speciesName);
 					currentSpecies.setSpeciesIcon(Species.DEFAULT_ICON);
-					knownSpecies.add(currentSpecies);
+					registry.addSpecies(currentSpecies);
 				}
 
 				// Iterate over all species count directories
@@ -0,0 +1,136 @@
+package model.image;
+
+import java.util.*;
+
+/**
+ * Queue of images in the image tree that need their metadata written to disk. Images are added when they are marked dirty so the metadata
+ * writer never has to scan the whole image tree, and an image edited several times before it gets written is only queued once. Images are
+ * removed again when they are marked clean or leave the image tree
+ */
+public class DirtyImageQueue
+{
+	// The number of times in a row an image may fail to write before it is left out of the queue until it is edited again
+	public static final Integer MAX_WRITE_ATTEMPTS = 3;
+
+	// The images waiting to be written in the order they were marked dirty. A linked set so an image is only queued once and an image
+	// that gets marked clean can be removed without searching the queue. Guarded by this
+	private final Set<ImageEntry> queuedImages = new LinkedHashSet<>();
+	// Map of image -> the number of times in a row the image failed to write. Guarded by this
+	private final Map<ImageEntry, Integer> imageToFailedWrites = new HashMap<>();
+
+	// The throughput of the last batch written in images per second
+	private volatile double imagesPerSecond = 0;
+
+	/**
+	 * Adds an image to the queue if it is not already waiting to be written. This is called when the image is edited, so an image that
+	 * kept failing to write gets another set of attempts
+	 *
+	 * @param imageEntry The image that needs to be written
+	 */
+	public synchronized void enqueue(ImageEntry imageEntry)
+	{
+		this.queuedImages.add(imageEntry);
+		this.imageToFailedWrites.remove(imageEntry);
+	}
+
+	/**
+	 * Removes an image from the queue, used when an image is marked clean before it was written or leaves the image tree
+	 *
+	 * @param imageEntry The image that no longer needs to be written
+	 */
+	public synchronized void dequeue(ImageEntry imageEntry)
+	{
+		this.queuedImages.remove(imageEntry);
+		this.imageToFailedWrites.remove(imageEntry);
+	}
+
+	/**
+	 * Puts an image that failed to write back on the queue so it is tried again, unless it already failed too many times in a row or it
+	 * left the image tree while it was being written
+	 *
+	 * @param imageEntry The image that failed to write
+	 * @return True if the image will be tried again, false if it is left out of the queue until it is edited again
+	 */
+	public synchronized Boolean retry(ImageEntry imageEntry)
+	{
+		if (imageEntry.getDirtyImageQueue() != this)
+			return false;
+		Integer failedWrites = this.imageToFailedWrites.merge(imageEntry, 1, Integer::sum);
+		if (failedWrites >= MAX_WRITE_ATTEMPTS)
+		{
+			this.imageToFailedWrites.remove(imageEntry);
+			return false;
+		}
+		this.queuedImages.add(imageEntry);
+		return true;
+	}
+
+	/**
+	 * Puts an image that was taken off the queue but never written back on the queue, used when writing is interrupted
+	 *
+	 * @param imageEntry The image that still needs to be written
+	 */
+	public synchronized void requeue(ImageEntry imageEntry)
+	{
+		if (imageEntry.getDirtyImageQueue() == this && imageEntry.isDiskDirty())
+			this.queuedImages.add(imageEntry);
+	}
+
+	/**
+	 * Removes up to the given number of images from the queue. Images that are no longer dirty are skipped, an image edited after being
+	 * removed will be queued again
+	 *
+	 * @param maxImages The max number of images to remove
+	 * @return A list of dirty images that need to be written
+	 */
+	public synchronized List<ImageEntry> drain(Integer maxImages)
+	{
+		List<ImageEntry> toWrite = new ArrayList<>();
+		Iterator<ImageEntry> iterator = this.queuedImages.iterator();
+		while (toWrite.size() < maxImages && iterator.hasNext())
+		{
+			// Remove it from the queue first so that any edit from here on queues it again
+			ImageEntry imageEntry = iterator.next();
+			iterator.remove();
+			if (imageEntry.isDiskDirty())
+				toWrite.add(imageEntry);
+		}
+		return toWrite;
+	}
+
+	/**
+	 * Records how fast the last batch of images was written
+	 *
+	 * @param imagesWritten The number of images written
+	 * @param nanoseconds The time it took to write them
+	 */
+	public void recordBatch(Integer imagesWritten, long nanoseconds)
+	{
+		if (nanoseconds > 0)
+			this.imagesPerSecond = imagesWritten / (nanoseconds / 1000000000D);
+	}
+
+	/**
+	 * @return The number of images waiting to be written
+	 */
+	public synchronized Integer getDepth()
+	{
+		return this.queuedImages.size();
+	}
+
+	/**
+	 * @return True if no images are waiting to be written
+	 */
+	public synchronized Boolean isEmpty()
+	{
+		return this.queuedImages.isEmpty();
+	}
+
+	/**
+	 * @return The number of images written per second in the last batch
+	 */
+	public double getImagesPerSecond()
+	{
+		return this.imagesPerSecond;
+	}
+}
@@ -18,6 +18,14 @@ public abstract class ImageContainer implements HierarchyData<ImageContainer>
 	// Sets the location taken of the given image container
 	public abstract void setLocationTaken(Location location);
 
+	/**
+	 * Sets the queue that dirty images in this container are written to disk through. Containers in the image tree share the tree's queue,
+	 * containers outside of it have none so their images are never written automatically
+	 *
+	 * @param dirtyImageQueue The queue to write dirty images through, or null if they should not be written
+	 */
+	public abstract void setDirtyImageQueue(DirtyImageQueue dirtyImageQueue);
+
 	/**
 	 * To string just prints out the file name by default
 	 * @return The file name
@@ -6,6 +6,7 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.image.Image;
 import model.location.Location;
@@ -56,6 +57,9 @@ public class ImageDirectory extends ImageContainer
 	// The progress of the directory upload to CyVerse
 	private transient DoubleProperty uploadProgress = new SimpleDoubleProperty(-1);
 
+	// The queue that dirty images in this directory are written through, null if the directory is not in the image tree
+	private transient DirtyImageQueue dirtyImageQueue = null;
+
 	/**
 	 * Construct an image directoryProperty
 	 * 
@@ -70,6 +74,30 @@ public class ImageDirectory extends ImageContainer
 				throw new RuntimeException("The specified file is not a directory!");
 			this.directoryProperty.setValue(directory);
 		}
+
+		// Children share this directory's queue while they're in it, so anything removed from the tree stops being written to disk
+		this.children.addListener((ListChangeListener<ImageContainer>) change ->
+		{
+			while (change.next())
+			{
+				if (change.wasRemoved())
+					change.getRemoved().forEach(child -> child.setDirtyImageQueue(null));
+				if (change.wasAdded())
+					change.getAddedSubList().forEach(child -> child.setDirtyImageQueue(this.dirtyImageQueue));
+			}
+		});
+	}
+
+	/**
+	 * Sets the queue that dirty images in this directory and its sub-directories are written through
+	 *
+	 * @param dirtyImageQueue The queue to write dirty images through, or null if they should not be written
+	 */
+	@Override
+	public void setDirtyImageQueue(DirtyImageQueue dirtyImageQueue)
+	{
+		this.dirtyImageQueue = dirtyImageQueue;
+		this.children.forEach(child -> child.setDirtyImageQueue(dirtyImageQueue));
 	}
 
 	/**
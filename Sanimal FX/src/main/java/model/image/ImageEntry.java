@@ -15,6 +15,7 @@ import model.constant.SanimalMetadataFields;
 import model.location.Location;
 import model.species.Species;
 import model.species.SpeciesEntry;
+import model.util.LocationSpeciesRegistry;
 import model.util.MetadataUtils;
 import model.util.RoundingUtils;
 import org.apache.commons.imaging.ImageReadException;
@@ -72,6 +73,10 @@ public class ImageEntry extends ImageContainer
 	});
 	// If this image is dirty, we set a flag to write it to disk at some later point
 	private transient final AtomicBoolean isDiskDirty = new AtomicBoolean(false);
+	// If changes to the date, location, and species are only filling in metadata stored elsewhere and should not mark the image dirty
+	private transient final AtomicBoolean ignoreChanges = new AtomicBoolean(false);
+	// The queue this image is written to disk through, null unless the image is in the image tree
+	private transient volatile DirtyImageQueue dirtyImageQueue = null;
 
 	/**
 	 * Create a new image entry with an image file
@@ -83,15 +88,56 @@ public class ImageEntry extends ImageContainer
 	{
 		this.imageFileProperty.setValue(file);
 
-		this.locationTakenProperty.addListener((observable, oldValue, newValue) -> this.markDiskDirty(true));
-		this.speciesPresent.addListener((ListChangeListener<SpeciesEntry>) c -> this.markDiskDirty(true));
-		this.dateTakenProperty.addListener((observable, oldValue, newValue) -> this.markDiskDirty(true));
+		this.locationTakenProperty.addListener((observable, oldValue, newValue) -> this.markDiskDirtyIfChanged());
+		this.speciesPresent.addListener((ListChangeListener<SpeciesEntry>) c -> this.markDiskDirtyIfChanged());
+		this.dateTakenProperty.addListener((observable, oldValue, newValue) -> this.markDiskDirtyIfChanged());
+	}
+
+	/**
+	 * Called when the date, location, or species change and marks the image dirty unless the change is just filling in metadata
+	 */
+	private void markDiskDirtyIfChanged()
+	{
+		if (!this.ignoreChanges.get())
+			this.markDiskDirty(true);
+	}
+
+	/**
+	 * Runs an update that fills in the date, location, or species from metadata stored somewhere else. The image is not marked dirty by the
+	 * update since it already matches that metadata
+	 *
+	 * @param update The update to run
+	 */
+	protected void updateWithoutMarkingDirty(Runnable update)
+	{
+		this.ignoreChanges.set(true);
+		try
+		{
+			update.run();
+		}
+		finally
+		{
+			this.ignoreChanges.set(false);
+		}
 	}
 
 	/**
 	 * Reads the file metadata and initializes fields
+	 *
+	 * @param knownLocations The current list of known locations
+	 * @param knownSpecies The current list of known species
 	 */
 	public void readFileMetadataIntoImage(List<Location> knownLocations, List<Species> knownSpecies)
+	{
+		this.readFileMetadataIntoImage(new LocationSpeciesRegistry(knownLocations, knownSpecies));
+	}
+
+	/**
+	 * Reads the file metadata and initializes fields
+	 *
+	 * @param registry The registry used to look up known locations and species
+	 */
+	public void readFileMetadataIntoImage(LocationSpeciesRegistry registry)
 	{
 		try
 		{
@@ -102,8 +148,8 @@ public class ImageEntry extends ImageContainer
 
 			// Read date, location, and species
 			this.readDateFromMetadata(tiffImageMetadata);
-			this.readLocationFromMetadata(tiffImageMetadata, knownLocations);
-			this.readSpeciesFroMetadata(tiffImageMetadata, knownSpecies);
+			this.readLocationFromMetadata(tiffImageMetadata, registry);
+			this.readSpeciesFroMetadata(tiffImageMetadata, registry);
 
 			this.markDiskDirty(false);
 		}
@@ -140,10 +186,10 @@ public class ImageEntry extends ImageContainer
 	 * Reads the location off of an image given metadata
 	 *
 	 * @param tiffImageMetadata The image metadata
-	 * @param knownLocations The current list of known locations
+	 * @param registry The registry used to look up known locations
 	 * @throws ImageReadException If the image read fails
 	 */
-	private void readLocationFromMetadata(TiffImageMetadata tiffImageMetadata, List<Location> knownLocations) throws ImageReadException
+	private void readLocationFromMetadata(TiffImageMetadata tiffImageMetadata, LocationSpeciesRegistry registry) throws ImageReadException
 	{
 		// Make sure it actually has metadata to read...
 		if (tiffImageMetadata != null)
@@ -167,27 +213,20 @@ public class ImageEntry extends ImageContainer
 					try
 					{
 						// Find a matching location. It must have:
-						// The same name
-						// A latitude .00001 units apart from the original
-						// A longitude .00001 units apart from the original
-						// An elevation 25 units apart from the original location
-						Optional<Location> correctLocation =
-							knownLocations
-								.stream()
-								.filter(location ->
-										StringUtils.equalsIgnoreCase(location.getId(), locationId) &&
-												Math.abs(location.getLat() - locationLatitude) < 0.0001 &&
-												Math.abs(location.getLng() - locationLongitude) < 0.0001)// For now, ignore elevation Math.abs(location.getElevation() - Double.parseDouble(locationElevation)) < 25)
-								.findFirst();
-
-						if (correctLocation.isPresent())
+						// The same ID
+						// A latitude .0001 units apart from the original
+						// A longitude .0001 units apart from the original
+						// For now, ignore elevation
+						Location correctLocation = registry.findLocation(locationId, locationLatitude, locationLongitude);
+
+						if (correctLocation != null)
 						{
-							this.setLocationTaken(correctLocation.get());
+							this.setLocationTaken(correctLocation);
 						}
 						else
 						{
-							Location newLocation = new Location(locationName, locationId, locationLatitude, locationLongitude, Double.parseDouble(locationElevation));
-							knownLocations.add(newLocation);
+							// Another thread may have added the same location since we looked, so find or add it atomically
+							Location newLocation = registry.findOrAddLocation(locationId, locationLatitude, locationLongitude, () -> new Location(locationName, locationId, locationLatitude, locationLongitude, Double.parseDouble(locationElevation)));
 							this.setLocationTaken(newLocation);
 						}
 					}
@@ -210,10 +249,10 @@ public class ImageEntry extends ImageContainer
 	 * Reads the species off of an image given metadata
 	 *
 	 * @param tiffImageMetadata The image metadata
-	 * @param knownSpecies The current list of known species
+	 * @param registry The registry used to look up known species
 	 * @throws ImageReadException If the image read fails
 	 */
-	private void readSpeciesFroMetadata(TiffImageMetadata tiffImageMetadata, List<Species> knownSpecies) throws ImageReadException
+	private void readSpeciesFroMetadata(TiffImageMetadata tiffImageMetadata, LocationSpeciesRegistry registry) throws ImageReadException
 	{
 		// Make sure it actually has metadata to read...
 		if (tiffImageMetadata != null)
@@ -240,27 +279,21 @@ public class ImageEntry extends ImageContainer
 							String speciesCount = StringUtils.trim(speciesEntryUnpacked[2]);
 
 							// Check to see if we already have a species with the scientific and regular name
-							Optional<Species> correctSpecies =
-								knownSpecies
-									.stream()
-									.filter(species ->
-											StringUtils.equalsIgnoreCase(species.getName(), speciesName) &&
-													StringUtils.equalsIgnoreCase(species.getScientificName(), speciesScientificName))
-									.findFirst();
+							Species correctSpecies = registry.findSpecies(speciesName, speciesScientificName);
 
 							// We need to parse a string into an integer so ensure that this doesn't crash using a try & catch
 							try
 							{
 								// Do we have a species? If so tag this image with the species and amount
-								if (correctSpecies.isPresent())
+								if (correctSpecies != null)
 								{
-									this.getSpeciesPresent().add(new SpeciesEntry(correctSpecies.get(), Integer.parseInt(speciesCount)));
+									this.getSpeciesPresent().add(new SpeciesEntry(correctSpecies, Integer.parseInt(speciesCount)));
 								}
 								// We got a species that was not registered in the program, what do we do?
 								else
 								{
-									Species newSpecies = new Species(speciesName, speciesScientificName);
-									knownSpecies.add(newSpecies);
+									// Another thread may have added the same species since we looked, so find or add it atomically
+									Species newSpecies = registry.findOrAddSpecies(speciesName, speciesScientificName, () -> new Species(speciesName, speciesScientificName));
 									this.addSpecies(newSpecies, Integer.parseInt(speciesCount));
 								}
 							}
@@ -466,9 +499,47 @@ public class ImageEntry extends ImageContainer
 		return speciesPresent;
 	}
 
+	/**
+	 * Marks the image entry as dirty meaning it needs to be written to disk. Dirty images are added to the image's queue, and clean
+	 * images are taken back out of it
+	 *
+	 * @param dirty If the image is dirty
+	 */
 	public void markDiskDirty(Boolean dirty)
 	{
 		this.isDiskDirty.set(dirty);
+		DirtyImageQueue dirtyImageQueue = this.dirtyImageQueue;
+		if (dirtyImageQueue != null)
+		{
+			if (dirty)
+				dirtyImageQueue.enqueue(this);
+			else
+				dirtyImageQueue.dequeue(this);
+		}
+	}
+
+	/**
+	 * Sets the queue this image is written to disk through. An image that is already dirty is queued right away
+	 *
+	 * @param dirtyImageQueue The queue to write the image through, or null if the image should not be written
+	 */
+	@Override
+	public void setDirtyImageQueue(DirtyImageQueue dirtyImageQueue)
+	{
+		DirtyImageQueue oldQueue = this.dirtyImageQueue;
+		this.dirtyImageQueue = dirtyImageQueue;
+		if (oldQueue != null && oldQueue != dirtyImageQueue)
+			oldQueue.dequeue(this);
+		if (dirtyImageQueue != null && this.isDiskDirty())
+			dirtyImageQueue.enqueue(this);
+	}
+
+	/**
+	 * @return The queue this image is written to disk through, null if the image is not in the image tree
+	 */
+	DirtyImageQueue getDirtyImageQueue()
+	{
+		return this.dirtyImageQueue;
 	}
 
 	public Boolean isDiskDirty()
@@ -478,54 +549,45 @@ public class ImageEntry extends ImageContainer
 
 	/**
 	 * Writes the species and location tagged in this image to the disk
+	 *
+	 * @throws ImageReadException If the image's existing metadata could not be read
+	 * @throws ImageWriteException If the new metadata could not be created
+	 * @throws IOException If the image file could not be written
 	 */
-	public synchronized void writeToDisk()
+	public synchronized void writeToDisk() throws ImageReadException, ImageWriteException, IOException
 	{
-		try
+		// Read the output set from the image entry
+		TiffOutputSet outputSet = MetadataUtils.readOutputSet(this);
+
+		// Grab the EXIF directory from the output set
+		TiffOutputDirectory exif = outputSet.getOrCreateExifDirectory();
+		exif.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+		exif.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, DATE_FORMAT_FOR_DISK.format(this.getDateTaken()));
+
+		// Grab the sanimal directory from the output set
+		TiffOutputDirectory directory = MetadataUtils.getOrCreateSanimalDirectory(outputSet);
+
+		// Remove the species field if it exists
+		directory.removeField(SanimalMetadataFields.SPECIES_ENTRY);
+		// Use the species format name, scientific name, count
+		String[] metaVals = this.speciesPresent.stream().map(speciesEntry -> speciesEntry.getSpecies().getName() + ", " + speciesEntry.getSpecies().getScientificName() + ", " + speciesEntry.getAmount()).toArray(String[]::new);
+		// Add the species entry field
+		directory.add(SanimalMetadataFields.SPECIES_ENTRY, metaVals);
+
+		// If we have a valid location, write that too
+		if (this.getLocationTaken() != null && this.getLocationTaken().locationValid())
 		{
-			// Read the output set from the image entry
-			TiffOutputSet outputSet = MetadataUtils.readOutputSet(this);
-
-			// Grab the EXIF directory from the output set
-			TiffOutputDirectory exif = outputSet.getOrCreateExifDirectory();
-			exif.removeField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-			exif.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, DATE_FORMAT_FOR_DISK.format(this.getDateTaken()));
-
-			// Grab the sanimal directory from the output set
-			TiffOutputDirectory directory = MetadataUtils.getOrCreateSanimalDirectory(outputSet);
-
-			// Remove the species field if it exists
-			directory.removeField(SanimalMetadataFields.SPECIES_ENTRY);
-			// Use the species format name, scientific name, count
-			String[] metaVals = this.speciesPresent.stream().map(speciesEntry -> speciesEntry.getSpecies().getName() + ", " + speciesEntry.getSpecies().getScientificName() + ", " + speciesEntry.getAmount()).toArray(String[]::new);
-			// Add the species entry field
-			directory.add(SanimalMetadataFields.SPECIES_ENTRY, metaVals);
-
-			// If we have a valid location, write that too
-			if (this.getLocationTaken() != null && this.getLocationTaken().locationValid())
-			{
-				// Write the lat/lng
-				outputSet.setGPSInDegrees(this.getLocationTaken().getLng(), this.getLocationTaken().getLat());
-				// Remove the location entry name and elevation
-				directory.removeField(SanimalMetadataFields.LOCATION_ENTRY);
-				// Add the new location entry name and elevation
-				directory.add(SanimalMetadataFields.LOCATION_ENTRY, this.getLocationTaken().getName(), this.getLocationTaken().getElevation().toString(), this.getLocationTaken().getId());
-			}
+			// Write the lat/lng
+			outputSet.setGPSInDegrees(this.getLocationTaken().getLng(), this.getLocationTaken().getLat());
+			// Remove the location entry name and elevation
+			directory.removeField(SanimalMetadataFields.LOCATION_ENTRY);
+			// Add the new location entry name and elevation
+			directory.add(SanimalMetadataFields.LOCATION_ENTRY, this.getLocationTaken().getName(), this.getLocationTaken().getElevation().toString(), this.getLocationTaken().getId());
+		}
 
-			// Write the metadata
-			MetadataUtils.writeOutputSet(outputSet, this);
+		// Write the metadata
+		MetadataUtils.writeOutputSet(outputSet, this);
 
-			this.markDiskDirty(false);
-		}
-		catch (ImageReadException | IOException | ImageWriteException e)
-		{
-			SanimalData.getInstance().getErrorDisplay().showPopup(
-					Alert.AlertType.ERROR,
-					null,
-					"Error",
-					"Metadata error",
-					"Error writing metadata to the image " + this.getFile().getName() + "!\n" + ExceptionUtils.getStackTrace(e),
-					false);
-		}
+		this.markDiskDirty(false);
 	}
 }
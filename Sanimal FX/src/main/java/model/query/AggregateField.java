@@ -0,0 +1,39 @@
+package model.query;
+
+import model.constant.SanimalMetadataFields;
+
+/**
+ * The image attributes that aggregate queries can group images by
+ */
+public enum AggregateField
+{
+	// Group by the scientific name of each species in the image
+	SPECIES(SanimalMetadataFields.A_SPECIES_SCIENTIFIC_NAME),
+	// Group by the ID of the location the image was taken at
+	LOCATION(SanimalMetadataFields.A_LOCATION_ID),
+	// Group by the year the image was taken in
+	YEAR(SanimalMetadataFields.A_DATE_YEAR_TAKEN),
+	// Group by the month the image was taken in
+	MONTH(SanimalMetadataFields.A_DATE_MONTH_TAKEN);
+
+	// The metadata attribute that the images are grouped by
+	private final String attribute;
+
+	/**
+	 * Constructor takes the metadata attribute that images are grouped by
+	 *
+	 * @param attribute The metadata attribute
+	 */
+	AggregateField(String attribute)
+	{
+		this.attribute = attribute;
+	}
+
+	/**
+	 * @return The metadata attribute that images are grouped by
+	 */
+	public String getAttribute()
+	{
+		return this.attribute;
+	}
+}
@@ -12,11 +12,16 @@ import java.time.DayOfWeek;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Class representing a query to be sent to CyVerse
@@ -35,35 +40,17 @@ public class CyVerseQuery
 	private Set<Integer> hourQuery = new HashSet<>();
 	// A list of days of week to query for
 	private Set<Integer> dayOfWeekQuery = new HashSet<>();
+	// A sorted list of every other condition (dates, years, and elevations) as text, used to build the canonical key
+	private SortedSet<String> otherConditions = new TreeSet<>();
 
-	// The IRODS query builder to append to
-	private IRODSGenQueryBuilder queryBuilder;
+	// Every condition added to the query so far, replayed onto a new iRODS query builder each time the query is built
+	private List<Consumer<IRODSGenQueryBuilder>> conditions = new ArrayList<>();
 
 	/**
 	 * Constructor initializes base query fields
 	 */
 	public CyVerseQuery()
 	{
-		// We want distinct results
-		this.queryBuilder = new IRODSGenQueryBuilder(true, false, null);
-		try
-		{
-			// Path to the collection containing this data item
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
-			// Name of this data object
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME);
-			/*
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_DATA_ID); // ID of the data item
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_ID); // ID of the metadata
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME); // Attribute
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE); // Value
-			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_UNITS); // Units
-			*/
-		}
-		catch (GenQueryBuilderException e)
-		{
-			e.printStackTrace();
-		}
 		// All queries must operate on sanimal data, therefore SANIMAL=true
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_SANIMAL);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.EQUAL, "true");
@@ -107,6 +94,8 @@ public class CyVerseQuery
 	 */
 	public void setStartAndEndYear(Integer startYear, Integer endYear)
 	{
+		this.otherConditions.add("year>=" + startYear);
+		this.otherConditions.add("year<=" + endYear);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_YEAR_TAKEN);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.NUMERIC_GREATER_THAN_OR_EQUAL_TO, startYear);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_YEAR_TAKEN);
@@ -150,6 +139,7 @@ public class CyVerseQuery
 	 */
 	public void setStartDate(LocalDateTime startDate)
 	{
+		this.otherConditions.add("date>" + startDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_TIME_TAKEN);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.NUMERIC_GREATER_THAN, startDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 	}
@@ -161,12 +151,20 @@ public class CyVerseQuery
 	 */
 	public void setEndDate(LocalDateTime endDate)
 	{
+		this.otherConditions.add("date<" + endDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_TIME_TAKEN);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.NUMERIC_LESS_THAN, endDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
 	}
 
+	/**
+	 * Adds a condition on the elevation of the images
+	 *
+	 * @param elevation The elevation to compare to
+	 * @param operator The operator used to compare the image elevation to the given elevation
+	 */
 	public void addElevationCondition(Double elevation, QueryConditionOperators operator)
 	{
+		this.otherConditions.add("elevation" + operator.name() + elevation);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_LOCATION_ELEVATION);
 		appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, operator, elevation.toString());
 	}
@@ -178,55 +176,151 @@ public class CyVerseQuery
 	 */
 	public IRODSGenQueryBuilder build()
 	{
+		// We want distinct results
+		IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, false, null);
+		try
+		{
+			// Path to the collection containing this data item
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_COLL_NAME);
+			// Name of this data object
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_DATA_NAME);
+			/*
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_DATA_ID); // ID of the data item
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_ID); // ID of the metadata
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME); // Attribute
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE); // Value
+			queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_UNITS); // Units
+			*/
+		}
+		catch (GenQueryBuilderException e)
+		{
+			e.printStackTrace();
+		}
+		this.appendConditions(queryBuilder);
+		return queryBuilder;
+	}
+
+	/**
+	 * Builds a query that lists the images matching this query along with the value of one of their attributes. Each row is a distinct
+	 * attribute value and data object ID pair, so replicas of an image and images joined to several values of another condition (like an
+	 * image with two of the queried species) only appear once per value. Counting the rows of each value gives the number of images with
+	 * that value, the same number the data analyzer would count from the images performQuery returns. A GenQuery COUNT grouped by value
+	 * would send one row per value instead of one per image, but iRODS counts the joined rows before grouping, so every replica and every
+	 * extra matching species would be counted again and GenQuery has no way to count only distinct IDs
+	 *
+	 * @param groupBy The attribute to group the images by
+	 * @return The iRODS query ready to be executed. Column 0 is the attribute value, column 1 is the ID of an image with that value
+	 * @throws GenQueryBuilderException If the query could not be built
+	 */
+	public IRODSGenQueryBuilder buildAggregate(AggregateField groupBy) throws GenQueryBuilderException
+	{
+		// We want distinct results
+		IRODSGenQueryBuilder queryBuilder = new IRODSGenQueryBuilder(true, false, null);
+		// Select the attribute value and the ID of each data object with that value
+		queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE);
+		queryBuilder.addSelectAsGenQueryValue(RodsGenQueryEnum.COL_D_DATA_ID);
+		// Selected metadata columns refer to the first attribute condition, so the attribute we group by must come before the others
+		queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, groupBy.getAttribute());
+		this.appendConditions(queryBuilder);
+		return queryBuilder;
+	}
+
+	/**
+	 * Appends every condition of this query to an iRODS query builder
+	 *
+	 * @param queryBuilder The query builder to append conditions to
+	 */
+	private void appendConditions(IRODSGenQueryBuilder queryBuilder)
+	{
+		// Add the conditions that were appended directly
+		for (Consumer<IRODSGenQueryBuilder> condition : this.conditions)
+			condition.accept(queryBuilder);
+
 		// To test if a species is in a list, we is the "IN" operator. We need to create a formatted string like: ('spec1','spec2')
 		String speciesInStr = "(" + this.speciesQuery.stream().map(species -> "'" + species.getScientificName() + "'").collect(Collectors.joining(",")) + ")";
 		if (!speciesQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_SPECIES_SCIENTIFIC_NAME);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, speciesInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_SPECIES_SCIENTIFIC_NAME);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, speciesInStr);
 		}
 
 		// To test if a location is in a list, we is the "IN" operator. We need to create a formatted string like: ('loc1','loc2')
 		String locationInStr = "(" + this.locationQuery.stream().map(location -> "'" + location.getId() + "'").collect(Collectors.joining(",")) + ")";
 		if (!locationQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_LOCATION_ID);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, locationInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_LOCATION_ID);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, locationInStr);
 		}
 
 		// To test if a collection is in a list, we is the "IN" operator. We need to create a formatted string like: ('col1','col2')
 		String imageCollectionInStr = "(" + this.collectionQuery.stream().map(imageCollection -> "'" + imageCollection.getID().toString() + "'").collect(Collectors.joining(",")) + ")";
 		if (!collectionQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_COLLECTION_ID);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, imageCollectionInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_COLLECTION_ID);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, imageCollectionInStr);
 		}
 
 		// To test if a month is in a list, we is the "IN" operator. We need to create a formatted string like: ('mon1','mon2')
 		String monthInStr = "(" + this.monthQuery.stream().map(month -> "'" + month.toString() + "'").collect(Collectors.joining(",")) + ")";
 		if (!monthQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_MONTH_TAKEN);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, monthInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_MONTH_TAKEN);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, monthInStr);
 		}
 
 		// To test if a hour is in a list, we is the "IN" operator. We need to create a formatted string like: ('hr1','hr2')
 		String hourInStr = "(" + this.hourQuery.stream().map(hour -> "'" + hour.toString() + "'").collect(Collectors.joining(",")) + ")";
 		if (!hourQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_HOUR_TAKEN);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, hourInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_HOUR_TAKEN);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, hourInStr);
 		}
 
 		// To test if a day of week is in a list, we is the "IN" operator. We need to create a formatted string like: ('doy1','doy2')
 		String dayOfWeekInStr = "(" + this.dayOfWeekQuery.stream().map(dayOfWeek -> "'" + dayOfWeek.toString() + "'").collect(Collectors.joining(",")) + ")";
 		if (!dayOfWeekQuery.isEmpty())
 		{
-			appendQueryElement(AVUQueryElement.AVUQueryPart.ATTRIBUTE, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_DAY_OF_WEEK_TAKEN);
-			appendQueryElement(AVUQueryElement.AVUQueryPart.VALUE, QueryConditionOperators.IN, dayOfWeekInStr);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_NAME, QueryConditionOperators.EQUAL, SanimalMetadataFields.A_DATE_DAY_OF_WEEK_TAKEN);
+			queryBuilder.addConditionAsGenQueryField(RodsGenQueryEnum.COL_META_DATA_ATTR_VALUE, QueryConditionOperators.IN, dayOfWeekInStr);
 		}
 
-		return this.queryBuilder;
+	}
+
+	/**
+	 * Returns a key that uniquely identifies the images this query matches. Two queries with the same conditions have the same key no matter
+	 * what order the conditions were added in, so the key can be used to cache query results
+	 *
+	 * @return The canonical key of this query
+	 */
+	public String getCanonicalKey()
+	{
+		// Each condition is identified by the value that is sent to CyVerse, sorted so the order conditions were added in doesn't matter
+		return "species=" + this.sortedValues(this.speciesQuery.stream().map(Species::getScientificName)) +
+				"|locations=" + this.sortedValues(this.locationQuery.stream().map(Location::getId)) +
+				"|collections=" + this.sortedValues(this.getCollectionIDs().stream()) +
+				"|months=" + this.sortedValues(this.monthQuery.stream().map(Object::toString)) +
+				"|hours=" + this.sortedValues(this.hourQuery.stream().map(Object::toString)) +
+				"|daysOfWeek=" + this.sortedValues(this.dayOfWeekQuery.stream().map(Object::toString)) +
+				"|other=" + String.join(",", this.otherConditions);
+	}
+
+	/**
+	 * @return The IDs of the collections this query is limited to, empty if the query may return images from any collection
+	 */
+	public Set<String> getCollectionIDs()
+	{
+		return this.collectionQuery.stream().map(imageCollection -> imageCollection.getID().toString()).collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * Sorts a set of condition values and joins them into one string
+	 *
+	 * @param values The values to sort
+	 * @return The sorted values separated by commas
+	 */
+	private String sortedValues(Stream<String> values)
+	{
+		return values.sorted().collect(Collectors.joining(","));
 	}
 
 	/**
@@ -313,7 +407,7 @@ public class CyVerseQuery
 	 */
 	private void appendQueryElement(RodsGenQueryEnum column, QueryConditionOperators operator, String value)
 	{
-		this.queryBuilder.addConditionAsGenQueryField(column, operator, value);
+		this.conditions.add(queryBuilder -> queryBuilder.addConditionAsGenQueryField(column, operator, value));
 	}
 
 	/**
@@ -325,7 +419,7 @@ public class CyVerseQuery
 	 */
 	private void appendQueryElement(RodsGenQueryEnum column, QueryConditionOperators operator, int value)
 	{
-		this.queryBuilder.addConditionAsGenQueryField(column, operator, value);
+		this.conditions.add(queryBuilder -> queryBuilder.addConditionAsGenQueryField(column, operator, value));
 	}
 
 	/**
@@ -337,6 +431,6 @@ public class CyVerseQuery
 	 */
 	private void appendQueryElement(RodsGenQueryEnum column, QueryConditionOperators operator, long value)
 	{
-		this.queryBuilder.addConditionAsGenQueryField(column, operator, value);
+		this.conditions.add(queryBuilder -> queryBuilder.addConditionAsGenQueryField(column, operator, value));
 	}
 }
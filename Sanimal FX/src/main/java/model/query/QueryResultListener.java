@@ -0,0 +1,31 @@
+package model.query;
+
+import model.image.ImageEntry;
+
+import java.util.List;
+
+/**
+ * Listener given the results of a streaming query as they arrive. Paths are reported as each page of the query is read, and images are
+ * reported once their metadata has been fetched. Images may be reported from several threads at once
+ */
+public interface QueryResultListener
+{
+	/**
+	 * Called when a page of paths matching the query has been read
+	 *
+	 * @param pathCount The number of paths in the page
+	 */
+	void pathsFound(Integer pathCount);
+
+	/**
+	 * Called when the metadata of a batch of images has been fetched
+	 *
+	 * @param images The images with their metadata
+	 */
+	void imagesLoaded(List<ImageEntry> images);
+
+	/**
+	 * @return True if the query should stop as soon as possible
+	 */
+	Boolean isCancelled();
+}
@@ -8,25 +8,29 @@ import javafx.concurrent.Worker;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 /**
- * Class used as a base for all thread executors
+ * Class used as a base for all thread executors. Tasks are run by a shared priority scheduler, each executor just picks the priority tasks
+ * get by default and tracks the tasks it was given
  */
 public abstract class BaseSanimalExecutor
 {
 	// The task performer that does the thread execution
-	private ExecutorService taskPerformer;
+	private PriorityTaskScheduler taskPerformer;
+	// The priority given to tasks that are added without one
+	private TaskPriority defaultPriority;
 
 	/**
 	 * Constructor initializes fields
 	 *
 	 * @param taskPerformer The task performer to do the threading
+	 * @param defaultPriority The priority given to tasks that are added without one
 	 */
-	public BaseSanimalExecutor(ExecutorService taskPerformer)
+	public BaseSanimalExecutor(PriorityTaskScheduler taskPerformer, TaskPriority defaultPriority)
 	{
 		this.taskPerformer = taskPerformer;
+		this.defaultPriority = defaultPriority;
 	}
 
 	/**
@@ -36,9 +40,21 @@ public abstract class BaseSanimalExecutor
 	 * @param <V> Ignored, can be anything
 	 */
 	public <V> void registerService(Service<V> service)
+	{
+		this.registerService(service, this.defaultPriority);
+	}
+
+	/**
+	 * This is used to register a service into the executor with a given priority. This should be called on all services before using the executor
+	 *
+	 * @param service The service to register
+	 * @param priority The priority to run the service's tasks with
+	 * @param <V> Ignored, can be anything
+	 */
+	public <V> void registerService(Service<V> service, TaskPriority priority)
 	{
 		// Ensure that the executor is properly set
-		service.setExecutor(taskPerformer);
+		service.setExecutor(this.taskPerformer.executorFor(priority));
 		// When the task succeeds, unbind the currently running task
 		EventHandler<WorkerStateEvent> onSucceeded = service.getOnSucceeded();
 		service.setOnSucceeded(taskEvent ->
@@ -55,15 +71,43 @@ public abstract class BaseSanimalExecutor
 				onRunning.handle(taskEvent);
 			onRunning(service);
 		});
+		// If the service fails or is cancelled it is also finished
+		EventHandler<WorkerStateEvent> onFailed = service.getOnFailed();
+		service.setOnFailed(taskEvent ->
+		{
+			if (onFailed != null)
+				onFailed.handle(taskEvent);
+			onFinished(service);
+		});
+		EventHandler<WorkerStateEvent> onCancelled = service.getOnCancelled();
+		service.setOnCancelled(taskEvent ->
+		{
+			if (onCancelled != null)
+				onCancelled.handle(taskEvent);
+			onFinished(service);
+		});
 	}
 
 	/**
-	 * Add a task to the queue to be done in the background. All tasks submitted this way are done in order
+	 * Add a task to the queue to be done in the background with this executor's default priority
 	 *
 	 * @param task The task to be performed
 	 * @return A future task that will be completed some time
 	 */
 	public <T> Future<?> addTask(Task<T> task)
+	{
+		return this.addTask(task, this.defaultPriority);
+	}
+
+	/**
+	 * Add a task to the queue to be done in the background with the given priority. Tasks of the same priority start in the order they were
+	 * added. Cancelling the task before it starts removes it from the queue
+	 *
+	 * @param task The task to be performed
+	 * @param priority The priority to run the task with
+	 * @return A future task that will be completed some time
+	 */
+	public <T> Future<?> addTask(Task<T> task, TaskPriority priority)
 	{
 		// When the task succeeds, unbind the currently running task
 		EventHandler<WorkerStateEvent> onSucceeded = task.getOnSucceeded();
@@ -81,8 +125,23 @@ public abstract class BaseSanimalExecutor
 				onRunning.handle(taskEvent);
 			onRunning(task);
 		});
+		// If the task fails or is cancelled it is also finished
+		EventHandler<WorkerStateEvent> onFailed = task.getOnFailed();
+		task.setOnFailed(taskEvent ->
+		{
+			if (onFailed != null)
+				onFailed.handle(taskEvent);
+			onFinished(task);
+		});
+		EventHandler<WorkerStateEvent> onCancelled = task.getOnCancelled();
+		task.setOnCancelled(taskEvent ->
+		{
+			if (onCancelled != null)
+				onCancelled.handle(taskEvent);
+			onFinished(task);
+		});
 		// Add the task to be performed
-		return this.taskPerformer.submit(task);
+		return this.taskPerformer.submit(task, priority);
 	}
 
 	/**
@@ -92,6 +151,16 @@ public abstract class BaseSanimalExecutor
 	 */
 	protected abstract void onSucceeded(Worker<?> worker);
 
+	/**
+	 * Called when a task fails or is cancelled, which may happen before it ever began
+	 *
+	 * @param worker The worker that finished
+	 */
+	protected void onFinished(Worker<?> worker)
+	{
+		this.onSucceeded(worker);
+	}
+
 	/**
 	 * Called when a task begins
 	 *
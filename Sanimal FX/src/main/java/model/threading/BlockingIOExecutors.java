@@ -0,0 +1,107 @@
+package model.threading;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors used to run blocking network I/O. By default each executor is a fixed pool of daemon threads, sized by the caller
+ * to the number of CyVerse sessions it should use at once. Virtual threads can be turned on with -Dsanimal.useVirtualThreads=true, in which
+ * case callers may start one task per request instead and let the session pool decide how many run at once
+ */
+public class BlockingIOExecutors
+{
+	// The JDK method that creates a virtual thread per task executor, or null if this JVM doesn't have virtual threads
+	private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorMethod();
+
+	// If true, callers start one task per request instead of splitting requests between a few threads. Off unless turned on
+	private static volatile Boolean useVirtualThreads = Boolean.getBoolean("sanimal.useVirtualThreads");
+
+	/**
+	 * Creates an executor to run blocking I/O with. The caller is responsible for shutting it down
+	 *
+	 * @param name The name given to each thread, used when debugging
+	 * @param threadCount The number of threads to use
+	 * @return An executor that runs blocking I/O tasks
+	 */
+	public static ExecutorService newExecutor(String name, Integer threadCount)
+	{
+		// Name each thread so they're easy to identify when debugging, and don't let them keep the program open
+		AtomicInteger threadNumber = new AtomicInteger(0);
+		return Executors.newFixedThreadPool(Math.max(threadCount, 1), runnable ->
+		{
+			Thread thread = new Thread(runnable, name + " " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates an executor that runs every task on its own virtual thread, so a task waiting on the network doesn't hold a platform thread.
+	 * Virtual threads only exist on Java 21 and up, so on older JVMs this returns a fixed pool instead. The caller is responsible for
+	 * shutting it down
+	 *
+	 * @param name The name given to each thread if the fixed pool is used
+	 * @param fallbackThreadCount The number of threads to use if the JVM has no virtual threads
+	 * @return An executor that runs blocking I/O tasks
+	 */
+	public static ExecutorService newVirtualThreadExecutor(String name, Integer fallbackThreadCount)
+	{
+		if (areVirtualThreadsSupported())
+		{
+			try
+			{
+				return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+			}
+			catch (ReflectiveOperationException ignored)
+			{
+				// Fall back to platform threads below
+			}
+		}
+		return newExecutor(name, fallbackThreadCount);
+	}
+
+	/**
+	 * Turns on or off starting one virtual thread per request for blocking I/O
+	 *
+	 * @param useVirtualThreads True to use virtual threads
+	 */
+	public static void setUseVirtualThreads(Boolean useVirtualThreads)
+	{
+		BlockingIOExecutors.useVirtualThreads = useVirtualThreads;
+	}
+
+	/**
+	 * @return True if callers should start one virtual thread per request instead of using a fixed pool
+	 */
+	public static Boolean isUsingVirtualThreads()
+	{
+		return useVirtualThreads;
+	}
+
+	/**
+	 * @return True if this JVM has virtual threads
+	 */
+	public static Boolean areVirtualThreadsSupported()
+	{
+		return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor(). We build against Java 8 where it doesn't exist, so it has to be found at runtime
+	 *
+	 * @return The method or null if this JVM does not have it
+	 */
+	private static Method findVirtualThreadExecutorMethod()
+	{
+		try
+		{
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+	}
+}
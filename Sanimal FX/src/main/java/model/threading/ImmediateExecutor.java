@@ -10,10 +10,6 @@ import javafx.concurrent.Worker;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.event.EventHandler;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
 /**
  * Class that takes a task and IMMEDIATELY begins exeuction without queuing
  */
@@ -25,11 +21,13 @@ public class ImmediateExecutor extends BaseSanimalExecutor
 	private final ReadOnlyIntegerWrapper tasksRunning = new ReadOnlyIntegerWrapper();
 
 	/**
-	 * Constructor specifies a cached thread pool which can grow infinitely
+	 * Constructor takes the scheduler to run tasks with, tasks are interactive unless given another priority
+	 *
+	 * @param taskScheduler The scheduler that runs the tasks
 	 */
-	public ImmediateExecutor()
+	public ImmediateExecutor(PriorityTaskScheduler taskScheduler)
 	{
-		super(Executors.newFixedThreadPool(50));
+		super(taskScheduler, TaskPriority.INTERACTIVE);
 	}
 
 	/**
@@ -40,9 +38,9 @@ public class ImmediateExecutor extends BaseSanimalExecutor
 	@Override
 	protected void onSucceeded(Worker<?> worker)
 	{
-		this.tasksRunning.add(-1);
-		if (worker instanceof Task<?>)
-			this.activeTasks.remove(worker);
+		// A task cancelled before it began was never counted as running
+		if (worker instanceof Task<?> && this.activeTasks.remove(worker))
+			this.tasksRunning.add(-1);
 	}
 
 	/**
@@ -53,9 +51,11 @@ public class ImmediateExecutor extends BaseSanimalExecutor
 	@Override
 	protected void onRunning(Worker<?> worker)
 	{
-		this.tasksRunning.add(1);
 		if (worker instanceof Task<?>)
+		{
+			this.tasksRunning.add(1);
 			this.activeTasks.add((Task<?>) worker);
+		}
 	}
 
 	///
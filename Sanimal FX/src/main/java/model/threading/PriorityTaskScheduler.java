@@ -0,0 +1,461 @@
+package model.threading;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that schedules tasks by priority class. Each class has a FIFO queue and a limit on how many of its tasks may run at once, and
+ * every class shares a limit on how many tasks may run in total. When a slot frees up and several classes are waiting the highest
+ * priority class gets it, unless a lower priority task has been waiting long enough that it is run first to avoid starving it. Wait and
+ * run times are recorded per class
+ */
+public class PriorityTaskScheduler extends AbstractExecutorService
+{
+	// Tasks that have waited longer than this are run before higher priority tasks so they don't starve
+	private static final long STARVATION_NANOS = TimeUnit.SECONDS.toNanos(10);
+	// The default number of tasks that may run at once across every priority class
+	private static final Integer DEFAULT_MAX_CONCURRENCY = 6;
+
+	// The threads that actually run tasks, how many tasks run at once is limited by the scheduler and not the pool
+	private final ExecutorService workers;
+	// The number of tasks that may run at once across every priority class, classes compete for these slots by priority. Guarded by this
+	private Integer maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+	// The queue, limit, and metrics of each priority class
+	private final Map<TaskPriority, PriorityClass> priorityClasses = new EnumMap<>(TaskPriority.class);
+	// The priority given to tasks submitted without one
+	private final TaskPriority defaultPriority;
+	// Tasks that have waited longer than this are run before higher priority tasks
+	private final long starvationNanos;
+	// The number of tasks running across all classes. Guarded by this
+	private Integer tasksRunning = 0;
+	// True once the scheduler has been shut down. Guarded by this
+	private Boolean isShutdown = false;
+
+	/**
+	 * Constructor uses the default concurrency of each priority class
+	 *
+	 * @param defaultPriority The priority given to tasks submitted without one
+	 */
+	public PriorityTaskScheduler(TaskPriority defaultPriority)
+	{
+		this(defaultPriority, STARVATION_NANOS);
+	}
+
+	/**
+	 * Constructor used by tests to avoid waiting the full starvation time
+	 *
+	 * @param defaultPriority The priority given to tasks submitted without one
+	 * @param starvationNanos Tasks that have waited longer than this are run before higher priority tasks
+	 */
+	PriorityTaskScheduler(TaskPriority defaultPriority, long starvationNanos)
+	{
+		this.defaultPriority = defaultPriority;
+		this.starvationNanos = starvationNanos;
+		for (TaskPriority priority : TaskPriority.values())
+			this.priorityClasses.put(priority, new PriorityClass(priority.getDefaultConcurrency()));
+
+		// Name each thread so they're easy to identify when debugging
+		AtomicInteger threadNumber = new AtomicInteger(0);
+		this.workers = Executors.newCachedThreadPool(runnable -> new Thread(runnable, "Sanimal Task Thread " + threadNumber.incrementAndGet()));
+	}
+
+	/**
+	 * Submits a task to be run with the given priority. If the task is already a future (like a JavaFX Task) it is returned directly, so
+	 * cancelling the returned future cancels the task and removes it from the queue
+	 *
+	 * @param task The task to run
+	 * @param priority The priority class to run the task in
+	 * @return A future representing the task
+	 */
+	public Future<?> submit(Runnable task, TaskPriority priority)
+	{
+		RunnableFuture<?> future = task instanceof RunnableFuture ? (RunnableFuture<?>) task : new FutureTask<>(task, null);
+		synchronized (this)
+		{
+			if (this.isShutdown)
+				throw new RejectedExecutionException("The task scheduler has been shut down!");
+
+			PriorityClass priorityClass = this.priorityClasses.get(priority);
+			priorityClass.queue.add(new ScheduledTask(future, priority));
+			priorityClass.submitted.incrementAndGet();
+			this.dispatch();
+		}
+		return future;
+	}
+
+	/**
+	 * Returns an executor that submits everything it is given with the given priority, used for JavaFX services
+	 *
+	 * @param priority The priority class to run tasks in
+	 * @return An executor that runs tasks with the given priority
+	 */
+	public Executor executorFor(TaskPriority priority)
+	{
+		return runnable -> this.submit(runnable, priority);
+	}
+
+	/**
+	 * Runs a task with the default priority
+	 *
+	 * @param command The task to run
+	 */
+	@Override
+	public void execute(Runnable command)
+	{
+		this.submit(command, this.defaultPriority);
+	}
+
+	/**
+	 * Starts as many queued tasks as the concurrency limits allow. Must be called while holding the lock
+	 */
+	private void dispatch()
+	{
+		ScheduledTask next;
+		while ((next = this.selectNext()) != null)
+		{
+			PriorityClass priorityClass = this.priorityClasses.get(next.priority);
+			priorityClass.running++;
+			this.tasksRunning++;
+			ScheduledTask toRun = next;
+			this.workers.execute(() -> this.run(toRun));
+		}
+	}
+
+	/**
+	 * Picks the next task to run. Tasks that were cancelled while queued are thrown away. Must be called while holding the lock
+	 *
+	 * @return The task to run next and remove from its queue, or null if every shared slot is taken or no class has both a queued task and a free slot
+	 */
+	private ScheduledTask selectNext()
+	{
+		// Every shared slot is taken, wait for a task to finish
+		if (this.tasksRunning >= this.maxConcurrency)
+			return null;
+
+		long now = System.nanoTime();
+		PriorityClass highestPriority = null;
+		PriorityClass longestWaiting = null;
+		// Classes are iterated from highest to lowest priority
+		for (PriorityClass priorityClass : this.priorityClasses.values())
+		{
+			// Throw away anything cancelled while it was waiting
+			while (!priorityClass.queue.isEmpty() && priorityClass.queue.peek().future.isDone())
+			{
+				priorityClass.queue.poll();
+				priorityClass.cancelled.incrementAndGet();
+			}
+
+			if (!priorityClass.queue.isEmpty() && priorityClass.running < priorityClass.concurrencyLimit)
+			{
+				if (highestPriority == null)
+					highestPriority = priorityClass;
+				if (now - priorityClass.queue.peek().enqueuedAt > this.starvationNanos && (longestWaiting == null || priorityClass.queue.peek().enqueuedAt < longestWaiting.queue.peek().enqueuedAt))
+					longestWaiting = priorityClass;
+			}
+		}
+
+		PriorityClass selected = longestWaiting != null ? longestWaiting : highestPriority;
+		return selected != null ? selected.queue.poll() : null;
+	}
+
+	/**
+	 * Runs a task on a worker thread, recording how long it waited and ran, and then starts whatever can run next
+	 *
+	 * @param scheduledTask The task to run
+	 */
+	private void run(ScheduledTask scheduledTask)
+	{
+		PriorityClass priorityClass = this.priorityClasses.get(scheduledTask.priority);
+		long startTime = System.nanoTime();
+		priorityClass.recordWait(startTime - scheduledTask.enqueuedAt);
+		try
+		{
+			scheduledTask.future.run();
+		}
+		finally
+		{
+			priorityClass.totalRunNanos.addAndGet(System.nanoTime() - startTime);
+			priorityClass.completed.incrementAndGet();
+			synchronized (this)
+			{
+				priorityClass.running--;
+				this.tasksRunning--;
+				this.dispatch();
+				if (this.isShutdown)
+					this.shutdownWorkersIfDone();
+				// Wake anyone waiting for termination
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of tasks of a priority that may run at the same time
+	 *
+	 * @param priority The priority class to change
+	 * @param concurrencyLimit The number of tasks that may run at once, must be at least 1
+	 */
+	public synchronized void setConcurrencyLimit(TaskPriority priority, Integer concurrencyLimit)
+	{
+		if (concurrencyLimit < 1)
+			throw new IllegalArgumentException("At least one task of each priority must be able to run!");
+		this.priorityClasses.get(priority).concurrencyLimit = concurrencyLimit;
+		this.dispatch();
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority that may run at the same time
+	 */
+	public synchronized Integer getConcurrencyLimit(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).concurrencyLimit;
+	}
+
+	/**
+	 * Sets the number of tasks that may run at the same time across every priority class
+	 *
+	 * @param maxConcurrency The number of tasks that may run at once, must be at least 1
+	 */
+	public synchronized void setMaxConcurrency(Integer maxConcurrency)
+	{
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("At least one task must be able to run!");
+		this.maxConcurrency = maxConcurrency;
+		this.dispatch();
+	}
+
+	/**
+	 * @return The number of tasks that may run at the same time across every priority class
+	 */
+	public synchronized Integer getMaxConcurrency()
+	{
+		return this.maxConcurrency;
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority waiting to run
+	 */
+	public synchronized Integer getQueuedCount(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).queue.size();
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority currently running
+	 */
+	public synchronized Integer getRunningCount(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).running;
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority that were submitted
+	 */
+	public Long getSubmittedCount(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).submitted.get();
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority that finished running
+	 */
+	public Long getCompletedCount(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).completed.get();
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The number of tasks of a priority that were cancelled before they ran
+	 */
+	public Long getCancelledCount(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).cancelled.get();
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The average time tasks of a priority waited in the queue before running in milliseconds
+	 */
+	public Double getAverageWaitMillis(TaskPriority priority)
+	{
+		PriorityClass priorityClass = this.priorityClasses.get(priority);
+		long started = priorityClass.started.get();
+		return started == 0 ? 0D : priorityClass.totalWaitNanos.get() / 1000000D / started;
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The longest time a task of a priority waited in the queue before running in milliseconds
+	 */
+	public Double getMaxWaitMillis(TaskPriority priority)
+	{
+		return this.priorityClasses.get(priority).maxWaitNanos.get() / 1000000D;
+	}
+
+	/**
+	 * @param priority The priority class
+	 * @return The average time tasks of a priority took to run in milliseconds
+	 */
+	public Double getAverageRunMillis(TaskPriority priority)
+	{
+		PriorityClass priorityClass = this.priorityClasses.get(priority);
+		long completed = priorityClass.completed.get();
+		return completed == 0 ? 0D : priorityClass.totalRunNanos.get() / 1000000D / completed;
+	}
+
+	/**
+	 * Stops accepting new tasks, tasks already queued will still run
+	 */
+	@Override
+	public synchronized void shutdown()
+	{
+		this.isShutdown = true;
+		this.shutdownWorkersIfDone();
+	}
+
+	/**
+	 * Shuts down the worker threads once every queued task has run. Must be called while holding the lock
+	 */
+	private void shutdownWorkersIfDone()
+	{
+		if (this.isTerminated())
+			this.workers.shutdown();
+	}
+
+	/**
+	 * Stops accepting new tasks, throws away any queued tasks, and interrupts running tasks
+	 *
+	 * @return The tasks that were queued but never run
+	 */
+	@Override
+	public synchronized List<Runnable> shutdownNow()
+	{
+		this.isShutdown = true;
+		List<Runnable> neverRun = new ArrayList<>();
+		for (PriorityClass priorityClass : this.priorityClasses.values())
+		{
+			for (ScheduledTask scheduledTask : priorityClass.queue)
+				neverRun.add(scheduledTask.future);
+			priorityClass.queue.clear();
+		}
+		this.workers.shutdownNow();
+		return neverRun;
+	}
+
+	/**
+	 * @return True if the scheduler has been shut down
+	 */
+	@Override
+	public synchronized boolean isShutdown()
+	{
+		return this.isShutdown;
+	}
+
+	/**
+	 * @return True if the scheduler has been shut down and every task has finished
+	 */
+	@Override
+	public synchronized boolean isTerminated()
+	{
+		return this.isShutdown && this.tasksRunning == 0 && this.priorityClasses.values().stream().allMatch(priorityClass -> priorityClass.queue.isEmpty());
+	}
+
+	/**
+	 * Waits until the scheduler is terminated or the timeout passes
+	 *
+	 * @param timeout The max time to wait
+	 * @param unit The unit of the timeout
+	 * @return True if the scheduler terminated, false if the timeout passed first
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!this.isTerminated())
+		{
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remainingMillis <= 0)
+				return false;
+			this.wait(remainingMillis);
+		}
+		return true;
+	}
+
+	/**
+	 * A task waiting to run along with its priority and when it was queued
+	 */
+	private static class ScheduledTask
+	{
+		// The task to run
+		private final RunnableFuture<?> future;
+		// The priority class of the task
+		private final TaskPriority priority;
+		// The time the task was queued
+		private final long enqueuedAt = System.nanoTime();
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param future The task to run
+		 * @param priority The priority class of the task
+		 */
+		private ScheduledTask(RunnableFuture<?> future, TaskPriority priority)
+		{
+			this.future = future;
+			this.priority = priority;
+		}
+	}
+
+	/**
+	 * The queue, concurrency limit, and metrics of a single priority class
+	 */
+	private static class PriorityClass
+	{
+		// Tasks waiting to run in the order they were submitted. Guarded by the scheduler
+		private final Queue<ScheduledTask> queue = new ArrayDeque<>();
+		// The number of tasks that may run at once. Guarded by the scheduler
+		private Integer concurrencyLimit;
+		// The number of tasks running. Guarded by the scheduler
+		private Integer running = 0;
+
+		// Metrics
+		private final AtomicLong submitted = new AtomicLong(0);
+		private final AtomicLong started = new AtomicLong(0);
+		private final AtomicLong completed = new AtomicLong(0);
+		private final AtomicLong cancelled = new AtomicLong(0);
+		private final AtomicLong totalWaitNanos = new AtomicLong(0);
+		private final AtomicLong maxWaitNanos = new AtomicLong(0);
+		private final AtomicLong totalRunNanos = new AtomicLong(0);
+
+		/**
+		 * Constructor takes the concurrency limit of the class
+		 *
+		 * @param concurrencyLimit The number of tasks that may run at once
+		 */
+		private PriorityClass(Integer concurrencyLimit)
+		{
+			this.concurrencyLimit = concurrencyLimit;
+		}
+
+		/**
+		 * Records how long a task waited before it started running
+		 *
+		 * @param waitNanos The time the task waited
+		 */
+		private void recordWait(long waitNanos)
+		{
+			this.started.incrementAndGet();
+			this.totalWaitNanos.addAndGet(waitNanos);
+			this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+		}
+	}
+}
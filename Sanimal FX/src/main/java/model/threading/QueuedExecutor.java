@@ -6,10 +6,12 @@ import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Executor that queues all tasks and performs them one by one
+ * Executor that queues tasks in the background. Tasks run in order within their priority, and tasks of different priorities may run at the
+ * same time so that a long import doesn't hold up an interactive query. The message and progress follow the most recently started task
  */
 public class QueuedExecutor extends BaseSanimalExecutor
 {
@@ -19,15 +21,19 @@ public class QueuedExecutor extends BaseSanimalExecutor
 	private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper();
 	// If a task is currently running
 	private final ReadOnlyBooleanWrapper taskRunning = new ReadOnlyBooleanWrapper(false);
-	// The task that is currently running
+	// The tasks that are currently running
 	private final ObservableList<Task<?>> tasks = FXCollections.observableArrayList();
+	// The tasks and services that are currently running in the order they started
+	private final List<Worker<?>> running = new ArrayList<>();
 
 	/**
-	 * Constructor specifies a single thread which can do one task at a time
+	 * Constructor takes the scheduler to run tasks with, tasks are background I/O unless given another priority
+	 *
+	 * @param taskScheduler The scheduler that runs the tasks
 	 */
-	public QueuedExecutor()
+	public QueuedExecutor(PriorityTaskScheduler taskScheduler)
 	{
-		super(Executors.newSingleThreadExecutor());
+		super(taskScheduler, TaskPriority.BACKGROUND_IO);
 	}
 
 	/**
@@ -38,11 +44,19 @@ public class QueuedExecutor extends BaseSanimalExecutor
 	@Override
 	protected void onSucceeded(Worker<?> worker)
 	{
-		this.message.unbind();
-		this.progress.unbind();
+		this.running.remove(worker);
 		if (worker instanceof Task<?>)
 			this.tasks.remove(worker);
-		this.taskRunning.setValue(false);
+		// Show the progress of the latest task that is still running, if any
+		this.message.unbind();
+		this.progress.unbind();
+		if (!this.running.isEmpty())
+		{
+			Worker<?> latest = this.running.get(this.running.size() - 1);
+			this.message.bind(latest.messageProperty());
+			this.progress.bind(latest.progressProperty());
+		}
+		this.taskRunning.setValue(!this.running.isEmpty());
 	}
 
 	/**
@@ -53,6 +67,7 @@ public class QueuedExecutor extends BaseSanimalExecutor
 	@Override
 	protected void onRunning(Worker<?> worker)
 	{
+		this.running.add(worker);
 		this.message.bind(worker.messageProperty());
 		this.progress.bind(worker.progressProperty());
 		if (worker instanceof Task<?>)
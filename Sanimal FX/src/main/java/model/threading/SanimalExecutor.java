@@ -15,10 +15,12 @@ import java.util.concurrent.Future;
  */
 public class SanimalExecutor
 {
-	// Queued executor is used to perform tasks one by one
-	private QueuedExecutor queuedExecutor = new QueuedExecutor();
+	// The scheduler that runs every task by priority
+	private PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO);
+	// Queued executor is used to perform background tasks in order
+	private QueuedExecutor queuedExecutor = new QueuedExecutor(this.taskScheduler);
 	// Immediate executor is used to do tasks at once
-	private ImmediateExecutor immediateExecutor = new ImmediateExecutor();
+	private ImmediateExecutor immediateExecutor = new ImmediateExecutor(this.taskScheduler);
 
 	/**
 	 * Returns the queued executor, use this if you want to perform tasks one by one
@@ -40,6 +42,16 @@ public class SanimalExecutor
 		return this.immediateExecutor;
 	}
 
+	/**
+	 * Returns the scheduler that runs every task, used to change concurrency limits or read wait and run times
+	 *
+	 * @return The task scheduler
+	 */
+	public PriorityTaskScheduler getTaskScheduler()
+	{
+		return this.taskScheduler;
+	}
+
 	/**
 	 * Returns true if any of the executors are performing tasks, false otherwise
 	 *
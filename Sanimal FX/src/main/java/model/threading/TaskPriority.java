@@ -0,0 +1,39 @@
+package model.threading;
+
+/**
+ * The priority classes that background tasks are scheduled in. Each class has its own limit on how many of its tasks may run at once, and
+ * when more than one class is waiting for one of the scheduler's shared slots the higher priority class goes first
+ */
+public enum TaskPriority
+{
+	// Work the user is waiting on right now, like logging in, running a query, or viewing an image
+	INTERACTIVE(6),
+	// Downloads of single cloud images the user just opened. They get their own slots so they don't wait behind bulk transfers, and are
+	// capped so that clicking through many images can't take every slot from other interactive work
+	IMAGE_PULL(3),
+	// Small background reads and writes like settings syncs and metadata writes, run one at a time so they stay in order
+	BACKGROUND_IO(1),
+	// Large transfers like imports, uploads, and downloads that would otherwise saturate the disk or network
+	BULK_TRANSFER(2);
+
+	// The default number of tasks of this priority that may run at the same time
+	private final Integer defaultConcurrency;
+
+	/**
+	 * Constructor takes the default concurrency of the priority class
+	 *
+	 * @param defaultConcurrency The number of tasks of this priority that may run at the same time
+	 */
+	TaskPriority(Integer defaultConcurrency)
+	{
+		this.defaultConcurrency = defaultConcurrency;
+	}
+
+	/**
+	 * @return The default number of tasks of this priority that may run at the same time
+	 */
+	public Integer getDefaultConcurrency()
+	{
+		return this.defaultConcurrency;
+	}
+}
@@ -0,0 +1,227 @@
+package model.util;
+
+import model.location.Location;
+import model.species.Species;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Class used to intern locations and species while reading metadata. Lookups are done through hash indices instead of
+ * searching the lists, and any location or species read twice will return the same object so identity comparisons remain valid.
+ * The registry is thread safe so it may be shared by several threads reading metadata at once
+ */
+public class LocationSpeciesRegistry
+{
+	// Two locations with the same ID closer than this are considered identical
+	private static final double LAT_LNG_TOLERANCE = 0.0001;
+
+	// The lists that new locations and species get appended to
+	private final List<Location> knownLocations;
+	private final List<Species> knownSpecies;
+
+	// Lower case location ID -> locations with that ID
+	private final Map<String, List<Location>> locationsById = new HashMap<>();
+	// Lower case location name -> first location with that name
+	private final Map<String, Location> locationsByName = new HashMap<>();
+	// Lower case scientific name -> species with that scientific name
+	private final Map<String, List<Species>> speciesByScientificName = new HashMap<>();
+	// Lower case species name -> first species with that name
+	private final Map<String, Species> speciesByName = new HashMap<>();
+
+	/**
+	 * Constructor indexes the given lists. New locations and species added to the registry are also appended to these lists
+	 *
+	 * @param knownLocations The current list of known locations
+	 * @param knownSpecies The current list of known species
+	 */
+	public LocationSpeciesRegistry(List<Location> knownLocations, List<Species> knownSpecies)
+	{
+		this.knownLocations = knownLocations;
+		this.knownSpecies = knownSpecies;
+		// Index everything we already know about
+		knownLocations.forEach(this::indexLocation);
+		knownSpecies.forEach(this::indexSpecies);
+	}
+
+	/**
+	 * Finds a location with the given ID (case insensitive) whose latitude and longitude are within a small tolerance of the given values
+	 *
+	 * @param id The location ID
+	 * @param latitude The location latitude
+	 * @param longitude The location longitude
+	 * @return The matching location or null if none was found
+	 */
+	public synchronized Location findLocation(String id, double latitude, double longitude)
+	{
+		List<Location> candidates = this.locationsById.get(key(id));
+		if (candidates != null)
+			for (Location location : candidates)
+				if (Math.abs(location.getLat() - latitude) < LAT_LNG_TOLERANCE && Math.abs(location.getLng() - longitude) < LAT_LNG_TOLERANCE)
+					return location;
+		return null;
+	}
+
+	/**
+	 * Finds the first location with the given ID (case insensitive)
+	 *
+	 * @param id The location ID
+	 * @return The matching location or null if none was found
+	 */
+	public synchronized Location findLocationById(String id)
+	{
+		List<Location> candidates = this.locationsById.get(key(id));
+		return candidates == null ? null : candidates.get(0);
+	}
+
+	/**
+	 * Finds the first location with the given name (case insensitive)
+	 *
+	 * @param name The location name
+	 * @return The matching location or null if none was found
+	 */
+	public synchronized Location findLocationByName(String name)
+	{
+		return this.locationsByName.get(key(name));
+	}
+
+	/**
+	 * Finds a species with the given name and scientific name (both case insensitive)
+	 *
+	 * @param name The species name
+	 * @param scientificName The species scientific name
+	 * @return The matching species or null if none was found
+	 */
+	public synchronized Species findSpecies(String name, String scientificName)
+	{
+		List<Species> candidates = this.speciesByScientificName.get(key(scientificName));
+		if (candidates != null)
+			for (Species species : candidates)
+				if (StringUtils.equalsIgnoreCase(species.getName(), name))
+					return species;
+		return null;
+	}
+
+	/**
+	 * Finds the first species with the given scientific name (case insensitive)
+	 *
+	 * @param scientificName The species scientific name
+	 * @return The matching species or null if none was found
+	 */
+	public synchronized Species findSpeciesByScientificName(String scientificName)
+	{
+		List<Species> candidates = this.speciesByScientificName.get(key(scientificName));
+		return candidates == null ? null : candidates.get(0);
+	}
+
+	/**
+	 * Finds the first species with the given name (case insensitive)
+	 *
+	 * @param name The species name
+	 * @return The matching species or null if none was found
+	 */
+	public synchronized Species findSpeciesByName(String name)
+	{
+		return this.speciesByName.get(key(name));
+	}
+
+	/**
+	 * Finds a location like findLocation, and if none is found creates one and adds it to the registry. This happens atomically so two
+	 * threads reading the same new location will end up with the same object
+	 *
+	 * @param id The location ID
+	 * @param latitude The location latitude
+	 * @param longitude The location longitude
+	 * @param locationCreator Creates the location if it was not found
+	 * @return The existing or newly created location
+	 */
+	public synchronized Location findOrAddLocation(String id, double latitude, double longitude, Supplier<Location> locationCreator)
+	{
+		Location location = this.findLocation(id, latitude, longitude);
+		if (location == null)
+		{
+			location = locationCreator.get();
+			this.addLocation(location);
+		}
+		return location;
+	}
+
+	/**
+	 * Finds a species like findSpecies, and if none is found creates one and adds it to the registry. This happens atomically so two
+	 * threads reading the same new species will end up with the same object
+	 *
+	 * @param name The species name
+	 * @param scientificName The species scientific name
+	 * @param speciesCreator Creates the species if it was not found
+	 * @return The existing or newly created species
+	 */
+	public synchronized Species findOrAddSpecies(String name, String scientificName, Supplier<Species> speciesCreator)
+	{
+		Species species = this.findSpecies(name, scientificName);
+		if (species == null)
+		{
+			species = speciesCreator.get();
+			this.addSpecies(species);
+		}
+		return species;
+	}
+
+	/**
+	 * Adds a new location to the registry and to the list of known locations
+	 *
+	 * @param location The location to add
+	 */
+	public synchronized void addLocation(Location location)
+	{
+		this.knownLocations.add(location);
+		this.indexLocation(location);
+	}
+
+	/**
+	 * Adds a new species to the registry and to the list of known species
+	 *
+	 * @param species The species to add
+	 */
+	public synchronized void addSpecies(Species species)
+	{
+		this.knownSpecies.add(species);
+		this.indexSpecies(species);
+	}
+
+	/**
+	 * Puts a location into the ID and name indices
+	 *
+	 * @param location The location to index
+	 */
+	private void indexLocation(Location location)
+	{
+		this.locationsById.computeIfAbsent(key(location.getId()), ignored -> new ArrayList<>(1)).add(location);
+		this.locationsByName.putIfAbsent(key(location.getName()), location);
+	}
+
+	/**
+	 * Puts a species into the scientific name and name indices
+	 *
+	 * @param species The species to index
+	 */
+	private void indexSpecies(Species species)
+	{
+		this.speciesByScientificName.computeIfAbsent(key(species.getScientificName()), ignored -> new ArrayList<>(1)).add(species);
+		this.speciesByName.putIfAbsent(key(species.getName()), species);
+	}
+
+	/**
+	 * Converts a string into a case insensitive index key
+	 *
+	 * @param value The value to convert
+	 * @return The lower case value, or an empty string if the value was null
+	 */
+	private static String key(String value)
+	{
+		return value == null ? "" : value.toLowerCase();
+	}
+}
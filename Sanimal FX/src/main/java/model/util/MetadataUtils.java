@@ -6,24 +6,49 @@ import model.image.ImageEntry;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.ImagingConstants;
 import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossless;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.io.FileUtils;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class containing utils for writing & reading metadata
  */
 public class MetadataUtils
 {
+	// JPEG markers needed to find the EXIF segment in a JPEG header
+	private static final Integer JPEG_SOI_MARKER = 0xFFD8;
+	private static final Integer JPEG_EOI_MARKER = 0xFFD9;
+	private static final Integer JPEG_SOS_MARKER = 0xFFDA;
+	private static final Integer JPEG_APP1_MARKER = 0xFFE1;
+	// The EXIF segment starts with "Exif" followed by two zero bytes
+	private static final Integer EXIF_HEADER_LENGTH = 6;
+	// Buffer size used when reading JPEG headers, large enough to hold most EXIF segments
+	private static final Integer HEADER_BUFFER_SIZE = 65536;
+	// Disks write a whole sector at once, so a patch that stays inside one sector is never left half written
+	private static final Integer DISK_SECTOR_SIZE = 512;
+	// Returned when reading the EXIF segment of a JPEG without one
+	private static final ExifSegment NO_EXIF = new ExifSegment(-1, new byte[0]);
+
+	// Counters used to measure how much disk IO metadata writes cause
+	private static final AtomicLong metadataBytesWritten = new AtomicLong(0);
+	private static final AtomicLong metadataWrites = new AtomicLong(0);
+	private static final AtomicLong inPlaceMetadataWrites = new AtomicLong(0);
+
 	/**
 	 * Reads the output set from a given image entry which contains metadata
 	 *
@@ -55,7 +80,9 @@ public class MetadataUtils
 	}
 
 	/**
-	 * Write the output set to a given image entry
+	 * Write the output set to a given image entry. If the new EXIF data fits into the old EXIF data and the bytes that changed are all in
+	 * one disk sector, only those bytes are overwritten. Otherwise the image is streamed into a temporary file next to it with the new EXIF
+	 * data, and the temporary file replaces the image
 	 *
 	 * @param outputSet The metadata output set
 	 * @param imageEntry The image entry to write to
@@ -66,22 +93,142 @@ public class MetadataUtils
 	 */
 	public static void writeOutputSet(TiffOutputSet outputSet, ImageEntry imageEntry) throws IOException, ImageWriteException, ImageReadException
 	{
-		// Write the new metadata back to the image, first we write it to a temporary file
-		File tempToWriteTo = SanimalData.getInstance().getTempDirectoryManager().createTempFile("sanimalTMP.jpg");
-		// Copy the current image file to the temporary file
-		FileUtils.copyFile(imageEntry.getFile(), tempToWriteTo);
-		// Then we create an output stream to that file
-		if (tempToWriteTo.exists())
+		File imageFile = imageEntry.getFile();
+		metadataWrites.incrementAndGet();
+
+		// First try to patch the EXIF data in place, which only writes a few kilobytes instead of the whole image
+		if (MetadataUtils.tryWriteOutputSetInPlace(outputSet, imageFile))
+		{
+			inPlaceMetadataWrites.incrementAndGet();
+			return;
+		}
+
+		// Write the image with the new metadata to a temporary file in the same directory so that we can move it over the image atomically
+		Path imagePath = imageFile.toPath();
+		Path tempToWriteTo;
+		try
+		{
+			tempToWriteTo = Files.createTempFile(imagePath.toAbsolutePath().getParent(), "." + imageFile.getName(), ".tmp");
+		}
+		catch (IOException | SecurityException e)
+		{
+			// If we can't write next to the image, use the sanimal temp directory instead
+			tempToWriteTo = SanimalData.getInstance().getTempDirectoryManager().createTempFile("sanimalTMP.jpg").toPath();
+		}
+
+		try
 		{
-			try (OutputStream outputStream = new FileOutputStream(tempToWriteTo))
+			try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempToWriteTo)))
 			{
-				// And perform the write to the temporary file
-				new ExifRewriter().updateExifMetadataLossless(imageEntry.getFile(), outputStream, outputSet);
-				// Then copy the temporary file over top of the current file to update it
-				FileUtils.forceDelete(imageEntry.getFile());
-				FileUtils.moveFile(tempToWriteTo, imageEntry.getFile());
+				// Stream the original image and the new EXIF data into the temporary file
+				new ExifRewriter().updateExifMetadataLossless(imageFile, outputStream, outputSet);
 			}
+			// Make sure the temporary file is on disk before it replaces the image, otherwise a crash could leave an empty image behind.
+			// The rewriter closes the stream it is given so the file is opened again to sync it
+			try (FileChannel fileChannel = FileChannel.open(tempToWriteTo, StandardOpenOption.WRITE))
+			{
+				fileChannel.force(true);
+			}
+			metadataBytesWritten.addAndGet(Files.size(tempToWriteTo));
+
+			// Then replace the image with the temporary file
+			try
+			{
+				Files.move(tempToWriteTo, imagePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				// The temporary file ended up on a different file system, so we can't move it atomically
+				Files.move(tempToWriteTo, imagePath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			// If anything went wrong don't leave the temporary file behind
+			Files.deleteIfExists(tempToWriteTo);
+		}
+	}
+
+	/**
+	 * Attempts to overwrite the EXIF data of the image without touching anything else in the file. This only happens if the image already
+	 * has EXIF data and the new EXIF data fits into it, so the file's layout and size never change. The bytes that changed are written in a
+	 * single write that is synced to disk, and only if they are all in one disk sector so a crash can't leave the image partly patched
+	 *
+	 * @param outputSet The metadata output set
+	 * @param imageFile The image file to write to
+	 *
+	 * @return True if the EXIF data was written, false if the image needs to be rewritten instead
+	 *
+	 * @throws ImageWriteException If something went wrong writing the metadata...
+	 * @throws IOException If something went wrong writing the file...
+	 */
+	private static boolean tryWriteOutputSetInPlace(TiffOutputSet outputSet, File imageFile) throws IOException, ImageWriteException
+	{
+		ExifSegment exifSegment = MetadataUtils.readExifSegment(imageFile);
+		// We need an existing EXIF segment to write over
+		if (exifSegment == null || exifSegment == NO_EXIF)
+			return false;
+
+		// Write the new EXIF data the same way ExifRewriter does, keeping everything in the same place in the old EXIF data where possible
+		ByteArrayOutputStream newExifStream = new ByteArrayOutputStream(exifSegment.tiffBytes.length);
+		new TiffImageWriterLossless(outputSet.byteOrder, exifSegment.tiffBytes).write(newExifStream, outputSet);
+		byte[] newExifBytes = newExifStream.toByteArray();
+		// If it doesn't fit, the segment has to grow which means rewriting the file
+		if (newExifBytes.length > exifSegment.tiffBytes.length)
+			return false;
+		// Zero any left over space so the segment keeps its length. TIFF data is located by offsets so trailing bytes are ignored
+		newExifBytes = Arrays.copyOf(newExifBytes, exifSegment.tiffBytes.length);
+
+		// Find the range of bytes that actually changed
+		int firstChanged = 0;
+		while (firstChanged < newExifBytes.length && newExifBytes[firstChanged] == exifSegment.tiffBytes[firstChanged])
+			firstChanged++;
+		// Nothing changed, so there is nothing to write
+		if (firstChanged == newExifBytes.length)
+			return true;
+		int lastChanged = newExifBytes.length - 1;
+		while (newExifBytes[lastChanged] == exifSegment.tiffBytes[lastChanged])
+			lastChanged--;
+		// If the changes span more than one sector a crash part way through could corrupt the image, so rewrite it and swap it atomically
+		if ((exifSegment.tiffOffset + firstChanged) / DISK_SECTOR_SIZE != (exifSegment.tiffOffset + lastChanged) / DISK_SECTOR_SIZE)
+			return false;
+
+		try (FileChannel fileChannel = FileChannel.open(imageFile.toPath(), StandardOpenOption.WRITE))
+		{
+			// Overwrite just the changed bytes of the old EXIF data and force them to disk before we report the image as written
+			ByteBuffer toWrite = ByteBuffer.wrap(newExifBytes, firstChanged, lastChanged - firstChanged + 1);
+			long position = exifSegment.tiffOffset + firstChanged;
+			while (toWrite.hasRemaining())
+				position = position + fileChannel.write(toWrite, position);
+			fileChannel.force(true);
 		}
+		metadataBytesWritten.addAndGet(lastChanged - firstChanged + 1);
+		return true;
+	}
+
+	/**
+	 * @return The total number of bytes written to disk by metadata writes
+	 */
+	public static long getMetadataBytesWritten()
+	{
+		return metadataBytesWritten.get();
+	}
+
+	/**
+	 * @return The average number of bytes written to disk per metadata write
+	 */
+	public static double getAverageBytesPerMetadataWrite()
+	{
+		long writes = metadataWrites.get();
+		return writes == 0 ? 0 : (double) metadataBytesWritten.get() / writes;
+	}
+
+	/**
+	 * @return The number of metadata writes that were done in place instead of rewriting the image
+	 */
+	public static long getInPlaceMetadataWrites()
+	{
+		return inPlaceMetadataWrites.get();
 	}
 
 	/**
@@ -140,7 +287,23 @@ public class MetadataUtils
 	 */
 	public static TiffImageMetadata readImageMetadata(File imageFile) throws ImageReadException, IOException
 	{
-		// Read the image's metadata
+		// Try to read just the EXIF segment out of the JPEG header instead of having commons imaging parse the whole file
+		ExifSegment exifSegment = MetadataUtils.readExifSegment(imageFile);
+		// This is a JPEG without any EXIF data
+		if (exifSegment == NO_EXIF)
+			return null;
+		// Parse the EXIF data the same way commons imaging would after pulling it out of the JPEG. The JPEG parser asks for thumbnails
+		// to be read, without them the output set created from this metadata would drop the image's thumbnail when written
+		if (exifSegment != null)
+		{
+			Map<String, Object> params = new HashMap<>();
+			params.put(ImagingConstants.PARAM_KEY_READ_THUMBNAILS, Boolean.TRUE);
+			ImageMetadata exifMetadata = new TiffImageParser().getMetadata(exifSegment.tiffBytes, params);
+			if (exifMetadata instanceof TiffImageMetadata)
+				return (TiffImageMetadata) exifMetadata;
+		}
+
+		// The header was unusual, so fall back to reading the image's metadata through commons imaging
 		ImageMetadata metadata = Imaging.getMetadata(imageFile);
 
 		// Grab the tiff metadata to read from, or return null
@@ -149,4 +312,100 @@ public class MetadataUtils
 		else
 			return null;
 	}
+
+	/**
+	 * Reads the EXIF segment out of a JPEG file without reading anything past the JPEG header
+	 *
+	 * @param imageFile The image to read the EXIF segment from
+	 *
+	 * @return The EXIF data without the "Exif" identifier and where it is in the file, NO_EXIF if the file is a JPEG without EXIF data, or
+	 * null if the file is not a JPEG or is laid out in a way this reader does not handle. Null means commons imaging should be used instead
+	 *
+	 * @throws IOException If something went wrong reading the image...
+	 */
+	private static ExifSegment readExifSegment(File imageFile) throws IOException
+	{
+		try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(imageFile), HEADER_BUFFER_SIZE)))
+		{
+			// JPEG files always begin with the start of image marker
+			if (inputStream.readUnsignedShort() != JPEG_SOI_MARKER)
+				return null;
+
+			// Keep track of where we are in the file, we've read 2 bytes so far
+			long position = 2;
+			ExifSegment exifSegment = null;
+			while (true)
+			{
+				int marker = inputStream.readUnsignedShort();
+				// We expect markers with a length. Fill bytes and stand alone markers are rare enough that we let commons imaging deal with them
+				if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFFF || marker == 0xFF01 || (marker >= 0xFFD0 && marker <= 0xFFD7))
+					return null;
+				// Image data starts after the start of scan marker, so if we get there all metadata has been read
+				if (marker == JPEG_SOS_MARKER || marker == JPEG_EOI_MARKER)
+					return exifSegment == null ? NO_EXIF : exifSegment;
+
+				// The segment length includes the two length bytes
+				int segmentLength = inputStream.readUnsignedShort() - 2;
+				if (segmentLength < 0)
+					return null;
+				// We've now read the marker and the length, the segment data starts here
+				long segmentStart = position + 4;
+				position = segmentStart + segmentLength;
+
+				if (marker == JPEG_APP1_MARKER && segmentLength >= EXIF_HEADER_LENGTH)
+				{
+					byte[] segment = new byte[segmentLength];
+					inputStream.readFully(segment);
+					// APP1 segments are also used for XMP data, so make sure this is the EXIF one
+					if (segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i' && segment[3] == 'f')
+					{
+						// Commons imaging refuses EXIF data split over multiple segments, so let it report that
+						if (exifSegment != null)
+							return null;
+						exifSegment = new ExifSegment(segmentStart + EXIF_HEADER_LENGTH, Arrays.copyOfRange(segment, EXIF_HEADER_LENGTH, segmentLength));
+					}
+				}
+				else
+				{
+					// Skip over any other segment
+					long toSkip = segmentLength;
+					while (toSkip > 0)
+					{
+						long skipped = inputStream.skip(toSkip);
+						if (skipped <= 0)
+							return null;
+						toSkip = toSkip - skipped;
+					}
+				}
+			}
+		}
+		catch (EOFException e)
+		{
+			// The file ended before the image data, let commons imaging decide what to do with it
+			return null;
+		}
+	}
+
+	/**
+	 * The EXIF data read out of a JPEG file
+	 */
+	private static final class ExifSegment
+	{
+		// Where in the file the EXIF data begins
+		private final long tiffOffset;
+		// The EXIF data without the "Exif" identifier
+		private final byte[] tiffBytes;
+
+		/**
+		 * Constructor just initializes fields
+		 *
+		 * @param tiffOffset Where in the file the EXIF data begins
+		 * @param tiffBytes The EXIF data without the "Exif" identifier
+		 */
+		private ExifSegment(long tiffOffset, byte[] tiffBytes)
+		{
+			this.tiffOffset = tiffOffset;
+			this.tiffBytes = tiffBytes;
+		}
+	}
 }
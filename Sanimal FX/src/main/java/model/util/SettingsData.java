@@ -28,6 +28,7 @@ public class SettingsData
 	private BooleanProperty drSandersonOutput = new SimpleBooleanProperty(false);
 	private BooleanProperty automaticNextImage = new SimpleBooleanProperty(false);
 	private BooleanProperty backgroundImageLoading = new SimpleBooleanProperty(false);
+	private BooleanProperty saveQueryResultsToDisk = new SimpleBooleanProperty(false);
 
 	/**
 	 * Constructor adds all settings SANIMAL will use to the dictionary
@@ -52,6 +53,7 @@ public class SettingsData
 		this.drSandersonOutput.setValue(otherSettings.getDrSandersonOutput());
 		this.automaticNextImage.setValue(otherSettings.getAutomaticNextImage());
 		this.backgroundImageLoading.setValue(otherSettings.getBackgroundImageLoading());
+		this.saveQueryResultsToDisk.setValue(otherSettings.getSaveQueryResultsToDisk());
 	}
 
 	/**
@@ -67,6 +69,7 @@ public class SettingsData
 		settingList.add(new CustomPropertyItem<>("Show Dr. Sanderson's Output Replicas: ", "Options", "Gives the option to see Dr. Jim Sanderson's Output.txt and AllPictures.txt replicas when querying", drSandersonOutput, Boolean.class));
 		settingList.add(new CustomPropertyItem<>("Automatically Select Next Image: ", "Options", "Automatically select the next image after tagging one with species", automaticNextImage, Boolean.class));
 		settingList.add(new CustomPropertyItem<>("Background Image Loading: ", "Options", "Load images in the background when selecting them, useful for slow hard drives or SD cards", backgroundImageLoading, Boolean.class));
+		settingList.add(new CustomPropertyItem<>("Save Query Results To Disk: ", "Options", "Keep recent query results on this computer so re-running a query after restarting SANIMAL doesn't have to ask CyVerse again", saveQueryResultsToDisk, Boolean.class));
 	}
 
 	/**
@@ -424,6 +427,21 @@ public class SettingsData
 		return backgroundImageLoading;
 	}
 
+	public void setSaveQueryResultsToDisk(boolean saveQueryResultsToDisk)
+	{
+		this.saveQueryResultsToDisk.set(saveQueryResultsToDisk);
+	}
+
+	public boolean getSaveQueryResultsToDisk()
+	{
+		return saveQueryResultsToDisk.get();
+	}
+
+	public BooleanProperty saveQueryResultsToDiskProperty()
+	{
+		return saveQueryResultsToDisk;
+	}
+
 	public void setDrSandersonOutput(boolean drSandersonOutput)
 	{
 		this.drSandersonOutput.set(drSandersonOutput);
@@ -0,0 +1,83 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+import model.location.Location;
+import model.species.Species;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that activity, period, and abundance computed from the image index match the original computation over plain image lists
+ */
+public class DataAnalyzerTest
+{
+	// The number of random data sets to try
+	private static final Integer DATA_SETS = 20;
+	// The number of random slices to try on each data set
+	private static final Integer SLICES_PER_DATA_SET = 50;
+
+	@Test
+	public void indexedResultsMatchPlainListResultsOnRandomData()
+	{
+		Random random = new Random(7L);
+		for (int dataSet = 0; dataSet < DATA_SETS; dataSet++)
+		{
+			// Pack the images into a few days or spread them over years so events are both merged and split
+			Integer days = 1 + random.nextInt(800);
+			Integer eventInterval = 1 + random.nextInt(120);
+			DataAnalyzer dataAnalyzer = new DataAnalyzer(ImageFixtures.createImages(random.nextLong(), 50 + random.nextInt(500), days), eventInterval);
+
+			for (int slice = 0; slice < SLICES_PER_DATA_SET; slice++)
+			{
+				List<ImageEntry> indexed = this.randomSlice(dataAnalyzer, random);
+				assertTrue(indexed instanceof IndexedImageList);
+				// A plain copy of the same images takes the original code path
+				List<ImageEntry> plain = new ArrayList<>(indexed);
+				String context = "data set " + dataSet + " slice " + slice;
+
+				assertEquals("activity for " + context, dataAnalyzer.activityForImageList(plain), dataAnalyzer.activityForImageList(indexed));
+				assertEquals("period for " + context, dataAnalyzer.periodForImageList(plain), dataAnalyzer.periodForImageList(indexed));
+				assertEquals("abundance for " + context, dataAnalyzer.abundanceForImageList(plain, null), dataAnalyzer.abundanceForImageList(indexed, null));
+				for (Species species : dataAnalyzer.getAllImageSpecies())
+					assertEquals("abundance of " + species.getName() + " for " + context, dataAnalyzer.abundanceForImageList(plain, species), dataAnalyzer.abundanceForImageList(indexed, species));
+			}
+		}
+	}
+
+	/**
+	 * Filters the analyzer's images by a random combination of species, location, year, month, and hour the same way formatters do
+	 *
+	 * @param dataAnalyzer The analyzer to take images from
+	 * @param random The random number generator used to pick filters
+	 * @return An indexed list of the images matching the filters
+	 */
+	private List<ImageEntry> randomSlice(DataAnalyzer dataAnalyzer, Random random)
+	{
+		List<Species> species = dataAnalyzer.getAllImageSpecies();
+		List<Location> locations = dataAnalyzer.getAllImageLocations();
+		List<Integer> years = dataAnalyzer.getAllImageYears();
+
+		ImageQuery imageQuery = new ImageQuery();
+		if (random.nextBoolean())
+			imageQuery.speciesOnly(species.get(random.nextInt(species.size())));
+		if (random.nextBoolean())
+			imageQuery.locationOnly(locations.get(random.nextInt(locations.size())));
+		if (random.nextInt(3) == 0)
+			imageQuery.yearOnly(years.get(random.nextInt(years.size())));
+		if (random.nextInt(3) == 0)
+			imageQuery.monthOnly(1 + random.nextInt(12));
+		if (random.nextInt(3) == 0)
+		{
+			int startHour = random.nextInt(24);
+			imageQuery.timeFrame(startHour, startHour + 1 + random.nextInt(24 - startHour));
+		}
+		// Formatters query both the date sorted and the original image lists
+		return imageQuery.query(random.nextBoolean() ? dataAnalyzer.getImagesSortedByDate() : dataAnalyzer.getOriginalImageList());
+	}
+}
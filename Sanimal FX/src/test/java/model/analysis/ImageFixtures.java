@@ -0,0 +1,71 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+import model.location.Location;
+import model.species.Species;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates repeatable sets of tagged images for the analysis tests. The same seed always gives the same images
+ */
+public class ImageFixtures
+{
+	/**
+	 * Creates a list of images spread over a few locations and species across two years
+	 *
+	 * @param seed The seed used to pick image dates, locations, and species
+	 * @param imageCount The number of images to create
+	 * @return A list of tagged images
+	 */
+	public static List<ImageEntry> createImages(Long seed, Integer imageCount)
+	{
+		return createImages(seed, imageCount, 2 * 365);
+	}
+
+	/**
+	 * Creates a list of images spread over a few locations and species. Fewer days packs more images into the same event
+	 *
+	 * @param seed The seed used to pick image dates, locations, and species
+	 * @param imageCount The number of images to create
+	 * @param days The number of days after the first day that images may be taken on
+	 * @return A list of tagged images
+	 */
+	public static List<ImageEntry> createImages(Long seed, Integer imageCount, Integer days)
+	{
+		Random random = new Random(seed);
+
+		List<Location> locations = Arrays.asList(
+				new Location("Cherry Creek", "CC01", 32.4190, -110.7318, 1500D),
+				new Location("Bear Canyon", "BC02", 32.3456, -110.7012, 1830D),
+				new Location("Rose Canyon", "RC03", 32.3962, -110.6895, 2120D),
+				new Location("Sabino Basin", "SB04", 32.3520, -110.7754, 1150D));
+		List<Species> species = Arrays.asList(
+				new Species("Mule Deer", "Odocoileus hemionus"),
+				new Species("Coyote", "Canis latrans"),
+				new Species("Black Bear", "Ursus americanus"),
+				new Species("Gray Fox", "Urocyon cinereoargenteus"),
+				new Species("Bobcat", "Lynx rufus"));
+
+		LocalDateTime start = LocalDateTime.of(2015, 3, 1, 0, 0, 0);
+		List<ImageEntry> images = new ArrayList<>();
+		for (int i = 0; i < imageCount; i++)
+		{
+			ImageEntry imageEntry = new ImageEntry(new File(String.format("/fixture/IMG_%04d.JPG", i)));
+			// Anywhere within the given number of days of the start, to the second
+			imageEntry.setDateTaken(start.plusSeconds(random.nextInt(days * 24 * 60 * 60)));
+			imageEntry.setLocationTaken(locations.get(random.nextInt(locations.size())));
+			// Most images have one species, some have two
+			imageEntry.addSpecies(species.get(random.nextInt(species.size())), 1 + random.nextInt(4));
+			if (random.nextInt(5) == 0)
+				imageEntry.addSpecies(species.get(random.nextInt(species.size())), 1 + random.nextInt(2));
+			images.add(imageEntry);
+		}
+		return images;
+	}
+}
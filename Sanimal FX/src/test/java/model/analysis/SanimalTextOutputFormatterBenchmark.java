@@ -0,0 +1,53 @@
+package model.analysis;
+
+import model.image.ImageEntry;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the text output of a large analysis with and without the image index. Scanning the plain image lists takes over a minute, so this
+ * is named so that it is left out of the regular test run. Run it on its own with mvn -Dtest=SanimalTextOutputFormatterBenchmark test
+ */
+public class SanimalTextOutputFormatterBenchmark
+{
+	// The number of images formatted
+	private static final Integer IMAGE_COUNT = 100000;
+	// The number of times the indexed analysis is formatted to warm up the JIT before it is timed
+	private static final Integer WARMUP_ROUNDS = 2;
+	// The number of timed rounds of the indexed analysis, the best round is kept
+	private static final Integer TIMED_ROUNDS = 5;
+
+	@Test
+	public void indexedAnalysisFormatsALargeImageSetFaster()
+	{
+		List<ImageEntry> images = ImageFixtures.createImages(42L, IMAGE_COUNT);
+		DataAnalyzer indexedAnalyzer = new DataAnalyzer(images, 60, true);
+		DataAnalyzer plainAnalyzer = new DataAnalyzer(images, 60, false);
+		SanimalTextOutputFormatter formatter = new SanimalTextOutputFormatter(false);
+
+		for (int round = 0; round < WARMUP_ROUNDS; round++)
+			formatter.format(indexedAnalyzer);
+		String indexedOutput = null;
+		long indexedMillis = Long.MAX_VALUE;
+		for (int round = 0; round < TIMED_ROUNDS; round++)
+		{
+			long startNanos = System.nanoTime();
+			indexedOutput = formatter.format(indexedAnalyzer);
+			indexedMillis = Math.min(indexedMillis, (System.nanoTime() - startNanos) / 1000000);
+		}
+
+		// A single plain round runs long enough that JIT warm up is lost in the noise
+		long startNanos = System.nanoTime();
+		String plainOutput = formatter.format(plainAnalyzer);
+		long plainMillis = (System.nanoTime() - startNanos) / 1000000;
+
+		System.out.println(String.format("Formatted %d images in %d ms with the index and %d ms scanning the image lists", IMAGE_COUNT, indexedMillis, plainMillis));
+		// The index must not change the output, only how long it takes
+		assertEquals(SanimalTextOutputFormatterTest.withoutFooter(plainOutput), SanimalTextOutputFormatterTest.withoutFooter(indexedOutput));
+		assertTrue("Indexed format took " + indexedMillis + " ms, plain format took " + plainMillis + " ms", indexedMillis * 10 < plainMillis);
+	}
+}
@@ -0,0 +1,99 @@
+package model.analysis;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the text output is byte identical to the output produced before sections could be rendered in parallel
+ */
+public class SanimalTextOutputFormatterTest
+{
+	// The golden output was created with the original sequential formatter from ImageFixtures.createImages(42, 800)
+	private static final String GOLDEN_OUTPUT = "/model/analysis/sanimalTextOutput.txt";
+	// The footer is the only part of the output that changes from run to run
+	private static final String ELAPSED_TIME_FOOTER = "ELAPSED TIME";
+
+	// The output is formatted with the default locale, so the golden file only matches under a US locale
+	private static Locale originalLocale;
+	private static DataAnalyzer dataAnalyzer;
+	private static String goldenOutput;
+
+	@BeforeClass
+	public static void setUp() throws IOException
+	{
+		originalLocale = Locale.getDefault();
+		Locale.setDefault(Locale.US);
+		dataAnalyzer = new DataAnalyzer(ImageFixtures.createImages(42L, 800), 60);
+		try (InputStream goldenStream = SanimalTextOutputFormatterTest.class.getResourceAsStream(GOLDEN_OUTPUT))
+		{
+			goldenOutput = IOUtils.toString(goldenStream, StandardCharsets.UTF_8);
+		}
+	}
+
+	@AfterClass
+	public static void tearDown()
+	{
+		Locale.setDefault(originalLocale);
+	}
+
+	@Test
+	public void sequentialOutputMatchesGoldenFile()
+	{
+		assertEquals(goldenOutput, withoutFooter(new SanimalTextOutputFormatter(false).format(dataAnalyzer)));
+	}
+
+	@Test
+	public void parallelOutputMatchesGoldenFile()
+	{
+		SanimalTextOutputFormatter formatter = new SanimalTextOutputFormatter(true);
+		// Render a few times so sections get a chance to finish in different orders
+		for (int i = 0; i < 5; i++)
+			assertEquals(goldenOutput, withoutFooter(formatter.format(dataAnalyzer)));
+	}
+
+	@Test
+	public void unindexedOutputMatchesGoldenFile()
+	{
+		// Scanning plain image lists is the baseline the index is measured against, so it has to give the same output
+		DataAnalyzer plainAnalyzer = new DataAnalyzer(ImageFixtures.createImages(42L, 800), 60, false);
+		assertFalse(plainAnalyzer.getOriginalImageList() instanceof IndexedImageList);
+		assertEquals(goldenOutput, withoutFooter(new SanimalTextOutputFormatter(false).format(plainAnalyzer)));
+	}
+
+	@Test
+	public void defaultFormatterIsSequential()
+	{
+		assertEquals(Boolean.FALSE, new SanimalTextOutputFormatter().getRenderInParallel());
+	}
+
+	@Test
+	public void everySectionIsTimed()
+	{
+		SanimalTextOutputFormatter formatter = new SanimalTextOutputFormatter(true);
+		formatter.format(dataAnalyzer);
+		assertEquals(51, formatter.getLastSectionTimings().size());
+		assertTrue(formatter.getLastSectionTimings().values().stream().allMatch(time -> time >= 0));
+	}
+
+	/**
+	 * Removes the elapsed time footer from formatted output
+	 *
+	 * @param output The formatted output
+	 * @return The output up to the footer
+	 */
+	static String withoutFooter(String output)
+	{
+		return output.substring(0, output.lastIndexOf(ELAPSED_TIME_FOOTER));
+	}
+}
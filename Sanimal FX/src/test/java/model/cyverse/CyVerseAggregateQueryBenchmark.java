@@ -0,0 +1,65 @@
+package model.cyverse;
+
+import model.analysis.ImageFixtures;
+import model.query.AggregateField;
+import model.query.CyVerseQuery;
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.exception.JargonException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times counting the images per species of a large collection with the aggregate query against loading every image and analyzing them.
+ * The fake server waits a few milliseconds per round trip so this takes a while, and is named so that it is left out of the regular test
+ * run. Run it on its own with mvn -Dtest=CyVerseAggregateQueryBenchmark test
+ */
+public class CyVerseAggregateQueryBenchmark
+{
+	// The number of images in the queried collection
+	private static final Integer IMAGE_COUNT = 20000;
+	// The number of rows the fake server returns in each page, the most a real GenQuery returns at once
+	private static final Integer PAGE_SIZE = 5000;
+	// The time the fake server waits for each round trip
+	private static final Long LATENCY_MILLIS = 5L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void aggregateQueryCountsALargeCollectionFaster() throws JargonException, IOException
+	{
+		IRODSAccount account = IRODSAccount.instance("localhost", 1247, "user", "password", "/iplant/home/user", "iplant", "");
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, LATENCY_MILLIS);
+		ImageCollection imageCollection = new ImageCollection();
+		CyVerseConnectionManagerTest.addTaggedImages(remoteCatalog, ImageFixtures.createImages(42L, IMAGE_COUNT), Arrays.asList(imageCollection));
+		CyVerseImageCache imageCache = new CyVerseImageCache(this.temporaryFolder.newFolder("imageCache"), 1000000L);
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(account, new CyVerseSessionManager(account, 4, 60000, new FakeSessionFactory()), remoteCatalog, imageCache);
+		CyVerseQuery query = new CyVerseQuery();
+		query.addImageCollection(imageCollection);
+
+		// The aggregate query doesn't use the query cache, so run it first and the full query is never answered from the cache either
+		long startNanos = System.nanoTime();
+		SortedMap<String, Long> aggregateCounts = connectionManager.performAggregateQuery(query, AggregateField.SPECIES);
+		long aggregateMillis = (System.nanoTime() - startNanos) / 1000000;
+		Integer aggregateRoundTrips = remoteCatalog.roundTrips.getAndSet(0);
+
+		startNanos = System.nanoTime();
+		Map<String, Long> analyzerCounts = CyVerseConnectionManagerTest.speciesCountsFromAnalysis(connectionManager, query);
+		long analyzerMillis = (System.nanoTime() - startNanos) / 1000000;
+		Integer analyzerRoundTrips = remoteCatalog.roundTrips.get();
+
+		System.out.println(String.format("Counted %d images per species in %d ms over %d round trips with the aggregate query and %d ms over %d round trips loading and analyzing every image",
+				IMAGE_COUNT, aggregateMillis, aggregateRoundTrips, analyzerMillis, analyzerRoundTrips));
+		assertEquals(analyzerCounts, aggregateCounts);
+		assertTrue("Aggregate query took " + aggregateMillis + " ms, loading and analyzing took " + analyzerMillis + " ms", aggregateMillis * 2 < analyzerMillis);
+	}
+}
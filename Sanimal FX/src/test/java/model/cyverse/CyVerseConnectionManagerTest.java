@@ -0,0 +1,732 @@
+package model.cyverse;
+
+import model.SanimalData;
+import model.constant.SanimalMetadataFields;
+import model.analysis.DataAnalyzer;
+import model.analysis.DataAnalyzerBuilder;
+import model.analysis.ImageFixtures;
+import model.analysis.ImageQuery;
+import model.image.CloudImageDirectory;
+import model.image.CloudImageEntry;
+import model.image.CloudUploadEntry;
+import model.image.DirtyImageQueue;
+import model.image.ImageContainer;
+import model.image.ImageDirectory;
+import model.image.ImageEntry;
+import model.query.AggregateField;
+import model.query.CyVerseQuery;
+import model.query.QueryResultListener;
+import model.species.Species;
+import model.threading.BlockingIOExecutors;
+import javafx.beans.property.SimpleStringProperty;
+import org.apache.commons.io.FilenameUtils;
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.pub.domain.AvuData;
+import org.irods.jargon.core.pub.io.IRODSFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how many round trips the connection manager makes to CyVerse using a fake server
+ */
+public class CyVerseConnectionManagerTest
+{
+	// The upload that gets listed
+	private static final String UPLOAD_PATH = "/iplant/home/user/Sanimal/Collections/test/Uploads/user 2018-01-01 00-00-00";
+	// The folder that collections are stored in on CyVerse
+	private static final String COLLECTIONS_PATH = "/iplant/home/smalusa/Sanimal/Collections";
+	// The number of rows the fake server returns in each page of a listing
+	private static final Integer PAGE_SIZE = 100;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	// The account given to the connection manager, never used to connect
+	private IRODSAccount account;
+	// The image cache given to the connection manager, kept in a temporary folder
+	private CyVerseImageCache imageCache;
+
+	@Before
+	public void setUp() throws JargonException, IOException
+	{
+		this.account = IRODSAccount.instance("localhost", 1247, "user", "password", "/iplant/home/user", "iplant", "");
+		this.imageCache = new CyVerseImageCache(this.temporaryFolder.newFolder("imageCache"), 1000000L);
+	}
+
+	@Test
+	public void uploadTreeIsListedWithAFixedNumberOfQueries() throws JargonException
+	{
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		remoteCatalog.addCollection(UPLOAD_PATH);
+		remoteCatalog.addDataObject(UPLOAD_PATH + "/UploadMeta.json", "{}");
+		// Three directories each containing two sub-directories, with 20 images in every directory
+		Integer directoryCount = 0;
+		Integer imageCount = 0;
+		for (Integer directory = 0; directory < 3; directory++)
+		{
+			String directoryPath = UPLOAD_PATH + "/camera" + directory;
+			imageCount = imageCount + this.addDirectory(remoteCatalog, directoryPath);
+			directoryCount++;
+			for (Integer subDirectory = 0; subDirectory < 2; subDirectory++)
+			{
+				imageCount = imageCount + this.addDirectory(remoteCatalog, directoryPath + "/card" + subDirectory);
+				directoryCount++;
+			}
+		}
+		// A sibling upload whose name starts with the same characters must not be included
+		remoteCatalog.addCollection(UPLOAD_PATH + "2");
+		remoteCatalog.addDataObject(UPLOAD_PATH + "2/IMG_0000.JPG", "", AvuData.instance("attribute", "value", "unit"));
+
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		CloudImageDirectory uploadDirectory = connectionManager.downloadUploadDirectory(new CloudUploadEntry("user", LocalDateTime.now(), 0, imageCount, UPLOAD_PATH, ""));
+
+		// Every directory and image is in the tree, and nothing else is
+		assertNotNull(uploadDirectory);
+		List<ImageContainer> containers = uploadDirectory.flattened().collect(Collectors.toList());
+		assertEquals((long) directoryCount, containers.stream().filter(container -> container instanceof CloudImageDirectory && container != uploadDirectory).count());
+		List<String> imagePaths = containers.stream().filter(container -> container instanceof CloudImageEntry).map(container -> ((CloudImageEntry) container).getCyverseFile().getAbsolutePath()).collect(Collectors.toList());
+		assertEquals((int) imageCount, imagePaths.size());
+		assertTrue(imagePaths.stream().allMatch(imagePath -> imagePath.startsWith(UPLOAD_PATH + "/camera")));
+		// Images are placed in the directory they are stored in
+		for (ImageContainer container : containers)
+			if (container instanceof CloudImageDirectory)
+				for (ImageContainer child : container.getChildren())
+					if (child instanceof CloudImageEntry)
+						assertEquals(((CloudImageDirectory) container).getCyverseDirectory().getAbsolutePath(), ((CloudImageEntry) child).getCyverseFile().getParent());
+
+		// One listing each for collections, data objects, and metadata no matter how many directories there are
+		assertEquals(3, remoteCatalog.listings.get());
+		// Listing one directory at a time would take a round trip per directory plus a round trip per entry
+		Integer expectedRoundTrips = pages(directoryCount) + pages(imageCount + 2) + pages(1);
+		assertEquals((int) expectedRoundTrips, remoteCatalog.roundTrips.get());
+		assertTrue(remoteCatalog.roundTrips.get() < directoryCount + imageCount);
+	}
+
+	@Test
+	public void openingATaggedUploadReadsMetadataWithoutDownloadingImages() throws JargonException
+	{
+		Integer directoryCount = 10;
+		List<ImageEntry> images = ImageFixtures.createImages(17L, 5000);
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		remoteCatalog.addCollection(UPLOAD_PATH);
+		remoteCatalog.addDataObject(UPLOAD_PATH + "/UploadMeta.json", "{}");
+		// Every image was tagged before it was uploaded, spread over a few directories
+		Map<String, ImageEntry> pathToOriginal = new HashMap<>();
+		Integer metadataRows = 0;
+		for (Integer imageIndex = 0; imageIndex < images.size(); imageIndex++)
+		{
+			String directoryPath = UPLOAD_PATH + "/camera" + (imageIndex % directoryCount);
+			String path = String.format("%s/IMG_%04d.JPG", directoryPath, imageIndex);
+			List<AvuData> metadata = images.get(imageIndex).convertToAVUMetadata();
+			remoteCatalog.addCollection(directoryPath);
+			remoteCatalog.addDataObject(path, "", metadata.toArray(new AvuData[0]));
+			pathToOriginal.put(path, images.get(imageIndex));
+			metadataRows = metadataRows + metadata.size();
+		}
+
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		connectionManager.setFXThreadExecutor(Runnable::run);
+		CloudImageDirectory uploadDirectory = connectionManager.downloadUploadDirectory(new CloudUploadEntry("user", LocalDateTime.now(), 0, images.size(), UPLOAD_PATH, ""));
+		assertNotNull(uploadDirectory);
+		List<CloudImageEntry> cloudImages = uploadDirectory.flattened().filter(container -> container instanceof CloudImageEntry).map(container -> (CloudImageEntry) container).collect(Collectors.toList());
+		assertEquals(images.size(), cloudImages.size());
+
+		// Not a single image is downloaded, the tree and every image's metadata come from the three listings
+		assertEquals(0, remoteCatalog.fileReads.get());
+		assertEquals(0, remoteCatalog.metadataFetches.get());
+		assertEquals(3, remoteCatalog.listings.get());
+		assertEquals(pages(directoryCount + 1) + pages(images.size() + 1) + pages(metadataRows), remoteCatalog.roundTrips.get());
+
+		for (CloudImageEntry cloudImageEntry : cloudImages)
+		{
+			ImageEntry original = pathToOriginal.get(cloudImageEntry.getCyverseFile().getAbsolutePath());
+			assertFalse(cloudImageEntry.hasBeenPulledFromCloud());
+			assertEquals(original.getDateTaken(), cloudImageEntry.getDateTaken());
+			assertEquals(original.getLocationTaken().getId(), cloudImageEntry.getLocationTaken().getId());
+			assertEquals(original.getSpeciesPresent().size(), cloudImageEntry.getSpeciesPresent().size());
+			for (Integer speciesIndex = 0; speciesIndex < original.getSpeciesPresent().size(); speciesIndex++)
+			{
+				assertEquals(original.getSpeciesPresent().get(speciesIndex).getSpecies().getScientificName(), cloudImageEntry.getSpeciesPresent().get(speciesIndex).getSpecies().getScientificName());
+				assertEquals(original.getSpeciesPresent().get(speciesIndex).getAmount(), cloudImageEntry.getSpeciesPresent().get(speciesIndex).getAmount());
+			}
+			// Filling in metadata from CyVerse is not an edit, so there is nothing to write back
+			assertFalse(cloudImageEntry.isCloudDirty());
+			assertFalse(cloudImageEntry.isDiskDirty());
+		}
+
+		// Adding the upload to the image tree doesn't queue any of its images to be written
+		DirtyImageQueue dirtyImageQueue = new DirtyImageQueue();
+		ImageDirectory imageTree = new ImageDirectory(null);
+		imageTree.setDirtyImageQueue(dirtyImageQueue);
+		imageTree.addChild(uploadDirectory);
+		assertTrue(dirtyImageQueue.isEmpty());
+	}
+
+	@Test
+	public void collectionsAreLoadedConcurrentlyAndPublishedAsTheyArrive()
+	{
+		// Every round trip takes a few milliseconds like it would over the network
+		Long latencyMillis = 3L;
+		Integer collectionCount = 200;
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, latencyMillis);
+		this.addCollections(remoteCatalog, collectionCount);
+
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 16, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		AtomicInteger collectionsPublished = new AtomicInteger(0);
+		AtomicLong firstPublishedNanos = new AtomicLong(0);
+		long startNanos = System.nanoTime();
+		List<ImageCollection> imageCollections = connectionManager.pullRemoteCollections(imageCollection ->
+		{
+			firstPublishedNanos.compareAndSet(0, System.nanoTime());
+			collectionsPublished.incrementAndGet();
+		});
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+		// Every collection was read and published, and the result keeps the listing order
+		assertEquals((int) collectionCount, imageCollections.size());
+		assertEquals((int) collectionCount, collectionsPublished.get());
+		for (Integer collectionIndex = 0; collectionIndex < collectionCount; collectionIndex++)
+		{
+			assertEquals(String.format("collection%03d", collectionIndex), imageCollections.get(collectionIndex).getName());
+			assertEquals(1, imageCollections.get(collectionIndex).getPermissions().size());
+		}
+
+		// The collections are found with one listing, then each JSON file is read once
+		assertEquals(1, remoteCatalog.listings.get());
+		assertEquals(2 * collectionCount, remoteCatalog.fileReads.get());
+
+		// Load the same collections again with a single reader, which is how long logging in took before collections were read concurrently
+		FakeRemoteCatalog serialRemoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, latencyMillis);
+		this.addCollections(serialRemoteCatalog, collectionCount);
+		CyVerseConnectionManager serialConnectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 16, 60000, new FakeSessionFactory()), serialRemoteCatalog, this.imageCache);
+		serialConnectionManager.setReadWorkerCount(1);
+		long serialStartNanos = System.nanoTime();
+		assertEquals((int) collectionCount, serialConnectionManager.pullRemoteCollections(imageCollection -> {}).size());
+		long serialMillis = (System.nanoTime() - serialStartNanos) / 1000000;
+
+		// Every round trip waits on the network, so reading one file at a time can't be faster than this
+		long minimumSerialMillis = serialRemoteCatalog.roundTrips.get() * latencyMillis;
+		long firstPublishedMillis = (firstPublishedNanos.get() - startNanos) / 1000000;
+		String timings = String.format("%d collections with %d ms round trips: first shown after %d ms, all shown after %d ms, one reader took %d ms",
+				collectionCount, latencyMillis, firstPublishedMillis, elapsedMillis, serialMillis);
+		assertTrue(timings, serialMillis >= minimumSerialMillis);
+		assertTrue(timings, elapsedMillis * 4 < serialMillis);
+		// The first collection shows up long before the rest are read instead of after all of them
+		assertTrue(timings, firstPublishedMillis * 20 < serialMillis);
+		assertTrue(timings, firstPublishedMillis * 2 < elapsedMillis);
+	}
+
+	@Test
+	public void moreReadWorkersLoadCollectionsFaster()
+	{
+		Long latencyMillis = 3L;
+		Integer collectionCount = 100;
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, latencyMillis);
+		this.addCollections(remoteCatalog, collectionCount);
+
+		// Load the same collections with a growing number of readers and compare how long each load takes
+		Map<Integer, Long> readWorkersToMillis = new LinkedHashMap<>();
+		for (Integer readWorkers : Arrays.asList(1, 4, 16))
+		{
+			CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 16, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+			connectionManager.setReadWorkerCount(readWorkers);
+			long startNanos = System.nanoTime();
+			assertEquals((int) collectionCount, connectionManager.pullRemoteCollections(imageCollection -> {}).size());
+			readWorkersToMillis.put(readWorkers, (System.nanoTime() - startNanos) / 1000000);
+		}
+		String timings = readWorkersToMillis.entrySet().stream().map(entry -> entry.getKey() + " readers took " + entry.getValue() + " ms").collect(Collectors.joining(", "));
+
+		// Readers mostly wait on the network so adding more of them cuts the load time
+		assertTrue(timings, readWorkersToMillis.get(4) < readWorkersToMillis.get(1) / 2);
+		assertTrue(timings, readWorkersToMillis.get(16) < readWorkersToMillis.get(4));
+	}
+
+	@Test
+	public void virtualThreadsLoadEachCollectionOnItsOwnSession()
+	{
+		Long latencyMillis = 3L;
+		Integer collectionCount = 200;
+		Integer maxSessions = 16;
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, latencyMillis);
+		this.addCollections(remoteCatalog, collectionCount);
+
+		// Compare the fixed pool at its default size and at one reader per session against one virtual thread per collection. Connecting
+		// takes about as long as a round trip, since every virtual thread task opens its own session
+		Map<String, Long> modeToMillis = new LinkedHashMap<>();
+		Map<String, Integer> modeToConnections = new LinkedHashMap<>();
+		for (String mode : Arrays.asList("default pool", "pool of " + maxSessions, "virtual threads"))
+		{
+			FakeSessionFactory sessionFactory = new FakeSessionFactory(latencyMillis);
+			CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, maxSessions, 60000, sessionFactory);
+			CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, sessionManager, remoteCatalog, this.imageCache);
+			if (mode.startsWith("pool of"))
+				connectionManager.setReadWorkerCount(maxSessions);
+			BlockingIOExecutors.setUseVirtualThreads(mode.equals("virtual threads"));
+			try
+			{
+				long startNanos = System.nanoTime();
+				List<ImageCollection> imageCollections = connectionManager.pullRemoteCollections(imageCollection -> {});
+				modeToMillis.put(mode, (System.nanoTime() - startNanos) / 1000000);
+				assertEquals((int) collectionCount, imageCollections.size());
+				for (Integer collectionIndex = 0; collectionIndex < collectionCount; collectionIndex++)
+					assertEquals(String.format("collection%03d", collectionIndex), imageCollections.get(collectionIndex).getName());
+			}
+			finally
+			{
+				BlockingIOExecutors.setUseVirtualThreads(false);
+			}
+			modeToConnections.put(mode, sessionFactory.created.get());
+			// Every reader's session was closed instead of pooled
+			assertEquals(0, sessionManager.getLeasedSessionCount());
+			assertTrue(sessionManager.getOpenSessionCount() <= 1);
+		}
+		String timings = String.format("Loaded %d collections with %d ms round trips%s: %s", collectionCount, latencyMillis, BlockingIOExecutors.areVirtualThreadsSupported() ? "" : " (no virtual threads on this JVM, so the same tasks ran on a pool of platform threads)",
+				modeToMillis.entrySet().stream().map(entry -> entry.getKey() + " took " + entry.getValue() + " ms with " + modeToConnections.get(entry.getKey()) + " connections").collect(Collectors.joining(", ")));
+
+		// The pools connect once per reader, virtual threads connect once per collection
+		assertTrue(timings, modeToConnections.get("default pool") <= 9);
+		assertTrue(timings, modeToConnections.get("pool of " + maxSessions) <= maxSessions + 1);
+		assertEquals(timings, collectionCount + 1, (int) modeToConnections.get("virtual threads"));
+		// Virtual threads keep every session busy, so they beat the default pool, which uses half of the sessions. A pool with a reader per
+		// session does the same without connecting for every collection, which is why virtual threads are opt in
+		assertTrue(timings, modeToMillis.get("virtual threads") < modeToMillis.get("default pool"));
+		assertTrue(timings, modeToMillis.get("pool of " + maxSessions) < modeToMillis.get("default pool"));
+	}
+
+	@Test
+	public void batchedMetadataFetchTakesFewerRoundTripsThanPerObject() throws JargonException
+	{
+		Long latencyMillis = 1L;
+		Integer directoryCount = 4;
+		List<ImageEntry> images = ImageFixtures.createImages(11L, 1000);
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, latencyMillis);
+		// Spread the tagged images over a few directories of the upload
+		List<String> paths = new ArrayList<>();
+		Map<String, ImageEntry> pathToImage = new HashMap<>();
+		for (Integer imageIndex = 0; imageIndex < images.size(); imageIndex++)
+		{
+			String directoryPath = UPLOAD_PATH + "/camera" + (imageIndex % directoryCount);
+			String path = String.format("%s/IMG_%04d.JPG", directoryPath, imageIndex);
+			List<AvuData> metadata = images.get(imageIndex).convertToAVUMetadata();
+			remoteCatalog.addCollection(directoryPath);
+			remoteCatalog.addDataObject(path, "", metadata.toArray(new AvuData[0]));
+			paths.add(path);
+			pathToImage.put(path, images.get(imageIndex));
+		}
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+
+		// Fetch the same images one data object at a time, then in batches
+		long startNanos = System.nanoTime();
+		List<ImageEntry> perObjectImages = connectionManager.fetchMetadataFor(paths, false);
+		long perObjectMillis = (System.nanoTime() - startNanos) / 1000000;
+		Integer perObjectRoundTrips = remoteCatalog.roundTrips.getAndSet(0);
+		startNanos = System.nanoTime();
+		List<ImageEntry> batchedImages = connectionManager.fetchMetadataFor(paths, true);
+		long batchedMillis = (System.nanoTime() - startNanos) / 1000000;
+		Integer batchedRoundTrips = remoteCatalog.roundTrips.get();
+
+		// Both ways give back the same metadata for every image
+		assertEquals(paths.size(), perObjectImages.size());
+		assertEquals(paths.size(), batchedImages.size());
+		for (Integer imageIndex = 0; imageIndex < paths.size(); imageIndex++)
+		{
+			ImageEntry original = pathToImage.get(paths.get(imageIndex));
+			for (ImageEntry fetched : Arrays.asList(perObjectImages.get(imageIndex), batchedImages.get(imageIndex)))
+			{
+				assertEquals(original.getDateTaken(), fetched.getDateTaken());
+				assertEquals(original.getLocationTaken().getId(), fetched.getLocationTaken().getId());
+				assertEquals(original.getSpeciesPresent().size(), fetched.getSpeciesPresent().size());
+				for (Integer speciesIndex = 0; speciesIndex < original.getSpeciesPresent().size(); speciesIndex++)
+				{
+					assertEquals(original.getSpeciesPresent().get(speciesIndex).getSpecies().getScientificName(), fetched.getSpeciesPresent().get(speciesIndex).getSpecies().getScientificName());
+					assertEquals(original.getSpeciesPresent().get(speciesIndex).getAmount(), fetched.getSpeciesPresent().get(speciesIndex).getAmount());
+				}
+			}
+		}
+
+		// One round trip per image without batching, with batching each collection is queried in batches whose rows are paged
+		assertEquals(paths.size(), (int) perObjectRoundTrips);
+		assertEquals(paths.size(), remoteCatalog.metadataFetches.get());
+		Integer expectedBatchedRoundTrips = 0;
+		for (Integer directory = 0; directory < directoryCount; directory++)
+		{
+			String directoryPrefix = UPLOAD_PATH + "/camera" + directory + "/";
+			List<String> directoryPaths = paths.stream().filter(path -> path.startsWith(directoryPrefix)).collect(Collectors.toList());
+			for (Integer batchStart = 0; batchStart < directoryPaths.size(); batchStart = batchStart + CyVerseConnectionManager.METADATA_QUERY_BATCH_SIZE)
+			{
+				Integer rows = directoryPaths.subList(batchStart, Math.min(batchStart + CyVerseConnectionManager.METADATA_QUERY_BATCH_SIZE, directoryPaths.size())).stream().mapToInt(path -> remoteCatalog.metadataOf(path).size()).sum();
+				expectedBatchedRoundTrips = expectedBatchedRoundTrips + pages(rows);
+			}
+		}
+		assertEquals(expectedBatchedRoundTrips, batchedRoundTrips);
+		assertTrue(batchedRoundTrips * 4 < perObjectRoundTrips);
+		// Each round trip waits on the network, so fewer round trips means a faster fetch
+		assertTrue("Batched fetch took " + batchedMillis + " ms, per object fetch took " + perObjectMillis + " ms", batchedMillis * 2 < perObjectMillis);
+	}
+
+	@Test
+	public void savingImagesSendsOnlyChangedMetadataInOneDeleteAndOneAdd() throws Exception
+	{
+		Integer imageCount = 40;
+		List<ImageEntry> originals = ImageFixtures.createImages(5L, imageCount);
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		String directoryPath = UPLOAD_PATH + "/camera0";
+		remoteCatalog.addCollection(directoryPath);
+		AvuData collectionIDTag = AvuData.instance(SanimalMetadataFields.A_COLLECTION_ID, "collection", "");
+		// Metadata that other programs put on the images must be left alone
+		AvuData foreignAVU = AvuData.instance("ipc_UUID", "1234", "");
+
+		// Images that are on CyVerse and have been downloaded, with the same metadata locally and on CyVerse
+		List<CloudImageEntry> toSave = new ArrayList<>();
+		Integer existingRows = 0;
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+		{
+			ImageEntry original = originals.get(imageIndex);
+			String path = String.format("%s/IMG_%04d.JPG", directoryPath, imageIndex);
+			List<AvuData> metadata = original.convertToAVUMetadata();
+			metadata.add(collectionIDTag);
+			metadata.add(foreignAVU);
+			remoteCatalog.addDataObject(path, "", metadata.toArray(new AvuData[0]));
+			existingRows = existingRows + metadata.size();
+			PulledCloudImageEntry cloudImageEntry = new PulledCloudImageEntry(remoteCatalog.instanceFile(path));
+			cloudImageEntry.hydrateFromMetadata(original.getDateTaken(), original.getLocationTaken(), new ArrayList<>(original.getSpeciesPresent()));
+			toSave.add(cloudImageEntry);
+		}
+		// Every other image gets one more animal of its first species
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex = imageIndex + 2)
+			toSave.get(imageIndex).addSpecies(toSave.get(imageIndex).getSpeciesPresent().get(0).getSpecies(), 1);
+
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		List<String> failedImages = connectionManager.saveCloudImages(toSave, collectionIDTag, numberSaved -> {});
+		assertTrue(failedImages.isEmpty());
+
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+		{
+			String path = toSave.get(imageIndex).getCyverseFile().getAbsolutePath();
+			// Edited images take one bulk delete and one bulk add, unchanged images don't touch their metadata at all
+			Integer expectedWrites = imageIndex % 2 == 0 ? 1 : 0;
+			assertEquals(expectedWrites, (Integer) remoteCatalog.bulkDeletes.getOrDefault(path, new AtomicInteger(0)).get());
+			assertEquals(expectedWrites, (Integer) remoteCatalog.bulkAdds.getOrDefault(path, new AtomicInteger(0)).get());
+
+			// CyVerse ends up with the image's metadata, and keeps the metadata SANIMAL didn't write
+			List<AvuData> expectedMetadata = toSave.get(imageIndex).convertToAVUMetadata();
+			expectedMetadata.add(collectionIDTag);
+			expectedMetadata.add(foreignAVU);
+			List<AvuData> savedMetadata = remoteCatalog.metadataOf(path);
+			assertEquals(expectedMetadata.size(), savedMetadata.size());
+			for (AvuData expectedAVU : expectedMetadata)
+				assertTrue(savedMetadata.stream().anyMatch(savedAVU -> FakeRemoteCatalog.sameAVU(savedAVU, expectedAVU)));
+		}
+
+		// The existing metadata is read with one paged query instead of once per image, then each image is uploaded
+		assertEquals(0, remoteCatalog.metadataFetches.get());
+		assertEquals((int) imageCount, remoteCatalog.fileWrites.get());
+		assertEquals(pages(existingRows) + imageCount + imageCount, remoteCatalog.roundTrips.get());
+	}
+
+	@Test
+	public void savingImagesDropsTheirCachedCopies() throws Exception
+	{
+		Integer imageCount = 10;
+		List<ImageEntry> originals = ImageFixtures.createImages(23L, imageCount);
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		String directoryPath = UPLOAD_PATH + "/camera0";
+		remoteCatalog.addCollection(UPLOAD_PATH);
+		remoteCatalog.addCollection(directoryPath);
+		List<String> paths = new ArrayList<>();
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+		{
+			String path = String.format("%s/IMG_%04d.JPG", directoryPath, imageIndex);
+			remoteCatalog.addDataObject(path, "image" + imageIndex, originals.get(imageIndex).convertToAVUMetadata().toArray(new AvuData[0]));
+			paths.add(path);
+		}
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		connectionManager.setFXThreadExecutor(Runnable::run);
+
+		// Listing the upload gives each image the version needed to check the cache, so pulling it won't have to look the version up
+		CloudImageDirectory uploadDirectory = connectionManager.downloadUploadDirectory(new CloudUploadEntry("user", LocalDateTime.now(), 0, imageCount, UPLOAD_PATH, ""));
+		assertNotNull(uploadDirectory);
+		Map<String, String> pathToListedVersion = uploadDirectory.flattened()
+				.filter(container -> container instanceof CloudImageEntry)
+				.map(container -> (CloudImageEntry) container)
+				.collect(Collectors.toMap(cloudImageEntry -> cloudImageEntry.getCyverseFile().getAbsolutePath(), CloudImageEntry::getCyverseVersion));
+		assertEquals((int) imageCount, pathToListedVersion.size());
+		for (String path : paths)
+			assertEquals(remoteCatalog.versionOf(path), pathToListedVersion.get(path));
+
+		// Every image has been downloaded and cached, and the first half of them were edited
+		List<CloudImageEntry> toSave = new ArrayList<>();
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+		{
+			String path = paths.get(imageIndex);
+			File downloadedFile = this.temporaryFolder.newFile();
+			this.imageCache.put(path, pathToListedVersion.get(path), downloadedFile);
+			if (imageIndex < imageCount / 2)
+			{
+				PulledCloudImageEntry cloudImageEntry = new PulledCloudImageEntry(remoteCatalog.instanceFile(path));
+				cloudImageEntry.hydrateFromMetadata(originals.get(imageIndex).getDateTaken(), originals.get(imageIndex).getLocationTaken(), new ArrayList<>(originals.get(imageIndex).getSpeciesPresent()));
+				cloudImageEntry.setCyverseVersion(pathToListedVersion.get(path));
+				cloudImageEntry.addSpecies(cloudImageEntry.getSpeciesPresent().get(0).getSpecies(), 1);
+				toSave.add(cloudImageEntry);
+			}
+		}
+
+		AvuData collectionIDTag = AvuData.instance(SanimalMetadataFields.A_COLLECTION_ID, "collection", "");
+		assertTrue(connectionManager.saveCloudImages(toSave, collectionIDTag, numberSaved -> {}).isEmpty());
+
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+		{
+			String path = paths.get(imageIndex);
+			Boolean saved = imageIndex < imageCount / 2;
+			// Saved images changed on CyVerse, so their cached copy can't be used even if asked for by the version they were listed with
+			assertEquals(!saved, this.imageCache.copyTo(path, pathToListedVersion.get(path), this.temporaryFolder.newFile()));
+			assertEquals(!saved, remoteCatalog.versionOf(path).equals(pathToListedVersion.get(path)));
+		}
+		for (CloudImageEntry cloudImageEntry : toSave)
+			assertNull(cloudImageEntry.getCyverseVersion());
+	}
+
+	@Test
+	public void savingOrUploadingToACollectionThrowsAwayItsCachedQueryResults() throws Exception
+	{
+		ImageCollection savedCollection = new ImageCollection();
+		ImageCollection uploadedCollection = new ImageCollection();
+		ImageCollection untouchedCollection = new ImageCollection();
+		String uploadPath = COLLECTIONS_PATH + "/" + savedCollection.getID() + "/Uploads/user 2018-01-01 00-00-00";
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		remoteCatalog.addCollection(COLLECTIONS_PATH + "/" + savedCollection.getID() + "/Uploads");
+		remoteCatalog.addCollection(uploadPath);
+		this.addDirectory(remoteCatalog, uploadPath + "/camera0");
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		connectionManager.setFXThreadExecutor(Runnable::run);
+		CyVerseQueryCache queryCache = connectionManager.getQueryCache();
+
+		CloudUploadEntry uploadEntry = new CloudUploadEntry("user", LocalDateTime.now(), 0, 20, uploadPath, "");
+		uploadEntry.setCloudImageDirectory(connectionManager.downloadUploadDirectory(uploadEntry));
+		CyVerseQuery savedQuery = this.cacheQueryFor(queryCache, savedCollection);
+		CyVerseQuery uploadedQuery = this.cacheQueryFor(queryCache, uploadedCollection);
+		CyVerseQuery untouchedQuery = this.cacheQueryFor(queryCache, untouchedCollection);
+		Thread.sleep(5);
+
+		// Cache a result partway through the save, like a query finishing while the images are being written
+		AtomicInteger resultsCachedDuringSave = new AtomicInteger(0);
+		connectionManager.setFXThreadExecutor(runnable ->
+		{
+			try
+			{
+				Thread.sleep(5);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			this.cacheQueryFor(queryCache, savedCollection);
+			if (queryCache.get("user", savedQuery) != null)
+				resultsCachedDuringSave.incrementAndGet();
+			runnable.run();
+		});
+		connectionManager.saveImages(savedCollection, uploadEntry, new SimpleStringProperty());
+
+		// The result from before the save and the one cached while it ran are both gone, results for other collections are kept
+		assertEquals(1, resultsCachedDuringSave.get());
+		assertNull(queryCache.get("user", savedQuery));
+		assertNotNull(queryCache.get("user", uploadedQuery));
+		assertNotNull(queryCache.get("user", untouchedQuery));
+		// The edit comment was written back to the upload
+		assertTrue(remoteCatalog.fileWrites.get() > 0);
+
+		// The fake server has no upload folder for this collection so nothing is sent, but the results were thrown away first
+		connectionManager.uploadImages(uploadedCollection, new ImageDirectory(this.temporaryFolder.newFolder("upload")), "", null, null);
+		assertNull(queryCache.get("user", uploadedQuery));
+		assertNotNull(queryCache.get("user", untouchedQuery));
+	}
+
+	@Test
+	public void aggregateQueryCountsTheSameImagesAsTheDataAnalyzer() throws JargonException
+	{
+		FakeRemoteCatalog remoteCatalog = new FakeRemoteCatalog(PAGE_SIZE, 0L);
+		ImageCollection queriedCollection = new ImageCollection();
+		addTaggedImages(remoteCatalog, ImageFixtures.createImages(13L, 500), Arrays.asList(queriedCollection, new ImageCollection()));
+		CyVerseConnectionManager connectionManager = new CyVerseConnectionManager(this.account, new CyVerseSessionManager(this.account, 4, 60000, new FakeSessionFactory()), remoteCatalog, this.imageCache);
+		CyVerseQuery query = new CyVerseQuery();
+		query.addImageCollection(queriedCollection);
+
+		SortedMap<String, Long> aggregateCounts = connectionManager.performAggregateQuery(query, AggregateField.SPECIES);
+		Integer aggregateRoundTrips = remoteCatalog.roundTrips.getAndSet(0);
+		Map<String, Long> analyzerCounts = speciesCountsFromAnalysis(connectionManager, query);
+
+		// Only images in the queried collection are counted, and an image with two species is counted under both like the analyzer does
+		assertEquals(analyzerCounts, aggregateCounts);
+		Long rows = aggregateCounts.values().stream().mapToLong(Long::longValue).sum();
+		assertTrue(rows > 250);
+		// The rows are read in pages and nothing else is fetched, while the full query also reads every image's metadata
+		assertEquals(pages(rows.intValue()), aggregateRoundTrips);
+		assertTrue(aggregateRoundTrips < remoteCatalog.roundTrips.get());
+	}
+
+	/**
+	 * Adds tagged images to the fake server, spread evenly over a few collections and one directory per collection
+	 *
+	 * @param remoteCatalog The fake server
+	 * @param images The tagged images to add
+	 * @param imageCollections The collections the images are uploaded to
+	 * @throws JargonException If the metadata could not be created
+	 */
+	static void addTaggedImages(FakeRemoteCatalog remoteCatalog, List<ImageEntry> images, List<ImageCollection> imageCollections) throws JargonException
+	{
+		for (Integer imageIndex = 0; imageIndex < images.size(); imageIndex++)
+		{
+			ImageCollection imageCollection = imageCollections.get(imageIndex % imageCollections.size());
+			String directoryPath = COLLECTIONS_PATH + "/" + imageCollection.getID() + "/Uploads/user 2018-01-01 00-00-00";
+			List<AvuData> metadata = images.get(imageIndex).convertToAVUMetadata();
+			metadata.add(AvuData.instance(SanimalMetadataFields.A_COLLECTION_ID, imageCollection.getID().toString(), ""));
+			remoteCatalog.addCollection(directoryPath);
+			remoteCatalog.addDataObject(String.format("%s/IMG_%06d.JPG", directoryPath, imageIndex), "", metadata.toArray(new AvuData[0]));
+		}
+	}
+
+	/**
+	 * Counts the images matching a query per species the way the analysis page does, by loading every image and analyzing them
+	 *
+	 * @param connectionManager The connection manager to query with
+	 * @param query The query to run
+	 * @return A map of species scientific name -> number of matching images with that species
+	 */
+	static Map<String, Long> speciesCountsFromAnalysis(CyVerseConnectionManager connectionManager, CyVerseQuery query)
+	{
+		DataAnalyzerBuilder analyzerBuilder = new DataAnalyzerBuilder();
+		assertTrue(connectionManager.performQuery(query, new QueryResultListener()
+		{
+			@Override
+			public void pathsFound(Integer pathCount)
+			{
+			}
+
+			@Override
+			public void imagesLoaded(List<ImageEntry> images)
+			{
+				analyzerBuilder.addImages(images);
+			}
+
+			@Override
+			public Boolean isCancelled()
+			{
+				return false;
+			}
+		}));
+		DataAnalyzer analysis = analyzerBuilder.build(60);
+		Map<String, Long> speciesToCount = new HashMap<>();
+		for (Species species : analysis.getAllImageSpecies())
+			speciesToCount.put(species.getScientificName(), (long) new ImageQuery().speciesOnly(species).query(analysis.getOriginalImageList()).size());
+		return speciesToCount;
+	}
+
+	/**
+	 * Caches an empty result for a query limited to one collection
+	 *
+	 * @param queryCache The cache to store the result in
+	 * @param imageCollection The collection the query is limited to
+	 * @return The query whose result was cached
+	 */
+	private CyVerseQuery cacheQueryFor(CyVerseQueryCache queryCache, ImageCollection imageCollection)
+	{
+		CyVerseQuery query = new CyVerseQuery();
+		query.addImageCollection(imageCollection);
+		queryCache.put("user", query, Collections.emptyMap(), System.currentTimeMillis(), 0L);
+		return query;
+	}
+
+	/**
+	 * Adds collections owned by the test user to the fake server, each with a collection.json and permissions.json
+	 *
+	 * @param remoteCatalog The fake server
+	 * @param collectionCount The number of collections to add
+	 */
+	private void addCollections(FakeRemoteCatalog remoteCatalog, Integer collectionCount)
+	{
+		remoteCatalog.addCollection(COLLECTIONS_PATH);
+		for (Integer collectionIndex = 0; collectionIndex < collectionCount; collectionIndex++)
+		{
+			String collectionPath = String.format("%s/collection%03d", COLLECTIONS_PATH, collectionIndex);
+			ImageCollection imageCollection = new ImageCollection();
+			imageCollection.setName(FilenameUtils.getName(collectionPath));
+			Permission permission = new Permission();
+			permission.setUsername("user");
+			permission.setOwner(true);
+			remoteCatalog.addCollection(collectionPath);
+			remoteCatalog.addDataObject(collectionPath + "/collection.json", SanimalData.getInstance().getGson().toJson(imageCollection));
+			remoteCatalog.addDataObject(collectionPath + "/permissions.json", SanimalData.getInstance().getGson().toJson(Collections.singletonList(permission)));
+		}
+	}
+
+	/**
+	 * Adds a directory of untagged images to the fake server
+	 *
+	 * @param remoteCatalog The fake server
+	 * @param directoryPath The absolute path of the directory
+	 * @return The number of images added
+	 */
+	private Integer addDirectory(FakeRemoteCatalog remoteCatalog, String directoryPath)
+	{
+		remoteCatalog.addCollection(directoryPath);
+		for (Integer image = 0; image < 20; image++)
+			remoteCatalog.addDataObject(String.format("%s/IMG_%04d.JPG", directoryPath, image), "");
+		return 20;
+	}
+
+	/**
+	 * A cloud image that acts as if it has already been downloaded, so editing it never starts a download
+	 */
+	private static class PulledCloudImageEntry extends CloudImageEntry
+	{
+		/**
+		 * Constructor just takes the file on CyVerse
+		 *
+		 * @param cloudFile The file on CyVerse
+		 */
+		private PulledCloudImageEntry(IRODSFile cloudFile)
+		{
+			super(cloudFile);
+		}
+
+		@Override
+		public void pullFromCloudIfNotPulled()
+		{
+		}
+
+		@Override
+		public Boolean hasBeenPulledFromCloud()
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * @param rows The number of rows in a listing
+	 * @return The number of pages the fake server returns the listing in
+	 */
+	private static Integer pages(Integer rows)
+	{
+		return Math.max(1, (rows + PAGE_SIZE - 1) / PAGE_SIZE);
+	}
+}
@@ -0,0 +1,226 @@
+package model.cyverse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests retries, partial files, and resuming of downloads against a local HTTP server standing in for CyVerse's web DAV interface
+ */
+public class CyVerseDownloadManagerTest
+{
+	// The folder the images are stored in on the fake server
+	private static final String IMAGE_PATH = "/iplant/home/user/images";
+	// The time to wait before the first retry
+	private static final Long BACKOFF_MILLIS = 50L;
+
+	// The local server that images are downloaded from
+	private HttpServer server;
+	// The base URL of the local server
+	private String baseURL;
+	// Map of iRODS path -> the responses the server gives for that path, one per request. The last response is repeated
+	private final Map<String, Response[]> pathToResponses = new ConcurrentHashMap<>();
+	// Map of iRODS path -> the number of times the path was requested
+	private final Map<String, AtomicInteger> pathToRequests = new ConcurrentHashMap<>();
+	// The directory images are downloaded into
+	private File downloadDirectory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/", this::respond);
+		this.server.start();
+		this.baseURL = "http://localhost:" + this.server.getAddress().getPort();
+		this.downloadDirectory = Files.createTempDirectory("sanimal-download").toFile();
+	}
+
+	@After
+	public void tearDown()
+	{
+		this.server.stop(0);
+		FileUtils.deleteQuietly(this.downloadDirectory);
+	}
+
+	@Test
+	public void serverErrorsAreRetriedWithBackoff() throws IOException
+	{
+		String path = IMAGE_PATH + "/IMG_0001.JPG";
+		this.pathToResponses.put(path, new Response[] { Response.status(503), Response.status(503), Response.body("image") });
+
+		long startNanos = System.nanoTime();
+		CyVerseDownloadManager.DownloadResult result = new CyVerseDownloadManager(this.baseURL, 2, 3, BACKOFF_MILLIS).download(Collections.singletonList(path), this.downloadDirectory, null, null);
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+		assertEquals(1, (int) result.getDownloaded());
+		assertTrue(result.getFailures().isEmpty());
+		assertEquals(3, this.pathToRequests.get(path).get());
+		// The first retry waits the backoff, the second waits twice as long
+		assertTrue(elapsedMillis >= BACKOFF_MILLIS * 3);
+		assertEquals("image", FileUtils.readFileToString(new File(this.downloadDirectory, "IMG_0001.JPG"), StandardCharsets.UTF_8));
+		// Once everything has downloaded nothing but the images are left behind
+		assertEquals(Collections.singletonList("IMG_0001.JPG"), Arrays.asList(this.downloadDirectory.list()));
+	}
+
+	@Test
+	public void permanentClientErrorIsNotRetried()
+	{
+		String path = IMAGE_PATH + "/IMG_0001.JPG";
+		this.pathToResponses.put(path, new Response[] { Response.status(404) });
+
+		CyVerseDownloadManager.DownloadResult result = new CyVerseDownloadManager(this.baseURL, 2, 3, BACKOFF_MILLIS).download(Collections.singletonList(path), this.downloadDirectory, null, null);
+
+		assertEquals(0, (int) result.getDownloaded());
+		assertTrue(result.getFailures().get(path).contains("404"));
+		// Retrying a missing file won't help so it's only requested once
+		assertEquals(1, this.pathToRequests.get(path).get());
+		assertFalse(new File(this.downloadDirectory, "IMG_0001.JPG").exists());
+		assertFalse(new File(this.downloadDirectory, "IMG_0001.JPG.part").exists());
+	}
+
+	@Test
+	public void truncatedDownloadNeverAppearsUnderItsFinalName()
+	{
+		String path = IMAGE_PATH + "/IMG_0001.JPG";
+		this.pathToResponses.put(path, new Response[] { Response.truncated("image") });
+
+		CyVerseDownloadManager.DownloadResult result = new CyVerseDownloadManager(this.baseURL, 2, 1, BACKOFF_MILLIS).download(Collections.singletonList(path), this.downloadDirectory, null, null);
+
+		// Every attempt was cut off, so the download fails without leaving a partial image behind
+		assertEquals(0, (int) result.getDownloaded());
+		assertTrue(result.getFailures().containsKey(path));
+		assertEquals(2, this.pathToRequests.get(path).get());
+		assertFalse(new File(this.downloadDirectory, "IMG_0001.JPG").exists());
+		assertFalse(new File(this.downloadDirectory, "IMG_0001.JPG.part").exists());
+	}
+
+	@Test
+	public void failedDownloadResumesFromTheManifest() throws IOException
+	{
+		String firstPath = IMAGE_PATH + "/IMG_0001.JPG";
+		String secondPath = IMAGE_PATH + "/IMG_0002.JPG";
+		// Images with the same name in different folders are given different local names
+		String thirdPath = IMAGE_PATH + "/camera2/IMG_0001.JPG";
+		this.pathToResponses.put(firstPath, new Response[] { Response.body("first") });
+		this.pathToResponses.put(secondPath, new Response[] { Response.status(500) });
+		this.pathToResponses.put(thirdPath, new Response[] { Response.body("third") });
+		CyVerseDownloadManager downloadManager = new CyVerseDownloadManager(this.baseURL, 2, 0, BACKOFF_MILLIS);
+
+		CyVerseDownloadManager.DownloadResult firstResult = downloadManager.download(Arrays.asList(firstPath, secondPath, thirdPath), this.downloadDirectory, null, null);
+		assertEquals(2, (int) firstResult.getDownloaded());
+		assertEquals(Collections.singleton(secondPath), firstResult.getFailures().keySet());
+		// The manifest is kept so the download can pick up where it left off
+		assertTrue(new File(this.downloadDirectory, CyVerseDownloadManager.MANIFEST_FILE_NAME).exists());
+
+		// Once the server recovers, only the failed image is requested again
+		this.pathToResponses.put(secondPath, new Response[] { Response.body("second") });
+		CyVerseDownloadManager.DownloadResult secondResult = downloadManager.download(Arrays.asList(firstPath, secondPath, thirdPath), this.downloadDirectory, null, null);
+		assertEquals(1, (int) secondResult.getDownloaded());
+		assertEquals(2, (int) secondResult.getSkipped());
+		assertTrue(secondResult.getFailures().isEmpty());
+		assertEquals(1, this.pathToRequests.get(firstPath).get());
+		assertEquals(2, this.pathToRequests.get(secondPath).get());
+		assertEquals(1, this.pathToRequests.get(thirdPath).get());
+
+		assertEquals("first", FileUtils.readFileToString(new File(this.downloadDirectory, "IMG_0001.JPG"), StandardCharsets.UTF_8));
+		assertEquals("second", FileUtils.readFileToString(new File(this.downloadDirectory, "IMG_0002.JPG"), StandardCharsets.UTF_8));
+		assertEquals("third", FileUtils.readFileToString(new File(this.downloadDirectory, "IMG_0001-1.JPG"), StandardCharsets.UTF_8));
+		// The manifest is removed once every image is downloaded
+		assertFalse(new File(this.downloadDirectory, CyVerseDownloadManager.MANIFEST_FILE_NAME).exists());
+	}
+
+	/**
+	 * Answers a request with the next response configured for the requested path
+	 *
+	 * @param exchange The request to answer
+	 * @throws IOException If the response could not be sent
+	 */
+	private void respond(HttpExchange exchange) throws IOException
+	{
+		String path = exchange.getRequestURI().getPath().replaceFirst("^/+", "/");
+		Integer requestIndex = this.pathToRequests.computeIfAbsent(path, ignored -> new AtomicInteger(0)).getAndIncrement();
+		Response[] responses = this.pathToResponses.get(path);
+		Response response = responses == null ? Response.status(404) : responses[Math.min(requestIndex, responses.length - 1)];
+
+		byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+		if (response.status != 200)
+		{
+			exchange.sendResponseHeaders(response.status, -1);
+		}
+		else if (response.truncated)
+		{
+			// Promise more bytes than are sent, then hang up
+			exchange.sendResponseHeaders(200, body.length * 2);
+			exchange.getResponseBody().write(body);
+			exchange.getResponseBody().flush();
+		}
+		else
+		{
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(body);
+			}
+		}
+		exchange.close();
+	}
+
+	/**
+	 * One response from the fake server
+	 */
+	private static class Response
+	{
+		// The HTTP status code
+		private final Integer status;
+		// The body sent with a 200 response
+		private final String body;
+		// If true the connection is closed before the whole body is sent
+		private final Boolean truncated;
+
+		/**
+		 * Constructor takes the parts of the response
+		 *
+		 * @param status The HTTP status code
+		 * @param body The body sent with a 200 response
+		 * @param truncated If true the connection is closed before the whole body is sent
+		 */
+		private Response(Integer status, String body, Boolean truncated)
+		{
+			this.status = status;
+			this.body = body;
+			this.truncated = truncated;
+		}
+
+		private static Response status(Integer status)
+		{
+			return new Response(status, "", false);
+		}
+
+		private static Response body(String body)
+		{
+			return new Response(200, body, false);
+		}
+
+		private static Response truncated(String body)
+		{
+			return new Response(200, body, true);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package model.cyverse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the image cache index is written in batches and that when each file was last used survives a restart
+ */
+public class CyVerseImageCacheTest
+{
+	// The size of each cached file in bytes
+	private static final Integer FILE_SIZE = 1000;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void indexIsWrittenOnFlushInsteadOfEveryPut() throws IOException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("cache");
+		CyVerseImageCache imageCache = new CyVerseImageCache(cacheDirectory, 1000000L);
+		for (Integer fileIndex = 0; fileIndex < 20; fileIndex++)
+			imageCache.put(this.irodsPath(fileIndex), "v1", this.createFile(fileIndex));
+
+		// Nothing has been written yet, the write is still waiting for more changes
+		File indexFile = new File(cacheDirectory, "index.json");
+		assertFalse(indexFile.exists());
+		imageCache.flush();
+		assertTrue(indexFile.exists());
+
+		// A new cache reading the same directory sees every file
+		CyVerseImageCache reloadedCache = new CyVerseImageCache(cacheDirectory, 1000000L);
+		for (Integer fileIndex = 0; fileIndex < 20; fileIndex++)
+			assertTrue(reloadedCache.copyTo(this.irodsPath(fileIndex), "v1", this.temporaryFolder.newFile()));
+		assertEquals((long) 20 * FILE_SIZE, (long) reloadedCache.getCacheSizeBytes());
+	}
+
+	@Test
+	public void lastAccessSurvivesARestart() throws IOException, InterruptedException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("cache");
+		CyVerseImageCache imageCache = new CyVerseImageCache(cacheDirectory, 1000000L);
+		imageCache.put(this.irodsPath(0), "v1", this.createFile(0));
+		Thread.sleep(5);
+		imageCache.put(this.irodsPath(1), "v1", this.createFile(1));
+		imageCache.flush();
+		Thread.sleep(5);
+		// Using the first file makes the second file the least recently used, which is only recorded in the index by the next write
+		assertTrue(imageCache.copyTo(this.irodsPath(0), "v1", this.temporaryFolder.newFile()));
+		imageCache.flush();
+
+		// After a restart, shrinking the cache to one file evicts the file that was used least recently
+		CyVerseImageCache reloadedCache = new CyVerseImageCache(cacheDirectory, 1000000L);
+		reloadedCache.setMaxCacheSizeBytes((long) FILE_SIZE);
+		assertTrue(reloadedCache.copyTo(this.irodsPath(0), "v1", this.temporaryFolder.newFile()));
+		assertFalse(reloadedCache.copyTo(this.irodsPath(1), "v1", this.temporaryFolder.newFile()));
+		assertEquals(1L, (long) reloadedCache.getEvictions());
+	}
+
+	/**
+	 * @param fileIndex The index of the file
+	 * @return The iRODS path of the file
+	 */
+	private String irodsPath(Integer fileIndex)
+	{
+		return "/iplant/home/user/Sanimal/Collections/test/Uploads/IMG_" + fileIndex + ".JPG";
+	}
+
+	/**
+	 * Creates a local file with contents unique to its index
+	 *
+	 * @param fileIndex The index of the file
+	 * @return The file
+	 */
+	private File createFile(Integer fileIndex) throws IOException
+	{
+		File file = this.temporaryFolder.newFile();
+		StringBuilder contents = new StringBuilder();
+		while (contents.length() < FILE_SIZE)
+			contents.append(fileIndex).append(' ');
+		Files.write(file.toPath(), contents.substring(0, FILE_SIZE).getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,204 @@
+package model.cyverse;
+
+import model.query.CyVerseQuery;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.pub.domain.AvuData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that cached query results expire, are thrown away when a collection they may include changes, and are only written to disk in
+ * the background once the user turns that on
+ */
+public class CyVerseQueryCacheTest
+{
+	// The user every query is run as
+	private static final String USERNAME = "user";
+	// The time to live used by tests that don't test expiry
+	private static final Long TIME_TO_LIVE_MILLIS = 60000L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void resultsAreOnlyWrittenToDiskOnceTurnedOn() throws IOException, JargonException
+	{
+		File cacheDirectory = new File(this.temporaryFolder.getRoot(), "queryCache");
+		CyVerseQueryCache queryCache = new CyVerseQueryCache(cacheDirectory, TIME_TO_LIVE_MILLIS);
+		CyVerseQuery query = this.queryFor(new ImageCollection());
+
+		// By default results are kept in memory only
+		assertFalse(queryCache.isPersistingToDisk());
+		queryCache.put(USERNAME, query, this.resultOf(10), System.currentTimeMillis(), 100L);
+		queryCache.flush();
+		assertNotNull(queryCache.get(USERNAME, query));
+		assertFalse(cacheDirectory.exists());
+
+		// Once turned on, a restarted cache can answer the query
+		queryCache.setPersistToDisk(true);
+		queryCache.put(USERNAME, query, this.resultOf(10), System.currentTimeMillis(), 100L);
+		queryCache.flush();
+		assertEquals(10, this.restart(cacheDirectory).get(USERNAME, query).size());
+
+		// Turning it off again deletes what was written
+		queryCache.setPersistToDisk(false);
+		assertFalse(cacheDirectory.exists());
+		assertNull(this.restart(cacheDirectory).get(USERNAME, query));
+		// The copy in memory is still used
+		assertNotNull(queryCache.get(USERNAME, query));
+	}
+
+	@Test
+	public void resultsExpireAfterTheirTimeToLive() throws IOException, InterruptedException, JargonException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("queryCache");
+		Long timeToLiveMillis = 100L;
+		CyVerseQueryCache queryCache = new CyVerseQueryCache(cacheDirectory, timeToLiveMillis);
+		queryCache.setPersistToDisk(true);
+		CyVerseQuery query = this.queryFor(new ImageCollection());
+
+		queryCache.put(USERNAME, query, this.resultOf(10), System.currentTimeMillis(), 100L);
+		queryCache.flush();
+		assertNotNull(queryCache.get(USERNAME, query));
+		Thread.sleep(timeToLiveMillis * 2);
+
+		// The result is too old to use, in memory or on disk
+		assertNull(this.restart(cacheDirectory, timeToLiveMillis).get(USERNAME, query));
+		assertNull(queryCache.get(USERNAME, query));
+		// A query that started too long ago isn't cached at all
+		queryCache.put(USERNAME, query, this.resultOf(10), System.currentTimeMillis() - timeToLiveMillis * 2, 100L);
+		assertNull(queryCache.get(USERNAME, query));
+		assertEquals(1L, (long) queryCache.getHits());
+	}
+
+	@Test
+	public void invalidatingACollectionDropsEveryResultThatMayIncludeIt() throws IOException, InterruptedException, JargonException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("queryCache");
+		CyVerseQueryCache queryCache = new CyVerseQueryCache(cacheDirectory, TIME_TO_LIVE_MILLIS);
+		queryCache.setPersistToDisk(true);
+		ImageCollection changedCollection = new ImageCollection();
+		CyVerseQuery changedQuery = this.queryFor(changedCollection);
+		CyVerseQuery otherQuery = this.queryFor(new ImageCollection());
+		// A query that isn't limited to any collection may include the changed one
+		CyVerseQuery anyQuery = new CyVerseQuery();
+		long queryStartedAt = System.currentTimeMillis();
+		for (CyVerseQuery query : new CyVerseQuery[] { changedQuery, otherQuery, anyQuery })
+			queryCache.put(USERNAME, query, this.resultOf(10), queryStartedAt, 100L);
+		queryCache.flush();
+
+		Thread.sleep(5);
+		queryCache.invalidateCollection(changedCollection.getID().toString());
+
+		assertNull(queryCache.get(USERNAME, changedQuery));
+		assertNull(queryCache.get(USERNAME, anyQuery));
+		assertNotNull(queryCache.get(USERNAME, otherQuery));
+		// The results were deleted from disk as well, so a restart doesn't bring them back
+		CyVerseQueryCache restartedCache = this.restart(cacheDirectory);
+		assertNull(restartedCache.get(USERNAME, changedQuery));
+		assertNull(restartedCache.get(USERNAME, anyQuery));
+		assertNotNull(restartedCache.get(USERNAME, otherQuery));
+
+		// A query that was running when the collection changed may have missed the change, so its result is thrown away
+		queryCache.put(USERNAME, changedQuery, this.resultOf(10), queryStartedAt, 100L);
+		assertNull(queryCache.get(USERNAME, changedQuery));
+	}
+
+	@Test
+	public void resultsAreWrittenInTheBackgroundAndSkippedIfTheyGoStale() throws IOException, InterruptedException, JargonException
+	{
+		File cacheDirectory = this.temporaryFolder.newFolder("queryCache");
+		CyVerseQueryCache queryCache = new CyVerseQueryCache(cacheDirectory, TIME_TO_LIVE_MILLIS);
+		queryCache.setPersistToDisk(true);
+		// Hold on to writes so the test decides when they happen
+		List<Runnable> pendingWrites = new ArrayList<>();
+		queryCache.setDiskWriter(pendingWrites::add);
+		ImageCollection changedCollection = new ImageCollection();
+		CyVerseQuery changedQuery = this.queryFor(changedCollection);
+		CyVerseQuery otherQuery = this.queryFor(new ImageCollection());
+
+		queryCache.put(USERNAME, changedQuery, this.resultOf(1000), System.currentTimeMillis(), 100L);
+		queryCache.put(USERNAME, otherQuery, this.resultOf(1000), System.currentTimeMillis(), 100L);
+		// The results can be used before anything is written
+		assertEquals(2, pendingWrites.size());
+		assertEquals(1000, queryCache.get(USERNAME, otherQuery).size());
+		assertNull(this.restart(cacheDirectory).get(USERNAME, otherQuery));
+
+		// The collection changes while the writes are waiting
+		Thread.sleep(5);
+		queryCache.invalidateCollection(changedCollection.getID().toString());
+		pendingWrites.forEach(Runnable::run);
+
+		// Only the result that is still valid reaches the disk, and no temporary files are left behind
+		CyVerseQueryCache restartedCache = this.restart(cacheDirectory);
+		assertNull(restartedCache.get(USERNAME, changedQuery));
+		assertEquals(1000, restartedCache.get(USERNAME, otherQuery).size());
+		String[] filesOnDisk = cacheDirectory.list();
+		assertNotNull(filesOnDisk);
+		assertEquals(2, filesOnDisk.length);
+	}
+
+	/**
+	 * Creates a query limited to a single collection
+	 *
+	 * @param imageCollection The collection to limit the query to
+	 * @return The query
+	 */
+	private CyVerseQuery queryFor(ImageCollection imageCollection)
+	{
+		CyVerseQuery query = new CyVerseQuery();
+		query.addImageCollection(imageCollection);
+		return query;
+	}
+
+	/**
+	 * Creates a query result with one metadata entry per image
+	 *
+	 * @param imageCount The number of images in the result
+	 * @return A map of absolute path -> metadata of each image
+	 * @throws JargonException If the metadata could not be created
+	 */
+	private Map<String, List<AvuData>> resultOf(Integer imageCount) throws JargonException
+	{
+		Map<String, List<AvuData>> pathToMetadata = new LinkedHashMap<>();
+		for (Integer imageIndex = 0; imageIndex < imageCount; imageIndex++)
+			pathToMetadata.put(String.format("/iplant/home/user/images/IMG_%04d.JPG", imageIndex), Collections.singletonList(AvuData.instance("attribute", "value" + imageIndex, "")));
+		return pathToMetadata;
+	}
+
+	/**
+	 * Creates a new cache reading the same directory, like the program being restarted
+	 *
+	 * @param cacheDirectory The directory of the cache being restarted
+	 * @return The new cache
+	 */
+	private CyVerseQueryCache restart(File cacheDirectory)
+	{
+		return this.restart(cacheDirectory, TIME_TO_LIVE_MILLIS);
+	}
+
+	/**
+	 * Creates a new cache reading the same directory, like the program being restarted
+	 *
+	 * @param cacheDirectory The directory of the cache being restarted
+	 * @param timeToLiveMillis The time to live of the new cache
+	 * @return The new cache
+	 */
+	private CyVerseQueryCache restart(File cacheDirectory, Long timeToLiveMillis)
+	{
+		CyVerseQueryCache restartedCache = new CyVerseQueryCache(cacheDirectory, timeToLiveMillis);
+		restartedCache.setPersistToDisk(true);
+		return restartedCache;
+	}
+}
@@ -0,0 +1,270 @@
+package model.cyverse;
+
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.connection.IRODSSession;
+import org.irods.jargon.core.exception.JargonException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the session pool using a fake session factory so no connection to CyVerse is needed
+ */
+public class CyVerseSessionManagerTest
+{
+	// The account given to the pool, never used to connect
+	private IRODSAccount account;
+	// The fake factory that records what the pool does with its sessions
+	private FakeSessionFactory sessionFactory;
+
+	@Before
+	public void setUp() throws JargonException
+	{
+		this.account = IRODSAccount.instance("localhost", 1247, "user", "password", "/iplant/home/user", "iplant", "");
+		this.sessionFactory = new FakeSessionFactory();
+	}
+
+	@Test
+	public void returnedSessionIsReusedByTheSameThread()
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		assertTrue(sessionManager.openSession());
+		IRODSSession firstSession = sessionManager.getCurrentSession();
+		sessionManager.closeSession();
+		assertEquals(0, sessionManager.getLeasedSessionCount());
+		assertEquals(1, sessionManager.getIdleSessionCount());
+
+		assertTrue(sessionManager.openSession());
+		assertSame(firstSession, sessionManager.getCurrentSession());
+		sessionManager.closeSession();
+
+		assertEquals(1, this.sessionFactory.created.get());
+		assertEquals(1, sessionManager.getPoolMisses());
+		assertEquals(1, sessionManager.getPoolHits());
+	}
+
+	@Test
+	public void openingTwiceOnTheSameThreadFails()
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		assertTrue(sessionManager.openSession());
+		assertFalse(sessionManager.openSession());
+		assertEquals(1, sessionManager.getLeasedSessionCount());
+		sessionManager.closeSession();
+	}
+
+	@Test
+	public void idleSessionPastTheTimeoutIsRecreated() throws InterruptedException
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 0, this.sessionFactory);
+
+		assertTrue(sessionManager.openSession());
+		IRODSSession firstSession = sessionManager.getCurrentSession();
+		sessionManager.closeSession();
+		Thread.sleep(5);
+
+		assertTrue(sessionManager.openSession());
+		assertNotSame(firstSession, sessionManager.getCurrentSession());
+		sessionManager.closeSession();
+
+		assertEquals(2, this.sessionFactory.created.get());
+		assertEquals(1, this.sessionFactory.closed.get());
+	}
+
+	@Test
+	public void leasesAreLimitedToThePoolSize() throws Exception
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 2, 60000, this.sessionFactory);
+		ExecutorService threads = Executors.newFixedThreadPool(3);
+		try
+		{
+			// Two threads hold a session until they are told to let go
+			CountDownLatch leased = new CountDownLatch(2);
+			CountDownLatch release = new CountDownLatch(1);
+			for (int i = 0; i < 2; i++)
+			{
+				threads.submit(() ->
+				{
+					assertTrue(sessionManager.openSession());
+					leased.countDown();
+					release.await();
+					sessionManager.closeSession();
+					return null;
+				});
+			}
+			assertTrue(leased.await(5, TimeUnit.SECONDS));
+
+			// A third thread has to wait for one of them to finish
+			Future<Boolean> thirdLease = threads.submit(() ->
+			{
+				Boolean opened = sessionManager.openSession();
+				sessionManager.closeSession();
+				return opened;
+			});
+			try
+			{
+				thirdLease.get(200, TimeUnit.MILLISECONDS);
+				fail("A third session was leased from a pool of two");
+			}
+			catch (TimeoutException ignored)
+			{
+				// Expected, the pool is exhausted
+			}
+			assertEquals(2, sessionManager.getLeasedSessionCount());
+
+			release.countDown();
+			assertTrue(thirdLease.get(5, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			threads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void sessionsOfDeadThreadsAreDiscarded() throws InterruptedException
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		// A thread returns its session to the pool and then finishes without evicting it
+		Thread worker = new Thread(() ->
+		{
+			sessionManager.openSession();
+			sessionManager.closeSession();
+		});
+		worker.start();
+		worker.join();
+		assertEquals(1, sessionManager.getIdleSessionCount());
+		assertEquals(0, this.sessionFactory.orphansDiscarded.get());
+
+		// The next session returned prunes the dead thread's session and discards its connection
+		assertTrue(sessionManager.openSession());
+		sessionManager.closeSession();
+		assertEquals(1, this.sessionFactory.orphansDiscarded.get());
+		assertEquals(1, sessionManager.getIdleSessionCount());
+	}
+
+	@Test
+	public void discardedSessionIsNotReused()
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 1, 60000, this.sessionFactory);
+
+		assertTrue(sessionManager.openSession());
+		IRODSSession brokenSession = sessionManager.getCurrentSession();
+		sessionManager.discardCurrentSession();
+		assertNull(sessionManager.getCurrentSession());
+		assertEquals(1, this.sessionFactory.discarded.get());
+		assertEquals(0, this.sessionFactory.closed.get());
+
+		// The lease was given back, so even a pool of one can open a new session
+		assertTrue(sessionManager.openSession());
+		assertNotSame(brokenSession, sessionManager.getCurrentSession());
+		sessionManager.closeSession();
+	}
+
+	@Test
+	public void taskSessionsAreClosedInsteadOfPooled() throws Exception
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		Integer result = sessionManager.withTaskSession(() ->
+		{
+			assertNotNull(sessionManager.getCurrentSession());
+			return 42;
+		});
+
+		assertEquals(Integer.valueOf(42), result);
+		assertEquals(0, sessionManager.getLeasedSessionCount());
+		assertEquals(0, sessionManager.getIdleSessionCount());
+		assertEquals(1, this.sessionFactory.closed.get());
+	}
+
+	@Test
+	public void failedSessionIsDiscardedInsteadOfPooled()
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		assertTrue(sessionManager.openSession());
+		IRODSSession failedSession = sessionManager.getCurrentSession();
+		sessionManager.markCurrentSessionFailed();
+		// The session may still be used until it is closed
+		assertSame(failedSession, sessionManager.getCurrentSession());
+		sessionManager.closeSession();
+		assertEquals(0, sessionManager.getIdleSessionCount());
+		assertEquals(0, sessionManager.getOpenSessionCount());
+		assertEquals(1, this.sessionFactory.discarded.get());
+
+		// The same thread gets a new connection right away instead of the broken one
+		assertTrue(sessionManager.openSession());
+		assertNotSame(failedSession, sessionManager.getCurrentSession());
+		sessionManager.closeSession();
+		assertEquals(1, sessionManager.getIdleSessionCount());
+	}
+
+	@Test
+	public void taskSessionIsDiscardedWhenTheWorkThrows()
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 4, 60000, this.sessionFactory);
+
+		try
+		{
+			sessionManager.withTaskSession(() ->
+			{
+				throw new JargonException("Connection reset");
+			});
+			fail("The task's error was swallowed");
+		}
+		catch (Exception e)
+		{
+			assertEquals("Connection reset", e.getMessage());
+		}
+		assertEquals(0, sessionManager.getOpenSessionCount());
+		assertEquals(1, this.sessionFactory.discarded.get());
+		assertEquals(0, this.sessionFactory.closed.get());
+	}
+
+	@Test
+	public void idleSessionsCountAgainstThePoolSize() throws Exception
+	{
+		CyVerseSessionManager sessionManager = new CyVerseSessionManager(this.account, 2, 60000, this.sessionFactory);
+		// Two threads that stay alive each return a session to the pool, so the pool is full of idle sessions
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try
+		{
+			CountDownLatch returned = new CountDownLatch(2);
+			CountDownLatch finish = new CountDownLatch(1);
+			for (int i = 0; i < 2; i++)
+			{
+				threads.submit(() ->
+				{
+					sessionManager.openSession();
+					sessionManager.closeSession();
+					returned.countDown();
+					finish.await();
+					return null;
+				});
+			}
+			assertTrue(returned.await(5, TimeUnit.SECONDS));
+			assertEquals(2, sessionManager.getIdleSessionCount());
+			assertEquals(2, sessionManager.getOpenSessionCount());
+
+			// A third thread can't open a third connection, one of the idle sessions is thrown away to make room
+			assertTrue(sessionManager.openSession());
+			assertEquals(2, sessionManager.getOpenSessionCount());
+			assertEquals(1, sessionManager.getIdleSessionCount());
+			assertEquals(1, this.sessionFactory.orphansDiscarded.get());
+			sessionManager.closeSession();
+			assertEquals(2, sessionManager.getOpenSessionCount());
+			finish.countDown();
+		}
+		finally
+		{
+			threads.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package model.cyverse;
+
+import model.constant.SanimalMetadataFields;
+import model.query.AggregateField;
+import model.query.CyVerseQuery;
+import org.apache.commons.io.FilenameUtils;
+import org.irods.jargon.core.pub.BulkAVUOperationResponse;
+import org.irods.jargon.core.pub.DataObjectAO;
+import org.irods.jargon.core.pub.domain.AvuData;
+import org.irods.jargon.core.pub.io.IRODSFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An in memory stand in for CyVerse that counts every round trip made to it. Each round trip can be made to take a fixed amount of time
+ * to simulate the latency of talking to the real server. Listings are returned a page at a time like GenQuery, each page is one round trip
+ */
+class FakeRemoteCatalog implements CyVerseConnectionManager.RemoteCatalog
+{
+	// The number of rows returned in each page of a listing
+	private final Integer pageSize;
+	// The time each round trip takes in milliseconds
+	private final Long latencyMillis;
+
+	// Every collection on the fake server
+	private final Set<String> collections = ConcurrentHashMap.newKeySet();
+	// Map of data object path -> contents of the data object
+	private final Map<String, String> dataObjects = new ConcurrentHashMap<>();
+	// Map of data object path -> metadata attached to the data object
+	private final Map<String, List<AvuData>> metadata = new ConcurrentHashMap<>();
+	// Map of data object path -> the time the data object was last written, a counter rather than a real time
+	private final Map<String, Long> modifyTimes = new ConcurrentHashMap<>();
+	// Ticks each time a data object is written
+	private final AtomicLong clock = new AtomicLong(0);
+
+	// The total number of round trips made
+	final AtomicInteger roundTrips = new AtomicInteger(0);
+	// The number of listings requested, a listing may take several round trips
+	final AtomicInteger listings = new AtomicInteger(0);
+	// The number of files opened for reading
+	final AtomicInteger fileReads = new AtomicInteger(0);
+	// The number of times the metadata of a single data object was read
+	final AtomicInteger metadataFetches = new AtomicInteger(0);
+	// The number of files uploaded
+	final AtomicInteger fileWrites = new AtomicInteger(0);
+	// Map of data object path -> the number of bulk metadata adds made to it
+	final Map<String, AtomicInteger> bulkAdds = new ConcurrentHashMap<>();
+	// Map of data object path -> the number of bulk metadata deletes made to it
+	final Map<String, AtomicInteger> bulkDeletes = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor takes the page size and latency of the fake server
+	 *
+	 * @param pageSize The number of rows returned in each page of a listing
+	 * @param latencyMillis The time each round trip takes in milliseconds
+	 */
+	FakeRemoteCatalog(Integer pageSize, Long latencyMillis)
+	{
+		this.pageSize = pageSize;
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * Adds a collection to the fake server
+	 *
+	 * @param path The absolute path of the collection
+	 */
+	void addCollection(String path)
+	{
+		this.collections.add(path);
+	}
+
+	/**
+	 * Adds a data object to the fake server
+	 *
+	 * @param path The absolute path of the data object
+	 * @param contents The contents of the data object
+	 * @param avus The metadata attached to the data object
+	 */
+	void addDataObject(String path, String contents, AvuData... avus)
+	{
+		this.dataObjects.put(path, contents);
+		this.modifyTimes.put(path, this.clock.incrementAndGet());
+		if (avus.length > 0)
+			this.metadata.put(path, Arrays.asList(avus));
+	}
+
+	/**
+	 * @param path The absolute path of the data object
+	 * @return The metadata attached to the data object, empty if it has none
+	 */
+	List<AvuData> metadataOf(String path)
+	{
+		return this.metadata.getOrDefault(path, Collections.emptyList());
+	}
+
+	/**
+	 * @param path The absolute path of the data object
+	 * @return The current version of the data object, the fake server never computes checksums
+	 */
+	String versionOf(String path)
+	{
+		return CyVerseImageCache.versionOf("", this.modifyTimes.get(path), this.dataObjects.get(path).length());
+	}
+
+	@Override
+	public IRODSFile instanceFile(String path)
+	{
+		// Creating a file does not talk to the server, only the calls made on it do
+		return (IRODSFile) Proxy.newProxyInstance(IRODSFile.class.getClassLoader(), new Class[] { IRODSFile.class }, (proxy, method, args) ->
+		{
+			switch (method.getName())
+			{
+				case "getAbsolutePath":
+				case "getPath":
+				case "toString":
+					return path;
+				case "getName":
+					return FilenameUtils.getName(path);
+				case "getParent":
+					return FilenameUtils.getFullPathNoEndSeparator(path);
+				case "hashCode":
+					return path.hashCode();
+				case "equals":
+					return args[0] instanceof IRODSFile && path.equals(((IRODSFile) args[0]).getAbsolutePath());
+				case "exists":
+				case "canRead":
+				case "canWrite":
+					this.roundTrip();
+					return this.collections.contains(path) || this.dataObjects.containsKey(path);
+				case "isDirectory":
+					this.roundTrip();
+					return this.collections.contains(path);
+				case "isFile":
+					this.roundTrip();
+					return this.dataObjects.containsKey(path);
+				default:
+					throw new UnsupportedOperationException("The fake server does not support " + method.getName());
+			}
+		});
+	}
+
+	@Override
+	public InputStream openInputStream(IRODSFile file)
+	{
+		this.roundTrip();
+		this.fileReads.incrementAndGet();
+		return new ByteArrayInputStream(this.dataObjects.get(file.getAbsolutePath()).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public OutputStream openOutputStream(IRODSFile file)
+	{
+		this.roundTrip();
+		// The contents replace the data object once the stream is closed
+		return new ByteArrayOutputStream()
+		{
+			@Override
+			public void close()
+			{
+				fileWrites.incrementAndGet();
+				dataObjects.put(file.getAbsolutePath(), new String(this.toByteArray(), StandardCharsets.UTF_8));
+				modifyTimes.put(file.getAbsolutePath(), clock.incrementAndGet());
+			}
+		};
+	}
+
+	@Override
+	public List<String> listSubCollections(String parentCollection)
+	{
+		List<String> subCollections = new ArrayList<>();
+		for (String collection : this.collections)
+			if (FilenameUtils.getFullPathNoEndSeparator(collection).equals(parentCollection))
+				subCollections.add(collection);
+		Collections.sort(subCollections);
+		return this.paged(subCollections);
+	}
+
+	@Override
+	public List<String> listCollectionsUnder(String rootPath)
+	{
+		List<String> collectionPaths = new ArrayList<>();
+		for (String collection : this.collections)
+			if (collection.startsWith(rootPath + "/"))
+				collectionPaths.add(collection);
+		return this.paged(collectionPaths);
+	}
+
+	@Override
+	public Map<String, String> listDataObjectsUnder(String rootPath)
+	{
+		// Match the same way LIKE 'root%' would, which includes siblings whose names start with the root's name
+		Map<String, String> dataObjectToVersion = new HashMap<>();
+		for (String dataObject : this.dataObjects.keySet())
+			if (FilenameUtils.getFullPathNoEndSeparator(dataObject).startsWith(rootPath))
+				dataObjectToVersion.put(dataObject, this.versionOf(dataObject));
+		this.listingRoundTrips(dataObjectToVersion.size());
+		return dataObjectToVersion;
+	}
+
+	@Override
+	public Map<String, List<AvuData>> listMetadataUnder(String rootPath)
+	{
+		Map<String, List<AvuData>> pathToMetadata = new HashMap<>();
+		Integer rows = 0;
+		for (Map.Entry<String, List<AvuData>> entry : this.metadata.entrySet())
+		{
+			if (FilenameUtils.getFullPathNoEndSeparator(entry.getKey()).startsWith(rootPath))
+			{
+				pathToMetadata.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+				rows = rows + entry.getValue().size();
+			}
+		}
+		this.listingRoundTrips(rows);
+		return pathToMetadata;
+	}
+
+	@Override
+	public Map<String, List<AvuData>> fetchMetadataInBulk(List<String> absoluteIRODSPaths)
+	{
+		// Group the paths by collection and query each collection in batches like the real catalog
+		Map<String, List<String>> collectionToPaths = new LinkedHashMap<>();
+		for (String path : absoluteIRODSPaths)
+			collectionToPaths.computeIfAbsent(FilenameUtils.getFullPathNoEndSeparator(path), ignored -> new ArrayList<>()).add(path);
+
+		Map<String, List<AvuData>> pathToMetadata = new HashMap<>();
+		for (List<String> collectionPaths : collectionToPaths.values())
+		{
+			for (Integer batchStart = 0; batchStart < collectionPaths.size(); batchStart = batchStart + CyVerseConnectionManager.METADATA_QUERY_BATCH_SIZE)
+			{
+				// Each row is one attribute of one data object
+				Integer rows = 0;
+				for (String path : collectionPaths.subList(batchStart, Math.min(batchStart + CyVerseConnectionManager.METADATA_QUERY_BATCH_SIZE, collectionPaths.size())))
+				{
+					List<AvuData> metadata = this.metadata.getOrDefault(path, Collections.emptyList());
+					pathToMetadata.put(path, new ArrayList<>(metadata));
+					rows = rows + metadata.size();
+				}
+				this.listingRoundTrips(rows);
+			}
+		}
+		return pathToMetadata;
+	}
+
+	@Override
+	public List<AvuData> fetchMetadata(String absoluteIRODSPath)
+	{
+		this.roundTrip();
+		this.metadataFetches.incrementAndGet();
+		return new ArrayList<>(this.metadata.getOrDefault(absoluteIRODSPath, Collections.emptyList()));
+	}
+
+	@Override
+	public void queryDataObjects(CyVerseQuery query, Consumer<String> pathConsumer)
+	{
+		this.paged(this.dataObjectsMatching(query)).forEach(pathConsumer);
+	}
+
+	@Override
+	public Map<String, Long> countDataObjectsByValue(CyVerseQuery query, AggregateField groupBy)
+	{
+		// Like the distinct query, each row is one value of one data object
+		Map<String, Long> valueToCount = new HashMap<>();
+		Integer rows = 0;
+		for (String path : this.dataObjectsMatching(query))
+		{
+			Set<String> values = new HashSet<>();
+			for (AvuData avuData : this.metadata.get(path))
+				if (avuData.getAttribute().equals(groupBy.getAttribute()))
+					values.add(avuData.getValue());
+			for (String value : values)
+				valueToCount.merge(value, 1L, Long::sum);
+			rows = rows + values.size();
+		}
+		this.listingRoundTrips(rows);
+		return valueToCount;
+	}
+
+	/**
+	 * Finds the data objects with metadata that match a query. The fake server only understands queries limited to collections
+	 *
+	 * @param query The query to match
+	 * @return The absolute path of every matching data object, sorted
+	 */
+	private List<String> dataObjectsMatching(CyVerseQuery query)
+	{
+		String withoutCollections = query.getCanonicalKey().replaceFirst("\\|collections=[^|]*", "");
+		if (!withoutCollections.equals(new CyVerseQuery().getCanonicalKey().replaceFirst("\\|collections=[^|]*", "")))
+			throw new UnsupportedOperationException("The fake server only supports queries limited to collections");
+
+		Set<String> collectionIDs = query.getCollectionIDs();
+		List<String> matchingPaths = new ArrayList<>();
+		this.metadata.forEach((path, avus) ->
+		{
+			if (collectionIDs.isEmpty() || avus.stream().anyMatch(avuData -> avuData.getAttribute().equals(SanimalMetadataFields.A_COLLECTION_ID) && collectionIDs.contains(avuData.getValue())))
+				matchingPaths.add(path);
+		});
+		Collections.sort(matchingPaths);
+		return matchingPaths;
+	}
+
+	@Override
+	public DataObjectAO getDataObjectAO()
+	{
+		// Only the bulk metadata calls are supported, each is a single round trip no matter how many AVUs it carries
+		return (DataObjectAO) Proxy.newProxyInstance(DataObjectAO.class.getClassLoader(), new Class[] { DataObjectAO.class }, (proxy, method, args) ->
+		{
+			String path = (String) args[0];
+			@SuppressWarnings("unchecked")
+			List<AvuData> avus = (List<AvuData>) args[1];
+			List<BulkAVUOperationResponse> responses = new ArrayList<>();
+			switch (method.getName())
+			{
+				case "addBulkAVUMetadataToDataObject":
+					this.roundTrip();
+					this.bulkAdds.computeIfAbsent(path, ignored -> new AtomicInteger(0)).incrementAndGet();
+					this.metadata.compute(path, (ignored, existing) ->
+					{
+						List<AvuData> updated = existing == null ? new ArrayList<>() : new ArrayList<>(existing);
+						updated.addAll(avus);
+						return updated;
+					});
+					break;
+				case "deleteBulkAVUMetadataFromDataObject":
+					this.roundTrip();
+					this.bulkDeletes.computeIfAbsent(path, ignored -> new AtomicInteger(0)).incrementAndGet();
+					this.metadata.computeIfPresent(path, (ignored, existing) ->
+					{
+						List<AvuData> updated = new ArrayList<>(existing);
+						updated.removeIf(avuData -> avus.stream().anyMatch(toRemove -> sameAVU(avuData, toRemove)));
+						return updated;
+					});
+					break;
+				default:
+					throw new UnsupportedOperationException("The fake server does not support " + method.getName());
+			}
+			for (AvuData avuData : avus)
+				responses.add(BulkAVUOperationResponse.instance(BulkAVUOperationResponse.ResultStatus.OK, avuData, ""));
+			return responses;
+		});
+	}
+
+	@Override
+	public void putFile(File localFile, IRODSFile remoteFile)
+	{
+		this.roundTrip();
+		this.fileWrites.incrementAndGet();
+		this.dataObjects.putIfAbsent(remoteFile.getAbsolutePath(), "");
+		this.modifyTimes.put(remoteFile.getAbsolutePath(), this.clock.incrementAndGet());
+	}
+
+	/**
+	 * @param first The first AVU
+	 * @param second The second AVU
+	 * @return True if both AVUs have the same attribute, value, and unit
+	 */
+	static Boolean sameAVU(AvuData first, AvuData second)
+	{
+		return Objects.equals(first.getAttribute(), second.getAttribute()) && Objects.equals(first.getValue(), second.getValue()) && Objects.equals(first.getUnit(), second.getUnit());
+	}
+
+	/**
+	 * Records the round trips taken to return a listing a page at a time
+	 *
+	 * @param rows The rows in the listing
+	 * @param <T> The type of each row
+	 * @return The rows
+	 */
+	private <T> List<T> paged(List<T> rows)
+	{
+		this.listingRoundTrips(rows.size());
+		return rows;
+	}
+
+	/**
+	 * Records the round trips taken to return a listing, at least one page is always returned
+	 *
+	 * @param rows The number of rows in the listing
+	 */
+	private void listingRoundTrips(Integer rows)
+	{
+		this.listings.incrementAndGet();
+		Integer pages = Math.max(1, (rows + this.pageSize - 1) / this.pageSize);
+		for (Integer page = 0; page < pages; page++)
+			this.roundTrip();
+	}
+
+	/**
+	 * Records a single round trip and waits for the simulated latency
+	 */
+	private void roundTrip()
+	{
+		this.roundTrips.incrementAndGet();
+		if (this.latencyMillis > 0)
+		{
+			try
+			{
+				Thread.sleep(this.latencyMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
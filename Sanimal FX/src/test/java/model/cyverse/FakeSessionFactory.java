@@ -0,0 +1,88 @@
+package model.cyverse;
+
+import javafx.util.Pair;
+import org.irods.jargon.core.connection.IRODSAccount;
+import org.irods.jargon.core.connection.IRODSSession;
+import org.irods.jargon.core.connection.IRODSSimpleProtocolManager;
+import org.irods.jargon.core.exception.JargonException;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactory;
+import org.irods.jargon.core.pub.IRODSAccessObjectFactoryImpl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Session factory that creates sessions without connecting and counts what happens to them
+ */
+class FakeSessionFactory implements CyVerseSessionManager.SessionFactory
+{
+	final AtomicInteger created = new AtomicInteger(0);
+	final AtomicInteger discarded = new AtomicInteger(0);
+	final AtomicInteger orphansDiscarded = new AtomicInteger(0);
+	final AtomicInteger closed = new AtomicInteger(0);
+
+	// The time opening each session takes in milliseconds, like connecting and authenticating would
+	private final Long connectMillis;
+
+	/**
+	 * Constructor creates sessions straight away
+	 */
+	FakeSessionFactory()
+	{
+		this(0L);
+	}
+
+	/**
+	 * Constructor takes the time opening each session should take
+	 *
+	 * @param connectMillis The time opening each session takes in milliseconds
+	 */
+	FakeSessionFactory(Long connectMillis)
+	{
+		this.connectMillis = connectMillis;
+	}
+
+	@Override
+	public Pair<IRODSSession, IRODSAccessObjectFactory> createSession() throws JargonException
+	{
+		this.created.incrementAndGet();
+		if (this.connectMillis > 0)
+		{
+			try
+			{
+				Thread.sleep(this.connectMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new JargonException("Interrupted while connecting");
+			}
+		}
+		// Jargon only connects once an access object is used, so creating these is safe without a server
+		IRODSSession session = IRODSSession.instance(IRODSSimpleProtocolManager.instance());
+		return new Pair<>(session, IRODSAccessObjectFactoryImpl.instance(session));
+	}
+
+	@Override
+	public boolean isHealthy(IRODSSession session, IRODSAccessObjectFactory accessObjectFactory, IRODSAccount account)
+	{
+		return true;
+	}
+
+	@Override
+	public void discardSession(IRODSSession session, IRODSAccount account)
+	{
+		this.discarded.incrementAndGet();
+	}
+
+	@Override
+	public Runnable captureConnection(IRODSSession session, IRODSAccount account)
+	{
+		return this.orphansDiscarded::incrementAndGet;
+	}
+
+	@Override
+	public void closeSession(IRODSSession session, IRODSAccount account)
+	{
+		this.closed.incrementAndGet();
+	}
+}
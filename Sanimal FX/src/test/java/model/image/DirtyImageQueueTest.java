@@ -0,0 +1,156 @@
+package model.image;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that images in the image tree are queued once per edit, drained in order, and given up on after failing to write a few times
+ */
+public class DirtyImageQueueTest
+{
+	// The queue the image tree writes through
+	private DirtyImageQueue dirtyImageQueue;
+	// The root of the image tree
+	private ImageDirectory imageTree;
+
+	@Before
+	public void setUp()
+	{
+		this.dirtyImageQueue = new DirtyImageQueue();
+		this.imageTree = new ImageDirectory(null);
+		this.imageTree.setDirtyImageQueue(this.dirtyImageQueue);
+	}
+
+	@Test
+	public void imageEditedManyTimesIsQueuedOnce()
+	{
+		ImageEntry imageEntry = this.addImage("IMG_0001.JPG");
+		for (int edit = 0; edit < 10; edit++)
+			imageEntry.setDateTaken(LocalDateTime.of(2018, 1, 1, 0, 0).plusMinutes(edit));
+
+		assertEquals(1, (int) this.dirtyImageQueue.getDepth());
+		assertEquals(Collections.singletonList(imageEntry), this.dirtyImageQueue.drain(100));
+		assertTrue(this.dirtyImageQueue.isEmpty());
+	}
+
+	@Test
+	public void drainReturnsDirtyImagesInOrderAndSkipsCleanOnes()
+	{
+		ImageEntry first = this.addImage("IMG_0001.JPG");
+		ImageEntry second = this.addImage("IMG_0002.JPG");
+		ImageEntry third = this.addImage("IMG_0003.JPG");
+		ImageEntry fourth = this.addImage("IMG_0004.JPG");
+		for (ImageEntry imageEntry : Arrays.asList(first, second, third, fourth))
+			imageEntry.markDiskDirty(true);
+		// An image marked clean before it is written leaves the queue
+		second.markDiskDirty(false);
+		assertEquals(3, (int) this.dirtyImageQueue.getDepth());
+
+		assertEquals(Arrays.asList(first, third), this.dirtyImageQueue.drain(2));
+		assertEquals(Collections.singletonList(fourth), this.dirtyImageQueue.drain(2));
+		assertTrue(this.dirtyImageQueue.drain(2).isEmpty());
+
+		// Editing an image after it was drained queues it again
+		first.markDiskDirty(true);
+		assertEquals(Collections.singletonList(first), this.dirtyImageQueue.drain(2));
+	}
+
+	@Test
+	public void onlyImagesInTheTreeAreQueued()
+	{
+		// Images outside of the tree, such as query results, never touch the queue
+		ImageEntry detached = new ImageEntry(new File("/fixture/IMG_0000.JPG"));
+		detached.markDiskDirty(true);
+		assertTrue(this.dirtyImageQueue.isEmpty());
+
+		// A directory built before it's added to the tree brings its dirty images along, including ones in sub-directories
+		ImageDirectory directory = new ImageDirectory(null);
+		ImageDirectory subDirectory = new ImageDirectory(null);
+		ImageEntry inDirectory = new ImageEntry(new File("/fixture/IMG_0001.JPG"));
+		ImageEntry inSubDirectory = new ImageEntry(new File("/fixture/IMG_0002.JPG"));
+		directory.addChild(inDirectory);
+		directory.addChild(subDirectory);
+		subDirectory.addChild(inSubDirectory);
+		inDirectory.markDiskDirty(true);
+		inSubDirectory.markDiskDirty(true);
+		assertTrue(this.dirtyImageQueue.isEmpty());
+		this.imageTree.addChild(directory);
+		assertEquals(2, (int) this.dirtyImageQueue.getDepth());
+
+		// Images added to a directory that is already in the tree are queued too
+		ImageEntry addedLater = new ImageEntry(new File("/fixture/IMG_0003.JPG"));
+		subDirectory.addChild(addedLater);
+		addedLater.markDiskDirty(true);
+		assertEquals(3, (int) this.dirtyImageQueue.getDepth());
+
+		// Removing a directory from the tree takes its images out of the queue, and later edits don't queue them
+		this.imageTree.removeChildRecursive(subDirectory);
+		assertEquals(Collections.singletonList(inDirectory), this.dirtyImageQueue.drain(100));
+		inSubDirectory.markDiskDirty(true);
+		assertTrue(this.dirtyImageQueue.isEmpty());
+	}
+
+	@Test
+	public void imageThatKeepsFailingIsGivenUpOnUntilItIsEditedAgain()
+	{
+		ImageEntry imageEntry = this.addImage("IMG_0001.JPG");
+		imageEntry.markDiskDirty(true);
+
+		// The image is retried until it has failed the max number of times in a row
+		for (int attempt = 1; attempt < DirtyImageQueue.MAX_WRITE_ATTEMPTS; attempt++)
+		{
+			assertEquals(Collections.singletonList(imageEntry), this.dirtyImageQueue.drain(100));
+			assertTrue(this.dirtyImageQueue.retry(imageEntry));
+		}
+		assertEquals(Collections.singletonList(imageEntry), this.dirtyImageQueue.drain(100));
+		assertFalse(this.dirtyImageQueue.retry(imageEntry));
+		assertTrue(this.dirtyImageQueue.isEmpty());
+
+		// Editing the image gives it a new set of attempts
+		imageEntry.markDiskDirty(true);
+		assertEquals(Collections.singletonList(imageEntry), this.dirtyImageQueue.drain(100));
+		assertTrue(this.dirtyImageQueue.retry(imageEntry));
+	}
+
+	@Test
+	public void imagesLeavingTheTreeWhileBeingWrittenAreNotPutBack()
+	{
+		ImageEntry failed = this.addImage("IMG_0001.JPG");
+		ImageEntry interrupted = this.addImage("IMG_0002.JPG");
+		failed.markDiskDirty(true);
+		interrupted.markDiskDirty(true);
+		List<ImageEntry> batch = this.dirtyImageQueue.drain(100);
+		assertEquals(2, batch.size());
+
+		// An interrupted write puts the image back as long as it's still dirty and in the tree
+		this.dirtyImageQueue.requeue(interrupted);
+		assertEquals(Collections.singletonList(interrupted), this.dirtyImageQueue.drain(100));
+
+		this.imageTree.removeChild(failed);
+		this.imageTree.removeChild(interrupted);
+		assertFalse(this.dirtyImageQueue.retry(failed));
+		this.dirtyImageQueue.requeue(interrupted);
+		assertTrue(this.dirtyImageQueue.isEmpty());
+	}
+
+	/**
+	 * Adds a clean image to the root of the image tree
+	 *
+	 * @param fileName The name of the image file
+	 * @return The image added
+	 */
+	private ImageEntry addImage(String fileName)
+	{
+		ImageEntry imageEntry = new ImageEntry(new File("/fixture/" + fileName));
+		this.imageTree.addChild(imageEntry);
+		return imageEntry;
+	}
+}
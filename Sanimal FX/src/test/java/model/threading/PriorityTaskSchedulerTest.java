@@ -0,0 +1,191 @@
+package model.threading;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that priority classes compete for the scheduler's shared slots by priority, within their own limits, and without starving
+ */
+public class PriorityTaskSchedulerTest
+{
+	@Test
+	public void higherPriorityTaskTakesTheNextFreeSlot() throws InterruptedException
+	{
+		PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO);
+		taskScheduler.setMaxConcurrency(1);
+
+		// Hold the only slot so that everything after this has to wait in the queue
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch holding = new CountDownLatch(1);
+		taskScheduler.submit(() ->
+		{
+			holding.countDown();
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}, TaskPriority.BULK_TRANSFER);
+		assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+		// The bulk transfer is queued first but the interactive task should still go first
+		List<TaskPriority> runOrder = new CopyOnWriteArrayList<>();
+		taskScheduler.submit(() -> runOrder.add(TaskPriority.BULK_TRANSFER), TaskPriority.BULK_TRANSFER);
+		taskScheduler.submit(() -> runOrder.add(TaskPriority.BACKGROUND_IO), TaskPriority.BACKGROUND_IO);
+		taskScheduler.submit(() -> runOrder.add(TaskPriority.INTERACTIVE), TaskPriority.INTERACTIVE);
+		assertEquals(3, taskScheduler.getQueuedCount(TaskPriority.BULK_TRANSFER) + taskScheduler.getQueuedCount(TaskPriority.BACKGROUND_IO) + taskScheduler.getQueuedCount(TaskPriority.INTERACTIVE));
+
+		release.countDown();
+		taskScheduler.shutdown();
+		assertTrue(taskScheduler.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(3, runOrder.size());
+		assertEquals(TaskPriority.INTERACTIVE, runOrder.get(0));
+		assertEquals(TaskPriority.BACKGROUND_IO, runOrder.get(1));
+		assertEquals(TaskPriority.BULK_TRANSFER, runOrder.get(2));
+	}
+
+	@Test
+	public void eachClassIsLimitedToItsOwnSlots() throws InterruptedException
+	{
+		PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO);
+		taskScheduler.setMaxConcurrency(6);
+		CountDownLatch release = new CountDownLatch(1);
+
+		// Only two bulk transfers run at once no matter how many are waiting
+		for (Integer task = 0; task < 5; task++)
+			taskScheduler.submit(this.blockUntil(release), TaskPriority.BULK_TRANSFER);
+		assertEquals(2, (int) taskScheduler.getRunningCount(TaskPriority.BULK_TRANSFER));
+		assertEquals(3, (int) taskScheduler.getQueuedCount(TaskPriority.BULK_TRANSFER));
+
+		// Image pulls don't wait behind the bulk transfers, but they're capped too
+		for (Integer task = 0; task < 4; task++)
+			taskScheduler.submit(this.blockUntil(release), TaskPriority.IMAGE_PULL);
+		assertEquals(3, (int) taskScheduler.getRunningCount(TaskPriority.IMAGE_PULL));
+		assertEquals(1, (int) taskScheduler.getQueuedCount(TaskPriority.IMAGE_PULL));
+
+		// Which leaves a slot free for interactive work
+		taskScheduler.submit(this.blockUntil(release), TaskPriority.INTERACTIVE);
+		assertEquals(1, (int) taskScheduler.getRunningCount(TaskPriority.INTERACTIVE));
+		// Now every shared slot is taken
+		taskScheduler.submit(this.blockUntil(release), TaskPriority.INTERACTIVE);
+		assertEquals(1, (int) taskScheduler.getQueuedCount(TaskPriority.INTERACTIVE));
+
+		release.countDown();
+		taskScheduler.shutdown();
+		assertTrue(taskScheduler.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(5L, (long) taskScheduler.getCompletedCount(TaskPriority.BULK_TRANSFER));
+		assertEquals(4L, (long) taskScheduler.getCompletedCount(TaskPriority.IMAGE_PULL));
+		assertEquals(2L, (long) taskScheduler.getCompletedCount(TaskPriority.INTERACTIVE));
+	}
+
+	@Test
+	public void taskWaitingTooLongRunsBeforeHigherPriorityTasks() throws InterruptedException
+	{
+		PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO, TimeUnit.MILLISECONDS.toNanos(50));
+		taskScheduler.setMaxConcurrency(1);
+		CountDownLatch release = new CountDownLatch(1);
+		taskScheduler.submit(this.blockUntil(release), TaskPriority.INTERACTIVE);
+
+		// The bulk transfer has been waiting longer than the starvation time by the time the interactive task shows up
+		List<TaskPriority> runOrder = new CopyOnWriteArrayList<>();
+		taskScheduler.submit(() -> runOrder.add(TaskPriority.BULK_TRANSFER), TaskPriority.BULK_TRANSFER);
+		Thread.sleep(100);
+		taskScheduler.submit(() -> runOrder.add(TaskPriority.INTERACTIVE), TaskPriority.INTERACTIVE);
+
+		release.countDown();
+		taskScheduler.shutdown();
+		assertTrue(taskScheduler.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(TaskPriority.BULK_TRANSFER, TaskPriority.INTERACTIVE), runOrder);
+	}
+
+	@Test
+	public void taskCancelledWhileQueuedNeverRuns() throws InterruptedException
+	{
+		PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO);
+		taskScheduler.setMaxConcurrency(1);
+		CountDownLatch release = new CountDownLatch(1);
+		taskScheduler.submit(this.blockUntil(release), TaskPriority.BULK_TRANSFER);
+
+		AtomicBoolean cancelledTaskRan = new AtomicBoolean(false);
+		Future<?> cancelled = taskScheduler.submit(() -> cancelledTaskRan.set(true), TaskPriority.BULK_TRANSFER);
+		AtomicBoolean nextTaskRan = new AtomicBoolean(false);
+		taskScheduler.submit(() -> nextTaskRan.set(true), TaskPriority.BULK_TRANSFER);
+		assertTrue(cancelled.cancel(false));
+
+		release.countDown();
+		taskScheduler.shutdown();
+		assertTrue(taskScheduler.awaitTermination(5, TimeUnit.SECONDS));
+		// The cancelled task is thrown away when it reaches the front of the queue and the task behind it runs instead
+		assertFalse(cancelledTaskRan.get());
+		assertTrue(nextTaskRan.get());
+		assertEquals(3L, (long) taskScheduler.getSubmittedCount(TaskPriority.BULK_TRANSFER));
+		assertEquals(1L, (long) taskScheduler.getCancelledCount(TaskPriority.BULK_TRANSFER));
+		assertEquals(2L, (long) taskScheduler.getCompletedCount(TaskPriority.BULK_TRANSFER));
+	}
+
+	@Test
+	public void waitAndRunTimesAreRecordedPerClass() throws InterruptedException
+	{
+		PriorityTaskScheduler taskScheduler = new PriorityTaskScheduler(TaskPriority.BACKGROUND_IO);
+		taskScheduler.setMaxConcurrency(1);
+
+		// The second task waits for the whole time the first one runs
+		Runnable sleepTask = () ->
+		{
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		};
+		taskScheduler.submit(sleepTask, TaskPriority.BACKGROUND_IO);
+		taskScheduler.submit(sleepTask, TaskPriority.BACKGROUND_IO);
+
+		taskScheduler.shutdown();
+		assertTrue(taskScheduler.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(2L, (long) taskScheduler.getCompletedCount(TaskPriority.BACKGROUND_IO));
+		assertTrue(taskScheduler.getAverageRunMillis(TaskPriority.BACKGROUND_IO) >= 50D);
+		assertTrue(taskScheduler.getMaxWaitMillis(TaskPriority.BACKGROUND_IO) >= 40D);
+		// One task waited and the other didn't, so the average is about half of the longest wait
+		assertTrue(taskScheduler.getAverageWaitMillis(TaskPriority.BACKGROUND_IO) < taskScheduler.getMaxWaitMillis(TaskPriority.BACKGROUND_IO));
+		// Other classes are untouched
+		assertEquals(0D, taskScheduler.getAverageRunMillis(TaskPriority.BULK_TRANSFER), 0D);
+		assertEquals(0D, taskScheduler.getMaxWaitMillis(TaskPriority.BULK_TRANSFER), 0D);
+	}
+
+	/**
+	 * Creates a task that holds its slot until it is released
+	 *
+	 * @param release Counted down to let the task finish
+	 * @return The task
+	 */
+	private Runnable blockUntil(CountDownLatch release)
+	{
+		return () ->
+		{
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		};
+	}
+}
@@ -0,0 +1,200 @@
+package model.util;
+
+import model.image.ImageEntry;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.JpegImageData;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that reading the EXIF segment straight out of the JPEG header gives the same metadata as having commons imaging parse the whole file
+ */
+public class MetadataUtilsTest
+{
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void headerMetadataMatchesCommonsImagingMetadata() throws IOException, ImageReadException, ImageWriteException
+	{
+		File imageFile = this.createImageWithThumbnail();
+
+		TiffImageMetadata headerMetadata = MetadataUtils.readImageMetadata(imageFile);
+		TiffImageMetadata imagingMetadata = ((JpegImageMetadata) Imaging.getMetadata(imageFile)).getExif();
+
+		// Every tag in every directory is the same, including the thumbnail
+		assertNotNull(headerMetadata);
+		assertEquals(describe(imagingMetadata), describe(headerMetadata));
+		assertNotNull(thumbnail(imagingMetadata));
+		assertArrayEquals(thumbnail(imagingMetadata), thumbnail(headerMetadata));
+	}
+
+	@Test
+	public void thumbnailIsKeptWhenMetadataIsWritten() throws IOException, ImageReadException, ImageWriteException
+	{
+		File imageFile = this.createImageWithThumbnail();
+		byte[] originalThumbnail = thumbnail(MetadataUtils.readImageMetadata(imageFile));
+
+		// Write the metadata back the same way the image entry does after it gets tagged
+		ImageEntry imageEntry = new ImageEntry(imageFile);
+		TiffOutputSet outputSet = MetadataUtils.readOutputSet(imageEntry);
+		MetadataUtils.getOrCreateSanimalDirectory(outputSet);
+		MetadataUtils.writeOutputSet(outputSet, imageEntry);
+
+		// The thumbnail and the original tags survive the write
+		TiffImageMetadata writtenMetadata = ((JpegImageMetadata) Imaging.getMetadata(imageFile)).getExif();
+		assertArrayEquals(originalThumbnail, thumbnail(writtenMetadata));
+		assertEquals("Sanimal", writtenMetadata.findField(TiffTagConstants.TIFF_TAG_MAKE).getStringValue());
+		assertEquals("2018:01:01 12:00:00", writtenMetadata.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL).getStringValue());
+	}
+
+	@Test
+	public void sameLengthEditIsPatchedInPlace() throws IOException, ImageReadException, ImageWriteException
+	{
+		File imageFile = this.createImageWithThumbnail();
+		byte[] originalThumbnail = thumbnail(MetadataUtils.readImageMetadata(imageFile));
+		ImageEntry imageEntry = new ImageEntry(imageFile);
+		// The first write lays the EXIF data out the way the lossless writer does, which may move everything around
+		this.writeMake(imageEntry, "Sanimal");
+
+		long originalLength = imageFile.length();
+		long inPlaceWrites = MetadataUtils.getInPlaceMetadataWrites();
+		long bytesWritten = MetadataUtils.getMetadataBytesWritten();
+		// Replace a tag with a value of the same length so the EXIF data stays the same size
+		this.writeMake(imageEntry, "Animals");
+
+		// Only the changed bytes were written and the file kept its size
+		assertEquals(inPlaceWrites + 1, MetadataUtils.getInPlaceMetadataWrites());
+		assertTrue(MetadataUtils.getMetadataBytesWritten() - bytesWritten <= "Animals".length());
+		assertEquals(originalLength, imageFile.length());
+		TiffImageMetadata writtenMetadata = ((JpegImageMetadata) Imaging.getMetadata(imageFile)).getExif();
+		assertEquals("Animals", writtenMetadata.findField(TiffTagConstants.TIFF_TAG_MAKE).getStringValue());
+		assertArrayEquals(originalThumbnail, thumbnail(writtenMetadata));
+		assertEquals(describe(writtenMetadata), describe(MetadataUtils.readImageMetadata(imageFile)));
+	}
+
+	@Test
+	public void growingEditReplacesTheFile() throws IOException, ImageReadException, ImageWriteException
+	{
+		File imageFile = this.createImageWithThumbnail();
+		long originalLength = imageFile.length();
+		long inPlaceWrites = MetadataUtils.getInPlaceMetadataWrites();
+
+		// A longer value can't fit in the old EXIF data, so the image is written to a new file that replaces it
+		this.writeMake(new ImageEntry(imageFile), "Sanimal camera trap");
+
+		assertEquals(inPlaceWrites, MetadataUtils.getInPlaceMetadataWrites());
+		assertTrue(imageFile.length() > originalLength);
+		assertEquals("Sanimal camera trap", ((JpegImageMetadata) Imaging.getMetadata(imageFile)).getExif().findField(TiffTagConstants.TIFF_TAG_MAKE).getStringValue());
+		// No temporary files are left next to the image
+		assertEquals(1, imageFile.getParentFile().listFiles().length);
+	}
+
+	/**
+	 * Writes a new camera make into the image's metadata the same way the image entry writes tags
+	 *
+	 * @param imageEntry The image to write to
+	 * @param make The new camera make
+	 */
+	private void writeMake(ImageEntry imageEntry, String make) throws IOException, ImageReadException, ImageWriteException
+	{
+		TiffOutputSet outputSet = MetadataUtils.readOutputSet(imageEntry);
+		outputSet.getRootDirectory().removeField(TiffTagConstants.TIFF_TAG_MAKE);
+		outputSet.getRootDirectory().add(TiffTagConstants.TIFF_TAG_MAKE, make);
+		MetadataUtils.writeOutputSet(outputSet, imageEntry);
+	}
+
+	/**
+	 * Creates a small JPEG with a few EXIF tags and an EXIF thumbnail the way cameras write them
+	 *
+	 * @return The JPEG file
+	 */
+	private File createImageWithThumbnail() throws IOException, ImageReadException, ImageWriteException
+	{
+		byte[] image = jpegBytes(64, 48);
+		byte[] thumbnail = jpegBytes(16, 12);
+
+		TiffOutputSet outputSet = new TiffOutputSet();
+		outputSet.getOrCreateRootDirectory().add(TiffTagConstants.TIFF_TAG_MAKE, "Sanimal");
+		outputSet.getOrCreateExifDirectory().add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, "2018:01:01 12:00:00");
+		TiffOutputDirectory thumbnailDirectory = new TiffOutputDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_DIR_1, outputSet.byteOrder);
+		thumbnailDirectory.setJpegImageData(new JpegImageData(0, thumbnail.length, thumbnail));
+		outputSet.addDirectory(thumbnailDirectory);
+
+		File imageFile = this.temporaryFolder.newFile("IMG_0001.JPG");
+		try (OutputStream outputStream = new FileOutputStream(imageFile))
+		{
+			new ExifRewriter().updateExifMetadataLossless(image, outputStream, outputSet);
+		}
+		return imageFile;
+	}
+
+	/**
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @return A plain JPEG without metadata
+	 */
+	private static byte[] jpegBytes(Integer width, Integer height) throws IOException
+	{
+		BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++)
+			for (int y = 0; y < height; y++)
+				bufferedImage.setRGB(x, y, (x * 4) << 16 | (y * 4) << 8);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(bufferedImage, "jpg", outputStream);
+		return outputStream.toByteArray();
+	}
+
+	/**
+	 * @param metadata The metadata to describe
+	 * @return Every field of every directory as "directory type:tag=value"
+	 */
+	private static List<String> describe(TiffImageMetadata metadata)
+	{
+		List<String> fields = new ArrayList<>();
+		for (ImageMetadata.ImageMetadataItem item : metadata.getDirectories())
+			for (TiffField field : ((TiffImageMetadata.Directory) item).getAllFields())
+				fields.add(field.getDirectoryType() + ":" + field.getTag() + "=" + field.getValueDescription());
+		return fields;
+	}
+
+	/**
+	 * @param metadata The metadata to read the thumbnail from
+	 * @return The bytes of the EXIF thumbnail or null if the metadata has none
+	 */
+	private static byte[] thumbnail(TiffImageMetadata metadata)
+	{
+		for (ImageMetadata.ImageMetadataItem item : metadata.getDirectories())
+		{
+			JpegImageData jpegImageData = ((TiffImageMetadata.Directory) item).getJpegImageData();
+			if (jpegImageData != null)
+				return jpegImageData.getData();
+		}
+		return null;
+	}
+}